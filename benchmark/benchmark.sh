@@ -146,3 +146,31 @@ prepare.min_network_size=10000 \
 measurement.json=true \
 measurement.count=5000 \
 measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME}
+
+echo "5 - big map, sorted along a hilbert curve: node-based CH + landmarks, compare the query times with run 2"
+java -cp tools/target/graphhopper-tools-*-jar-with-dependencies.jar \
+-XX:+UseParallelGC -Xmx20g -Xms20g \
+com.graphhopper.tools.Measurement \
+datareader.file=${BIG_OSM_MAP} \
+datareader.date_range_parser_day=2019-11-01 \
+measurement.name=big_map_sorted \
+measurement.folder=${RESULTS_DIR} \
+measurement.clean=true \
+measurement.stop_on_error=true \
+measurement.summaryfile=${SUMMARY_DIR}summary_big_sorted.dat \
+measurement.repeats=1 \
+measurement.run_slow_routing=true \
+measurement.ch.node=true \
+measurement.ch.edge=false \
+measurement.lm=true \
+"measurement.lm.active_counts=[4,8,12]" \
+measurement.lm.edge_based=true \
+measurement.vehicle=car \
+import.osm.ignored_highways=footway,cycleway,path,pedestrian,bridleway \
+measurement.turn_costs=true \
+graph.sort=true \
+graph.location=${GRAPH_DIR}measurement-big-sorted-gh \
+prepare.min_network_size=10000 \
+measurement.json=true \
+measurement.count=5000 \
+measurement.use_measurement_time_as_ref_time=${USE_MEASUREMENT_TIME_AS_REF_TIME}
@@ -18,12 +18,16 @@
 package com.graphhopper;
 
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
 import com.graphhopper.jackson.Jackson;
 import com.graphhopper.reader.dem.*;
+import com.graphhopper.reader.osm.OSMChangeData;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.reader.osm.conditional.DateRangeParser;
@@ -47,6 +51,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
 import com.graphhopper.routing.weighting.custom.NameValidator;
+import com.graphhopper.search.KVStorage;
 import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.LocationIndexTree;
@@ -65,6 +70,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -80,6 +86,11 @@ import static com.graphhopper.util.Parameters.Algorithms.RoundTrip;
  */
 public class GraphHopper {
     private static final Logger logger = LoggerFactory.getLogger(GraphHopper.class);
+    // the last stage of an import with checkpoints that is stored, it is removed when the import is complete
+    private static final String IMPORT_STAGE = "graph.import.stage";
+    private static final String APPLIED_CHANGE_FILES = "datareader.change_files.applied";
+    private static final String STAGE_BASE_GRAPH = "base_graph";
+    private static final String STAGE_SUBNETWORKS = "subnetworks";
     private MaxSpeedCalculator maxSpeedCalculator;
     private final Map<String, Profile> profilesByName = new LinkedHashMap<>();
     private final String fileLockName = "gh.lock";
@@ -101,9 +112,17 @@ public class GraphHopper {
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
     private boolean elevation = false;
+    private boolean sortGraph = false;
+    private boolean adjacencyIndex = false;
+    private boolean compressGeometry = false;
+    private int maxKVDictionaryEntries = KVStorage.DEFAULT_MAX_DICTIONARY_ENTRIES;
+    private boolean importCheckpoints = false;
+    private ImportProfiler importProfiler = ImportProfiler.NOOP;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
     private boolean fullyLoaded = false;
+    private int mmapWarmUpThreads = 2;
+    private MMapWarmUp mmapWarmUp;
     private final OSMReaderConfig osmReaderConfig = new OSMReaderConfig();
     // for routing
     private final RouterConfig routerConfig = new RouterConfig();
@@ -114,6 +133,7 @@ public class GraphHopper {
     // subnetworks
     private int minNetworkSize = 200;
     private int subnetworksThreads = 1;
+    private int subnetworksSCCThreads = 0;
     // residential areas
     private double residentialAreaRadius = 400;
     private double residentialAreaSensitivity = 6000;
@@ -124,11 +144,15 @@ public class GraphHopper {
     // preparation handlers
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
-    private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private volatile Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    // the CH graphs that were loaded or prepared, they stay open when they are replaced via customizeCH
+    private Map<String, RoutingCHGraph> preparedCHGraphs = Collections.emptyMap();
+    private final Map<String, PHASTHolder> phasts = new ConcurrentHashMap<>();
     private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
 
     // for data reader
     private String osmFile;
+    private List<String> changeFiles = Collections.emptyList();
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private ImportRegistry importRegistry = new DefaultImportRegistry();
     private PathDetailsBuilderFactory pathBuilderFactory = new PathDetailsBuilderFactory();
@@ -190,6 +214,78 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Renumbers nodes and edges after the import such that nodes and edges that are close to each other are also
+     * stored close to each other, which improves the memory locality of routing queries. Default is false.
+     */
+    public GraphHopper setSortGraph(boolean sortGraph) {
+        ensureNotLoaded();
+        this.sortGraph = sortGraph;
+        return this;
+    }
+
+    /**
+     * Builds a compact adjacency index when the graph is frozen, which speeds up the edge iteration of routing
+     * queries at the cost of 4 bytes per node and 8 bytes per edge. This also freezes the graph when neither CH nor LM
+     * are enabled. Default is false.
+     */
+    public GraphHopper setAdjacencyIndex(boolean adjacencyIndex) {
+        ensureNotLoaded();
+        this.adjacencyIndex = adjacencyIndex;
+        return this;
+    }
+
+    /**
+     * Stores the pillar nodes delta and variable-length encoded, which makes the geometry a lot smaller. This is
+     * only used for new imports, an existing graph is always loaded with the encoding it was created with.
+     * Default is false.
+     */
+    public GraphHopper setCompressGeometry(boolean compressGeometry) {
+        ensureNotLoaded();
+        this.compressGeometry = compressGeometry;
+        return this;
+    }
+
+    /**
+     * Limits the number of street names and other string values that are kept on the heap during the import to store
+     * repeated values only once. A higher value makes the graph smaller but needs more heap memory, roughly 100 bytes
+     * plus the string per entry. Use 0 to disable the de-duplication. Default is 1048576.
+     */
+    public GraphHopper setMaxKVDictionaryEntries(int maxKVDictionaryEntries) {
+        ensureNotLoaded();
+        this.maxKVDictionaryEntries = maxKVDictionaryEntries;
+        return this;
+    }
+
+    /**
+     * Stores the graph after the OSM import and after the subnetwork removal, and each CH and LM preparation as soon as
+     * it is finished. If the import is interrupted, e.g. by a crash, the next call of {@link #importOrLoad} continues
+     * after the last stored stage instead of starting again. This requires a storing DAType. Default is false.
+     */
+    public GraphHopper setImportCheckpoints(boolean importCheckpoints) {
+        ensureNotLoaded();
+        this.importCheckpoints = importCheckpoints;
+        return this;
+    }
+
+    /**
+     * Measures the wall time, CPU time and allocated memory of the import stages (the two passes of the OSM import, the
+     * turn restrictions, the elevation interpolation, the subnetwork removal, every CH and LM preparation, ...) and the
+     * time and allocated memory of every way tag parser. The results are written to import_report.json in the graph
+     * folder after the import. Default is false.
+     */
+    public GraphHopper setImportProfiling(boolean importProfiling) {
+        ensureNotLoaded();
+        importProfiler = importProfiling ? new ImportProfiler() : ImportProfiler.NOOP;
+        chPreparationHandler.setImportProfiler(importProfiler);
+        lmPreparationHandler.setImportProfiler(importProfiler);
+        return this;
+    }
+
+    public ImportProfiler getImportProfiler() {
+        return importProfiler;
+    }
+
     public GraphHopper setMinNetworkSize(int minNetworkSize) {
         ensureNotLoaded();
         this.minNetworkSize = minNetworkSize;
@@ -341,6 +437,23 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * OSM change files (.osc or .osc.gz) that are applied when an existing graph is loaded, see {@link #load()}. Files
+     * that were applied to the graph before are skipped, so the list of a replication setup can simply grow over time.
+     * Requires a graph that was imported with {@link OSMReaderConfig#setStoreChangeData(boolean)}. Only the tags of
+     * ways can be changed, files that change the geometry or topology of the graph are rejected, see
+     * {@link OSMReader#applyChanges}.
+     */
+    public GraphHopper setChangeFiles(List<String> changeFiles) {
+        ensureNotLoaded();
+        this.changeFiles = changeFiles;
+        return this;
+    }
+
+    public List<String> getChangeFiles() {
+        return changeFiles;
+    }
+
     public GraphHopper setMaxSpeedCalculator(MaxSpeedCalculator maxSpeedCalculator) {
         this.maxSpeedCalculator = maxSpeedCalculator;
         return this;
@@ -375,6 +488,88 @@ public class GraphHopper {
         return chGraphs;
     }
 
+    /**
+     * Replaces the CH graph of the given profile by one that is customized for the given weighting, e.g. a weighting
+     * created for a changed custom model via {@link #createWeighting}. The customized graph is kept in memory and
+     * requests that start after this call use it. Only node-based CH graphs can be customized.
+     * <p>
+     * The shortcut topology, which includes a nested dissection of the graph, is calculated on the first call and this
+     * call blocks until it is finished. This also applies to a graph prepared with prepare.ch.customizable once it was
+     * loaded again, so call {@link #initCustomizableCH} after loading to do this in advance.
+     * <p>
+     * Only the CH graph uses the new weighting. Requests with ch.disable=true, i.e. flexible and LM routing, as well as
+     * {@link #getProfile} still use the custom model of the profile, which is why profiles that also have an LM
+     * preparation are rejected.
+     * <p>
+     * The replaced graph is not closed here, because requests that started before this call might still use it. A
+     * previously customized graph only lives on the heap and is freed once no request references it anymore, the
+     * loaded or prepared graph stays open until {@link #close} is called.
+     */
+    public void customizeCH(String profileName, Weighting weighting) {
+        if (!chGraphs.containsKey(profileName))
+            throw new IllegalArgumentException("There is no CH graph for profile '" + profileName + "', available: " + chGraphs.keySet());
+        if (chGraphs.get(profileName).isEdgeBased())
+            throw new IllegalArgumentException("Cannot customize the CH graph of profile '" + profileName
+                    + "', only node-based CH graphs are supported");
+        if (landmarks.containsKey(profileName))
+            throw new IllegalArgumentException("Cannot customize the CH graph of profile '" + profileName
+                    + "', because its LM preparation would still use the weighting of the profile");
+        RoutingCHGraph chGraph = chPreparationHandler.getCustomizableCH(baseGraph.getBaseGraph()).createCustomizedGraph(weighting);
+        Map<String, RoutingCHGraph> updated = new LinkedHashMap<>(chGraphs);
+        updated.put(profileName, chGraph);
+        chGraphs = updated;
+    }
+
+    /**
+     * Calculates the shortcut topology that is needed for {@link #customizeCH}, so that its first call does not block
+     * for it. It is kept until this instance is closed.
+     */
+    public void initCustomizableCH() {
+        chPreparationHandler.getCustomizableCH(getBaseGraph());
+    }
+
+    /**
+     * Returns a {@link PHAST} instance for one-to-all queries on the CH graph of the given (node-based) profile. The
+     * instance is created on the first call, which builds the arrays for the sweep over all nodes, and re-created when
+     * the CH graph was replaced via {@link #customizeCH}.
+     *
+     * @param reverse true to calculate the distances from all nodes to the source instead of the other way around
+     */
+    public PHAST getPHAST(String profileName, boolean reverse) {
+        RoutingCHGraph chGraph = chGraphs.get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("There is no CH graph for profile '" + profileName + "', available: " + chGraphs.keySet());
+        if (chGraph.isEdgeBased())
+            throw new IllegalArgumentException("PHAST is only supported for node-based CH profiles, but '" + profileName + "' is edge-based");
+        String key = profileName + (reverse ? "|reverse" : "|forward");
+        // the holders are cheap, the sweep arrays are built outside the lock of the map and only once per holder
+        PHASTHolder holder = phasts.computeIfAbsent(key, k -> new PHASTHolder(chGraph, reverse));
+        if (holder.chGraph != chGraph)
+            holder = phasts.compute(key, (k, h) -> h != null && h.chGraph == chGraph ? h : new PHASTHolder(chGraph, reverse));
+        return holder.get();
+    }
+
+    private static class PHASTHolder {
+        private final RoutingCHGraph chGraph;
+        private final boolean reverse;
+        private volatile PHAST phast;
+
+        PHASTHolder(RoutingCHGraph chGraph, boolean reverse) {
+            this.chGraph = chGraph;
+            this.reverse = reverse;
+        }
+
+        PHAST get() {
+            if (phast == null) {
+                synchronized (this) {
+                    if (phast == null)
+                        phast = new PHAST(chGraph, reverse);
+                }
+            }
+            return phast;
+        }
+    }
+
     /**
      * @return a mapping between profile names and according landmark preparations. The map will be empty before loading
      * or import.
@@ -484,6 +679,7 @@ public class GraphHopper {
         customAreasDirectory = ghConfig.getString("custom_areas.directory", customAreasDirectory);
 
         defaultSegmentSize = ghConfig.getInt("graph.dataaccess.segment_size", defaultSegmentSize);
+        mmapWarmUpThreads = ghConfig.getInt("graph.dataaccess.mmap.warmup_threads", mmapWarmUpThreads);
 
         String daTypeString = ghConfig.getString("graph.dataaccess.default_type", ghConfig.getString("graph.dataaccess", "RAM_STORE"));
         dataAccessDefaultType = DAType.fromString(daTypeString);
@@ -492,12 +688,20 @@ public class GraphHopper {
                 dataAccessConfig.put(entry.getKey().substring("graph.dataaccess.type.".length()), entry.getValue().toString());
             if (entry.getKey().startsWith("graph.dataaccess.mmap.preload."))
                 dataAccessConfig.put(entry.getKey().substring("graph.dataaccess.mmap.".length()), entry.getValue().toString());
+            if (entry.getKey().startsWith("graph.dataaccess.mmap.warmup."))
+                dataAccessConfig.put(entry.getKey().substring("graph.dataaccess.mmap.".length()), entry.getValue().toString());
         }
 
         if (ghConfig.getBool("max_speed_calculator.enabled", false))
             maxSpeedCalculator = new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds());
 
         removeZipped = ghConfig.getBool("graph.remove_zipped", removeZipped);
+        sortGraph = ghConfig.getBool("graph.sort", sortGraph);
+        adjacencyIndex = ghConfig.getBool("graph.adjacency_index", adjacencyIndex);
+        compressGeometry = ghConfig.getBool("graph.compress_geometry", compressGeometry);
+        maxKVDictionaryEntries = ghConfig.getInt("graph.kv_dictionary.max_entries", maxKVDictionaryEntries);
+        importCheckpoints = ghConfig.getBool("graph.import_checkpoints", importCheckpoints);
+        setImportProfiling(ghConfig.getBool("graph.import_profiling", importProfiler.isEnabled()));
 
         if (!ghConfig.getString("spatial_rules.location", "").isEmpty())
             throw new IllegalArgumentException("spatial_rules.location has been deprecated. Please use custom_areas.directory instead and read the documentation for custom areas.");
@@ -543,6 +747,7 @@ public class GraphHopper {
         // optimizable prepare
         minNetworkSize = ghConfig.getInt("prepare.min_network_size", minNetworkSize);
         subnetworksThreads = ghConfig.getInt("prepare.subnetworks.threads", subnetworksThreads);
+        subnetworksSCCThreads = ghConfig.getInt("prepare.subnetworks.scc_threads", subnetworksSCCThreads);
 
         // prepare CH&LM
         chPreparationHandler.init(ghConfig);
@@ -565,6 +770,11 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setWayProcessingThreads(ghConfig.getInt("datareader.way_processing_threads", osmReaderConfig.getWayProcessingThreads()));
+        osmReaderConfig.setNodeIdMap(ghConfig.getString("datareader.node_id_map", osmReaderConfig.getNodeIdMap()));
+        osmReaderConfig.setStoreChangeData(ghConfig.getBool("datareader.store_change_data", osmReaderConfig.isStoreChangeData()));
+        changeFiles = Arrays.stream(ghConfig.getString("datareader.change_files", "").split(","))
+                .map(String::trim).filter(f -> !f.isEmpty()).collect(Collectors.toList());
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
@@ -583,6 +793,9 @@ public class GraphHopper {
         routerConfig.setMaxRoundTripRetries(ghConfig.getInt(RoundTrip.INIT_MAX_RETRIES, routerConfig.getMaxRoundTripRetries()));
         routerConfig.setNonChMaxWaypointDistance(ghConfig.getInt(Parameters.NON_CH.MAX_NON_CH_POINT_DISTANCE, routerConfig.getNonChMaxWaypointDistance()));
         routerConfig.setInstructionsEnabled(ghConfig.getBool(Routing.INIT_INSTRUCTIONS, routerConfig.isInstructionsEnabled()));
+        routerConfig.setMatrixMaxPoints(ghConfig.getInt(Routing.INIT_MATRIX_MAX_POINTS, routerConfig.getMatrixMaxPoints()));
+        routerConfig.setNearestMaxPoints(ghConfig.getInt(Routing.INIT_NEAREST_MAX_POINTS, routerConfig.getNearestMaxPoints()));
+        routerConfig.setNearestThreads(ghConfig.getInt(Routing.INIT_NEAREST_THREADS, routerConfig.getNearestThreads()));
         int activeLandmarkCount = ghConfig.getInt(Landmark.ACTIVE_COUNT_DEFAULT, Math.min(8, lmPreparationHandler.getLandmarks()));
         if (activeLandmarkCount > lmPreparationHandler.getLandmarks())
             throw new IllegalArgumentException("Default value for active landmarks " + activeLandmarkCount
@@ -721,7 +934,11 @@ public class GraphHopper {
             provider
                     .setAutoRemoveTemporaryFiles(removeTempElevationFiles)
                     .setInterpolate(interpolate)
-                    .setDAType(elevationDAType);
+                    .setDAType(elevationDAType)
+                    .setPrefetchThreads(ghConfig.getInt("graph.elevation.prefetch_threads", 0));
+            long tileCacheMB = ghConfig.getLong("graph.elevation.tile_cache_mb", -1);
+            if (tileCacheMB > 0)
+                provider.setMaxCacheSize(tileCacheMB * 1024 * 1024);
             if (!baseURL.isEmpty())
                 provider.setBaseURL(baseURL);
         }
@@ -794,10 +1011,15 @@ public class GraphHopper {
                 .setDir(directory)
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
+                .withAdjacencyIndex(adjacencyIndex)
+                .withCompressedGeometry(compressGeometry)
+                .setMaxKVDictionaryEntries(maxKVDictionaryEntries)
                 .setSegmentSize(defaultSegmentSize)
                 .build();
         properties = new StorableProperties(directory);
         checkProfilesConsistency();
+        if (sortGraph && osmReaderConfig.isStoreChangeData())
+            throw new IllegalArgumentException("graph.sort cannot be used together with datareader.store_change_data, because the change data refers to the edges of the unsorted graph");
 
         GHLock lock = null;
         try {
@@ -811,13 +1033,22 @@ public class GraphHopper {
 
             importOSM();
             postImportOSM();
-            cleanUp();
-
+            // these are needed by load(), so they have to be stored with the first checkpoint already
             properties.put("profiles", getProfilesString());
             writeEncodingManagerToProperties();
+            if (!sortGraph || !dataAccessDefaultType.isMMap())
+                // the sorting changes memory mapped files in place, so we could not continue after an interrupted sorting
+                checkpoint(STAGE_BASE_GRAPH);
+
+            cleanUp();
+            if (sortGraph)
+                sortGraph();
+            checkpoint(STAGE_SUBNETWORKS);
 
             postProcessing(closeEarly);
+            properties.remove(IMPORT_STAGE);
             flush();
+            writeImportReport();
         } finally {
             if (lock != null)
                 lock.release();
@@ -825,6 +1056,14 @@ public class GraphHopper {
     }
 
     protected void prepareImport() {
+        Map<String, PMap> encodedValuesWithProps = getEncodedValuesWithProps();
+        Map<String, ImportUnit> activeImportUnits = getActiveImportUnits(encodedValuesWithProps);
+        Map<String, List<String>> restrictionVehicleTypesByProfile = getRestrictionVehicleTypesByProfile(profilesByName.values());
+        encodingManager = buildEncodingManager(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile);
+        osmParsers = buildOSMParsers(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile, osmReaderConfig.getIgnoredHighways(), dateRangeParserString);
+    }
+
+    private Map<String, PMap> getEncodedValuesWithProps() {
         Map<String, PMap> encodedValuesWithProps = parseEncodedValueString(encodedValuesString);
         NameValidator nameValidator = s -> importRegistry.createImportUnit(s) != null;
         profilesByName.values().
@@ -838,14 +1077,18 @@ public class GraphHopper {
         encodedValuesWithProps.putIfAbsent(Roundabout.KEY, new PMap());
         encodedValuesWithProps.putIfAbsent(RoadClassLink.KEY, new PMap());
         encodedValuesWithProps.putIfAbsent(MaxSpeed.KEY, new PMap());
-
-        Map<String, List<String>> restrictionVehicleTypesByProfile = getRestrictionVehicleTypesByProfile(profilesByName.values());
+        // the change data is stored per edge, the OSM way ID is needed to find the edges of a changed way
+        if (osmReaderConfig.isStoreChangeData())
+            encodedValuesWithProps.putIfAbsent(OSMWayID.KEY, new PMap());
 
         if (urbanDensityCalculationThreads > 0)
             encodedValuesWithProps.put(UrbanDensity.KEY, new PMap());
         if (maxSpeedCalculator != null)
             encodedValuesWithProps.put(MaxSpeedEstimated.KEY, new PMap());
+        return encodedValuesWithProps;
+    }
 
+    private Map<String, ImportUnit> getActiveImportUnits(Map<String, PMap> encodedValuesWithProps) {
         Map<String, ImportUnit> activeImportUnits = new LinkedHashMap<>();
         ArrayDeque<String> deque = new ArrayDeque<>(encodedValuesWithProps.keySet());
         while (!deque.isEmpty()) {
@@ -856,8 +1099,7 @@ public class GraphHopper {
             if (activeImportUnits.put(ev, importUnit) == null)
                 deque.addAll(importUnit.getRequiredImportUnits());
         }
-        encodingManager = buildEncodingManager(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile);
-        osmParsers = buildOSMParsers(encodedValuesWithProps, activeImportUnits, restrictionVehicleTypesByProfile, osmReaderConfig.getIgnoredHighways(), dateRangeParserString);
+        return activeImportUnits;
     }
 
     protected void postImportOSM() {
@@ -869,12 +1111,17 @@ public class GraphHopper {
         calculateUrbanDensity();
 
         if (maxSpeedCalculator != null) {
+            ImportProfiler.Stage stage = importProfiler.start("max_speed");
             maxSpeedCalculator.fillMaxSpeed(getBaseGraph(), encodingManager);
             maxSpeedCalculator.close();
+            stage.stop();
         }
 
-        if (hasElevation())
+        if (hasElevation()) {
+            ImportProfiler.Stage stage = importProfiler.start("elevation_interpolation");
             interpolateBridgesTunnelsAndFerries();
+            stage.stop();
+        }
     }
 
     protected void importOSM() {
@@ -882,15 +1129,7 @@ public class GraphHopper {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
-        List<CustomArea> customAreas = readCountries();
-        if (isEmpty(customAreasDirectory)) {
-            logger.info("No custom areas are used, custom_areas.directory not given");
-        } else {
-            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
-            customAreas.addAll(readCustomAreas());
-        }
-
-        AreaIndex<CustomArea> areaIndex = new AreaIndex<>(customAreas);
+        AreaIndex<CustomArea> areaIndex = createAreaIndex();
         if (countryRuleFactory == null || countryRuleFactory.getCountryToRuleMap().isEmpty()) {
             logger.info("No country rules available");
         } else {
@@ -898,25 +1137,47 @@ public class GraphHopper {
         }
 
         logger.info("start creating graph from " + osmFile);
+        osmParsers.setImportProfiler(importProfiler);
         OSMReader reader = new OSMReader(baseGraph.getBaseGraph(), osmParsers, osmReaderConfig).setFile(_getOSMFile()).
                 setAreaIndex(areaIndex).
                 setElevationProvider(eleProvider).
-                setCountryRuleFactory(countryRuleFactory);
+                setCountryRuleFactory(countryRuleFactory).
+                setImportProfiler(importProfiler);
         logger.info("using " + getBaseGraphString() + ", memory:" + getMemInfo());
 
         createBaseGraphAndProperties();
+        OSMChangeData changeData = null;
+        if (osmReaderConfig.isStoreChangeData()) {
+            changeData = new OSMChangeData(baseGraph.getDirectory()).create(1000);
+            reader.setChangeData(changeData);
+        }
 
         try {
             reader.readGraph();
         } catch (IOException ex) {
             throw new RuntimeException("Cannot read file " + getOSMFile(), ex);
         }
+        if (changeData != null) {
+            changeData.flush();
+            changeData.close();
+        }
         DateFormat f = createFormatter();
         properties.put("datareader.import.date", f.format(new Date()));
         if (reader.getDataDate() != null)
             properties.put("datareader.data.date", f.format(reader.getDataDate()));
     }
 
+    private AreaIndex<CustomArea> createAreaIndex() {
+        List<CustomArea> customAreas = readCountries();
+        if (isEmpty(customAreasDirectory)) {
+            logger.info("No custom areas are used, custom_areas.directory not given");
+        } else {
+            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
+            customAreas.addAll(readCustomAreas());
+        }
+        return new AreaIndex<>(customAreas);
+    }
+
     protected void createBaseGraphAndProperties() {
         baseGraph.getDirectory().create();
         baseGraph.create(100);
@@ -934,8 +1195,10 @@ public class GraphHopper {
                 throw new IllegalArgumentException("Urban density calculation requires " + RoadClassLink.KEY);
             EnumEncodedValue<RoadClass> roadClassEnc = encodingManager.getEnumEncodedValue(RoadClass.KEY, RoadClass.class);
             BooleanEncodedValue roadClassLinkEnc = encodingManager.getBooleanEncodedValue(RoadClassLink.KEY);
+            ImportProfiler.Stage stage = importProfiler.start("urban_density");
             UrbanDensityCalculator.calcUrbanDensity(baseGraph, urbanDensityEnc, roadClassEnc,
                     roadClassLinkEnc, residentialAreaRadius, residentialAreaSensitivity, cityAreaRadius, cityAreaSensitivity, urbanDensityCalculationThreads);
+            stage.stop();
         }
     }
 
@@ -1011,7 +1274,9 @@ public class GraphHopper {
             // (e.g. on a read only filesystem locks would fail)
             if (directory.getDefaultType().isStoring() && isAllowWrites()) {
                 lockFactory.setLockDir(new File(ghLocation));
-                lock = lockFactory.create(fileLockName, false);
+                // applying change files or continuing an interrupted import modifies the graph, so we need a write
+                // lock in these cases
+                lock = lockFactory.create(fileLockName, hasPendingChangeFiles() || isImportIncomplete());
                 if (!lock.tryLock())
                     throw new RuntimeException("To avoid reading partial data we need to obtain the read lock but it failed. In " + ghLocation, lock.getObtainFailedReason());
             }
@@ -1025,6 +1290,7 @@ public class GraphHopper {
                     .setDir(directory)
                     .set3D(hasElevation())
                     .withTurnCosts(encodingManager.needsTurnCostsSupport())
+                    .withAdjacencyIndex(adjacencyIndex)
                     .setSegmentSize(defaultSegmentSize)
                     .build();
             baseGraph.loadExisting();
@@ -1037,8 +1303,17 @@ public class GraphHopper {
                         + "\nChange configuration to match the graph or delete " + baseGraph.getDirectory().getLocation());
             checkProfilesConsistency();
 
+            boolean resumed = resumeImport();
+            boolean changesApplied = !changeFiles.isEmpty() && applyChangeFiles();
             postProcessing(false);
+            if (resumed)
+                properties.remove(IMPORT_STAGE);
+            if (resumed || changesApplied)
+                flush();
+            if (resumed)
+                writeImportReport();
             directory.loadMMap();
+            mmapWarmUp = directory.startMMapWarmUp(mmapWarmUpThreads);
             setFullyLoaded();
             return true;
         } finally {
@@ -1047,6 +1322,183 @@ public class GraphHopper {
         }
     }
 
+    /**
+     * Continues an import that was interrupted after one of its checkpoints, see {@link #setImportCheckpoints}. The
+     * CH and LM preparations that are still missing are created by postProcessing afterwards.
+     *
+     * @return true if the loaded graph was stored by an incomplete import
+     */
+    private boolean resumeImport() {
+        String stage = properties.get(IMPORT_STAGE);
+        if (stage.isEmpty())
+            return false;
+        ensureWriteAccess();
+        logger.info("continuing the import in " + ghLocation + " after stage '" + stage + "'");
+        if (stage.equals(STAGE_BASE_GRAPH)) {
+            cleanUp();
+            if (sortGraph)
+                sortGraph();
+            checkpoint(STAGE_SUBNETWORKS);
+        } else if (!stage.equals(STAGE_SUBNETWORKS))
+            throw new IllegalStateException("Unknown import stage '" + stage + "' in " + ghLocation);
+        return true;
+    }
+
+    /**
+     * Like {@link #isImportIncomplete} this reads the applied change files before the graph is locked, because applying
+     * the others requires the write lock.
+     */
+    private boolean hasPendingChangeFiles() {
+        if (changeFiles.isEmpty())
+            return false;
+        StorableProperties tmpProperties = new StorableProperties(new GHDirectory(ghLocation, DAType.RAM_STORE));
+        try {
+            return tmpProperties.loadExisting() && !getPendingChangeFiles(tmpProperties).isEmpty();
+        } finally {
+            tmpProperties.close();
+        }
+    }
+
+    private List<String> getPendingChangeFiles(StorableProperties properties) {
+        Set<String> appliedFiles = new HashSet<>(Arrays.asList(properties.get(APPLIED_CHANGE_FILES).split(",")));
+        return changeFiles.stream().filter(f -> !appliedFiles.contains(f)).collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the import stage before the graph is locked, because continuing the import requires the write lock. A
+     * separate directory is used, so the properties can be loaded again once the lock is obtained.
+     */
+    private boolean isImportIncomplete() {
+        StorableProperties tmpProperties = new StorableProperties(new GHDirectory(ghLocation, DAType.RAM_STORE));
+        try {
+            return tmpProperties.loadExisting() && !tmpProperties.get(IMPORT_STAGE).isEmpty();
+        } finally {
+            tmpProperties.close();
+        }
+    }
+
+    private void writeImportReport() {
+        if (!importProfiler.isEnabled())
+            return;
+        if (baseGraph.getDirectory().getDefaultType().isStoring()) {
+            File file = new File(ghLocation, "import_report.json");
+            importProfiler.write(file);
+            logger.info("wrote import report to " + file);
+        } else {
+            logger.info("import report: " + importProfiler.getReport());
+        }
+    }
+
+    /**
+     * Stores the graph together with the given import stage, so an interrupted import can be continued from here.
+     */
+    private void checkpoint(String stage) {
+        if (!importCheckpoints || !baseGraph.getDirectory().getDefaultType().isStoring())
+            return;
+        StopWatch sw = StopWatch.started();
+        properties.put(IMPORT_STAGE, stage);
+        baseGraph.flush();
+        properties.flush();
+        logger.info("stored import checkpoint '" + stage + "', took: " + sw.stop().getTimeString() + ", " + getMemInfo());
+    }
+
+    /**
+     * Applies the change files that were not applied to the loaded graph yet, see {@link #setChangeFiles}. The CH and
+     * LM preparations of the profiles whose weights changed are removed, they are prepared again by postProcessing.
+     *
+     * @return true if at least one change file was applied
+     */
+    private boolean applyChangeFiles() {
+        List<String> newFiles = getPendingChangeFiles(properties);
+        if (newFiles.isEmpty()) {
+            logger.info("All {} change files were already applied to the graph", changeFiles.size());
+            return false;
+        }
+        ensureWriteAccess();
+        if (!encodingManager.hasEncodedValue(OSMWayID.KEY))
+            throw new IllegalStateException("Cannot apply change files, the graph in " + ghLocation + " has no " + OSMWayID.KEY + " encoded value");
+        OSMChangeData changeData = new OSMChangeData(baseGraph.getDirectory());
+        if (!changeData.loadExisting())
+            throw new IllegalStateException("Cannot apply change files, the graph in " + ghLocation + " was imported without datareader.store_change_data");
+
+        StopWatch sw = StopWatch.started();
+        // the tag parsers are created for the encoded values of the loaded graph
+        Map<String, PMap> encodedValuesWithProps = getEncodedValuesWithProps();
+        encodedValuesWithProps.putIfAbsent(OSMWayID.KEY, new PMap());
+        osmParsers = buildOSMParsers(encodedValuesWithProps, getActiveImportUnits(encodedValuesWithProps),
+                getRestrictionVehicleTypesByProfile(profilesByName.values()), osmReaderConfig.getIgnoredHighways(), dateRangeParserString);
+        if (maxSpeedCalculator != null)
+            maxSpeedCalculator.createDataAccessForParser(baseGraph.getDirectory());
+        OSMReader reader = new OSMReader(baseGraph, osmParsers, osmReaderConfig).
+                setAreaIndex(createAreaIndex()).
+                setCountryRuleFactory(countryRuleFactory).
+                setChangeData(changeData);
+        IntObjectMap<IntsRef> oldFlags;
+        try {
+            oldFlags = reader.applyChanges(newFiles.stream().map(File::new).collect(Collectors.toList()),
+                    encodingManager.getIntEncodedValue(OSMWayID.KEY));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            changeData.close();
+        }
+
+        // the urban density is not calculated again, because it does not depend on the edge itself but on its
+        // surrounding. the max speed estimation depends on it, so it must be restored first
+        if (encodingManager.hasEncodedValue(UrbanDensity.KEY)) {
+            EnumEncodedValue<UrbanDensity> urbanDensityEnc = encodingManager.getEnumEncodedValue(UrbanDensity.KEY, UrbanDensity.class);
+            for (IntObjectCursor<IntsRef> c : oldFlags)
+                baseGraph.getEdgeIteratorState(c.key, Integer.MIN_VALUE).set(urbanDensityEnc,
+                        urbanDensityEnc.getEnum(false, c.key, new IntsRefEdgeIntAccess(c.value)));
+        }
+        if (maxSpeedCalculator != null) {
+            maxSpeedCalculator.fillMaxSpeed(baseGraph, encodingManager, oldFlags.keys());
+            maxSpeedCalculator.close();
+        }
+
+        Set<String> changedProfiles = findProfilesWithChangedWeights(oldFlags);
+        cleanUp();
+        removePreparations(changedProfiles);
+        String appliedFiles = properties.get(APPLIED_CHANGE_FILES);
+        properties.put(APPLIED_CHANGE_FILES, (appliedFiles.isEmpty() ? "" : appliedFiles + ",") + String.join(",", newFiles));
+        properties.put("datareader.update.date", createFormatter().format(new Date()));
+        logger.info("Applied {} change files, changed edges: {}, profiles with changed weights: {}, took: {}s",
+                newFiles.size(), nf(oldFlags.size()), changedProfiles, sw.stop().getSeconds());
+        return true;
+    }
+
+    private Set<String> findProfilesWithChangedWeights(IntObjectMap<IntsRef> oldFlags) {
+        Set<String> result = new LinkedHashSet<>();
+        for (Profile profile : profilesByName.values()) {
+            Weighting weighting = createWeighting(profile, new PMap());
+            for (IntObjectCursor<IntsRef> c : oldFlags) {
+                EdgeIteratorState edge = baseGraph.getEdgeIteratorState(c.key, Integer.MIN_VALUE);
+                IntsRef newFlags = edge.getFlags();
+                double fwdWeight = weighting.calcEdgeWeight(edge, false);
+                double bwdWeight = weighting.calcEdgeWeight(edge, true);
+                edge.setFlags(c.value);
+                boolean changed = fwdWeight != weighting.calcEdgeWeight(edge, false) || bwdWeight != weighting.calcEdgeWeight(edge, true);
+                edge.setFlags(newFlags);
+                if (changed) {
+                    result.add(profile.getName());
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void removePreparations(Set<String> profiles) {
+        if (chPreparationHandler.isEnabled())
+            for (CHConfig chConfig : createCHConfigs(chPreparationHandler.getCHProfiles()))
+                if (profiles.contains(chConfig.getName()))
+                    chPreparationHandler.remove(baseGraph, chConfig);
+        if (lmPreparationHandler.isEnabled())
+            for (LMConfig lmConfig : createLMConfigs(lmPreparationHandler.getLMProfiles()))
+                if (profiles.contains(lmConfig.getName()))
+                    lmPreparationHandler.remove(lmConfig, baseGraph, encodingManager);
+    }
+
     private String getProfilesString() {
         return profilesByName.values().stream().map(p -> p.getName() + "|" + p.getVersion()).collect(Collectors.joining(","));
     }
@@ -1150,6 +1602,9 @@ public class GraphHopper {
         calcChecksums();
         initLocationIndex();
         importPublicTransit();
+        if (adjacencyIndex)
+            // the adjacency index is built when freezing, which is otherwise only done by the LM or CH preparation
+            freezeBaseGraph();
 
         if (closeEarly) {
             boolean includesCustomProfiles = profilesByName.values().stream().anyMatch(p -> CustomWeighting.NAME.equals(p.getWeighting()));
@@ -1276,7 +1731,9 @@ public class GraphHopper {
         if (locationIndex != null)
             throw new IllegalStateException("Cannot initialize locationIndex twice!");
 
+        ImportProfiler.Stage stage = importProfiler.start("location_index");
         locationIndex = createLocationIndex(baseGraph.getDirectory());
+        stage.stop();
     }
 
     private String getCHProfileVersion(String profile) {
@@ -1303,6 +1760,10 @@ public class GraphHopper {
 
         // we load ch graphs that already exist and prepare the other ones
         List<CHConfig> chConfigs = createCHConfigs(chPreparationHandler.getCHProfiles());
+        if (isImportInProgress())
+            // preparations of an interrupted import that did not reach their checkpoint might be incomplete
+            chConfigs.stream().filter(c -> getCHProfileVersion(c.getName()).isEmpty())
+                    .forEach(c -> chPreparationHandler.remove(baseGraph.getBaseGraph(), c));
         Map<String, RoutingCHGraph> loaded = chPreparationHandler.load(baseGraph.getBaseGraph(), chConfigs);
         List<CHConfig> configsToPrepare = chConfigs.stream().filter(c -> !loaded.containsKey(c.getName())).collect(Collectors.toList());
         Map<String, PrepareContractionHierarchies.Result> prepared = prepareCH(closeEarly, configsToPrepare);
@@ -1321,14 +1782,15 @@ public class GraphHopper {
             } else
                 throw new IllegalStateException("CH graph should be either loaded or prepared: " + profile.getProfile());
         }
+        preparedCHGraphs = chGraphs;
     }
 
     protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
         if (!configsToPrepare.isEmpty())
             ensureWriteAccess();
-        if (!baseGraph.isFrozen())
-            baseGraph.freeze();
-        return chPreparationHandler.prepare(baseGraph, properties, configsToPrepare, closeEarly);
+        freezeBaseGraph();
+        return chPreparationHandler.prepare(baseGraph, properties, configsToPrepare, closeEarly,
+                name -> checkpointPreparation(name, () -> setCHProfileVersion(name, profilesByName.get(name).getVersion())));
     }
 
     /**
@@ -1342,6 +1804,10 @@ public class GraphHopper {
 
         // we load landmark storages that already exist and prepare the other ones
         List<LMConfig> lmConfigs = createLMConfigs(lmPreparationHandler.getLMProfiles());
+        if (isImportInProgress())
+            // preparations of an interrupted import that did not reach their checkpoint might be incomplete
+            lmConfigs.stream().filter(c -> getLMProfileVersion(c.getName()).isEmpty())
+                    .forEach(c -> lmPreparationHandler.remove(c, baseGraph, encodingManager));
         List<LandmarkStorage> loaded = lmPreparationHandler.load(lmConfigs, baseGraph, encodingManager);
         List<LMConfig> loadedConfigs = loaded.stream().map(LandmarkStorage::getLMConfig).collect(Collectors.toList());
         List<LMConfig> configsToPrepare = lmConfigs.stream().filter(c -> !loadedConfigs.contains(c)).collect(Collectors.toList());
@@ -1367,9 +1833,34 @@ public class GraphHopper {
     protected List<PrepareLandmarks> prepareLM(boolean closeEarly, List<LMConfig> configsToPrepare) {
         if (!configsToPrepare.isEmpty())
             ensureWriteAccess();
-        if (!baseGraph.isFrozen())
-            baseGraph.freeze();
-        return lmPreparationHandler.prepare(configsToPrepare, baseGraph, encodingManager, properties, locationIndex, closeEarly);
+        freezeBaseGraph();
+        return lmPreparationHandler.prepare(configsToPrepare, baseGraph, encodingManager, properties, locationIndex, closeEarly,
+                name -> checkpointPreparation(name, () -> setLMProfileVersion(name, profilesByName.get(name).getVersion())));
+    }
+
+    private boolean isImportInProgress() {
+        return !properties.get(IMPORT_STAGE).isEmpty();
+    }
+
+    private void freezeBaseGraph() {
+        if (baseGraph.isFrozen())
+            return;
+        baseGraph.freeze();
+        if (isImportInProgress())
+            // the preparations that are stored by the next checkpoints can only be loaded for the frozen graph
+            baseGraph.flush();
+    }
+
+    /**
+     * Stores the properties with the version of a finished CH or LM preparation during an import with checkpoints, so
+     * the preparation is loaded instead of prepared again if the import is interrupted later.
+     */
+    private void checkpointPreparation(String name, Runnable setProfileVersion) {
+        if (!isImportInProgress())
+            return;
+        setProfileVersion.run();
+        properties.flush();
+        logger.info("stored import checkpoint for the preparation of '" + name + "'");
     }
 
     /**
@@ -1379,16 +1870,31 @@ public class GraphHopper {
         PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(baseGraph.getBaseGraph(), buildSubnetworkRemovalJobs());
         preparation.setMinNetworkSize(minNetworkSize);
         preparation.setThreads(subnetworksThreads);
+        ImportProfiler.Stage stage = importProfiler.start("subnetworks");
         preparation.doWork();
+        stage.stop();
         logger.info("nodes: " + Helper.nf(baseGraph.getNodes()) + ", edges: " + Helper.nf(baseGraph.getEdges()));
     }
 
+    /**
+     * Renumbers the nodes along a Hilbert curve and sorts the edges accordingly. This must happen before the location
+     * index, LM and CH are created.
+     */
+    protected void sortGraph() {
+        StopWatch sw = StopWatch.started();
+        ImportProfiler.Stage stage = importProfiler.start("sort");
+        GHUtility.sortGraphAlongHilbertCurve(baseGraph.getBaseGraph());
+        stage.stop();
+        logger.info("sorted graph along hilbert curve, took: " + sw.stop().getTimeString() + ", " + getMemInfo());
+    }
+
     private List<PrepareJob> buildSubnetworkRemovalJobs() {
         List<PrepareJob> jobs = new ArrayList<>();
         for (Profile profile : profilesByName.values()) {
             // if turn costs are enabled use u-turn costs of zero as we only want to make sure the graph is fully connected assuming finite u-turn costs
             Weighting weighting = createWeighting(profile, new PMap().putObject(Parameters.Routing.U_TURN_COSTS, 0));
-            jobs.add(new PrepareJob(encodingManager.getBooleanEncodedValue(Subnetwork.key(profile.getName())), weighting));
+            jobs.add(new PrepareJob(encodingManager.getBooleanEncodedValue(Subnetwork.key(profile.getName())), weighting)
+                    .setSCCThreads(subnetworksSCCThreads));
         }
         return jobs;
     }
@@ -1407,12 +1913,19 @@ public class GraphHopper {
      * remove the files created in graphhopperLocation you have to call clean().
      */
     public void close() {
+        if (mmapWarmUp != null)
+            // the warm-up must not access the memory mapped files after they were closed
+            mmapWarmUp.stop();
         if (baseGraph != null)
             baseGraph.close();
         if (properties != null)
             properties.close();
 
         chGraphs.values().forEach(RoutingCHGraph::close);
+        preparedCHGraphs.forEach((profileName, chGraph) -> {
+            if (chGraphs.get(profileName) != chGraph)
+                chGraph.close();
+        });
         landmarks.values().forEach(LandmarkStorage::close);
 
         if (locationIndex != null)
@@ -1455,6 +1968,14 @@ public class GraphHopper {
         return fullyLoaded;
     }
 
+    /**
+     * @return the background warm-up of the memory mapped files that is started at the end of {@link #load()}, or
+     * null if the graph was not loaded from disk
+     */
+    public MMapWarmUp getMMapWarmUp() {
+        return mmapWarmUp;
+    }
+
     public RouterConfig getRouterConfig() {
         return routerConfig;
     }
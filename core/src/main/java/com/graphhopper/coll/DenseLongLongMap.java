@@ -0,0 +1,373 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * A LongLongMap for keys that are mostly dense and non-negative, like OSM node ids. All entries are stored in
+ * {@link DataAccess} objects so depending on the {@link DAType} the map lives off-heap or is memory-mapped and uses
+ * almost no Java heap.
+ * <p>
+ * The key space is split into pages of {@link #PAGE_SIZE} consecutive keys. The pointers to the pages are stored in
+ * small tables that are only allocated for key ranges that are actually used, which is important for extracts where
+ * the keys are spread over the whole id range. A page starts as a sparse block that
+ * stores its keys in sorted order next to the values. Once the sparse block would use more memory than an array with
+ * one slot per key the page is converted into such a dense block. Therefore a planet file (where most ids of a page
+ * are used) needs only bytesPerValue bytes per entry while country extracts still get a compact representation.
+ * Blocks that are freed while growing are re-used. Negative keys and very large keys are stored in a
+ * {@link GHLongLongBTree}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class DenseLongLongMap implements LongLongMap {
+    static final int PAGE_BITS = 10;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // every table holds the pointers of 2^TABLE_BITS consecutive pages
+    private static final int TABLE_BITS = 6;
+    private static final int TABLE_BYTES = (1 << TABLE_BITS) * 8;
+    // larger keys go into the fallback map. OSM node ids are currently below 2^34
+    static final long MAX_DENSE_KEY = 1L << 40;
+    private static final int MIN_SPARSE_CAPACITY = 2;
+    private static final int DENSE = -1;
+    private static final int HEADER = 8;
+
+    private final Directory dir;
+    private final String name;
+    private final DAType type;
+    private final int bytesPerValue;
+    private final int highBytes;
+    private final long emptyValue;
+    private final long maxValue;
+    private final int denseBlockSize;
+    private final GHLongLongBTree fallback;
+    // the table index + 1 for every range of 2^(PAGE_BITS + TABLE_BITS) keys, 0 means there is no table yet
+    private int[] tableIndices = new int[0];
+    private int tableCount;
+    // the tables with the block pointer for every page, 0 means the page has no entries
+    private DataAccess pages;
+    private DataAccess blocks;
+    private long nextBlockPointer;
+    // the heads of the linked lists of freed sparse blocks, indexed by the capacity exponent
+    private final long[] freeBlocks = new long[PAGE_BITS];
+    private long size;
+
+    /**
+     * @param name          the DataAccess objects are created with this name as prefix
+     * @param type          the type of the DataAccess objects, e.g. DAType.OFF_HEAP or DAType.MMAP. MMAP is replaced
+     *                      with OFF_HEAP if the directory is not storing, as it has no folder for the files then.
+     * @param bytesPerValue the number of bytes used to store a value, between 4 and 8
+     * @param emptyValue    the value returned for keys that have no entry
+     */
+    public DenseLongLongMap(Directory dir, String name, DAType type, int bytesPerValue, long emptyValue) {
+        if (bytesPerValue < 4 || bytesPerValue > 8)
+            throw new IllegalArgumentException("Values can have 4 to 8 bytes but requested was " + bytesPerValue);
+        this.dir = dir;
+        this.name = name;
+        this.type = type.isMMap() && !dir.getDefaultType().isStoring() ? DAType.OFF_HEAP : type;
+        this.bytesPerValue = bytesPerValue;
+        this.highBytes = bytesPerValue - 4;
+        this.emptyValue = emptyValue;
+        // reserve one bit for negative values
+        this.maxValue = (1L << (bytesPerValue * 8 - 1)) - 1;
+        this.denseBlockSize = align(HEADER + PAGE_SIZE * bytesPerValue);
+        this.fallback = new GHLongLongBTree(200, bytesPerValue, emptyValue);
+    }
+
+    @Override
+    public long put(long key, long value) {
+        if (value > maxValue || value < -maxValue - 1)
+            throw new IllegalArgumentException("Value " + value + " does not fit into " + bytesPerValue + " bytes");
+        if (value == emptyValue)
+            throw new IllegalArgumentException("Value cannot be the 'empty value' " + emptyValue);
+        if (key < 0 || key >= MAX_DENSE_KEY)
+            return fallback.put(key, value);
+        if (pages == null) {
+            if (type.isMMap())
+                // like GHDirectory.create we create the folder only for a storing directory, see the constructor
+                new File(dir.getLocation()).mkdirs();
+            pages = dir.create(name + "_pages", type).create(1000);
+            blocks = dir.create(name + "_blocks", type).create(1000);
+            // 0 is reserved for pages without a block
+            nextBlockPointer = HEADER;
+        }
+
+        long pagePointer = getOrCreatePagePointer(key);
+        long block = getBlockPointer(pagePointer);
+        if (block == 0) {
+            block = allocateSparse(MIN_SPARSE_CAPACITY);
+            setBlockPointer(pagePointer, block);
+        }
+        int offset = (int) (key & (PAGE_SIZE - 1));
+        int count = blocks.getInt(block);
+        if (count == DENSE) {
+            long old = getValue(block, PAGE_SIZE, false, offset);
+            setValue(block, PAGE_SIZE, false, offset, value);
+            if (old == emptyValue)
+                size++;
+            return old;
+        }
+
+        int capacity = blocks.getInt(block + 4);
+        int index = binarySearch(block, capacity, count, offset);
+        if (index >= 0) {
+            long old = getValue(block, capacity, true, index);
+            setValue(block, capacity, true, index, value);
+            return old;
+        }
+        index = ~index;
+        size++;
+        if (count == capacity) {
+            long newBlock;
+            int newCapacity = capacity * 2;
+            if (align(HEADER + newCapacity * (bytesPerValue + 2)) < denseBlockSize) {
+                newBlock = allocateSparse(newCapacity);
+                for (int i = 0; i < count; i++) {
+                    // leave a gap for the new entry
+                    int to = i < index ? i : i + 1;
+                    setKey(newBlock, newCapacity, to, getKey(block, capacity, i));
+                    setValue(newBlock, newCapacity, true, to, getValue(block, capacity, true, i));
+                }
+                setKey(newBlock, newCapacity, index, offset);
+                setValue(newBlock, newCapacity, true, index, value);
+                blocks.setInt(newBlock, count + 1);
+            } else {
+                newBlock = allocateDense();
+                for (int i = 0; i < count; i++) {
+                    setValue(newBlock, PAGE_SIZE, false, getKey(block, capacity, i), getValue(block, capacity, true, i));
+                }
+                setValue(newBlock, PAGE_SIZE, false, offset, value);
+            }
+            freeSparse(block, capacity);
+            setBlockPointer(pagePointer, newBlock);
+            return emptyValue;
+        }
+
+        for (int i = count; i > index; i--) {
+            setKey(block, capacity, i, getKey(block, capacity, i - 1));
+            setValue(block, capacity, true, i, getValue(block, capacity, true, i - 1));
+        }
+        setKey(block, capacity, index, offset);
+        setValue(block, capacity, true, index, value);
+        blocks.setInt(block, count + 1);
+        return emptyValue;
+    }
+
+    @Override
+    public long get(long key) {
+        if (key < 0 || key >= MAX_DENSE_KEY)
+            return fallback.get(key);
+        if (pages == null)
+            return emptyValue;
+
+        int rangeIndex = (int) (key >>> (PAGE_BITS + TABLE_BITS));
+        if (rangeIndex >= tableIndices.length || tableIndices[rangeIndex] == 0)
+            return emptyValue;
+        long pagePointer = getPagePointer(tableIndices[rangeIndex], key);
+        long block = getBlockPointer(pagePointer);
+        if (block == 0)
+            return emptyValue;
+        int offset = (int) (key & (PAGE_SIZE - 1));
+        int count = blocks.getInt(block);
+        if (count == DENSE)
+            return getValue(block, PAGE_SIZE, false, offset);
+
+        int capacity = blocks.getInt(block + 4);
+        int index = binarySearch(block, capacity, count, offset);
+        return index < 0 ? emptyValue : getValue(block, capacity, true, index);
+    }
+
+    private long getOrCreatePagePointer(long key) {
+        int rangeIndex = (int) (key >>> (PAGE_BITS + TABLE_BITS));
+        if (rangeIndex >= tableIndices.length)
+            tableIndices = Arrays.copyOf(tableIndices, Math.max(rangeIndex + 1, tableIndices.length + tableIndices.length / 2));
+        if (tableIndices[rangeIndex] == 0) {
+            tableIndices[rangeIndex] = ++tableCount;
+            // new memory of a DataAccess is zeroed, so all pages of the new table have no block
+            pages.ensureCapacity((long) tableCount * TABLE_BYTES);
+        }
+        return getPagePointer(tableIndices[rangeIndex], key);
+    }
+
+    private static long getPagePointer(int tableIndex, long key) {
+        return (long) (tableIndex - 1) * TABLE_BYTES + ((key >>> PAGE_BITS) & ((1 << TABLE_BITS) - 1)) * 8;
+    }
+
+    private int binarySearch(long block, int capacity, int count, int offset) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = getKey(block, capacity, mid);
+            if (midKey < offset)
+                low = mid + 1;
+            else if (midKey > offset)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return ~low;
+    }
+
+    private long allocateSparse(int capacity) {
+        int exponent = Integer.numberOfTrailingZeros(capacity);
+        long block = freeBlocks[exponent];
+        if (block != 0) {
+            freeBlocks[exponent] = getPointer(blocks, block);
+        } else {
+            block = allocate(align(HEADER + capacity * (bytesPerValue + 2)));
+        }
+        blocks.setInt(block, 0);
+        blocks.setInt(block + 4, capacity);
+        return block;
+    }
+
+    private void freeSparse(long block, int capacity) {
+        int exponent = Integer.numberOfTrailingZeros(capacity);
+        // the header of a freed block is re-used as pointer to the next free block
+        setPointer(blocks, block, freeBlocks[exponent]);
+        freeBlocks[exponent] = block;
+    }
+
+    private long allocateDense() {
+        long block = allocate(denseBlockSize);
+        blocks.setInt(block, DENSE);
+        blocks.setInt(block + 4, PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            setValue(block, PAGE_SIZE, false, i, emptyValue);
+        }
+        return block;
+    }
+
+    private long allocate(int bytes) {
+        long block = nextBlockPointer;
+        nextBlockPointer += bytes;
+        blocks.ensureCapacity(nextBlockPointer);
+        return block;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    // The layout of a block is: the header (entry count or DENSE, capacity), the lower four bytes of all values, the
+    // keys of the entries relative to the page start (only for sparse blocks) and the remaining higher bytes of all
+    // values. The ints are kept separately to avoid unaligned int access.
+    private int getKey(long block, int capacity, int index) {
+        return blocks.getShort(block + HEADER + capacity * 4L + index * 2L);
+    }
+
+    private void setKey(long block, int capacity, int index, int offset) {
+        blocks.setShort(block + HEADER + capacity * 4L + index * 2L, (short) offset);
+    }
+
+    private long getValue(long block, int capacity, boolean sparse, int index) {
+        long value = blocks.getInt(block + HEADER + index * 4L) & 0xFFFFFFFFL;
+        long highPointer = block + HEADER + capacity * (sparse ? 6L : 4L) + (long) index * highBytes;
+        for (int i = 0; i < highBytes; i++) {
+            value |= (blocks.getByte(highPointer + i) & 0xFFL) << (32 + i * 8);
+        }
+        // restore the sign
+        int shift = 64 - bytesPerValue * 8;
+        return value << shift >> shift;
+    }
+
+    private void setValue(long block, int capacity, boolean sparse, int index, long value) {
+        blocks.setInt(block + HEADER + index * 4L, (int) value);
+        long highPointer = block + HEADER + capacity * (sparse ? 6L : 4L) + (long) index * highBytes;
+        for (int i = 0; i < highBytes; i++) {
+            blocks.setByte(highPointer + i, (byte) (value >>> (32 + i * 8)));
+        }
+    }
+
+    private long getBlockPointer(long pagePointer) {
+        return getPointer(pages, pagePointer);
+    }
+
+    private void setBlockPointer(long pagePointer, long block) {
+        setPointer(pages, pagePointer, block);
+    }
+
+    private static long getPointer(DataAccess da, long pointer) {
+        return (da.getInt(pointer) & 0xFFFFFFFFL) | ((long) da.getInt(pointer + 4) << 32);
+    }
+
+    private static void setPointer(DataAccess da, long pointer, long value) {
+        da.setInt(pointer, (int) value);
+        da.setInt(pointer + 4, (int) (value >>> 32));
+    }
+
+    @Override
+    public long getSize() {
+        return size + fallback.getSize();
+    }
+
+    @Override
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    @Override
+    public void optimize() {
+        fallback.optimize();
+    }
+
+    /**
+     * @return the memory used by this map in MB, most of it is not part of the Java heap, see {@link #getHeapMemoryUsage()}
+     */
+    @Override
+    public int getMemoryUsage() {
+        long bytes = pages == null ? 0 : pages.getCapacity() + blocks.getCapacity();
+        return (int) (bytes / Helper.MB) + getHeapMemoryUsage();
+    }
+
+    /**
+     * @return the memory used by this map in MB that is part of the Java heap
+     */
+    public int getHeapMemoryUsage() {
+        long bytes = tableIndices.length * 4L;
+        if (type.isInMemory() && pages != null)
+            bytes += pages.getCapacity() + blocks.getCapacity();
+        return (int) (bytes / Helper.MB) + fallback.getMemoryUsage();
+    }
+
+    @Override
+    public void clear() {
+        if (pages != null) {
+            dir.remove(pages.getName());
+            dir.remove(blocks.getName());
+            pages = null;
+            blocks = null;
+        }
+        tableIndices = new int[0];
+        tableCount = 0;
+        Arrays.fill(freeBlocks, 0);
+        size = 0;
+        fallback.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + getSize() + ", memory: " + getMemoryUsage() + "MB";
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.PHAST;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static java.util.Comparator.comparingDouble;
+
+/**
+ * A {@link ShortestPathTree} that uses {@link PHAST} on a node-based CH graph instead of a Dijkstra search on the
+ * base graph. This is faster for large limits, because it does not need a priority queue for the bulk of the nodes.
+ * But every search allocates the result arrays and sweeps all nodes of the graph regardless of the limit, so for
+ * small limits the Dijkstra search is faster.
+ * The labels are passed to the consumer in the order of increasing weight like for the Dijkstra search, and the
+ * parent of a label is the label of the previous node on the path (not the node at the other end of a shortcut).
+ * Like for the Dijkstra search the nodes just past the limit are kept for {@link #getIsochroneEdges}, but they are not
+ * passed to the consumer.
+ * <p>
+ * The query graph may only contain virtual nodes for the snap of the start point.
+ */
+public class PHASTShortestPathTree extends ShortestPathTree {
+    private final PHAST phast;
+    private final QueryRoutingCHGraph queryCHGraph;
+    private final List<IsoLabel> labels = new ArrayList<>();
+    private final List<IsoLabel> labelsPastLimit = new ArrayList<>();
+    private int visitedNodes;
+
+    public PHASTShortestPathTree(PHAST phast, QueryGraph queryGraph) {
+        super(queryGraph, phast.getGraph().getWeighting(), phast.isReverse(), TraversalMode.NODE_BASED);
+        this.phast = phast;
+        this.queryCHGraph = new QueryRoutingCHGraph(phast.getGraph(), queryGraph);
+    }
+
+    @Override
+    public void search(int from, Consumer<IsoLabel> consumer) {
+        checkAlreadyRun();
+        PHAST.Result result = phast.calc(queryCHGraph, from);
+        visitedNodes = result.getVisitedNodes();
+        IsoLabel[] labelsByNode = new IsoLabel[graph.getNodes()];
+        int baseNodes = graph.getBaseGraph().getNodes();
+        for (int node = 0; node < labelsByNode.length; node++) {
+            if (node >= baseNodes && node != from)
+                continue;
+            if (!result.isReached(node))
+                continue;
+            IsoLabel label = new IsoLabel(node, result.getEdge(node), result.getWeight(node), result.getTime(node), result.getDistance(node), null);
+            if (getExploreValue(label) <= getLimit()) {
+                labelsByNode[node] = label;
+                labels.add(label);
+            }
+        }
+        for (IsoLabel label : labels)
+            if (EdgeIterator.Edge.isValid(label.edge))
+                label.parent = labelsByNode[graph.getOtherNode(label.edge, label.node)];
+        // the nodes past the limit whose parent is within the limit, they are needed for the isochrone edges
+        for (int node = 0; node < baseNodes; node++) {
+            if (labelsByNode[node] != null || !result.isReached(node) || !EdgeIterator.Edge.isValid(result.getEdge(node)))
+                continue;
+            IsoLabel parent = labelsByNode[graph.getOtherNode(result.getEdge(node), node)];
+            if (parent != null)
+                labelsPastLimit.add(new IsoLabel(node, result.getEdge(node), result.getWeight(node), result.getTime(node), result.getDistance(node), parent));
+        }
+        labels.sort(comparingDouble(l -> l.weight));
+        labels.forEach(consumer);
+    }
+
+    @Override
+    public ArrayList<IsoLabel> getIsochroneEdges(double z) {
+        ArrayList<IsoLabel> result = new ArrayList<>();
+        for (List<IsoLabel> list : List.of(labels, labelsPastLimit))
+            for (IsoLabel label : list)
+                if (label.parent != null && (getExploreValue(label) > z ^ getExploreValue(label.parent) > z))
+                    result.add(label);
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "reachability|phast";
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+}
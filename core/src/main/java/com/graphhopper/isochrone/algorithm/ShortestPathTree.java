@@ -195,7 +195,11 @@ public class ShortestPathTree extends AbstractRoutingAlgorithm {
         return result;
     }
 
-    private double getExploreValue(IsoLabel label) {
+    protected double getLimit() {
+        return limit;
+    }
+
+    protected double getExploreValue(IsoLabel label) {
         if (exploreType == TIME)
             return label.time;
         if (exploreType == WEIGHT)
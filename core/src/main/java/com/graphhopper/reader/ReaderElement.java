@@ -17,14 +17,12 @@
  */
 package com.graphhopper.reader;
 
-import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.*;
 
 /**
- * Base class for all network objects
+ * Base class for all network objects. The tags are stored in insertion order in two arrays: the ids of the keys, see
+ * {@link TagKeys}, and the values. This is more compact than a hash map and the few tags of an element can be searched
+ * by comparing the key ids.
  * <p>
  *
  * @author Nop
@@ -38,21 +36,25 @@ public abstract class ReaderElement {
         FILEHEADER;
     }
 
+    private static final int[] EMPTY_KEYS = new int[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
     private final long id;
     private final Type type;
-    private final Map<String, Object> properties;
+    private int[] keyIds = EMPTY_KEYS;
+    private Object[] values = EMPTY_VALUES;
+    private int tagCount;
 
     protected ReaderElement(long id, Type type) {
-        this(id, type, new LinkedHashMap<>(4));
-    }
-
-    protected ReaderElement(long id, Type type, Map<String, Object> properties) {
         if (id < 0) {
             throw new IllegalArgumentException("Invalid OSM " + type + " Id: " + id + "; Ids must not be negative");
         }
         this.id = id;
         this.type = type;
-        this.properties = properties;
+    }
+
+    protected ReaderElement(long id, Type type, Map<String, Object> properties) {
+        this(id, type);
+        setTags(properties);
     }
 
     public long getId() {
@@ -60,49 +62,109 @@ public abstract class ReaderElement {
     }
 
     protected String tagsToString() {
-        if (properties.isEmpty())
+        if (tagCount == 0)
             return "<empty>";
 
         StringBuilder tagTxt = new StringBuilder();
-        for (Map.Entry<String, Object> entry : properties.entrySet()) {
-            tagTxt.append(entry.getKey());
+        for (int i = 0; i < tagCount; i++) {
+            tagTxt.append(TagKeys.getKey(keyIds[i]));
             tagTxt.append("=");
-            tagTxt.append(entry.getValue());
+            tagTxt.append(values[i]);
             tagTxt.append("\n");
         }
         return tagTxt.toString();
     }
 
+    /**
+     * @return a modifiable view of the tags
+     */
     public Map<String, Object> getTags() {
-        return properties;
+        return new TagMap();
     }
 
     public void setTags(Map<String, Object> newTags) {
-        properties.clear();
+        clearTags();
         if (newTags != null)
-            for (Entry<String, Object> e : newTags.entrySet()) {
+            for (Map.Entry<String, Object> e : newTags.entrySet()) {
                 setTag(e.getKey(), e.getValue());
             }
     }
 
     public boolean hasTags() {
-        return !properties.isEmpty();
+        return tagCount > 0;
+    }
+
+    private int indexOf(int keyId) {
+        for (int i = 0; i < tagCount; i++) {
+            if (keyIds[i] == keyId)
+                return i;
+        }
+        return -1;
+    }
+
+    private Object getValue(String key) {
+        int keyId = TagKeys.getId(key);
+        if (keyId < 0)
+            return null;
+        return getValue(keyId);
+    }
+
+    private Object getValue(int keyId) {
+        int index = indexOf(keyId);
+        return index < 0 ? null : values[index];
     }
 
     public String getTag(String name) {
-        return (String) properties.get(name);
+        return (String) getValue(name);
+    }
+
+    /**
+     * Same as {@link #getTag(String)}, but the key is given by its id, see {@link TagKeys}.
+     */
+    public String getTag(int keyId) {
+        return (String) getValue(keyId);
     }
 
     @SuppressWarnings("unchecked")
     public <T> T getTag(String key, T defaultValue) {
-        T val = (T) properties.get(key);
+        T val = (T) getValue(key);
+        if (val == null)
+            return defaultValue;
+        return val;
+    }
+
+    /**
+     * Same as {@link #getTag(String, Object)}, but the key is given by its id, see {@link TagKeys}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getTag(int keyId, T defaultValue) {
+        T val = (T) getValue(keyId);
         if (val == null)
             return defaultValue;
         return val;
     }
 
     public void setTag(String name, Object value) {
-        properties.put(name, value);
+        setTag(TagKeys.getOrCreateId(name), value);
+    }
+
+    /**
+     * Same as {@link #setTag(String, Object)}, but the key is given by its id, see {@link TagKeys}.
+     */
+    public void setTag(int keyId, Object value) {
+        int index = indexOf(keyId);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+        if (tagCount == keyIds.length) {
+            int capacity = Math.max(4, tagCount * 2);
+            keyIds = Arrays.copyOf(keyIds, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        keyIds[tagCount] = keyId;
+        values[tagCount] = value;
+        tagCount++;
     }
 
     /**
@@ -112,12 +174,19 @@ public abstract class ReaderElement {
         return value.equals(getTag(key, ""));
     }
 
+    /**
+     * Same as {@link #hasTag(String, Object)}, but the key is given by its id, see {@link TagKeys}.
+     */
+    public boolean hasTag(int keyId, Object value) {
+        return value.equals(getValue(keyId));
+    }
+
     /**
      * Check that a given tag has one of the specified values. If no values are given, just checks
      * for presence of the tag
      */
     public boolean hasTag(String key, String... values) {
-        Object value = properties.get(key);
+        Object value = getValue(key);
         if (value == null)
             return false;
 
@@ -168,7 +237,7 @@ public abstract class ReaderElement {
      */
     public String getFirstPriorityTag(List<String> restrictions) {
         for (String str : restrictions) {
-            Object value = properties.get(str);
+            Object value = getValue(str);
             if (value != null)
                 return (String) value;
         }
@@ -176,11 +245,24 @@ public abstract class ReaderElement {
     }
 
     public void removeTag(String name) {
-        properties.remove(name);
+        int keyId = TagKeys.getId(name);
+        if (keyId >= 0)
+            removeTag(indexOf(keyId));
+    }
+
+    private void removeTag(int index) {
+        if (index < 0)
+            return;
+        // keep the insertion order
+        System.arraycopy(keyIds, index + 1, keyIds, index, tagCount - index - 1);
+        System.arraycopy(values, index + 1, values, index, tagCount - index - 1);
+        tagCount--;
+        values[tagCount] = null;
     }
 
     public void clearTags() {
-        properties.clear();
+        Arrays.fill(values, 0, tagCount, null);
+        tagCount = 0;
     }
 
     public Type getType() {
@@ -189,6 +271,92 @@ public abstract class ReaderElement {
 
     @Override
     public String toString() {
-        return properties.toString();
+        return getTags().toString();
+    }
+
+    private class TagMap extends AbstractMap<String, Object> {
+        @Override
+        public int size() {
+            return tagCount;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int keyId = key instanceof String ? TagKeys.getId((String) key) : -1;
+            return keyId >= 0 && indexOf(keyId) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? getValue((String) key) : null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object old = getValue(key);
+            setTag(key, value);
+            return old;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            if (!(key instanceof String))
+                return null;
+            Object old = getValue((String) key);
+            removeTag((String) key);
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            clearTags();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return tagCount;
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int next = 0;
+                        private int last = -1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < tagCount;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= tagCount)
+                                throw new NoSuchElementException();
+                            last = next++;
+                            final int index = last;
+                            return new SimpleEntry<String, Object>(TagKeys.getKey(keyIds[index]), values[index]) {
+                                @Override
+                                public Object setValue(Object value) {
+                                    values[index] = value;
+                                    return super.setValue(value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last < 0)
+                                throw new IllegalStateException();
+                            removeTag(last);
+                            next = last;
+                            last = -1;
+                        }
+                    };
+                }
+            };
+        }
     }
 }
@@ -19,7 +19,6 @@ package com.graphhopper.reader;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -32,7 +31,7 @@ public class ReaderRelation extends ReaderElement {
     protected List<Member> members;
 
     public ReaderRelation(long id) {
-        super(id, Type.RELATION, new HashMap<>(2));
+        super(id, Type.RELATION);
     }
 
     @Override
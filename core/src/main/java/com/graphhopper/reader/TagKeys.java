@@ -0,0 +1,73 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns a unique int id to every tag key that is used for a {@link ReaderElement}. The elements store their tags by
+ * key id, so tag parsers can look up the id of a key once and then query the tags without hashing the key string,
+ * e.g. via {@link ReaderElement#getTag(int)}. The ids are only valid within the running JVM and must not be stored.
+ */
+public final class TagKeys {
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] keys = new String[256];
+
+    public static final int HIGHWAY = getOrCreateId("highway");
+    public static final int ROUTE = getOrCreateId("route");
+    public static final int JUNCTION = getOrCreateId("junction");
+    public static final int MAXSPEED = getOrCreateId("maxspeed");
+    public static final int MAN_MADE = getOrCreateId("man_made");
+    public static final int RAILWAY = getOrCreateId("railway");
+
+    private TagKeys() {
+    }
+
+    /**
+     * @return the id of the given key or -1 if no element has used it so far
+     */
+    public static int getId(String key) {
+        Integer id = IDS.get(key);
+        return id == null ? -1 : id;
+    }
+
+    public static int getOrCreateId(String key) {
+        Integer id = IDS.get(key);
+        return id == null ? createId(key) : id;
+    }
+
+    private static synchronized int createId(String key) {
+        Integer id = IDS.get(key);
+        if (id != null)
+            return id;
+        int newId = IDS.size();
+        String[] tmpKeys = keys;
+        if (newId >= tmpKeys.length)
+            tmpKeys = Arrays.copyOf(tmpKeys, tmpKeys.length * 2);
+        // the same String instance is used for all elements, it is only stored once
+        tmpKeys[newId] = key.intern();
+        keys = tmpKeys;
+        IDS.put(tmpKeys[newId], newId);
+        return newId;
+    }
+
+    public static String getKey(int id) {
+        return keys[id];
+    }
+}
@@ -17,15 +17,17 @@
  */
 package com.graphhopper.reader.dem;
 
-import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.util.Downloader;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Common functionality used when working with SRTM hgt data.
@@ -39,7 +41,7 @@ public abstract class AbstractSRTMElevationProvider extends TileBasedElevationPr
     private final int WIDTH_BYTE_INDEX = 0;
     private final int DEGREE = 1;
     // use a map as an array is not quite useful if we want to hold only parts of the world
-    private final GHIntObjectHashMap<HeightTile> cacheData = new GHIntObjectHashMap<>();
+    private final HeightTileCache<Integer> cacheData = new HeightTileCache<>(this::closeTile);
     private final double precision = 1e7;
     private final double invPrecision = 1 / precision;
 
@@ -61,13 +63,7 @@ public abstract class AbstractSRTMElevationProvider extends TileBasedElevationPr
     @Override
     public void release() {
         cacheData.clear();
-        if (dir != null) {
-            // for memory mapped type we remove temporary files
-            if (autoRemoveTemporary)
-                dir.clear();
-            else
-                dir.close();
-        }
+        releaseTiles();
     }
 
     int down(double val) {
@@ -89,53 +85,90 @@ public abstract class AbstractSRTMElevationProvider extends TileBasedElevationPr
         int intKey = calcIntKey(lat, lon);
         HeightTile demProvider = cacheData.get(intKey);
         if (demProvider == null) {
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
+            demProvider = loadTile(lat, lon, intKey);
+            if (demProvider == null)
+                return 0;
+            cacheData.put(intKey, demProvider, maxCacheSize);
+        }
 
-            int minLat = down(lat);
-            int minLon = down(lon);
+        if (demProvider.isSeaLevel())
+            return 0;
 
-            String fileName = getFileName(lat, lon);
-            if (fileName == null || (Helper.isEmpty(baseUrl) && !new File(fileName).exists()))
-                return 0;
+        return demProvider.getHeight(lat, lon);
+    }
 
-            DataAccess heights = getDirectory().create("dem" + intKey);
-            boolean loadExisting = false;
-            try {
-                loadExisting = heights.loadExisting();
-            } catch (Exception ex) {
-                logger.warn("cannot load dem" + intKey + ", error:" + ex.getMessage());
-            }
+    @Override
+    public void prefetch(PointList points) {
+        // one coordinate for every missing tile
+        Map<Integer, double[]> missing = new LinkedHashMap<>();
+        for (int i = 0; i < points.size(); i++) {
+            double lat = points.getLat(i);
+            double lon = points.getLon(i);
+            if (lat >= MAX_LAT || lat <= MIN_LAT)
+                continue;
+            lat = (int) (lat * precision) / precision;
+            lon = (int) (lon * precision) / precision;
+            int intKey = calcIntKey(lat, lon);
+            if (!cacheData.containsKey(intKey) && !missing.containsKey(intKey))
+                missing.put(intKey, new double[]{lat, lon});
+        }
+        loadTiles(missing.keySet(), key -> loadTile(missing.get(key)[0], missing.get(key)[1], key))
+                .forEach((key, tile) -> cacheData.put(key, tile, maxCacheSize));
+    }
 
-            if (!loadExisting) {
-                try {
-                    updateHeightsFromFile(lat, lon, heights);
-                } catch (FileNotFoundException ex) {
-                    demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
-                    cacheData.put(intKey, demProvider);
-                    demProvider.setHeights(heights);
-                    demProvider.setSeaLevel(true);
-                    // use small size on disc and in-memory
-                    heights.create(10)
-                            .flush();
-                    return 0;
-                }
-            }
+    /**
+     * Loads the tile from the cache directory or creates it from the downloaded file.
+     *
+     * @return the tile or null if there is no file for the given coordinates
+     */
+    private HeightTile loadTile(double lat, double lon, int intKey) {
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+
+        int minLat = down(lat);
+        int minLon = down(lon);
 
-            int width = (int) (Math.sqrt(heights.getHeader(WIDTH_BYTE_INDEX)) + 0.5);
-            if (width == 0)
-                width = DEFAULT_WIDTH;
+        String fileName = getFileName(lat, lon);
+        if (fileName == null || (Helper.isEmpty(baseUrl) && !new File(fileName).exists()))
+            return null;
+
+        DataAccess heights = createHeights("dem" + intKey);
+        boolean loadExisting = false;
+        try {
+            loadExisting = heights.loadExisting();
+        } catch (Exception ex) {
+            logger.warn("cannot load dem" + intKey + ", error:" + ex.getMessage());
+        }
 
-            demProvider = new HeightTile(minLat, minLon, width, width, precision, DEGREE, DEGREE);
-            cacheData.put(intKey, demProvider);
-            demProvider.setInterpolate(interpolate);
+        if (!loadExisting) {
+            try {
+                updateHeightsFromFile(lat, lon, heights);
+            } catch (FileNotFoundException ex) {
+                HeightTile demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
+                demProvider.setHeights(heights);
+                // use small size on disc and in-memory, the sea level marker is stored in the header so that the
+                // tile is recognized when it is loaded again after it was evicted from the cache
+                heights.create(10);
+                demProvider.setSeaLevel(true);
+                heights.flush();
+                return demProvider;
+            }
+        } else {
+            HeightTile demProvider = new HeightTile(minLat, minLon, DEFAULT_WIDTH, DEFAULT_WIDTH, precision, DEGREE, DEGREE);
             demProvider.setHeights(heights);
+            // a sea level tile has no width and no heights
+            if (demProvider.isSeaLevel())
+                return demProvider;
         }
 
-        if (demProvider.isSeaLevel())
-            return 0;
+        int width = (int) (Math.sqrt(heights.getHeader(WIDTH_BYTE_INDEX)) + 0.5);
+        if (width == 0)
+            width = DEFAULT_WIDTH;
 
-        return demProvider.getHeight(lat, lon);
+        HeightTile demProvider = new HeightTile(minLat, minLon, width, width, precision, DEGREE, DEGREE);
+        demProvider.setInterpolate(interpolate);
+        demProvider.setHeights(heights);
+        return demProvider;
     }
 
     private void updateHeightsFromFile(double lat, double lon, DataAccess heights) throws FileNotFoundException {
@@ -19,13 +19,14 @@ package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.util.Downloader;
+import com.graphhopper.util.PointList;
 
 import javax.net.ssl.SSLException;
 import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -34,7 +35,7 @@ import java.util.Map;
  * @author Robin Boldt
  */
 public abstract class AbstractTiffElevationProvider extends TileBasedElevationProvider {
-    private final Map<String, HeightTile> cacheData = new HashMap<>();
+    private final HeightTileCache<String> cacheData = new HeightTileCache<>(this::closeTile);
     final double precision = 1e7;
 
     private final int WIDTH;
@@ -58,13 +59,7 @@ public abstract class AbstractTiffElevationProvider extends TileBasedElevationPr
     @Override
     public void release() {
         cacheData.clear();
-        if (dir != null) {
-            // for memory mapped type we remove temporary files
-            if (autoRemoveTemporary)
-                dir.clear();
-            else
-                dir.close();
-        }
+        releaseTiles();
     }
 
     /**
@@ -108,53 +103,83 @@ public abstract class AbstractTiffElevationProvider extends TileBasedElevationPr
         String name = getFileName(lat, lon);
         HeightTile demProvider = cacheData.get(name);
         if (demProvider == null) {
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
-
-            int minLat = getMinLatForTile(lat);
-            int minLon = getMinLonForTile(lon);
-            // less restrictive against boundary checking
-            demProvider = new HeightTile(minLat, minLon, WIDTH, HEIGHT, LON_DEGREE * precision, LON_DEGREE, LAT_DEGREE);
-            demProvider.setInterpolate(interpolate);
-
-            cacheData.put(name, demProvider);
-            DataAccess heights = getDirectory().create(name + ".gh");
-            demProvider.setHeights(heights);
-            boolean loadExisting = false;
-            try {
-                loadExisting = heights.loadExisting();
-            } catch (Exception ex) {
-                logger.warn("cannot load " + name + ", error: " + ex.getMessage());
-            }
+            demProvider = loadTile(lat, lon, name);
+            cacheData.put(name, demProvider, maxCacheSize);
+        }
 
-            if (!loadExisting) {
-                File zipFile = new File(cacheDir, new File(getFileNameOfLocalFile(lat, lon)).getName());
-                if (!zipFile.exists())
-                    try {
-                        String zippedURL = getDownloadURL(lat, lon);
-                        downloadToFile(zipFile, zippedURL);
-                    } catch (SSLException ex) {
-                        throw new IllegalStateException("SSL problem with elevation provider " + getClass().getSimpleName(), ex);
-                    } catch (IOException ex) {
-                        demProvider.setSeaLevel(true);
-                        // use small size on disc and in-memory
-                        heights.create(10).flush();
-                        return 0;
-                    }
+        if (demProvider.isSeaLevel())
+            return 0;
 
-                // short == 2 bytes
-                heights.create(2L * WIDTH * HEIGHT);
+        return demProvider.getHeight(lat, lon);
+    }
 
-                Raster raster = readFile(zipFile, name + ".tif");
-                fillDataAccessWithElevationData(raster, heights, WIDTH);
+    @Override
+    public void prefetch(PointList points) {
+        // one coordinate for every missing tile
+        Map<String, double[]> missing = new LinkedHashMap<>();
+        for (int i = 0; i < points.size(); i++) {
+            double lat = points.getLat(i);
+            double lon = points.getLon(i);
+            if (isOutsideSupportedArea(lat, lon))
+                continue;
+            lat = (int) (lat * precision) / precision;
+            lon = (int) (lon * precision) / precision;
+            String name = getFileName(lat, lon);
+            if (!cacheData.containsKey(name) && !missing.containsKey(name))
+                missing.put(name, new double[]{lat, lon});
+        }
+        loadTiles(missing.keySet(), name -> loadTile(missing.get(name)[0], missing.get(name)[1], name))
+                .forEach((name, tile) -> cacheData.put(name, tile, maxCacheSize));
+    }
 
-            } // loadExisting
+    /**
+     * Loads the tile from the cache directory or creates it from the downloaded file. If the file cannot be
+     * downloaded the tile is marked as sea level.
+     */
+    private HeightTile loadTile(double lat, double lon, String name) {
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+
+        int minLat = getMinLatForTile(lat);
+        int minLon = getMinLonForTile(lon);
+        // less restrictive against boundary checking
+        HeightTile demProvider = new HeightTile(minLat, minLon, WIDTH, HEIGHT, LON_DEGREE * precision, LON_DEGREE, LAT_DEGREE);
+        demProvider.setInterpolate(interpolate);
+
+        DataAccess heights = createHeights(name + ".gh");
+        demProvider.setHeights(heights);
+        boolean loadExisting = false;
+        try {
+            loadExisting = heights.loadExisting();
+        } catch (Exception ex) {
+            logger.warn("cannot load " + name + ", error: " + ex.getMessage());
         }
 
-        if (demProvider.isSeaLevel())
-            return 0;
+        if (!loadExisting) {
+            File zipFile = new File(cacheDir, new File(getFileNameOfLocalFile(lat, lon)).getName());
+            if (!zipFile.exists())
+                try {
+                    String zippedURL = getDownloadURL(lat, lon);
+                    downloadToFile(zipFile, zippedURL);
+                } catch (SSLException ex) {
+                    throw new IllegalStateException("SSL problem with elevation provider " + getClass().getSimpleName(), ex);
+                } catch (IOException ex) {
+                    // use small size on disc and in-memory, the sea level marker is stored in the header so that the
+                    // tile is recognized when it is loaded again after it was evicted from the cache
+                    heights.create(10);
+                    demProvider.setSeaLevel(true);
+                    heights.flush();
+                    return demProvider;
+                }
 
-        return demProvider.getHeight(lat, lon);
+            // short == 2 bytes
+            heights.create(2L * WIDTH * HEIGHT);
+
+            Raster raster = readFile(zipFile, name + ".tif");
+            fillDataAccessWithElevationData(raster, heights, WIDTH);
+
+        } // loadExisting
+        return demProvider;
     }
 
     abstract Raster readFile(File file, String tifName);
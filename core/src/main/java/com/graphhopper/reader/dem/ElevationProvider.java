@@ -18,6 +18,7 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.util.PointList;
 
 /**
  * @author Peter Karich
@@ -57,6 +58,21 @@ public interface ElevationProvider {
      */
     boolean canInterpolate();
 
+    /**
+     * Returns true if {@link #prefetch} loads the data in advance, so it is worth collecting the points that will be
+     * requested next.
+     */
+    default boolean canPrefetch() {
+        return false;
+    }
+
+    /**
+     * Loads the data for the given points that will be requested via getEle soon, e.g. in parallel. The default
+     * implementation does nothing.
+     */
+    default void prefetch(PointList points) {
+    }
+
     /**
      * Release resources.
      */
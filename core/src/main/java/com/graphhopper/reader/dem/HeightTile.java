@@ -78,6 +78,14 @@ public class HeightTile {
         this.heights = da;
     }
 
+    DataAccess getHeights() {
+        return heights;
+    }
+
+    long getCapacity() {
+        return heights.getCapacity();
+    }
+
     private short getHeightSample(int x, int y) {
         // always keep in mind factor 2 because of short value
         return heights.getShort(2L * ((long) y * width + x));
@@ -0,0 +1,76 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.dem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the recently used height tiles. When the memory of all tiles exceeds the limit the least recently used tiles
+ * are evicted, i.e. passed to the given callback which has to close them.
+ */
+class HeightTileCache<K> {
+    private final LinkedHashMap<K, HeightTile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Consumer<HeightTile> evictionCallback;
+    private long bytes;
+
+    HeightTileCache(Consumer<HeightTile> evictionCallback) {
+        this.evictionCallback = evictionCallback;
+    }
+
+    HeightTile get(K key) {
+        return tiles.get(key);
+    }
+
+    boolean containsKey(K key) {
+        return tiles.containsKey(key);
+    }
+
+    /**
+     * Adds the tile and evicts the least recently used tiles until all tiles fit into maxBytes again. The added tile
+     * itself is never evicted here.
+     */
+    void put(K key, HeightTile tile, long maxBytes) {
+        HeightTile old = tiles.put(key, tile);
+        if (old != null)
+            throw new IllegalStateException("Tile " + key + " was already loaded");
+        bytes += tile.getCapacity();
+        Iterator<Map.Entry<K, HeightTile>> iter = tiles.entrySet().iterator();
+        while (bytes > maxBytes && tiles.size() > 1) {
+            HeightTile eldest = iter.next().getValue();
+            iter.remove();
+            bytes -= eldest.getCapacity();
+            evictionCallback.accept(eldest);
+        }
+    }
+
+    void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    int size() {
+        return tiles.size();
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+}
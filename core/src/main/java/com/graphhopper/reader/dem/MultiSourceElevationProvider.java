@@ -18,6 +18,7 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
+import com.graphhopper.util.PointList;
 
 /**
  * The MultiSourceElevationProvider mixes different elevation providers to provide the best available elevation data
@@ -49,12 +50,49 @@ public class MultiSourceElevationProvider extends TileBasedElevationProvider {
     @Override
     public double getEle(double lat, double lon) {
         // Sometimes the cgiar data north of 59.999 equals 0
-        if (lat < 59.999 && lat > -56) {
+        if (isSRTMArea(lat)) {
             return srtmProvider.getEle(lat, lon);
         }
         return globalProvider.getEle(lat, lon);
     }
 
+    private static boolean isSRTMArea(double lat) {
+        return lat < 59.999 && lat > -56;
+    }
+
+    @Override
+    public void prefetch(PointList points) {
+        PointList srtmPoints = new PointList(points.size(), false);
+        PointList globalPoints = new PointList(points.size(), false);
+        for (int i = 0; i < points.size(); i++) {
+            if (isSRTMArea(points.getLat(i)))
+                srtmPoints.add(points.getLat(i), points.getLon(i));
+            else
+                globalPoints.add(points.getLat(i), points.getLon(i));
+        }
+        srtmProvider.prefetch(srtmPoints);
+        globalProvider.prefetch(globalPoints);
+    }
+
+    @Override
+    public boolean canPrefetch() {
+        return srtmProvider.canPrefetch() && globalProvider.canPrefetch();
+    }
+
+    @Override
+    public MultiSourceElevationProvider setMaxCacheSize(long maxCacheSize) {
+        srtmProvider.setMaxCacheSize(maxCacheSize);
+        globalProvider.setMaxCacheSize(maxCacheSize);
+        return this;
+    }
+
+    @Override
+    public MultiSourceElevationProvider setPrefetchThreads(int prefetchThreads) {
+        srtmProvider.setPrefetchThreads(prefetchThreads);
+        globalProvider.setPrefetchThreads(prefetchThreads);
+        return this;
+    }
+
     /**
      * For the MultiSourceElevationProvider you have to specify the base URL separated by a ';'.
      * The first for cgiar, the second for gmted.
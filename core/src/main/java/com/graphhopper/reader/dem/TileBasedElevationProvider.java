@@ -18,14 +18,23 @@
 package com.graphhopper.reader.dem;
 
 import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.util.Downloader;
+import com.graphhopper.util.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Provides basic methods that are usually used in an ElevationProvider using tiles from files.
@@ -37,11 +46,15 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
     Downloader downloader;
     final File cacheDir;
     String baseUrl;
-    Directory dir;
+    GHDirectory dir;
     DAType daType = DAType.MMAP;
     boolean interpolate = false;
     boolean autoRemoveTemporary = true;
     long sleep = 2000;
+    long maxCacheSize = Long.MAX_VALUE;
+    int prefetchThreads = 0;
+    // the tiles that were evicted from the cache, their files are still in the cache directory
+    private final Set<String> closedTiles = new HashSet<>();
 
     protected TileBasedElevationProvider(String cacheDirString) {
         File cacheDir = new File(cacheDirString);
@@ -103,6 +116,34 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return this;
     }
 
+    /**
+     * Limits the memory of the height tiles that are kept open, in bytes. When the limit is exceeded the least
+     * recently used tiles are closed and they are loaded again from the cache directory when they are needed. This
+     * works best with DAType.MMAP (the default) or RAM_STORE. Default is no limit.
+     */
+    public TileBasedElevationProvider setMaxCacheSize(long maxCacheSize) {
+        if (maxCacheSize <= 0)
+            throw new IllegalArgumentException("maxCacheSize must be positive but was " + maxCacheSize);
+        this.maxCacheSize = maxCacheSize;
+        return this;
+    }
+
+    /**
+     * The number of threads that are used to download and load the missing tiles in {@link #prefetch}. Default is 0,
+     * which disables the prefetching.
+     */
+    public TileBasedElevationProvider setPrefetchThreads(int prefetchThreads) {
+        if (prefetchThreads < 0)
+            throw new IllegalArgumentException("prefetchThreads must not be negative but was " + prefetchThreads);
+        this.prefetchThreads = prefetchThreads;
+        return this;
+    }
+
+    @Override
+    public boolean canPrefetch() {
+        return prefetchThreads > 0;
+    }
+
     public TileBasedElevationProvider setDownloader(Downloader downloader) {
         this.downloader = downloader;
         return this;
@@ -121,4 +162,88 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return dir = new GHDirectory(cacheDir.getAbsolutePath(), daType);
     }
 
+    /**
+     * Creates the DataAccess of a tile. This can be called from the threads that load tiles in parallel.
+     */
+    synchronized DataAccess createHeights(String name) {
+        closedTiles.remove(name);
+        return getDirectory().create(name);
+    }
+
+    /**
+     * Closes the evicted tile, but keeps its file so it can be loaded again.
+     */
+    synchronized void closeTile(HeightTile tile) {
+        String name = tile.getHeights().getName();
+        dir.close(name);
+        closedTiles.add(name);
+    }
+
+    /**
+     * Closes all tiles and removes the temporary files if autoRemoveTemporary is enabled.
+     */
+    void releaseTiles() {
+        if (dir != null) {
+            // for memory mapped type we remove temporary files
+            if (autoRemoveTemporary) {
+                dir.clear();
+                for (String name : closedTiles)
+                    Helper.removeDir(new File(dir.getLocation(), name));
+            } else {
+                dir.close();
+            }
+        }
+        closedTiles.clear();
+    }
+
+    /**
+     * Loads the given tiles with the prefetch threads and returns the successfully loaded ones. The tiles are loaded
+     * in the given order and only as long as all tiles loaded so far fit into the maximum cache size. Otherwise tiles
+     * loaded early would be evicted by the later ones before they are used. The remaining tiles are loaded when they
+     * are needed.
+     *
+     * @param tileLoader loads the tile for the given key and returns null if there is none. It must not modify the
+     *                   cache of the provider
+     */
+    <K> Map<K, HeightTile> loadTiles(Collection<K> keys, Function<K, HeightTile> tileLoader) {
+        Map<K, HeightTile> result = new LinkedHashMap<>();
+        if (keys.isEmpty())
+            return result;
+        AtomicLong loadedBytes = new AtomicLong();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(prefetchThreads, keys.size()));
+        try {
+            Map<K, Future<HeightTile>> futures = new LinkedHashMap<>();
+            for (K key : keys)
+                futures.put(key, executorService.submit(() -> {
+                    if (loadedBytes.get() >= maxCacheSize)
+                        return null;
+                    HeightTile tile = tileLoader.apply(key);
+                    if (tile != null)
+                        loadedBytes.addAndGet(tile.getCapacity());
+                    return tile;
+                }));
+            long bytes = 0;
+            for (Map.Entry<K, Future<HeightTile>> entry : futures.entrySet()) {
+                HeightTile tile = entry.getValue().get();
+                if (tile == null)
+                    continue;
+                // the tiles that were loaded concurrently with the last fitting one are closed again, but their
+                // files are kept
+                if (!result.isEmpty() && bytes + tile.getCapacity() > maxCacheSize) {
+                    closeTile(tile);
+                    continue;
+                }
+                bytes += tile.getCapacity();
+                result.put(entry.getKey(), tile);
+            }
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException("Could not load elevation tiles", ex.getCause());
+        } finally {
+            executorService.shutdown();
+        }
+    }
 }
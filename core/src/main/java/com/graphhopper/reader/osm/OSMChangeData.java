@@ -0,0 +1,258 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.IntsRef;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Stores the OSM data of every edge that is required to calculate the edge flags again when the tags of its OSM way
+ * change, see {@link OSMReader#applyChanges}: the tags of the nodes along the edge, the route relation flags of the way
+ * and whether the edge was created for a barrier node. All this is not available after the import otherwise. Edges
+ * without any of this data only need 16 bytes: a pointer to the data and a hash of the OSM node IDs of the way, which
+ * is used to detect changed geometries.
+ *
+ * @see com.graphhopper.routing.OSMReaderConfig#setStoreChangeData(boolean)
+ */
+public class OSMChangeData {
+    private static final int VERSION = 2;
+    private static final int EDGE_BYTES = 16;
+    private static final long START_POINTER = 8;
+    private final DataAccess edges;
+    private final DataAccess entries;
+    private long nextPointer = START_POINTER;
+
+    public OSMChangeData(Directory dir) {
+        edges = dir.create("osm_change_edges");
+        entries = dir.create("osm_change_entries");
+    }
+
+    public OSMChangeData create(long initBytes) {
+        edges.create(initBytes);
+        entries.create(initBytes);
+        return this;
+    }
+
+    public boolean loadExisting() {
+        if (!edges.loadExisting() || !entries.loadExisting())
+            return false;
+        if (edges.getHeader(0) != VERSION)
+            throw new IllegalStateException("The OSM change data of this graph has version " + edges.getHeader(0)
+                    + ", but version " + VERSION + " is required, a new import is necessary");
+        nextPointer = bitsToLong(entries.getHeader(0), entries.getHeader(4));
+        return true;
+    }
+
+    public void setEdge(int edge, LongArrayList wayNodes, boolean barrierEdge, IntsRef relationFlags, List<Map<String, Object>> nodeTags) {
+        long edgePointer = (long) edge * EDGE_BYTES;
+        edges.ensureCapacity(edgePointer + EDGE_BYTES);
+        setLong(edges, edgePointer + 8, hashWayNodes(wayNodes));
+        if (!barrierEdge && relationFlags.isEmpty() && nodeTags.stream().allMatch(Map::isEmpty)) {
+            setPointer(edgePointer, 0);
+            return;
+        }
+
+        byte[] bytes = serialize(barrierEdge, relationFlags, nodeTags);
+        entries.ensureCapacity(nextPointer + 4 + bytes.length);
+        entries.setInt(nextPointer, bytes.length);
+        for (int offset = 0; offset < bytes.length; offset += entries.getSegmentSize()) {
+            int length = Math.min(entries.getSegmentSize(), bytes.length - offset);
+            entries.setBytes(nextPointer + 4 + offset, Arrays.copyOfRange(bytes, offset, offset + length), length);
+        }
+        setPointer(edgePointer, nextPointer);
+        nextPointer += 4 + bytes.length;
+    }
+
+    /**
+     * Uses the data of the edge fromEdge for the edge toEdge as well, e.g. for the artificial edges that are created
+     * for turn restrictions.
+     */
+    public void copyEdge(int fromEdge, int toEdge) {
+        long fromPointer = (long) fromEdge * EDGE_BYTES;
+        long toPointer = (long) toEdge * EDGE_BYTES;
+        edges.ensureCapacity(toPointer + EDGE_BYTES);
+        setPointer(toPointer, getPointer(fromPointer));
+        setLong(edges, toPointer + 8, getLong(edges, fromPointer + 8));
+    }
+
+    /**
+     * @return true if the OSM way of the given edge had the given node IDs when the edge was created. Edges without
+     * stored data never match.
+     */
+    public boolean hasWayNodes(int edge, LongArrayList wayNodes) {
+        long edgePointer = (long) edge * EDGE_BYTES;
+        return edgePointer + EDGE_BYTES <= edges.getCapacity() && getLong(edges, edgePointer + 8) == hashWayNodes(wayNodes);
+    }
+
+    static long hashWayNodes(LongArrayList wayNodes) {
+        // FNV-1a over the node IDs, a collision would hide a changed geometry, so 32 bits would not be enough
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < wayNodes.size(); i++) {
+            hash ^= wayNodes.get(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @param pointCount    the number of points used for the node tags if no data was stored for the given edge
+     * @param relationFlags will be filled with the stored relation flags
+     */
+    public EdgeData getEdge(int edge, int pointCount, IntsRef relationFlags) {
+        long edgePointer = (long) edge * EDGE_BYTES;
+        long pointer = edgePointer + EDGE_BYTES <= edges.getCapacity() ? getPointer(edgePointer) : 0;
+        if (pointer == 0) {
+            Arrays.fill(relationFlags.ints, 0);
+            return new EdgeData(false, relationFlags, Collections.nCopies(pointCount, Collections.emptyMap()));
+        }
+        byte[] bytes = new byte[entries.getInt(pointer)];
+        for (int offset = 0; offset < bytes.length; offset += entries.getSegmentSize()) {
+            int length = Math.min(entries.getSegmentSize(), bytes.length - offset);
+            byte[] tmp = new byte[length];
+            entries.getBytes(pointer + 4 + offset, tmp, length);
+            System.arraycopy(tmp, 0, bytes, offset, length);
+        }
+        return deserialize(bytes, relationFlags);
+    }
+
+    private static byte[] serialize(boolean barrierEdge, IntsRef relationFlags, List<Map<String, Object>> nodeTags) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeBoolean(barrierEdge);
+            out.writeByte(relationFlags.length);
+            for (int i = 0; i < relationFlags.length; i++)
+                out.writeInt(relationFlags.ints[relationFlags.offset + i]);
+            // the node tags are stored for all points of the segment, so there can be more maps than points in the
+            // edge geometry after its simplification
+            out.writeInt(nodeTags.size());
+            int pointsWithTags = (int) nodeTags.stream().filter(tags -> !tags.isEmpty()).count();
+            out.writeInt(pointsWithTags);
+            for (int i = 0; i < nodeTags.size(); i++) {
+                Map<String, Object> tags = nodeTags.get(i);
+                if (tags.isEmpty())
+                    continue;
+                out.writeInt(i);
+                out.writeInt(tags.size());
+                for (Map.Entry<String, Object> tag : tags.entrySet()) {
+                    out.writeUTF(tag.getKey());
+                    out.writeUTF(String.valueOf(tag.getValue()));
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bos.toByteArray();
+    }
+
+    private static EdgeData deserialize(byte[] bytes, IntsRef relationFlags) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            boolean barrierEdge = in.readBoolean();
+            int relationFlagsLength = in.readByte();
+            if (relationFlagsLength != relationFlags.length)
+                throw new IllegalStateException("Stored relation flags have length " + relationFlagsLength + ", expected " + relationFlags.length);
+            for (int i = 0; i < relationFlagsLength; i++)
+                relationFlags.ints[relationFlags.offset + i] = in.readInt();
+            int pointCount = in.readInt();
+            List<Map<String, Object>> nodeTags = new ArrayList<>(Collections.nCopies(pointCount, Collections.emptyMap()));
+            int pointsWithTags = in.readInt();
+            for (int p = 0; p < pointsWithTags; p++) {
+                int index = in.readInt();
+                int tagCount = in.readInt();
+                Map<String, Object> tags = new HashMap<>(tagCount);
+                for (int t = 0; t < tagCount; t++)
+                    tags.put(in.readUTF(), in.readUTF());
+                if (index >= pointCount)
+                    throw new IllegalStateException("Node tags for point " + index + " were stored, but the edge has only " + pointCount + " points");
+                nodeTags.set(index, tags);
+            }
+            return new EdgeData(barrierEdge, relationFlags, nodeTags);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void setPointer(long edgePointer, long pointer) {
+        setLong(edges, edgePointer, pointer);
+    }
+
+    private long getPointer(long edgePointer) {
+        return getLong(edges, edgePointer);
+    }
+
+    private static void setLong(DataAccess da, long bytePos, long value) {
+        da.setInt(bytePos, (int) value);
+        da.setInt(bytePos + 4, (int) (value >>> 32));
+    }
+
+    private static long getLong(DataAccess da, long bytePos) {
+        return bitsToLong(da.getInt(bytePos), da.getInt(bytePos + 4));
+    }
+
+    private static long bitsToLong(int low, int high) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    public void flush() {
+        entries.setHeader(0, (int) nextPointer);
+        entries.setHeader(4, (int) (nextPointer >>> 32));
+        edges.setHeader(0, VERSION);
+        edges.flush();
+        entries.flush();
+    }
+
+    public void close() {
+        edges.close();
+        entries.close();
+    }
+
+    public long getCapacity() {
+        return edges.getCapacity() + entries.getCapacity();
+    }
+
+    public static class EdgeData {
+        private final boolean barrierEdge;
+        private final IntsRef relationFlags;
+        private final List<Map<String, Object>> nodeTags;
+
+        EdgeData(boolean barrierEdge, IntsRef relationFlags, List<Map<String, Object>> nodeTags) {
+            this.barrierEdge = barrierEdge;
+            this.relationFlags = relationFlags;
+            this.nodeTags = nodeTags;
+        }
+
+        public boolean isBarrierEdge() {
+            return barrierEdge;
+        }
+
+        public IntsRef getRelationFlags() {
+            return relationFlags;
+        }
+
+        /**
+         * @return one map of node tags for each point of the edge
+         */
+        public List<Map<String, Object>> getNodeTags() {
+            return nodeTags;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A readable OSM change file (.osc or .osc.gz) like the ones of the OSM replication service, see
+ * https://wiki.openstreetmap.org/wiki/OsmChange
+ */
+public class OSMChangeFile implements Closeable {
+    public enum Action {CREATE, MODIFY, DELETE}
+
+    private final InputStream is;
+    private final XMLStreamReader xmlParser;
+    private Action action;
+
+    public OSMChangeFile(File file) throws IOException, XMLStreamException {
+        is = decode(file);
+        xmlParser = XMLInputFactory.newInstance().createXMLStreamReader(is, "UTF-8");
+        int event = xmlParser.next();
+        if (event != XMLStreamConstants.START_ELEMENT || !xmlParser.getLocalName().equalsIgnoreCase("osmChange"))
+            throw new IllegalArgumentException("File is not a valid OSM change stream: " + file);
+    }
+
+    private static InputStream decode(File file) throws IOException {
+        InputStream ips = new BufferedInputStream(new FileInputStream(file), 50000);
+        ips.mark(10);
+        byte[] header = new byte[2];
+        int read = ips.read(header);
+        ips.reset();
+        if (read == 2 && header[0] == 31 && header[1] == -117)
+            return new GZIPInputStream(ips, 50000);
+        return ips;
+    }
+
+    /**
+     * @return the next changed element or null at the end of the file. Use {@link #getAction()} to find out if it
+     * was created, modified or deleted.
+     */
+    public ReaderElement getNext() throws XMLStreamException {
+        while (xmlParser.hasNext()) {
+            int event = xmlParser.next();
+            if (event == XMLStreamConstants.END_ELEMENT && isActionElement(xmlParser.getLocalName())) {
+                action = null;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = xmlParser.getLocalName();
+                if (isActionElement(name)) {
+                    action = Action.valueOf(name.toUpperCase());
+                    continue;
+                }
+                String idStr = xmlParser.getAttributeValue(null, "id");
+                if (idStr == null)
+                    continue;
+                if (action == null)
+                    throw new IllegalStateException("OSM element " + name + " " + idStr + " is not part of a create, modify or delete block");
+                long id = Long.parseLong(idStr);
+                switch (name) {
+                    case "node":
+                        // deleted nodes do not necessarily have coordinates
+                        if (xmlParser.getAttributeValue(null, "lat") == null)
+                            return new ReaderNode(id, Double.NaN, Double.NaN);
+                        return OSMXMLHelper.createNode(id, xmlParser);
+                    case "way":
+                        return OSMXMLHelper.createWay(id, xmlParser);
+                    case "relation":
+                        return OSMXMLHelper.createRelation(id, xmlParser);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isActionElement(String name) {
+        return "create".equals(name) || "modify".equals(name) || "delete".equals(name);
+    }
+
+    /**
+     * @return the action of the element last returned by {@link #getNext()}
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xmlParser.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            is.close();
+        }
+    }
+}
@@ -20,10 +20,12 @@ package com.graphhopper.reader.osm;
 
 import com.carrotsearch.hppc.LongScatterSet;
 import com.carrotsearch.hppc.LongSet;
+import com.graphhopper.coll.DenseLongLongMap;
 import com.graphhopper.coll.GHLongLongBTree;
 import com.graphhopper.coll.LongLongMap;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.DAType;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
@@ -80,18 +82,38 @@ class OSMNodeData {
     private long nextArtificialOSMNodeId = -Long.MAX_VALUE;
 
     public OSMNodeData(PointAccess nodeAccess, Directory directory) {
-        // We use a b-tree that can store as many entries as there are longs. A tree is also more
-        // memory efficient, because there is no waste for empty entries, and it also avoids
-        // allocating big arrays when growing the size.
-        idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
+        this(nodeAccess, directory, "btree");
+    }
+
+    /**
+     * @param nodeIdMap the type of the maps that are used for the OSM node ids, see OSMReaderConfig.setNodeIdMap
+     */
+    public OSMNodeData(PointAccess nodeAccess, Directory directory, String nodeIdMap) {
+        idsByOsmNodeIds = createNodeIdMap(directory, nodeIdMap, "tmp_node_ids", 5, EMPTY_NODE);
         towerNodes = nodeAccess;
         pillarNodes = new PillarInfo(towerNodes.is3D(), directory);
 
-        nodeTagIndicesByOsmNodeIds = new GHLongLongBTree(200, 4, -1);
+        nodeTagIndicesByOsmNodeIds = createNodeIdMap(directory, nodeIdMap, "tmp_node_tag_indices", 4, -1);
         nodesToBeSplit = new LongScatterSet();
         nodeKVStorage = new KVStorage(directory, false).create(100);
     }
 
+    private static LongLongMap createNodeIdMap(Directory directory, String nodeIdMap, String name, int bytesPerValue, long emptyValue) {
+        switch (nodeIdMap) {
+            case "btree":
+                // We use a b-tree that can store as many entries as there are longs. A tree is also more
+                // memory efficient, because there is no waste for empty entries, and it also avoids
+                // allocating big arrays when growing the size.
+                return new GHLongLongBTree(200, bytesPerValue, emptyValue);
+            case "off_heap":
+                return new DenseLongLongMap(directory, name, DAType.OFF_HEAP, bytesPerValue, emptyValue);
+            case "mmap":
+                return new DenseLongLongMap(directory, name, DAType.MMAP, bytesPerValue, emptyValue);
+            default:
+                throw new IllegalArgumentException("Unknown node id map: " + nodeIdMap + ", use btree, off_heap or mmap");
+        }
+    }
+
     public boolean is3D() {
         return towerNodes.is3D();
     }
@@ -137,6 +159,14 @@ class OSMNodeData {
         return nodeTagIndicesByOsmNodeIds.getSize();
     }
 
+    /**
+     * @return the memory used to map the OSM node ids in MB. Depending on the type of the maps this memory is not part
+     * of the Java heap.
+     */
+    public int getNodeIdMapMemoryUsage() {
+        return idsByOsmNodeIds.getMemoryUsage() + nodeTagIndicesByOsmNodeIds.getMemoryUsage();
+    }
+
     /**
      * @return the number of nodes for which we store tags
      */
@@ -17,11 +17,11 @@
  */
 package com.graphhopper.reader.osm;
 
-import com.carrotsearch.hppc.IntIntMap;
-import com.carrotsearch.hppc.LongArrayList;
-import com.carrotsearch.hppc.LongHashSet;
-import com.carrotsearch.hppc.LongSet;
+import com.carrotsearch.hppc.*;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.IntIntCursor;
 import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
 import com.graphhopper.coll.GHLongLongHashMap;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
@@ -33,8 +33,10 @@ import com.graphhopper.reader.dem.EdgeSampling;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.routing.OSMReaderConfig;
 import com.graphhopper.routing.ev.Country;
-import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.ev.IntsRefEdgeIntAccess;
 import com.graphhopper.routing.ev.State;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.AreaIndex;
 import com.graphhopper.routing.util.CustomArea;
 import com.graphhopper.routing.util.FerrySpeedCalculator;
@@ -53,9 +55,13 @@ import com.graphhopper.util.shapes.GHPoint3D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.LongToIntFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -81,7 +87,6 @@ public class OSMReader {
 
     private final OSMReaderConfig config;
     private final BaseGraph baseGraph;
-    private final EdgeIntAccess edgeIntAccess;
     private final NodeAccess nodeAccess;
     private final TurnCostStorage turnCostStorage;
     private final OSMParsers osmParsers;
@@ -90,6 +95,7 @@ public class OSMReader {
     private ElevationProvider eleProvider = ElevationProvider.NOOP;
     private AreaIndex<CustomArea> areaIndex;
     private CountryRuleFactory countryRuleFactory = null;
+    private ImportProfiler importProfiler = ImportProfiler.NOOP;
     private File osmFile;
     private final RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker();
 
@@ -100,10 +106,16 @@ public class OSMReader {
     private GHLongLongHashMap osmWayIdToRelationFlagsMap = new GHLongLongHashMap(200, .5f);
     private WayToEdgesMap restrictedWaysToEdgesMap = new WayToEdgesMap();
     private List<ReaderRelation> restrictionRelations = new ArrayList<>();
+    // only used if the segments are processed by multiple threads, see addEdge
+    private ForkJoinPool wayProcessingPool;
+    private int nextEdgeId;
+    private List<PendingEdge> pendingEdges = new ArrayList<>();
+    private List<PendingEdge> processingEdges = emptyList();
+    private Future<?> processingFuture;
+    private OSMChangeData changeData;
 
     public OSMReader(BaseGraph baseGraph, OSMParsers osmParsers, OSMReaderConfig config) {
         this.baseGraph = baseGraph;
-        this.edgeIntAccess = baseGraph.createEdgeIntAccess();
         this.config = config;
         this.nodeAccess = baseGraph.getNodeAccess();
         this.osmParsers = osmParsers;
@@ -151,6 +163,23 @@ public class OSMReader {
         return this;
     }
 
+    /**
+     * Measures the passes of the {@link WaySegmentParser} and the creation of the turn restrictions as import stages.
+     */
+    public OSMReader setImportProfiler(ImportProfiler importProfiler) {
+        this.importProfiler = importProfiler;
+        return this;
+    }
+
+    /**
+     * If set the OSM data that is needed to update the edges with {@link #applyChanges} is stored during
+     * {@link #readGraph()}. Also required for applyChanges.
+     */
+    public OSMReader setChangeData(OSMChangeData changeData) {
+        this.changeData = changeData;
+        return this;
+    }
+
     public void readGraph() throws IOException {
         if (osmParsers == null)
             throw new IllegalStateException("Tag parsers were not set.");
@@ -164,22 +193,44 @@ public class OSMReader {
         if (!baseGraph.isInitialized())
             throw new IllegalStateException("BaseGraph must be initialize before we can read OSM");
 
-        WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory())
+        WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory(), config.getNodeIdMap())
                 .setElevationProvider(eleProvider)
                 .setWayFilter(this::acceptWay)
+                .setWayKeyFilter(this::isRelevantWayKey)
                 .setSplitNodeFilter(this::isBarrierNode)
                 .setWayPreprocessor(this::preprocessWay)
                 .setRelationPreprocessor(this::preprocessRelations)
                 .setRelationProcessor(this::processRelation)
                 .setEdgeHandler(this::addEdge)
                 .setWorkerThreads(config.getWorkerThreads())
+                .setImportProfiler(importProfiler)
                 .build();
-        waySegmentParser.readOSM(osmFile);
+        if (config.getWayProcessingThreads() > 1) {
+            wayProcessingPool = new ForkJoinPool(config.getWayProcessingThreads());
+            nextEdgeId = baseGraph.getEdges();
+        }
+        try {
+            waySegmentParser.readOSM(osmFile);
+            if (wayProcessingPool != null) {
+                if (!pendingEdges.isEmpty())
+                    flushPendingEdges();
+                insertProcessedEdges();
+            }
+        } finally {
+            if (wayProcessingPool != null)
+                wayProcessingPool.shutdownNow();
+            wayProcessingPool = null;
+        }
         osmDataDate = waySegmentParser.getTimeStamp();
         if (baseGraph.getNodes() == 0)
             throw new RuntimeException("Graph after reading OSM must not be empty");
         releaseEverythingExceptRestrictionData();
+        ImportProfiler.Stage stage = importProfiler.start("restrictions");
         addRestrictionsToGraph();
+        stage.stop();
+        if (changeData != null)
+            for (IntIntCursor c : getArtificialEdgesByEdges())
+                changeData.copyEdge(c.key, c.value);
         releaseRestrictionData();
         LOGGER.info("Finished reading OSM file: {}, nodes: {}, edges: {}, zero distance edges: {}",
                 osmFile.getAbsolutePath(), nf(baseGraph.getNodes()), nf(baseGraph.getEdges()), nf(zeroCounter));
@@ -192,9 +243,144 @@ public class OSMReader {
         return osmDataDate;
     }
 
+    /**
+     * Applies the given OSM change files to a graph that was read with change data, see {@link #setChangeData}. The
+     * edges of modified ways get new flags and key values calculated from the new way tags and the edges of deleted
+     * ways become inaccessible. The geometry and topology of the graph cannot be changed, so the files must not contain
+     * modified ways with new node lists, modified nodes or created or modified ways that would be added to the graph.
+     * These changes require a new import and are rejected before the graph is modified. Changes of relations are
+     * ignored.
+     *
+     * @return the flags of all changed edges before the first change
+     * @throws IllegalArgumentException if the change files contain changes of the geometry or topology
+     */
+    public IntObjectMap<IntsRef> applyChanges(List<File> changeFiles, IntEncodedValue osmWayIdEnc) throws IOException {
+        if (changeData == null)
+            throw new IllegalStateException("The change data of the import is required to apply OSM changes");
+
+        StopWatch sw = new StopWatch().start();
+        // the changes of all files are merged first, so the last change of every way wins and nothing is applied if
+        // one of the files cannot be applied
+        LongObjectMap<ReaderWay> modifiedWays = new LongObjectHashMap<>();
+        LongHashSet deletedWays = new LongHashSet();
+        LongHashSet modifiedNodes = new LongHashSet();
+        int ignoredElements = 0;
+        for (File changeFile : changeFiles) {
+            try (OSMChangeFile input = new OSMChangeFile(changeFile)) {
+                ReaderElement element;
+                while ((element = input.getNext()) != null) {
+                    if (element.getType() == ReaderElement.Type.NODE) {
+                        // created nodes can only become part of the graph by a changed way and deleted nodes must be
+                        // removed from their ways, both is detected below
+                        if (input.getAction() == OSMChangeFile.Action.MODIFY)
+                            modifiedNodes.add(element.getId());
+                        else
+                            ignoredElements++;
+                    } else if (element.getType() != ReaderElement.Type.WAY) {
+                        ignoredElements++;
+                    } else if (input.getAction() == OSMChangeFile.Action.DELETE || !acceptWay((ReaderWay) element)) {
+                        // ways that are no longer accepted are removed as well
+                        modifiedWays.remove(element.getId());
+                        deletedWays.add(element.getId());
+                    } else {
+                        deletedWays.remove(element.getId());
+                        // created ways are not part of the graph, so they are rejected below
+                        modifiedWays.put(element.getId(), (ReaderWay) element);
+                    }
+                }
+            } catch (XMLStreamException ex) {
+                throw new IOException("Could not read OSM change file " + changeFile.getAbsolutePath(), ex);
+            }
+        }
+
+        LongObjectMap<IntArrayList> edgesByWay = new LongObjectHashMap<>();
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        while (iter.next()) {
+            long wayId = iter.get(osmWayIdEnc);
+            if (modifiedWays.containsKey(wayId) || deletedWays.contains(wayId)) {
+                IntArrayList edges = edgesByWay.get(wayId);
+                if (edges == null)
+                    edgesByWay.put(wayId, edges = new IntArrayList());
+                edges.add(iter.getEdge());
+            }
+        }
+
+        int newWays = 0, changedGeometries = 0;
+        for (LongObjectCursor<ReaderWay> c : modifiedWays) {
+            IntArrayList edges = edgesByWay.get(c.key);
+            if (edges == null)
+                newWays++;
+            else if (!changeData.hasWayNodes(edges.get(0), c.value.getNodes()))
+                changedGeometries++;
+        }
+        // the OSM node IDs of the graph are not stored, so we do not know if a modified node is part of it
+        if (newWays > 0 || changedGeometries > 0 || !modifiedNodes.isEmpty())
+            throw new IllegalArgumentException("The OSM change files " + changeFiles + " change the geometry or topology of the graph, "
+                    + "which requires a new import. Created or newly accepted ways: " + nf(newWays) + ", ways with changed nodes: " + nf(changedGeometries)
+                    + ", modified nodes: " + nf(modifiedNodes.size()));
+
+        IntObjectMap<IntsRef> oldFlags = new IntObjectHashMap<>();
+        for (LongObjectCursor<IntArrayList> c : edgesByWay) {
+            ReaderWay way = modifiedWays.get(c.key);
+            if (way == null)
+                removeWayEdges(c.value, oldFlags);
+            else
+                updateWayEdges(way, c.value, oldFlags);
+        }
+        LOGGER.info("Applied OSM change files: {}, modified ways: {}, deleted ways: {}, deleted ways not found: {}, changed edges: {}, "
+                        + "ignored elements: {}, took: {}s", changeFiles, nf(modifiedWays.size()), nf(deletedWays.size()),
+                nf(modifiedWays.size() + deletedWays.size() - edgesByWay.size()), nf(oldFlags.size()), nf(ignoredElements), sw.stop().getSeconds());
+        return oldFlags;
+    }
+
+    private void updateWayEdges(ReaderWay way, IntArrayList edges, IntObjectMap<IntsRef> oldFlags) {
+        // the node tags of the OSM nodes are not available here, but the only key value that depends on them, the
+        // motorway junction name, is kept below
+        List<KVStorage.KeyValue> keyValues = createKeyValues(way, osmNodeId -> Collections.emptyMap());
+        boolean motorway = way.hasTag("highway", "motorway") || way.hasTag("highway", "motorway_link");
+        if (isCalculateWayDistance(way)) {
+            double distance = 0;
+            for (IntCursor c : edges)
+                distance += baseGraph.getEdgeIteratorState(c.value, Integer.MIN_VALUE).getDistance();
+            setWayDistanceTags(way, distance);
+        }
+
+        IntsRef relationFlags = osmParsers.createRelationFlags();
+        for (IntCursor c : edges) {
+            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(c.value, Integer.MIN_VALUE);
+            PointList pointList = edge.fetchWayGeometry(FetchMode.ALL);
+            OSMChangeData.EdgeData edgeData = changeData.getEdge(edge.getEdge(), pointList.size(), relationFlags);
+            ReaderWay edgeWay = copyWay(way);
+            if (edgeData.isBarrierEdge())
+                edgeWay.setTag("gh:barrier_edge", true);
+            setArtificialWayTags(pointList, edgeWay, edge.getDistance(), edgeData.getNodeTags());
+            IntsRef flags = new IntsRef(baseGraph.getIntsForFlags());
+            osmParsers.handleWayTags(edge.getEdge(), new IntsRefEdgeIntAccess(flags), edgeWay, edgeData.getRelationFlags());
+
+            List<KVStorage.KeyValue> edgeKeyValues = new ArrayList<>(keyValues);
+            if (motorway && config.isParseWayNames())
+                edge.getKeyValues().stream().filter(kv -> MOTORWAY_JUNCTION.equals(kv.getKey())).forEach(edgeKeyValues::add);
+            oldFlags.put(edge.getEdge(), edge.getFlags());
+            edge.setFlags(flags);
+            edge.setKeyValues(edgeKeyValues);
+        }
+    }
+
+    private void removeWayEdges(IntArrayList edges, IntObjectMap<IntsRef> oldFlags) {
+        for (IntCursor c : edges) {
+            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(c.value, Integer.MIN_VALUE);
+            oldFlags.put(edge.getEdge(), edge.getFlags());
+            // edges cannot be removed from the graph, but without flags they are not accessible for any vehicle
+            edge.setFlags(new IntsRef(baseGraph.getIntsForFlags()));
+            edge.setKeyValues(emptyList());
+        }
+    }
+
     /**
      * This method is called for each way during the first and second pass of the {@link WaySegmentParser}. All OSM
-     * ways that are not accepted here and all nodes that are not referenced by any such way will be ignored.
+     * ways that are not accepted here and all nodes that are not referenced by any such way will be ignored. Ways
+     * without a tag accepted by {@link #isRelevantWayKey} are skipped before this method is called, so a subclass that
+     * accepts more ways must override isRelevantWayKey as well.
      */
     protected boolean acceptWay(ReaderWay way) {
         // ignore broken geometry
@@ -208,6 +394,14 @@ public class OSMReader {
         return osmParsers.acceptWay(way);
     }
 
+    /**
+     * Ways that have no tag with a key accepted here are skipped already when reading the OSM file, so they are never
+     * passed to {@link #acceptWay}. Override this method as well when overriding acceptWay to accept other ways.
+     */
+    protected boolean isRelevantWayKey(String key) {
+        return osmParsers.isRelevantWayKey(key);
+    }
+
     /**
      * @return true if the given node should be duplicated to create an artificial edge. If the node turns out to be a
      * junction between different ways this will be ignored and no artificial edge will be created.
@@ -229,7 +423,9 @@ public class OSMReader {
 
     /**
      * This method is called during the second pass of {@link WaySegmentParser} and provides an entry point to enrich
-     * the given OSM way with additional tags before it is passed on to the tag parsers.
+     * the given OSM way with additional tags before it is passed on to the tag parsers. If
+     * {@link OSMReaderConfig#getWayProcessingThreads()} is larger than 1 this method is called concurrently for
+     * different segments.
      */
     protected void setArtificialWayTags(PointList pointList, ReaderWay way, double distance, List<Map<String, Object>> nodeTags) {
         way.setTag("node_tags", nodeTags);
@@ -305,6 +501,10 @@ public class OSMReader {
 
     /**
      * This method is called for each segment an OSM way is split into during the second pass of {@link WaySegmentParser}.
+     * If {@link OSMReaderConfig#getWayProcessingThreads()} is larger than 1 the segments are collected in batches: the
+     * geometry processing, {@link #setArtificialWayTags} and the tag parsers run on a thread pool while the next batch
+     * is read. Only the insertion into the graph happens in the calling thread, in the order of this method's calls,
+     * so the edge ids are the same as for a single thread.
      *
      * @param fromIndex a unique integer id for the first node of this segment
      * @param toIndex   a unique integer id for the last node of this segment
@@ -326,11 +526,67 @@ public class OSMReader {
         // to do some kind of elevation processing (bridge+tunnel interpolation in GraphHopper class, maybe this can
         // go together
 
-        if (pointList.is3D()) {
-            // sample points along long edges
-            if (config.getLongEdgeSamplingDistance() < Double.MAX_VALUE)
-                pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
+        // sample points along long edges. this is done here and not in processEdge, because the elevation provider
+        // is not thread-safe
+        if (pointList.is3D() && config.getLongEdgeSamplingDistance() < Double.MAX_VALUE)
+            pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
+
+        if (wayProcessingPool == null) {
+            PendingEdge edge = new PendingEdge(baseGraph.getEdges(), fromIndex, toIndex, pointList, way, nodeTags);
+            processEdge(edge);
+            insertEdge(edge);
+        } else {
+            // the way is modified for every segment (e.g. by setArtificialWayTags), so every segment needs its own copy
+            pendingEdges.add(new PendingEdge(nextEdgeId++, fromIndex, toIndex, pointList, copyWay(way), nodeTags));
+            if (pendingEdges.size() >= config.getWayProcessingBatchSize())
+                flushPendingEdges();
+        }
+    }
+
+    private static ReaderWay copyWay(ReaderWay way) {
+        ReaderWay wayCopy = new ReaderWay(way.getId());
+        wayCopy.setTags(way.getTags());
+        wayCopy.getNodes().addAll(way.getNodes());
+        return wayCopy;
+    }
+
+    /**
+     * Submits the pending edges to the thread pool and inserts the previous batch into the graph in the meantime.
+     */
+    private void flushPendingEdges() {
+        List<PendingEdge> batch = pendingEdges;
+        pendingEdges = new ArrayList<>();
+        Future<?> future = wayProcessingPool.submit(() -> batch.parallelStream().forEach(this::processEdge));
+        insertProcessedEdges();
+        processingEdges = batch;
+        processingFuture = future;
+    }
+
+    private void insertProcessedEdges() {
+        if (processingFuture == null)
+            return;
+        try {
+            processingFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not process edges", e.getCause());
+        }
+        for (PendingEdge edge : processingEdges)
+            insertEdge(edge);
+        processingEdges = emptyList();
+        processingFuture = null;
+    }
 
+    /**
+     * Calculates the geometry, distance and flags of the given edge. This does not modify the graph and can be called
+     * concurrently for different edges.
+     */
+    private void processEdge(PendingEdge pendingEdge) {
+        PointList pointList = pendingEdge.pointList;
+        ReaderWay way = pendingEdge.way;
+        if (pointList.is3D()) {
             // smooth the elevation before calculating the distance because the distance will be incorrect if calculated afterwards
             if (config.getElevationSmoothing().equals("ramer"))
                 EdgeElevationSmoothingRamer.smooth(pointList, config.getElevationSmoothingRamerMax());
@@ -348,7 +604,7 @@ public class OSMReader {
         if (distance < 0.001) {
             // As investigation shows often two paths should have crossed via one identical point
             // but end up in two very close points.
-            zeroCounter++;
+            pendingEdge.zeroDistance = true;
             distance = 0.001;
         }
 
@@ -366,10 +622,25 @@ public class OSMReader {
             distance = maxDistance;
         }
 
-        setArtificialWayTags(pointList, way, distance, nodeTags);
-        IntsRef relationFlags = getRelFlagsMap(way.getId());
-        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
-        osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        setArtificialWayTags(pointList, way, distance, pendingEdge.nodeTags);
+        IntsRef relationFlags = getRelFlags(way.getId(), osmParsers.createRelationFlags());
+        pendingEdge.relationFlags = relationFlags;
+        // the edge does not exist yet, so the tag parsers write into a separate IntsRef. The edge id is passed anyway
+        // as some parsers store additional information per edge
+        pendingEdge.flags = new IntsRef(baseGraph.getIntsForFlags());
+        osmParsers.handleWayTags(pendingEdge.edgeId, new IntsRefEdgeIntAccess(pendingEdge.flags), way, relationFlags);
+        pendingEdge.distance = distance;
+    }
+
+    private void insertEdge(PendingEdge pendingEdge) {
+        if (pendingEdge.zeroDistance)
+            zeroCounter++;
+        PointList pointList = pendingEdge.pointList;
+        ReaderWay way = pendingEdge.way;
+        EdgeIteratorState edge = baseGraph.edge(pendingEdge.from, pendingEdge.to).setDistance(pendingEdge.distance);
+        if (edge.getEdge() != pendingEdge.edgeId)
+            throw new IllegalStateException("Unexpected edge id " + edge.getEdge() + ", expected " + pendingEdge.edgeId + ", osm way " + way.getId());
+        edge.setFlags(pendingEdge.flags);
         List<KVStorage.KeyValue> list = way.getTag("key_values", Collections.emptyList());
         if (!list.isEmpty())
             edge.setKeyValues(list);
@@ -378,13 +649,15 @@ public class OSMReader {
         if (pointList.size() > 2) {
             // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
             // are equal to the tower node coordinates
-            checkCoordinates(fromIndex, pointList.get(0));
-            checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
+            checkCoordinates(pendingEdge.from, pointList.get(0));
+            checkCoordinates(pendingEdge.to, pointList.get(pointList.size() - 1));
             edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
         }
 
         checkDistance(edge);
         restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
+        if (changeData != null)
+            changeData.setEdge(edge.getEdge(), way.getNodes(), way.hasTag("gh:barrier_edge"), pendingEdge.relationFlags, pendingEdge.nodeTags);
     }
 
     private void checkCoordinates(int nodeIndex, GHPoint point) {
@@ -414,6 +687,15 @@ public class OSMReader {
      */
     protected void preprocessWay(ReaderWay way, WaySegmentParser.CoordinateSupplier coordinateSupplier,
                                  WaySegmentParser.NodeTagSupplier nodeTagSupplier) {
+        way.setTag("key_values", createKeyValues(way, nodeTagSupplier));
+
+        if (!isCalculateWayDistance(way))
+            return;
+
+        setWayDistanceTags(way, calcDistance(way, coordinateSupplier));
+    }
+
+    private List<KVStorage.KeyValue> createKeyValues(ReaderWay way, WaySegmentParser.NodeTagSupplier nodeTagSupplier) {
         List<KVStorage.KeyValue> list = new ArrayList<>();
         if (config.isParseWayNames()) {
             // http://wiki.openstreetmap.org/wiki/Key:name
@@ -475,12 +757,10 @@ public class OSMReader {
                 }
             }
 
-        way.setTag("key_values", list);
-
-        if (!isCalculateWayDistance(way))
-            return;
+        return list;
+    }
 
-        double distance = calcDistance(way, coordinateSupplier);
+    private void setWayDistanceTags(ReaderWay way, double distance) {
         if (Double.isNaN(distance)) {
             // Some nodes were missing, and we cannot determine the distance. This can happen when ways are only
             // included partially in an OSM extract. In this case we cannot calculate the speed either, so we return.
@@ -666,10 +946,14 @@ public class OSMReader {
     }
 
     IntsRef getRelFlagsMap(long osmId) {
+        return getRelFlags(osmId, tempRelFlags);
+    }
+
+    private IntsRef getRelFlags(long osmId, IntsRef relFlags) {
         long relFlagsAsLong = osmWayIdToRelationFlagsMap.get(osmId);
-        tempRelFlags.ints[0] = (int) relFlagsAsLong;
-        tempRelFlags.ints[1] = (int) (relFlagsAsLong >> 32);
-        return tempRelFlags;
+        relFlags.ints[0] = (int) relFlagsAsLong;
+        relFlags.ints[1] = (int) (relFlagsAsLong >> 32);
+        return relFlags;
     }
 
     void putRelFlagsMap(long osmId, IntsRef relFlags) {
@@ -677,6 +961,29 @@ public class OSMReader {
         osmWayIdToRelationFlagsMap.put(osmId, relFlagsAsLong);
     }
 
+    private static class PendingEdge {
+        final int edgeId;
+        final int from;
+        final int to;
+        final PointList pointList;
+        final ReaderWay way;
+        final List<Map<String, Object>> nodeTags;
+        // set by processEdge
+        double distance;
+        boolean zeroDistance;
+        IntsRef relationFlags;
+        IntsRef flags;
+
+        PendingEdge(int edgeId, int from, int to, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags) {
+            this.edgeId = edgeId;
+            this.from = from;
+            this.to = to;
+            this.pointList = pointList;
+            this.way = way;
+            this.nodeTags = nodeTags;
+        }
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
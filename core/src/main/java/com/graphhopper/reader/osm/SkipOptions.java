@@ -18,19 +18,31 @@
 
 package com.graphhopper.reader.osm;
 
+import java.util.function.Predicate;
+
 public class SkipOptions {
     private final boolean skipNodes;
     private final boolean skipWays;
     private final boolean skipRelations;
+    private final Predicate<String> wayKeyFilter;
 
     public static SkipOptions none() {
         return new SkipOptions(false, false, false);
     }
 
     public SkipOptions(boolean skipNodes, boolean skipWays, boolean skipRelations) {
+        this(skipNodes, skipWays, skipRelations, null);
+    }
+
+    /**
+     * @param wayKeyFilter ways that have no tag with a key accepted by this filter are skipped before their tags and
+     *                     nodes are decoded, or null to keep all ways
+     */
+    public SkipOptions(boolean skipNodes, boolean skipWays, boolean skipRelations, Predicate<String> wayKeyFilter) {
         this.skipNodes = skipNodes;
         this.skipWays = skipWays;
         this.skipRelations = skipRelations;
+        this.wayKeyFilter = wayKeyFilter;
     }
 
     public boolean isSkipNodes() {
@@ -44,4 +56,8 @@ public class SkipOptions {
     public boolean isSkipRelations() {
         return skipRelations;
     }
+
+    public Predicate<String> getWayKeyFilter() {
+        return wayKeyFilter;
+    }
 }
@@ -26,6 +26,7 @@ import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.Helper;
+import com.graphhopper.util.ImportProfiler;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.StopWatch;
@@ -63,10 +64,13 @@ import static com.graphhopper.util.Helper.nf;
  */
 public class WaySegmentParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(WaySegmentParser.class);
+    // the number of nodes for which the elevation provider can load the tiles in advance
+    private static final int ELEVATION_PREFETCH_BATCH_SIZE = 100_000;
     private static final Set<String> INCLUDE_IF_NODE_TAGS = new HashSet<>(Arrays.asList("barrier", "highway", "railway", "crossing", "ford"));
 
     private ElevationProvider elevationProvider = ElevationProvider.NOOP;
     private Predicate<ReaderWay> wayFilter = way -> true;
+    private Predicate<String> wayKeyFilter;
     private Predicate<ReaderNode> splitNodeFilter = node -> false;
     private WayPreprocessor wayPreprocessor = (way, coordinateSupplier, nodeTagSupplier) -> {
     };
@@ -77,6 +81,10 @@ public class WaySegmentParser {
     private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags) ->
             System.out.println("edge " + from + "->" + to + " (" + pointList.size() + " points)");
     private int workerThreads = 2;
+    private ImportProfiler importProfiler = ImportProfiler.NOOP;
+    // only set if the elevation lookups are profiled
+    private ImportProfiler.Counter elevationCounter;
+    private ImportProfiler.Counter elevationPrefetchCounter;
 
     private final OSMNodeData nodeData;
     private Date timestamp;
@@ -95,16 +103,25 @@ public class WaySegmentParser {
         LOGGER.info("Start reading OSM file: '" + osmFile + "'");
         LOGGER.info("pass1 - start");
         StopWatch sw1 = StopWatch.started();
-        readOSM(osmFile, new Pass1Handler(), new SkipOptions(true, false, false));
+        ImportProfiler.Stage stage1 = importProfiler.start("pass1");
+        readOSM(osmFile, new Pass1Handler(), new SkipOptions(true, false, false, wayKeyFilter));
+        stage1.stop();
         LOGGER.info("pass1 - finished, took: {}", sw1.stop().getTimeString());
 
         long nodes = nodeData.getNodeCount();
 
-        LOGGER.info("Creating graph. Node count (pillar+tower): " + nodes + ", " + Helper.getMemInfo());
+        LOGGER.info("Creating graph. Node count (pillar+tower): " + nodes + ", node id maps: "
+                + nodeData.getNodeIdMapMemoryUsage() + "MB, " + Helper.getMemInfo());
 
         LOGGER.info("pass2 - start");
         StopWatch sw2 = new StopWatch().start();
-        readOSM(osmFile, new Pass2Handler(), SkipOptions.none());
+        if (importProfiler.isEnabled() && elevationProvider != ElevationProvider.NOOP) {
+            elevationCounter = importProfiler.getCounter("elevation");
+            elevationPrefetchCounter = importProfiler.getCounter("elevation_prefetch");
+        }
+        ImportProfiler.Stage stage2 = importProfiler.start("pass2");
+        readOSM(osmFile, new Pass2Handler(), new SkipOptions(false, false, false, wayKeyFilter));
+        stage2.stop();
         LOGGER.info("pass2 - finished, took: {}", sw2.stop().getTimeString());
 
         nodeData.release();
@@ -190,6 +207,7 @@ public class WaySegmentParser {
         private long acceptedNodes = 0;
         private long ignoredSplitNodes = 0;
         private long wayCounter = 0;
+        private final List<ReaderNode> pendingNodes = new ArrayList<>();
 
         @Override
         public void handleNode(ReaderNode node) {
@@ -206,7 +224,51 @@ public class WaySegmentParser {
                 LOGGER.info("pass2 - processed nodes: " + nf(nodeCounter) + ", accepted nodes: " + nf(acceptedNodes) +
                         ", " + Helper.getMemInfo());
 
-            long nodeType = nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(), () -> elevationProvider.getEle(node));
+            if (elevationProvider.canPrefetch()) {
+                pendingNodes.add(node);
+                if (pendingNodes.size() >= ELEVATION_PREFETCH_BATCH_SIZE)
+                    processPendingNodes();
+            } else {
+                processNode(node);
+            }
+        }
+
+        /**
+         * Lets the elevation provider load the elevation data of the pending nodes at once and processes them.
+         */
+        private void processPendingNodes() {
+            if (pendingNodes.isEmpty())
+                return;
+            PointList points = new PointList(pendingNodes.size(), false);
+            for (ReaderNode node : pendingNodes)
+                // only the nodes of accepted ways need an elevation
+                if (nodeData.getId(node.getId()) != EMPTY_NODE)
+                    points.add(node.getLat(), node.getLon());
+            if (elevationPrefetchCounter == null) {
+                elevationProvider.prefetch(points);
+            } else {
+                long nanos = System.nanoTime();
+                long bytes = ImportProfiler.getAllocatedBytes();
+                elevationProvider.prefetch(points);
+                elevationPrefetchCounter.add(System.nanoTime() - nanos, ImportProfiler.getAllocatedBytes() - bytes);
+            }
+            for (ReaderNode node : pendingNodes)
+                processNode(node);
+            pendingNodes.clear();
+        }
+
+        private double getElevation(ReaderNode node) {
+            if (elevationCounter == null)
+                return elevationProvider.getEle(node);
+            long nanos = System.nanoTime();
+            long bytes = ImportProfiler.getAllocatedBytes();
+            double ele = elevationProvider.getEle(node);
+            elevationCounter.add(System.nanoTime() - nanos, ImportProfiler.getAllocatedBytes() - bytes);
+            return ele;
+        }
+
+        private void processNode(ReaderNode node) {
+            long nodeType = nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(), () -> getElevation(node));
             if (nodeType == EMPTY_NODE)
                 return;
 
@@ -237,6 +299,7 @@ public class WaySegmentParser {
 
         @Override
         public void handleWay(ReaderWay way) {
+            processPendingNodes();
             if (!handledWays) {
                 LOGGER.info("pass2 - start reading OSM ways");
                 handledWays = true;
@@ -372,6 +435,7 @@ public class WaySegmentParser {
 
         @Override
         public void handleRelation(ReaderRelation relation) {
+            processPendingNodes();
             if (!handledRelations) {
                 LOGGER.info("pass2 - start reading OSM relations");
                 handledRelations = true;
@@ -382,6 +446,7 @@ public class WaySegmentParser {
 
         @Override
         public void onFinish() {
+            processPendingNodes();
             LOGGER.info("pass2 - finished, processed ways: {}, way nodes: {}, nodes with tags: {}, node tag capacity: {}, ignored barriers at junctions: {}",
                     nf(wayCounter), nf(acceptedNodes), nf(nodeData.getTaggedNodeCount()), nf(nodeData.getNodeTagCapacity()), nf(ignoredSplitNodes));
         }
@@ -419,7 +484,16 @@ public class WaySegmentParser {
          * @param directory   the directory to be used to store temporary data
          */
         public Builder(PointAccess pointAccess, Directory directory) {
-            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory));
+            this(pointAccess, directory, "btree");
+        }
+
+        /**
+         * @param pointAccess used to store tower node coordinates while parsing the ways
+         * @param directory   the directory to be used to store temporary data
+         * @param nodeIdMap   the type of the maps used for the OSM node ids: btree, off_heap or mmap
+         */
+        public Builder(PointAccess pointAccess, Directory directory, String nodeIdMap) {
+            waySegmentParser = new WaySegmentParser(new OSMNodeData(pointAccess, directory, nodeIdMap));
         }
 
         /**
@@ -438,6 +512,16 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param wayKeyFilter optional filter for the tag keys of the OSM ways. Ways that have no tag with a key accepted
+         *                     by it are skipped before their tags are decoded, so the wayFilter must reject all of them
+         *                     anyway. This only speeds up the reading of PBF files.
+         */
+        public Builder setWayKeyFilter(Predicate<String> wayKeyFilter) {
+            waySegmentParser.wayKeyFilter = wayKeyFilter;
+            return this;
+        }
+
         /**
          * @param splitNodeFilter return true if the given OSM node should be duplicated to create an artificial edge
          */
@@ -486,6 +570,14 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param importProfiler measures the two passes as import stages and the elevation lookups of the second pass
+         */
+        public Builder setImportProfiler(ImportProfiler importProfiler) {
+            waySegmentParser.importProfiler = importProfiler;
+            return this;
+        }
+
         public WaySegmentParser build() {
             return waySegmentParser;
         }
@@ -1,7 +1,8 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
-import com.carrotsearch.hppc.LongIndexedContainer;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
@@ -10,13 +11,16 @@ import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.osm.OSMFileHeader;
 import com.graphhopper.reader.osm.SkipOptions;
 import com.graphhopper.util.Helper;
-import org.openstreetmap.osmosis.osmbinary.Fileformat;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -29,12 +33,23 @@ import java.util.zip.Inflater;
  */
 public class PbfBlobDecoder implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(PbfBlobDecoder.class);
-    private final boolean checkData = false;
+    // The decoders run in a pool of worker threads. Each thread reuses its inflater and the buffer for the inflated
+    // data, which is only used until the elements of the blob are created.
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<byte[][]> INFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[1][]);
+    private static final byte RELEVANT = 1;
+    private static final byte IRRELEVANT = 2;
     private final String blobType;
     private final byte[] rawBlob;
     private final PbfBlobDecoderListener listener;
     private List<ReaderElement> decodedEntities;
     private final SkipOptions skipOptions;
+    private byte[] blobData;
+    private int blobOffset;
+    private int blobLength;
+    private byte[] keyRelevance;
+    private PbfWireReader groupReader, elementReader;
+    private PbfWireReader idReader, latReader, lonReader, keysReader, valsReader, refsReader, rolesReader, typesReader;
 
     /**
      * Creates a new instance.
@@ -51,34 +66,58 @@ public class PbfBlobDecoder implements Runnable {
         this.skipOptions = skipOptions;
     }
 
-    private byte[] readBlobContent() throws IOException {
-        Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
-        byte[] blobData;
+    private void readBlobContent() {
+        PbfWireReader reader = new PbfWireReader(rawBlob, 0, rawBlob.length);
+        int rawOffset = -1, rawLength = 0, zlibOffset = -1, zlibLength = 0, rawSize = 0;
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            int field = PbfWireReader.fieldNumber(key);
+            if (field == 2) {
+                rawSize = reader.readVarint32();
+            } else if ((field == 1 || field == 3) && PbfWireReader.wireType(key) == PbfWireReader.LENGTH_DELIMITED) {
+                int length = reader.readLength();
+                if (field == 1) {
+                    rawOffset = reader.getPosition();
+                    rawLength = length;
+                } else {
+                    zlibOffset = reader.getPosition();
+                    zlibLength = length;
+                }
+                reader.skip(length);
+            } else {
+                reader.skipField(key);
+            }
+        }
 
-        if (blob.hasRaw()) {
-            blobData = blob.getRaw().toByteArray();
-        } else if (blob.hasZlibData()) {
-            Inflater inflater = new Inflater();
-            inflater.setInput(blob.getZlibData().toByteArray());
-            blobData = new byte[blob.getRawSize()];
+        if (rawOffset >= 0) {
+            blobData = rawBlob;
+            blobOffset = rawOffset;
+            blobLength = rawLength;
+        } else if (zlibOffset >= 0) {
+            byte[][] buffer = INFLATE_BUFFER.get();
+            if (buffer[0] == null || buffer[0].length < rawSize)
+                buffer[0] = new byte[rawSize];
+            Inflater inflater = INFLATER.get();
+            inflater.reset();
+            inflater.setInput(rawBlob, zlibOffset, zlibLength);
             try {
-                inflater.inflate(blobData);
+                inflater.inflate(buffer[0], 0, rawSize);
             } catch (DataFormatException e) {
                 throw new RuntimeException("Unable to decompress PBF blob.", e);
             }
             if (!inflater.finished()) {
                 throw new RuntimeException("PBF blob contains incomplete compressed data.");
             }
-            inflater.end();
+            blobData = buffer[0];
+            blobOffset = 0;
+            blobLength = rawSize;
         } else {
             throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
         }
-
-        return blobData;
     }
 
-    private void processOsmHeader(byte[] data) throws InvalidProtocolBufferException {
-        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
+    private void processOsmHeader() throws InvalidProtocolBufferException {
+        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(ByteBuffer.wrap(blobData, blobOffset, blobLength));
 
         // Build the list of active and unsupported features in the file.
         List<String> supportedFeatures = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
@@ -119,235 +158,324 @@ public class PbfBlobDecoder implements Runnable {
          */
     }
 
-    private Map<String, Object> buildTags(List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder) {
-
-        // Ensure parallel lists are of equal size.
-        if (checkData) {
-            if (keys.size() != values.size()) {
-                throw new RuntimeException("Number of tag keys (" + keys.size() + ") and tag values ("
-                        + values.size() + ") don't match");
+    private void processOsmPrimitives() {
+        PbfWireReader reader = new PbfWireReader(blobData, blobOffset, blobLength);
+        IntArrayList stringOffsets = new IntArrayList();
+        IntArrayList stringLengths = new IntArrayList();
+        IntArrayList groupOffsets = new IntArrayList();
+        IntArrayList groupLengths = new IntArrayList();
+        // the defaults of the PrimitiveBlock message
+        int granularity = 100;
+        int dateGranularity = 1000;
+        long latOffset = 0;
+        long lonOffset = 0;
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            switch (PbfWireReader.fieldNumber(key)) {
+                case 1: {
+                    int length = reader.readLength();
+                    PbfWireReader stringTable = new PbfWireReader(blobData, reader.getPosition(), length);
+                    reader.skip(length);
+                    while (stringTable.hasNext()) {
+                        int stringKey = stringTable.readKey();
+                        if (PbfWireReader.fieldNumber(stringKey) != 1) {
+                            stringTable.skipField(stringKey);
+                            continue;
+                        }
+                        int stringLength = stringTable.readLength();
+                        stringOffsets.add(stringTable.getPosition());
+                        stringLengths.add(stringLength);
+                        stringTable.skip(stringLength);
+                    }
+                    break;
+                }
+                case 2: {
+                    int length = reader.readLength();
+                    groupOffsets.add(reader.getPosition());
+                    groupLengths.add(length);
+                    reader.skip(length);
+                    break;
+                }
+                case 17:
+                    granularity = reader.readVarint32();
+                    break;
+                case 18:
+                    dateGranularity = reader.readVarint32();
+                    break;
+                case 19:
+                    latOffset = reader.readVarint64();
+                    break;
+                case 20:
+                    lonOffset = reader.readVarint64();
+                    break;
+                default:
+                    reader.skipField(key);
             }
         }
 
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext()) {
-            Map<String, Object> tags = new HashMap<>(keys.size());
-            while (keyIterator.hasNext()) {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
-                tags.put(key, value);
+        PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(blobData, stringOffsets.buffer, stringLengths.buffer,
+                stringOffsets.size(), granularity, latOffset, lonOffset, dateGranularity);
+        if (skipOptions.getWayKeyFilter() != null)
+            keyRelevance = new byte[stringOffsets.size()];
+        initReaders();
+        for (int i = 0; i < groupOffsets.size(); i++) {
+            processPrimitiveGroup(groupReader.reset(groupOffsets.get(i), groupLengths.get(i)), fieldDecoder);
+        }
+    }
+
+    private void initReaders() {
+        groupReader = new PbfWireReader(blobData, 0, 0);
+        elementReader = new PbfWireReader(blobData, 0, 0);
+        idReader = new PbfWireReader(blobData, 0, 0);
+        latReader = new PbfWireReader(blobData, 0, 0);
+        lonReader = new PbfWireReader(blobData, 0, 0);
+        keysReader = new PbfWireReader(blobData, 0, 0);
+        valsReader = new PbfWireReader(blobData, 0, 0);
+        refsReader = new PbfWireReader(blobData, 0, 0);
+        rolesReader = new PbfWireReader(blobData, 0, 0);
+        typesReader = new PbfWireReader(blobData, 0, 0);
+    }
+
+    /**
+     * The elements of the group are skipped without decoding them if they are not required according to the skip
+     * options. Usually a group contains only one type of elements.
+     */
+    private void processPrimitiveGroup(PbfWireReader reader, PbfFieldDecoder fieldDecoder) {
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            int field = PbfWireReader.fieldNumber(key);
+            if (field < 1 || field > 4 || PbfWireReader.wireType(key) != PbfWireReader.LENGTH_DELIMITED) {
+                reader.skipField(key);
+                continue;
             }
-            return tags;
+            int length = reader.readLength();
+            int offset = reader.getPosition();
+            reader.skip(length);
+            if (field == 1 && !skipOptions.isSkipNodes())
+                processNode(elementReader.reset(offset, length), fieldDecoder);
+            else if (field == 2 && !skipOptions.isSkipNodes())
+                processDenseNodes(elementReader.reset(offset, length), fieldDecoder);
+            else if (field == 3 && !skipOptions.isSkipWays())
+                processWay(elementReader.reset(offset, length), fieldDecoder);
+            else if (field == 4 && !skipOptions.isSkipRelations())
+                processRelation(elementReader.reset(offset, length), fieldDecoder);
         }
-        return null;
     }
 
-    private void processNodes(List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder) {
-        for (Osmformat.Node node : nodes) {
-            Map<String, Object> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
+    /**
+     * Points the given reader to the content of a packed repeated field. All PBF writers use the packed encoding for
+     * the repeated fields of the elements.
+     */
+    private static void readPacked(PbfWireReader reader, PbfWireReader packedReader) {
+        int length = reader.readLength();
+        packedReader.reset(reader.getPosition(), length);
+        reader.skip(length);
+    }
 
-            ReaderNode osmNode = new ReaderNode(node.getId(), fieldDecoder.decodeLatitude(node
-                    .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
-            osmNode.setTags(tags);
+    private void resetFieldReaders() {
+        idReader.reset(0, 0);
+        latReader.reset(0, 0);
+        lonReader.reset(0, 0);
+        keysReader.reset(0, 0);
+        valsReader.reset(0, 0);
+        refsReader.reset(0, 0);
+        rolesReader.reset(0, 0);
+        typesReader.reset(0, 0);
+    }
 
-            // Add the bound object to the results.
-            decodedEntities.add(osmNode);
+    private void setTags(ReaderElement element, PbfFieldDecoder fieldDecoder) {
+        while (keysReader.hasNext()) {
+            int keyId = fieldDecoder.decodeKeyId(keysReader.readVarint32());
+            element.setTag(keyId, fieldDecoder.decodeString(valsReader.readVarint32()));
         }
     }
 
-    private void processNodes(Osmformat.DenseNodes nodes, PbfFieldDecoder fieldDecoder) {
-        List<Long> idList = nodes.getIdList();
-        List<Long> latList = nodes.getLatList();
-        List<Long> lonList = nodes.getLonList();
-
-        // Ensure parallel lists are of equal size.
-        if (checkData) {
-            if ((idList.size() != latList.size()) || (idList.size() != lonList.size())) {
-                throw new RuntimeException("Number of ids (" + idList.size() + "), latitudes (" + latList.size()
-                        + "), and longitudes (" + lonList.size() + ") don't match");
+    private void processNode(PbfWireReader reader, PbfFieldDecoder fieldDecoder) {
+        resetFieldReaders();
+        long id = 0, latitude = 0, longitude = 0;
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            switch (PbfWireReader.fieldNumber(key)) {
+                case 1:
+                    id = reader.readSInt64();
+                    break;
+                case 2:
+                    readPacked(reader, keysReader);
+                    break;
+                case 3:
+                    readPacked(reader, valsReader);
+                    break;
+                case 8:
+                    latitude = reader.readSInt64();
+                    break;
+                case 9:
+                    longitude = reader.readSInt64();
+                    break;
+                default:
+                    reader.skipField(key);
             }
         }
+        ReaderNode node = new ReaderNode(id, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
+        setTags(node, fieldDecoder);
+        decodedEntities.add(node);
+    }
 
-        Iterator<Integer> keysValuesIterator = nodes.getKeysValsList().iterator();
+    private void processDenseNodes(PbfWireReader reader, PbfFieldDecoder fieldDecoder) {
+        resetFieldReaders();
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            switch (PbfWireReader.fieldNumber(key)) {
+                case 1:
+                    readPacked(reader, idReader);
+                    break;
+                case 8:
+                    readPacked(reader, latReader);
+                    break;
+                case 9:
+                    readPacked(reader, lonReader);
+                    break;
+                case 10:
+                    readPacked(reader, keysReader);
+                    break;
+                default:
+                    // this includes the dense info which we do not need
+                    reader.skipField(key);
+            }
+        }
 
-        /*
-         Osmformat.DenseInfo denseInfo;
-         if (nodes.hasDenseinfo()) {
-         denseInfo = nodes.getDenseinfo();
-         } else {
-         denseInfo = null;
-         }
-         */
+        // The ids and coordinates are delta encoded. The key and value string indexes of all nodes are sequential in
+        // the same array and the tags of each node are delimited by an index with a value of 0.
         long nodeId = 0;
         long latitude = 0;
         long longitude = 0;
-//		int userId = 0;
-//		int userSid = 0;
-//		long timestamp = 0;
-//		long changesetId = 0;
-        for (int i = 0; i < idList.size(); i++) {
-            // Delta decode node fields.
-            nodeId += idList.get(i);
-            latitude += latList.get(i);
-            longitude += lonList.get(i);
-
-            /*
-             if (denseInfo != null) {
-             // Delta decode dense info fields.
-             userId += denseInfo.getUid(i);
-             userSid += denseInfo.getUserSid(i);
-             timestamp += denseInfo.getTimestamp(i);
-             changesetId += denseInfo.getChangeset(i);
-
-             // Build the user, but only if one exists.
-             OsmUser user;
-             if (userId >= 0) {
-             user = new OsmUser(userId, fieldDecoder.decodeString(userSid));
-             } else {
-             user = OsmUser.NONE;
-             }
-
-             entityData = new CommonEntityData(nodeId, denseInfo.getVersion(i),
-             fieldDecoder.decodeTimestamp(timestamp), user, changesetId);
-             } else {
-             entityData = new CommonEntityData(nodeId, EMPTY_VERSION, EMPTY_TIMESTAMP, OsmUser.NONE,
-             EMPTY_CHANGESET);
-             }
-             */
-            // Build the tags. The key and value string indexes are sequential
-            // in the same PBF array. Each set of tags is delimited by an index
-            // with a value of 0.
-            Map<String, Object> tags = null;
-            while (keysValuesIterator.hasNext()) {
-                int keyIndex = keysValuesIterator.next();
-                if (keyIndex == 0) {
+        while (idReader.hasNext()) {
+            nodeId += idReader.readSInt64();
+            latitude += latReader.readSInt64();
+            longitude += lonReader.readSInt64();
+            ReaderNode node = new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
+            while (keysReader.hasNext()) {
+                int keyIndex = keysReader.readVarint32();
+                if (keyIndex == 0)
                     break;
-                }
-                if (checkData) {
-                    if (!keysValuesIterator.hasNext()) {
-                        throw new RuntimeException(
-                                "The PBF DenseInfo keys/values list contains a key with no corresponding value.");
-                    }
-                }
-                int valueIndex = keysValuesIterator.next();
-
-                if (tags == null) {
-                    // divide by 2 as key&value, multiple by 2 because of the better approximation
-                    tags = new HashMap<>(Math.max(3, 2 * (nodes.getKeysValsList().size() / 2) / idList.size()));
-                }
-
-                tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+                int keyId = fieldDecoder.decodeKeyId(keyIndex);
+                node.setTag(keyId, fieldDecoder.decodeString(keysReader.readVarint32()));
             }
-
-            ReaderNode node = new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
-            node.setTags(tags);
-
-            // Add the bound object to the results.
             decodedEntities.add(node);
         }
     }
 
-    private void processWays(List<Osmformat.Way> ways, PbfFieldDecoder fieldDecoder) {
-        for (Osmformat.Way way : ways) {
-            Map<String, Object> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
-            ReaderWay osmWay = new ReaderWay(way.getId());
-            osmWay.setTags(tags);
-
-            // Build up the list of way nodes for the way. The node ids are
-            // delta encoded meaning that each id is stored as a delta against
-            // the previous one.
-            long nodeId = 0;
-            LongIndexedContainer wayNodes = osmWay.getNodes();
-            for (long nodeIdOffset : way.getRefsList()) {
-                nodeId += nodeIdOffset;
-                wayNodes.add(nodeId);
+    private void processWay(PbfWireReader reader, PbfFieldDecoder fieldDecoder) {
+        resetFieldReaders();
+        long id = 0;
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            switch (PbfWireReader.fieldNumber(key)) {
+                case 1:
+                    id = reader.readVarint64();
+                    break;
+                case 2:
+                    readPacked(reader, keysReader);
+                    break;
+                case 3:
+                    readPacked(reader, valsReader);
+                    break;
+                case 8:
+                    readPacked(reader, refsReader);
+                    break;
+                default:
+                    reader.skipField(key);
             }
-
-            decodedEntities.add(osmWay);
         }
+        if (keyRelevance != null && !hasRelevantKey(fieldDecoder))
+            return;
+
+        ReaderWay way = new ReaderWay(id);
+        setTags(way, fieldDecoder);
+        // the node ids are delta encoded, i.e. each id is stored as a delta against the previous one
+        LongArrayList wayNodes = way.getNodes();
+        wayNodes.ensureCapacity(refsReader.countVarints());
+        long nodeId = 0;
+        while (refsReader.hasNext()) {
+            nodeId += refsReader.readSInt64();
+            wayNodes.add(nodeId);
+        }
+        decodedEntities.add(way);
     }
 
-    private void buildRelationMembers(ReaderRelation relation,
-                                      List<Long> memberIds, List<Integer> memberRoles, List<Osmformat.Relation.MemberType> memberTypes,
-                                      PbfFieldDecoder fieldDecoder) {
+    /**
+     * Checks the keys of the current way against the way key filter of the skip options. The result is cached for
+     * every string of the block, so each key is passed to the filter only once.
+     */
+    private boolean hasRelevantKey(PbfFieldDecoder fieldDecoder) {
+        int keysStart = keysReader.getPosition();
+        boolean relevant = false;
+        while (keysReader.hasNext() && !relevant) {
+            int keyIndex = keysReader.readVarint32();
+            if (keyRelevance[keyIndex] == 0)
+                keyRelevance[keyIndex] = skipOptions.getWayKeyFilter().test(fieldDecoder.decodeString(keyIndex)) ? RELEVANT : IRRELEVANT;
+            relevant = keyRelevance[keyIndex] == RELEVANT;
+        }
+        keysReader.reset(keysStart, keysReader.getLimit() - keysStart);
+        return relevant;
+    }
 
-        // Ensure parallel lists are of equal size.
-        if (checkData) {
-            if ((memberIds.size() != memberRoles.size()) || (memberIds.size() != memberTypes.size())) {
-                throw new RuntimeException("Number of member ids (" + memberIds.size() + "), member roles ("
-                        + memberRoles.size() + "), and member types (" + memberTypes.size() + ") don't match");
+    private void processRelation(PbfWireReader reader, PbfFieldDecoder fieldDecoder) {
+        resetFieldReaders();
+        long id = 0;
+        while (reader.hasNext()) {
+            int key = reader.readKey();
+            switch (PbfWireReader.fieldNumber(key)) {
+                case 1:
+                    id = reader.readVarint64();
+                    break;
+                case 2:
+                    readPacked(reader, keysReader);
+                    break;
+                case 3:
+                    readPacked(reader, valsReader);
+                    break;
+                case 8:
+                    readPacked(reader, rolesReader);
+                    break;
+                case 9:
+                    readPacked(reader, refsReader);
+                    break;
+                case 10:
+                    readPacked(reader, typesReader);
+                    break;
+                default:
+                    reader.skipField(key);
             }
         }
 
-        Iterator<Long> memberIdIterator = memberIds.iterator();
-        Iterator<Integer> memberRoleIterator = memberRoles.iterator();
-        Iterator<Osmformat.Relation.MemberType> memberTypeIterator = memberTypes.iterator();
-
-        // Build up the list of relation members for the way. The member ids are
-        // delta encoded meaning that each id is stored as a delta against
-        // the previous one.
+        ReaderRelation relation = new ReaderRelation(id);
+        setTags(relation, fieldDecoder);
+        // the member ids are delta encoded as well
         long refId = 0;
-        while (memberIdIterator.hasNext()) {
-            Osmformat.Relation.MemberType memberType = memberTypeIterator.next();
-            refId += memberIdIterator.next();
-
+        while (refsReader.hasNext()) {
+            refId += refsReader.readSInt64();
+            int memberType = typesReader.readVarint32();
             ReaderElement.Type entityType = ReaderElement.Type.NODE;
-            if (memberType == Osmformat.Relation.MemberType.WAY) {
+            if (memberType == Osmformat.Relation.MemberType.WAY_VALUE) {
                 entityType = ReaderElement.Type.WAY;
-            } else if (memberType == Osmformat.Relation.MemberType.RELATION) {
+            } else if (memberType == Osmformat.Relation.MemberType.RELATION_VALUE) {
                 entityType = ReaderElement.Type.RELATION;
             }
-            if (checkData) {
-                if (entityType == ReaderElement.Type.NODE && memberType != Osmformat.Relation.MemberType.NODE) {
-                    throw new RuntimeException("Member type of " + memberType + " is not supported.");
-                }
-            }
-
-            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(memberRoleIterator.next()));
-            relation.add(member);
-        }
-    }
-
-    private void processRelations(List<Osmformat.Relation> relations, PbfFieldDecoder fieldDecoder) {
-        for (Osmformat.Relation relation : relations) {
-            Map<String, Object> tags = buildTags(relation.getKeysList(), relation.getValsList(), fieldDecoder);
-
-            ReaderRelation osmRelation = new ReaderRelation(relation.getId());
-            osmRelation.setTags(tags);
-
-            buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
-                    relation.getTypesList(), fieldDecoder);
-
-            // Add the bound object to the results.
-            decodedEntities.add(osmRelation);
-        }
-    }
-
-    private void processOsmPrimitives(byte[] data) throws InvalidProtocolBufferException {
-        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
-        PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
-
-        for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList()) {
-            if (!skipOptions.isSkipNodes()) {
-                processNodes(primitiveGroup.getDense(), fieldDecoder);
-                processNodes(primitiveGroup.getNodesList(), fieldDecoder);
-            }
-            if (!skipOptions.isSkipWays())
-                processWays(primitiveGroup.getWaysList(), fieldDecoder);
-            if (!skipOptions.isSkipRelations())
-                processRelations(primitiveGroup.getRelationsList(), fieldDecoder);
+            relation.add(new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(rolesReader.readVarint32())));
         }
+        decodedEntities.add(relation);
     }
 
     private void runAndTrapExceptions() {
         try {
             decodedEntities = new ArrayList<>();
             if ("OSMHeader".equals(blobType)) {
-                processOsmHeader(readBlobContent());
+                readBlobContent();
+                processOsmHeader();
 
             } else if ("OSMData".equals(blobType)) {
-                processOsmPrimitives(readBlobContent());
+                readBlobContent();
+                processOsmPrimitives();
 
             } else if (log.isDebugEnabled())
                 log.debug("Skipping unrecognised blob type " + blobType);
@@ -1,8 +1,10 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
+import com.graphhopper.reader.TagKeys;
 import org.openstreetmap.osmosis.osmbinary.Osmformat;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
 /**
@@ -15,6 +17,10 @@ import java.util.Date;
 public class PbfFieldDecoder {
     private static final double COORDINATE_SCALING_FACTOR = 0.000000001;
     private String[] strings;
+    private byte[] stringData;
+    private int[] stringOffsets;
+    private int[] stringLengths;
+    private int[] keyIds;
     private int coordGranularity;
     private long coordLatitudeOffset;
     private long coordLongitudeOffset;
@@ -39,6 +45,22 @@ public class PbfFieldDecoder {
         }
     }
 
+    /**
+     * Creates a new instance that decodes the strings of the string table lazily, i.e. only the strings that are
+     * actually used are converted. The string table is given as the offsets and lengths of its entries in data.
+     */
+    PbfFieldDecoder(byte[] data, int[] stringOffsets, int[] stringLengths, int stringCount,
+                    int coordGranularity, long coordLatitudeOffset, long coordLongitudeOffset, int dateGranularity) {
+        this.coordGranularity = coordGranularity;
+        this.coordLatitudeOffset = coordLatitudeOffset;
+        this.coordLongitudeOffset = coordLongitudeOffset;
+        this.dateGranularity = dateGranularity;
+        this.stringData = data;
+        this.stringOffsets = stringOffsets;
+        this.stringLengths = stringLengths;
+        strings = new String[stringCount];
+    }
+
     /**
      * Decodes a raw latitude value into degrees.
      * <p>
@@ -80,6 +102,27 @@ public class PbfFieldDecoder {
      * @return The string as a String.
      */
     public String decodeString(int rawString) {
-        return strings[rawString];
+        String string = strings[rawString];
+        if (string == null) {
+            string = new String(stringData, stringOffsets[rawString], stringLengths[rawString], StandardCharsets.UTF_8);
+            strings[rawString] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Decodes a raw string into the id of a tag key, see {@link TagKeys}. The ids are cached, so the key strings of
+     * the block are looked up only once.
+     */
+    public int decodeKeyId(int rawString) {
+        if (keyIds == null)
+            keyIds = new int[strings.length];
+        // 0 means unknown, so the ids are stored plus one
+        int keyId = keyIds[rawString] - 1;
+        if (keyId < 0) {
+            keyId = TagKeys.getOrCreateId(decodeString(rawString));
+            keyIds[rawString] = keyId + 1;
+        }
+        return keyId;
     }
 }
@@ -0,0 +1,146 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.reader.osm.pbf;
+
+/**
+ * A minimal reader for the protobuf wire format that works directly on a byte array. The PBF blocks are decoded with
+ * it field by field, which avoids creating the objects of the generated protobuf classes for every element, see
+ * https://protobuf.dev/programming-guides/encoding/
+ */
+class PbfWireReader {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+
+    PbfWireReader(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Restricts this reader to the given range of the underlying buffer, e.g. to the content of a length delimited field.
+     */
+    PbfWireReader reset(int offset, int length) {
+        pos = offset;
+        limit = offset + length;
+        return this;
+    }
+
+    boolean hasNext() {
+        return pos < limit;
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the key of the next field, use {@link #fieldNumber} and {@link #wireType} to split it
+     */
+    int readKey() {
+        return readVarint32();
+    }
+
+    static int fieldNumber(int key) {
+        return key >>> 3;
+    }
+
+    static int wireType(int key) {
+        return key & 7;
+    }
+
+    int readVarint32() {
+        return (int) readVarint64();
+    }
+
+    long readVarint64() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos >= limit)
+                throw new IllegalStateException("Truncated varint at position " + pos);
+            byte b = buf[pos++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return result;
+        }
+        throw new IllegalStateException("Malformed varint at position " + pos);
+    }
+
+    long readSInt64() {
+        long value = readVarint64();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads the length of a length delimited field and checks that the field fits into the current range. The content
+     * starts at {@link #getPosition()} afterwards.
+     */
+    int readLength() {
+        int length = readVarint32();
+        if (length < 0 || length > limit - pos)
+            throw new IllegalStateException("Invalid length " + length + " at position " + pos);
+        return length;
+    }
+
+    void skip(int length) {
+        pos += length;
+    }
+
+    void skipField(int key) {
+        switch (wireType(key)) {
+            case VARINT:
+                readVarint64();
+                break;
+            case FIXED64:
+                pos += 8;
+                break;
+            case LENGTH_DELIMITED:
+                int length = readLength();
+                pos += length;
+                break;
+            case FIXED32:
+                pos += 4;
+                break;
+            default:
+                throw new IllegalStateException("Unsupported wire type " + wireType(key) + " at position " + pos);
+        }
+    }
+
+    /**
+     * @return the number of varints that are left in the current range, e.g. the number of values of a packed
+     * repeated field
+     */
+    int countVarints() {
+        int count = 0;
+        for (int i = pos; i < limit; i++) {
+            if (buf[i] >= 0)
+                count++;
+        }
+        return count;
+    }
+}
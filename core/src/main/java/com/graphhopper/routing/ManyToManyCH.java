@@ -0,0 +1,349 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.LongDoubleHashMap;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.ch.ShortcutUnpacker;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates the weights, distances and times between many sources and many targets using the bucket based algorithm
+ * for contraction hierarchies, see Knopp et al., 'Computing Many-to-Many Shortest Paths Using Highway Hierarchies'.
+ * First an upward search is run backwards from every target and every settled node gets a bucket entry. Then an upward
+ * search is run from every source and all buckets of the settled nodes are scanned. This way we need only one upward
+ * search per point instead of one CH query per pair of points.
+ * <p>
+ * Only node-based CH graphs are supported. The graph can be a {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph}
+ * so the points do not need to be located at graph nodes.
+ */
+public class ManyToManyCH {
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final int maxNodes;
+    // the distance and time of every CH edge are only calculated once, keyed by the CH edge and the direction
+    private final LongDoubleHashMap distanceCache = new LongDoubleHashMap();
+    private final LongLongHashMap timeCache = new LongLongHashMap();
+    private final ShortcutUnpacker unpacker;
+    private double unpackedDistance;
+    private long unpackedTime;
+    // the buckets are stored as linked lists in flat arrays, bucketHeads points to the latest entry of every node
+    private final IntIntHashMap bucketHeads = new IntIntHashMap();
+    private int[] bucketNext = new int[64];
+    private int[] bucketTarget = new int[64];
+    private double[] bucketWeight = new double[64];
+    private double[] bucketDistance = new double[64];
+    private long[] bucketTime = new long[64];
+    private int bucketEntries;
+    private int visitedNodes;
+    private int maxVisitedNodes = Integer.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private long finishTimeMillis = Long.MAX_VALUE;
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("Many-to-many calculations are only supported for node-based CH graphs");
+        this.graph = graph;
+        this.weighting = graph.getWeighting();
+        inEdgeExplorer = graph.createInEdgeExplorer();
+        outEdgeExplorer = graph.createOutEdgeExplorer();
+        maxNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        unpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            unpackedDistance += edge.getDistance();
+            unpackedTime += weighting.calcEdgeMillis(edge, reverse);
+        }, false);
+    }
+
+    /**
+     * Limits the number of nodes every single upward search may settle. If it is exceeded the calculation is aborted
+     * with a {@link MaximumNodesExceededException}.
+     */
+    public ManyToManyCH setMaxVisitedNodes(int maxVisitedNodes) {
+        this.maxVisitedNodes = maxVisitedNodes;
+        return this;
+    }
+
+    /**
+     * Limits the runtime of the whole calculation. If it is exceeded the calculation is aborted with an
+     * {@link IllegalArgumentException}, because a partially calculated matrix is of no use.
+     */
+    public ManyToManyCH setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @return the number of nodes settled by the upward searches of the last calculation
+     */
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    /**
+     * Calculates the weights, distances and times from all sources to all targets. Sources and targets are node IDs
+     * of the graph that was passed to the constructor.
+     */
+    public Result calcMatrix(int[] sources, int[] targets) {
+        checkNodes(sources);
+        checkNodes(targets);
+        visitedNodes = 0;
+        try {
+            finishTimeMillis = Math.addExact(System.currentTimeMillis(), timeoutMillis);
+        } catch (ArithmeticException e) {
+            finishTimeMillis = Long.MAX_VALUE;
+        }
+        bucketHeads.clear();
+        bucketEntries = 0;
+        Result result = new Result(sources.length, targets.length);
+        for (int t = 0; t < targets.length; t++) {
+            int target = t;
+            upwardSearch(targets[t], true, (node, entry) -> addBucketEntry(node, target, entry));
+        }
+        for (int s = 0; s < sources.length; s++) {
+            int source = s;
+            upwardSearch(sources[s], false, (node, entry) -> scanBucket(node, source, entry, result));
+        }
+        return result;
+    }
+
+    private void checkNodes(int[] nodes) {
+        for (int node : nodes)
+            if (node < 0 || node >= graph.getNodes())
+                throw new IllegalArgumentException("Node " + node + " does not exist, the graph has " + graph.getNodes() + " nodes");
+    }
+
+    private void addBucketEntry(int node, int target, Entry entry) {
+        if (bucketEntries == bucketNext.length) {
+            int newLength = bucketEntries * 2;
+            bucketNext = Arrays.copyOf(bucketNext, newLength);
+            bucketTarget = Arrays.copyOf(bucketTarget, newLength);
+            bucketWeight = Arrays.copyOf(bucketWeight, newLength);
+            bucketDistance = Arrays.copyOf(bucketDistance, newLength);
+            bucketTime = Arrays.copyOf(bucketTime, newLength);
+        }
+        bucketNext[bucketEntries] = bucketHeads.getOrDefault(node, -1);
+        bucketTarget[bucketEntries] = target;
+        bucketWeight[bucketEntries] = entry.weight;
+        bucketDistance[bucketEntries] = entry.distance;
+        bucketTime[bucketEntries] = entry.time;
+        bucketHeads.put(node, bucketEntries);
+        bucketEntries++;
+    }
+
+    private void scanBucket(int node, int source, Entry entry, Result result) {
+        for (int i = bucketHeads.getOrDefault(node, -1); i >= 0; i = bucketNext[i]) {
+            int index = source * result.targets + bucketTarget[i];
+            double weight = entry.weight + bucketWeight[i];
+            if (weight < result.weights[index]) {
+                result.weights[index] = weight;
+                result.distances[index] = entry.distance + bucketDistance[i];
+                result.times[index] = entry.time + bucketTime[i];
+            }
+        }
+    }
+
+    /**
+     * Runs a Dijkstra search from the given node that only follows edges leading to higher level nodes and calls the
+     * consumer for every settled node that cannot be stalled.
+     */
+    private void upwardSearch(int start, boolean reverse, SettledNodeConsumer consumer) {
+        RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        RoutingCHEdgeExplorer stallExplorer = reverse ? outEdgeExplorer : inEdgeExplorer;
+        GHIntObjectHashMap<Entry> bestEntries = new GHIntObjectHashMap<>();
+        PriorityQueue<Entry> queue = new PriorityQueue<>();
+        Entry startEntry = new Entry(EdgeIterator.NO_EDGE, start, 0, null);
+        bestEntries.put(start, startEntry);
+        queue.add(startEntry);
+        int settledNodes = 0;
+        while (!queue.isEmpty()) {
+            Entry curr = queue.poll();
+            if (curr.deleted)
+                continue;
+            visitedNodes++;
+            if (++settledNodes > maxVisitedNodes)
+                throw new MaximumNodesExceededException("No matrix calculated due to maximum nodes exceeded " + maxVisitedNodes, maxVisitedNodes);
+            if (finishTimeMillis < Long.MAX_VALUE && System.currentTimeMillis() > finishTimeMillis)
+                throw new IllegalArgumentException("No matrix calculated due to the timeout of " + timeoutMillis + " ms");
+            if (curr.parent != null) {
+                calcDistanceAndTime(curr.edge, curr.adjNode, reverse);
+                curr.distance = curr.parent.distance + unpackedDistance;
+                curr.time = curr.parent.time + unpackedTime;
+            }
+            if (isStallable(curr, bestEntries, stallExplorer, reverse))
+                continue;
+            consumer.accept(curr.adjNode, curr);
+
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (iter.getEdge() == curr.edge || !acceptUpward(iter))
+                    continue;
+                double weight = curr.weight + iter.getWeight(reverse);
+                if (Double.isInfinite(weight))
+                    continue;
+                Entry entry = bestEntries.get(iter.getAdjNode());
+                if (entry == null || weight < entry.weight) {
+                    if (entry != null)
+                        entry.deleted = true;
+                    entry = new Entry(iter.getEdge(), iter.getAdjNode(), weight, curr);
+                    bestEntries.put(iter.getAdjNode(), entry);
+                    queue.add(entry);
+                }
+            }
+        }
+    }
+
+    private boolean acceptUpward(RoutingCHEdgeIteratorState edgeState) {
+        int base = edgeState.getBaseNode();
+        int adj = edgeState.getAdjNode();
+        // always accept virtual edges, see #288
+        if (base >= maxNodes || adj >= maxNodes)
+            return true;
+        // shortcuts in the wrong direction are disconnected anyway
+        if (edgeState.isShortcut())
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    /**
+     * Stall-on-demand like in {@link DijkstraBidirectionCH}: the node is reached via a suboptimal path if one of its
+     * neighbors that was already reached yields a smaller weight. Such nodes can never be the meeting node of a shortest
+     * path, so we neither expand them nor use their buckets.
+     */
+    private boolean isStallable(Entry entry, GHIntObjectHashMap<Entry> bestEntries, RoutingCHEdgeExplorer stallExplorer, boolean reverse) {
+        RoutingCHEdgeIterator iter = stallExplorer.setBaseNode(entry.adjNode);
+        while (iter.next()) {
+            if (iter.getEdge() == entry.edge)
+                continue;
+            Entry adjEntry = bestEntries.get(iter.getAdjNode());
+            // we have to be careful because of rounded shortcut weights in combination with virtual via nodes, see #1574
+            if (adjEntry != null && adjEntry.weight + iter.getWeight(!reverse) - entry.weight < -0.001)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets the distance and time of the given CH edge. For the backward search the edge is travelled from its adjacent
+     * node towards its base node, so we need to use the time of the reverse direction.
+     */
+    private void calcDistanceAndTime(int chEdge, int adjNode, boolean reverse) {
+        long key = ((long) chEdge << 32) | adjNode;
+        if (reverse)
+            key = -key - 1;
+        int index = timeCache.indexOf(key);
+        if (index >= 0) {
+            unpackedTime = timeCache.indexGet(index);
+            unpackedDistance = distanceCache.get(key);
+            return;
+        }
+        unpackedDistance = 0;
+        unpackedTime = 0;
+        if (reverse)
+            unpacker.visitOriginalEdgesBwd(chEdge, adjNode, false, EdgeIterator.NO_EDGE);
+        else
+            unpacker.visitOriginalEdgesFwd(chEdge, adjNode, false, EdgeIterator.NO_EDGE);
+        timeCache.put(key, unpackedTime);
+        distanceCache.put(key, unpackedDistance);
+    }
+
+    private interface SettledNodeConsumer {
+        void accept(int node, Entry entry);
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final int edge;
+        final int adjNode;
+        final double weight;
+        final Entry parent;
+        double distance;
+        long time;
+        boolean deleted;
+
+        Entry(int edge, int adjNode, double weight, Entry parent) {
+            this.edge = edge;
+            this.adjNode = adjNode;
+            this.weight = weight;
+            this.parent = parent;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return Double.compare(weight, o.weight);
+        }
+    }
+
+    /**
+     * The weights, distances (in meter) and times (in milliseconds) between all sources and targets. Pairs of points
+     * that are not connected have infinite weight and distance and a time of {@link Long#MAX_VALUE}.
+     */
+    public static class Result {
+        private final int sources;
+        private final int targets;
+        private final double[] weights;
+        private final double[] distances;
+        private final long[] times;
+
+        Result(int sources, int targets) {
+            this.sources = sources;
+            this.targets = targets;
+            weights = new double[sources * targets];
+            distances = new double[sources * targets];
+            times = new long[sources * targets];
+            Arrays.fill(weights, Double.POSITIVE_INFINITY);
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            Arrays.fill(times, Long.MAX_VALUE);
+        }
+
+        public int getSources() {
+            return sources;
+        }
+
+        public int getTargets() {
+            return targets;
+        }
+
+        public boolean isConnected(int source, int target) {
+            return Double.isFinite(getWeight(source, target));
+        }
+
+        public double getWeight(int source, int target) {
+            return weights[source * targets + target];
+        }
+
+        public double getDistance(int source, int target) {
+            return distances[source * targets + target];
+        }
+
+        public long getTime(int source, int target) {
+            return times[source * targets + target];
+        }
+    }
+}
@@ -33,6 +33,10 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private int wayProcessingThreads = 1;
+    private int wayProcessingBatchSize = 10_000;
+    private String nodeIdMap = "btree";
+    private boolean storeChangeData = false;
 
     public List<String> getIgnoredHighways() {
         return ignoredHighways;
@@ -155,4 +159,65 @@ public class OSMReaderConfig {
         this.workerThreads = workerThreads;
         return this;
     }
+
+    public int getWayProcessingThreads() {
+        return wayProcessingThreads;
+    }
+
+    /**
+     * Sets the number of threads used to calculate the edges of the OSM ways (tag parsing, area lookup, distance
+     * calculation) during the second pass of the import. The edges are still added to the graph in a single thread and
+     * in the same order. The built-in tag parsers are thread-safe, custom tag parsers
+     * must be thread-safe as well if this is larger than 1.
+     */
+    public OSMReaderConfig setWayProcessingThreads(int wayProcessingThreads) {
+        if (wayProcessingThreads < 1)
+            throw new IllegalArgumentException("way processing threads must be at least 1 but was " + wayProcessingThreads);
+        this.wayProcessingThreads = wayProcessingThreads;
+        return this;
+    }
+
+    public int getWayProcessingBatchSize() {
+        return wayProcessingBatchSize;
+    }
+
+    /**
+     * Sets the number of edges that are processed together if {@link #setWayProcessingThreads} is larger than 1.
+     */
+    public OSMReaderConfig setWayProcessingBatchSize(int wayProcessingBatchSize) {
+        if (wayProcessingBatchSize < 1)
+            throw new IllegalArgumentException("way processing batch size must be at least 1 but was " + wayProcessingBatchSize);
+        this.wayProcessingBatchSize = wayProcessingBatchSize;
+        return this;
+    }
+
+    public String getNodeIdMap() {
+        return nodeIdMap;
+    }
+
+    /**
+     * Sets the type of the maps from OSM node ids to internal ids that are used during the import. The default
+     * 'btree' keeps them on the Java heap. 'off_heap' and 'mmap' use a paged map that stores dense id ranges as
+     * plain arrays outside of the heap (or in memory-mapped files in the graph folder), which reduces the heap
+     * required to import big files.
+     */
+    public OSMReaderConfig setNodeIdMap(String nodeIdMap) {
+        if (!nodeIdMap.equals("btree") && !nodeIdMap.equals("off_heap") && !nodeIdMap.equals("mmap"))
+            throw new IllegalArgumentException("Unknown node id map: " + nodeIdMap + ", use btree, off_heap or mmap");
+        this.nodeIdMap = nodeIdMap;
+        return this;
+    }
+
+    public boolean isStoreChangeData() {
+        return storeChangeData;
+    }
+
+    /**
+     * Stores additional OSM data for every edge (node tags and relation flags) in the graph folder, so that OSM change
+     * files can be applied to the graph later without a new import. Requires the osm_way_id encoded value.
+     */
+    public OSMReaderConfig setStoreChangeData(boolean storeChangeData) {
+        this.storeChangeData = storeChangeData;
+        return this;
+    }
 }
@@ -0,0 +1,449 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.coll.GHLongObjectHashMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Calculates the shortest paths from one node to all nodes (or from all nodes to one node if reverse is used) using
+ * PHAST, see Delling et al., 'PHAST: Hardware-Accelerated Shortest Path Trees'. First a Dijkstra search that only
+ * follows edges leading to higher level nodes runs from the source. Then all nodes are scanned once in the order of
+ * decreasing CH level and each node takes the best of its incoming edges from higher level nodes. For this sweep the
+ * incoming edges of all nodes are copied into flat arrays in sweep order once, so a single instance should be reused
+ * for many queries.
+ * <p>
+ * Use {@link #restrict(int[])} to only calculate the shortest paths to a subset of the nodes (RPHAST), which makes the
+ * sweep much faster when there are only a few thousand targets, e.g. for many-to-many calculations.
+ * <p>
+ * The source can be a virtual node of a {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph}, but apart
+ * from the source only the results for the nodes of the base graph are calculated. Only node-based CH graphs are
+ * supported.
+ */
+public class PHAST {
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final boolean reverse;
+    // the nodes in sweep order and the position of every node in this order, or -1 if the node is not swept
+    private final int[] nodes;
+    private final int[] positions;
+    // the incoming edges from higher level nodes (the outgoing ones for reverse) for every position in sweep order
+    private final int[] firstArc;
+    private final int[] arcTails;
+    private final double[] arcWeights;
+    private final double[] arcDistances;
+    private final long[] arcTimes;
+    // the original edge of every arc that is adjacent to the swept node
+    private final int[] arcEdges;
+
+    /**
+     * @param reverse if true the shortest paths from all nodes to the source are calculated instead of those from the
+     *                source to all nodes
+     */
+    public PHAST(RoutingCHGraph graph, boolean reverse) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("PHAST is only supported for node-based CH graphs");
+        this.graph = graph;
+        this.weighting = graph.getWeighting();
+        this.reverse = reverse;
+        int numNodes = graph.getNodes();
+        long[] keys = new long[numNodes];
+        for (int node = 0; node < numNodes; node++)
+            keys[node] = ((long) graph.getLevel(node) << 32) | node;
+        Arrays.sort(keys);
+        nodes = new int[numNodes];
+        positions = new int[numNodes];
+        for (int pos = 0; pos < numNodes; pos++) {
+            nodes[pos] = (int) keys[numNodes - 1 - pos];
+            positions[nodes[pos]] = pos;
+        }
+
+        firstArc = new int[numNodes + 1];
+        IntArrayList tails = new IntArrayList(), edges = new IntArrayList();
+        DoubleArrayList weights = new DoubleArrayList(), distances = new DoubleArrayList();
+        LongArrayList times = new LongArrayList();
+        EdgeDataCalculator edgeDataCalculator = new EdgeDataCalculator(graph);
+        RoutingCHEdgeExplorer explorer = reverse ? graph.createOutEdgeExplorer() : graph.createInEdgeExplorer();
+        for (int pos = 0; pos < numNodes; pos++) {
+            firstArc[pos] = tails.size();
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(nodes[pos]);
+            while (iter.next()) {
+                int tail = positions[iter.getAdjNode()];
+                if (tail >= pos)
+                    continue;
+                double weight = iter.getWeight(!reverse);
+                if (Double.isInfinite(weight))
+                    continue;
+                EdgeData data = edgeDataCalculator.calc(iter.getEdge(), reverse ? iter.getAdjNode() : nodes[pos]);
+                tails.add(tail);
+                weights.add(weight);
+                distances.add(data.distance);
+                times.add(data.time);
+                edges.add(reverse ? data.firstEdge : data.lastEdge);
+            }
+        }
+        firstArc[numNodes] = tails.size();
+        arcTails = tails.toArray();
+        arcWeights = weights.toArray();
+        arcDistances = distances.toArray();
+        arcTimes = times.toArray();
+        arcEdges = edges.toArray();
+    }
+
+    private PHAST(PHAST full, boolean[] selected) {
+        graph = full.graph;
+        weighting = full.weighting;
+        reverse = full.reverse;
+        positions = new int[full.positions.length];
+        Arrays.fill(positions, -1);
+        IntArrayList selectedNodes = new IntArrayList();
+        for (int pos = 0; pos < full.nodes.length; pos++)
+            if (selected[pos]) {
+                positions[full.nodes[pos]] = selectedNodes.size();
+                selectedNodes.add(full.nodes[pos]);
+            }
+        nodes = selectedNodes.toArray();
+        int arcs = 0;
+        for (int node : nodes)
+            arcs += full.firstArc[full.positions[node] + 1] - full.firstArc[full.positions[node]];
+        firstArc = new int[nodes.length + 1];
+        arcTails = new int[arcs];
+        arcWeights = new double[arcs];
+        arcDistances = new double[arcs];
+        arcTimes = new long[arcs];
+        arcEdges = new int[arcs];
+        int arc = 0;
+        for (int pos = 0; pos < nodes.length; pos++) {
+            firstArc[pos] = arc;
+            int fullPos = full.positions[nodes[pos]];
+            for (int fullArc = full.firstArc[fullPos]; fullArc < full.firstArc[fullPos + 1]; fullArc++, arc++) {
+                arcTails[arc] = positions[full.nodes[full.arcTails[fullArc]]];
+                arcWeights[arc] = full.arcWeights[fullArc];
+                arcDistances[arc] = full.arcDistances[fullArc];
+                arcTimes[arc] = full.arcTimes[fullArc];
+                arcEdges[arc] = full.arcEdges[fullArc];
+            }
+        }
+        firstArc[nodes.length] = arc;
+    }
+
+    /**
+     * Creates a PHAST instance that only calculates the results for the given target nodes (RPHAST). The nodes that
+     * need to be swept are all nodes from which one of the targets can be reached using only edges leading to lower
+     * level nodes. The returned instance can be used for many sources.
+     */
+    public PHAST restrict(int[] targets) {
+        boolean[] selected = new boolean[nodes.length];
+        IntArrayList stack = new IntArrayList();
+        for (int target : targets) {
+            if (target < 0 || target >= positions.length || positions[target] < 0)
+                throw new IllegalArgumentException("Target " + target + " is not a node that can be reached with this instance");
+            if (!selected[positions[target]]) {
+                selected[positions[target]] = true;
+                stack.add(positions[target]);
+            }
+        }
+        while (!stack.isEmpty()) {
+            int pos = stack.buffer[--stack.elementsCount];
+            for (int arc = firstArc[pos]; arc < firstArc[pos + 1]; arc++)
+                if (!selected[arcTails[arc]]) {
+                    selected[arcTails[arc]] = true;
+                    stack.add(arcTails[arc]);
+                }
+        }
+        return new PHAST(this, selected);
+    }
+
+    public RoutingCHGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    /**
+     * @return the number of nodes that are scanned by the linear sweep of every query
+     */
+    public int getSweepNodes() {
+        return nodes.length;
+    }
+
+    public Result calc(int source) {
+        return calc(graph, source);
+    }
+
+    /**
+     * @param queryGraph the graph used for the upward search, either the graph of this instance or a
+     *                   {@link com.graphhopper.routing.querygraph.QueryRoutingCHGraph} on top of it
+     */
+    public Result calc(RoutingCHGraph queryGraph, int source) {
+        if (queryGraph.getBaseGraph().getBaseGraph() != graph.getBaseGraph().getBaseGraph())
+            throw new IllegalArgumentException("The query graph must be based on the graph of this PHAST instance");
+        if (source < 0 || source >= queryGraph.getNodes())
+            throw new IllegalArgumentException("Source " + source + " does not exist, the graph has " + queryGraph.getNodes() + " nodes");
+        Result result = new Result(source);
+        upwardSearch(queryGraph, source, result);
+        sweep(result);
+        return result;
+    }
+
+    private void upwardSearch(RoutingCHGraph queryGraph, int source, Result result) {
+        int baseNodes = positions.length;
+        EdgeDataCalculator edgeDataCalculator = new EdgeDataCalculator(queryGraph);
+        RoutingCHEdgeExplorer explorer = reverse ? queryGraph.createInEdgeExplorer() : queryGraph.createOutEdgeExplorer();
+        GHIntObjectHashMap<Label> bestLabels = new GHIntObjectHashMap<>();
+        PriorityQueue<Label> queue = new PriorityQueue<>();
+        Label start = new Label(source, EdgeIterator.NO_EDGE, 0, 0, 0);
+        bestLabels.put(source, start);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Label curr = queue.poll();
+            if (curr.deleted)
+                continue;
+            result.visitedNodes++;
+            if (curr.node < baseNodes && positions[curr.node] >= 0) {
+                int pos = positions[curr.node];
+                result.weights[pos] = curr.weight;
+                result.distances[pos] = curr.distance;
+                result.times[pos] = curr.time;
+                result.edges[pos] = curr.edge;
+            }
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.node);
+            while (iter.next()) {
+                if (!acceptUpward(queryGraph, iter, baseNodes))
+                    continue;
+                double weight = curr.weight + iter.getWeight(reverse);
+                if (Double.isInfinite(weight))
+                    continue;
+                Label label = bestLabels.get(iter.getAdjNode());
+                if (label != null && label.weight <= weight)
+                    continue;
+                if (label != null)
+                    label.deleted = true;
+                // for the reverse search we travel from the adjacent node towards the current node
+                EdgeData data = edgeDataCalculator.calc(iter.getEdge(), reverse ? curr.node : iter.getAdjNode());
+                label = new Label(iter.getAdjNode(), reverse ? data.firstEdge : data.lastEdge, weight,
+                        curr.distance + data.distance, curr.time + data.time);
+                bestLabels.put(iter.getAdjNode(), label);
+                queue.add(label);
+            }
+        }
+    }
+
+    private static boolean acceptUpward(RoutingCHGraph graph, RoutingCHEdgeIteratorState edgeState, int baseNodes) {
+        int base = edgeState.getBaseNode();
+        int adj = edgeState.getAdjNode();
+        // always accept virtual edges, see #288
+        if (base >= baseNodes || adj >= baseNodes)
+            return true;
+        // shortcuts in the wrong direction are disconnected anyway
+        if (edgeState.isShortcut())
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    private void sweep(Result result) {
+        for (int pos = 0; pos < nodes.length; pos++) {
+            double weight = result.weights[pos];
+            int bestArc = -1;
+            for (int arc = firstArc[pos]; arc < firstArc[pos + 1]; arc++) {
+                double candidate = result.weights[arcTails[arc]] + arcWeights[arc];
+                if (candidate < weight) {
+                    weight = candidate;
+                    bestArc = arc;
+                }
+            }
+            if (bestArc >= 0) {
+                int tail = arcTails[bestArc];
+                result.weights[pos] = weight;
+                result.distances[pos] = result.distances[tail] + arcDistances[bestArc];
+                result.times[pos] = result.times[tail] + arcTimes[bestArc];
+                result.edges[pos] = arcEdges[bestArc];
+            }
+        }
+        result.visitedNodes += nodes.length;
+    }
+
+    private static class Label implements Comparable<Label> {
+        final int node;
+        final int edge;
+        final double weight;
+        final double distance;
+        final long time;
+        boolean deleted;
+
+        Label(int node, int edge, double weight, double distance, long time) {
+            this.node = node;
+            this.edge = edge;
+            this.weight = weight;
+            this.distance = distance;
+            this.time = time;
+        }
+
+        @Override
+        public int compareTo(Label o) {
+            return Double.compare(weight, o.weight);
+        }
+    }
+
+    private static class EdgeData {
+        final double distance;
+        final long time;
+        final int firstEdge;
+        final int lastEdge;
+
+        EdgeData(double distance, long time, int firstEdge, int lastEdge) {
+            this.distance = distance;
+            this.time = time;
+            this.firstEdge = firstEdge;
+            this.lastEdge = lastEdge;
+        }
+    }
+
+    /**
+     * Calculates the distance and time of a CH edge in the direction towards the given node and finds its first and
+     * last original edge. The results for shortcuts are cached, so every shortcut is only unpacked once.
+     */
+    private static class EdgeDataCalculator {
+        private final RoutingCHGraph graph;
+        private final Weighting weighting;
+        private final GHLongObjectHashMap<EdgeData> cache = new GHLongObjectHashMap<>();
+
+        EdgeDataCalculator(RoutingCHGraph graph) {
+            this.graph = graph;
+            this.weighting = graph.getWeighting();
+        }
+
+        EdgeData calc(int chEdge, int towardsNode) {
+            RoutingCHEdgeIteratorState edgeState = graph.getEdgeIteratorState(chEdge, towardsNode);
+            if (!edgeState.isShortcut()) {
+                EdgeIteratorState edge = graph.getBaseGraph().getEdgeIteratorState(edgeState.getOrigEdge(), towardsNode);
+                return new EdgeData(edge.getDistance(), weighting.calcEdgeMillis(edge, false), edge.getEdge(), edge.getEdge());
+            }
+            long key = ((long) chEdge << 32) | towardsNode;
+            EdgeData data = cache.get(key);
+            if (data != null)
+                return data;
+            // see ShortcutUnpacker: we do not know which of the skipped edges is adjacent to towardsNode
+            int skipped1 = edgeState.getSkippedEdge1();
+            RoutingCHEdgeIteratorState second = graph.getEdgeIteratorState(edgeState.getSkippedEdge2(), towardsNode);
+            if (second == null) {
+                second = graph.getEdgeIteratorState(skipped1, towardsNode);
+                skipped1 = edgeState.getSkippedEdge2();
+            }
+            EdgeData firstData = calc(skipped1, second.getBaseNode());
+            EdgeData secondData = calc(second.getEdge(), towardsNode);
+            data = new EdgeData(firstData.distance + secondData.distance, firstData.time + secondData.time,
+                    firstData.firstEdge, secondData.lastEdge);
+            cache.put(key, data);
+            return data;
+        }
+    }
+
+    /**
+     * The weight, distance (in meter) and time (in milliseconds) of the shortest paths from the source to every node
+     * (or from every node to the source for reverse). Nodes that cannot be reached have infinite weight and
+     * distance.
+     */
+    public class Result {
+        private final int source;
+        private final double[] weights;
+        private final double[] distances;
+        private final long[] times;
+        private final int[] edges;
+        private int visitedNodes;
+
+        Result(int source) {
+            this.source = source;
+            weights = new double[nodes.length];
+            distances = new double[nodes.length];
+            times = new long[nodes.length];
+            edges = new int[nodes.length];
+            Arrays.fill(weights, Double.POSITIVE_INFINITY);
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            Arrays.fill(times, Long.MAX_VALUE);
+            Arrays.fill(edges, EdgeIterator.NO_EDGE);
+        }
+
+        private int getPosition(int node) {
+            return node >= 0 && node < positions.length ? positions[node] : -1;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public boolean isReached(int node) {
+            return Double.isFinite(getWeight(node));
+        }
+
+        public double getWeight(int node) {
+            if (node == source)
+                return 0;
+            int pos = getPosition(node);
+            return pos < 0 ? Double.POSITIVE_INFINITY : weights[pos];
+        }
+
+        public double getDistance(int node) {
+            if (node == source)
+                return 0;
+            int pos = getPosition(node);
+            return pos < 0 ? Double.POSITIVE_INFINITY : distances[pos];
+        }
+
+        public long getTime(int node) {
+            if (node == source)
+                return 0;
+            int pos = getPosition(node);
+            return pos < 0 ? Long.MAX_VALUE : times[pos];
+        }
+
+        /**
+         * @return the original (or virtual) edge of the shortest path that is adjacent to the given node, i.e. the
+         * last edge of the path from the source or the first edge of the path to the source for reverse. Returns
+         * {@link EdgeIterator#NO_EDGE} for the source and for nodes that cannot be reached.
+         */
+        public int getEdge(int node) {
+            if (node == source)
+                return EdgeIterator.NO_EDGE;
+            int pos = getPosition(node);
+            return pos < 0 ? EdgeIterator.NO_EDGE : edges[pos];
+        }
+
+        /**
+         * @return the number of nodes settled by the upward search plus the number of swept nodes
+         */
+        public int getVisitedNodes() {
+            return visitedNodes;
+        }
+    }
+}
@@ -31,6 +31,9 @@ public class RouterConfig {
     private boolean simplifyResponse = true;
     private double elevationWayPointMaxDistance = Double.MAX_VALUE;
     private int activeLandmarkCount = 8;
+    private int matrixMaxPoints = 2000;
+    private int nearestMaxPoints = 10_000;
+    private int nearestThreads = 1;
 
     public int getMaxVisitedNodes() {
         return maxVisitedNodes;
@@ -119,4 +122,37 @@ public class RouterConfig {
     public void setElevationWayPointMaxDistance(double elevationWayPointMaxDistance) {
         this.elevationWayPointMaxDistance = elevationWayPointMaxDistance;
     }
+
+    public int getMatrixMaxPoints() {
+        return matrixMaxPoints;
+    }
+
+    /**
+     * Limits the number of from and to points of a single matrix request.
+     */
+    public void setMatrixMaxPoints(int matrixMaxPoints) {
+        this.matrixMaxPoints = matrixMaxPoints;
+    }
+
+    public int getNearestMaxPoints() {
+        return nearestMaxPoints;
+    }
+
+    /**
+     * Limits the number of points of a single batch request to the nearest endpoint.
+     */
+    public void setNearestMaxPoints(int nearestMaxPoints) {
+        this.nearestMaxPoints = nearestMaxPoints;
+    }
+
+    public int getNearestThreads() {
+        return nearestThreads;
+    }
+
+    /**
+     * The number of threads used to snap the points of a single batch request to the nearest endpoint.
+     */
+    public void setNearestThreads(int nearestThreads) {
+        this.nearestThreads = nearestThreads;
+    }
 }
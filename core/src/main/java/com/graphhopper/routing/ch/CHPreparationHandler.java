@@ -21,18 +21,22 @@ import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.storage.*;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.ImportProfiler;
 import com.graphhopper.util.PMap;
 import com.graphhopper.util.Parameters.CH;
+import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.graphhopper.util.Helper.createFormatter;
 import static com.graphhopper.util.Helper.getMemInfo;
+import static com.graphhopper.util.Helper.nf;
 
 /**
  * This class handles the different CH preparations
@@ -47,6 +51,12 @@ public class CHPreparationHandler {
     private final List<CHProfile> chProfiles = new ArrayList<>();
     private int preparationThreads;
     private PMap pMap = new PMap();
+    private ImportProfiler importProfiler = ImportProfiler.NOOP;
+    private boolean customizable;
+    private CustomizableContractionHierarchies customizableCH;
+    private boolean nestedDissectionOrdering;
+    private BaseGraph nodeOrderingGraph;
+    private NodeOrderingProvider nodeOrdering;
 
     public CHPreparationHandler() {
         setPreparationThreads(1);
@@ -64,6 +74,8 @@ public class CHPreparationHandler {
         setPreparationThreads(ghConfig.getInt(CH.PREPARE + "threads", getPreparationThreads()));
         setCHProfiles(ghConfig.getCHProfiles());
         pMap = ghConfig.asPMap();
+        setCustomizable(pMap.getBool(CHParameters.CUSTOMIZABLE, customizable));
+        setNodeOrdering(pMap.getString(CHParameters.NODE_ORDERING, getNodeOrdering()));
     }
 
     public final boolean isEnabled() {
@@ -97,6 +109,81 @@ public class CHPreparationHandler {
         this.preparationThreads = preparationThreads;
     }
 
+    /**
+     * If enabled the node-based CH profiles are not prepared separately, but we calculate a metric-independent
+     * shortcut topology once and customize it for every profile, see {@link CustomizableContractionHierarchies}.
+     * Edge-based profiles are still prepared as usual.
+     */
+    public CHPreparationHandler setCustomizable(boolean customizable) {
+        this.customizable = customizable;
+        return this;
+    }
+
+    public boolean isCustomizable() {
+        return customizable;
+    }
+
+    /**
+     * @param nodeOrdering either 'heuristic' to determine the contraction order of every profile while contracting it,
+     *                     or 'nested_dissection' to contract the nodes of all profiles (node- and edge-based) in the
+     *                     same order, calculated once per graph by {@link NestedDissectionOrdering}. This is much
+     *                     faster, especially for edge-based profiles, but usually leads to more shortcuts and slower
+     *                     queries.
+     */
+    public CHPreparationHandler setNodeOrdering(String nodeOrdering) {
+        if ("heuristic".equals(nodeOrdering))
+            nestedDissectionOrdering = false;
+        else if ("nested_dissection".equals(nodeOrdering))
+            nestedDissectionOrdering = true;
+        else
+            throw new IllegalArgumentException("Unknown " + CHParameters.NODE_ORDERING + ": '" + nodeOrdering + "', use 'heuristic' or 'nested_dissection'");
+        return this;
+    }
+
+    public String getNodeOrdering() {
+        return nestedDissectionOrdering ? "nested_dissection" : "heuristic";
+    }
+
+    /**
+     * @return the nested dissection ordering of the given graph. It is calculated on the first call and shared with the
+     * customizable CH topology of this graph.
+     */
+    public synchronized NodeOrderingProvider getNestedDissectionOrdering(BaseGraph graph) {
+        if (nodeOrdering == null || nodeOrderingGraph != graph) {
+            nodeOrdering = customizableCH != null && customizableCH.getGraph() == graph
+                    ? customizableCH.getNodeOrdering()
+                    : NestedDissectionOrdering.computeOrdering(graph);
+            nodeOrderingGraph = graph;
+        }
+        return nodeOrdering;
+    }
+
+    /**
+     * @return the customizable CH topology of the given graph. It is calculated on the first call, so this can also be
+     * used when the CH profiles were loaded from disk or prepared without {@link #setCustomizable}.
+     */
+    public synchronized CustomizableContractionHierarchies getCustomizableCH(BaseGraph graph) {
+        if (customizableCH == null || customizableCH.getGraph() != graph) {
+            StopWatch sw = StopWatch.started();
+            boolean withOrdering = nodeOrdering != null && nodeOrderingGraph == graph;
+            LOGGER.info("Calculating the customizable CH topology{}, nodes: {}, {}",
+                    withOrdering ? "" : " including the nested dissection", nf(graph.getNodes()), getMemInfo());
+            customizableCH = withOrdering
+                    ? CustomizableContractionHierarchies.fromGraph(graph, nodeOrdering)
+                    : CustomizableContractionHierarchies.fromGraph(graph);
+            LOGGER.info("Finished the customizable CH topology, took: {}s", sw.stop().getSeconds());
+        }
+        return customizableCH;
+    }
+
+    /**
+     * Measures the preparation of every CH config as import stage, the name of the stage is ch.&lt;config name&gt;
+     */
+    public CHPreparationHandler setImportProfiler(ImportProfiler importProfiler) {
+        this.importProfiler = importProfiler;
+        return this;
+    }
+
     public Map<String, RoutingCHGraph> load(BaseGraph graph, List<CHConfig> chConfigs) {
         Map<String, RoutingCHGraph> loaded = Collections.synchronizedMap(new LinkedHashMap<>());
         Stream<Runnable> runnables = chConfigs.stream()
@@ -114,31 +201,67 @@ public class CHPreparationHandler {
         return loaded;
     }
 
+    /**
+     * Removes the stored CH graph of the given config, e.g. because the weights of the base graph changed. It will be
+     * prepared again by the next call of {@link #prepare}.
+     */
+    public void remove(BaseGraph graph, CHConfig chConfig) {
+        // the DataAccess objects have to be created before the directory can remove their files
+        new CHStorage(graph.getDirectory(), chConfig.getName(), graph.getSegmentSize(), chConfig.isEdgeBased());
+        graph.getDirectory().remove("nodes_ch_" + chConfig.getName());
+        graph.getDirectory().remove("shortcuts_" + chConfig.getName());
+    }
+
     public Map<String, PrepareContractionHierarchies.Result> prepare(BaseGraph baseGraph, StorableProperties properties, List<CHConfig> chConfigs, final boolean closeEarly) {
+        return prepare(baseGraph, properties, chConfigs, closeEarly, name -> {
+        });
+    }
+
+    /**
+     * @param preparedCallback is called with the name of every CH config whose preparation is finished and flushed
+     */
+    public Map<String, PrepareContractionHierarchies.Result> prepare(BaseGraph baseGraph, StorableProperties properties, List<CHConfig> chConfigs,
+                                                                     final boolean closeEarly, Consumer<String> preparedCallback) {
         if (chConfigs.isEmpty()) {
             LOGGER.info("There are no CHs to prepare");
             return Collections.emptyMap();
         }
         LOGGER.info("Creating CH preparations, {}", getMemInfo());
+        if (chConfigs.stream().anyMatch(this::isCustomized)) {
+            ImportProfiler.Stage stage = importProfiler.start("ch.customizable_topology");
+            getCustomizableCH(baseGraph);
+            stage.stop();
+        }
+        if (nestedDissectionOrdering && !chConfigs.stream().allMatch(this::isCustomized)) {
+            ImportProfiler.Stage stage = importProfiler.start("ch.node_ordering");
+            getNestedDissectionOrdering(baseGraph);
+            stage.stop();
+        }
         List<PrepareContractionHierarchies> preparations = chConfigs.stream()
-                .map(c -> createCHPreparation(baseGraph, c))
+                .map(c -> isCustomized(c) ? null : createCHPreparation(baseGraph, c))
                 .collect(Collectors.toList());
         Map<String, PrepareContractionHierarchies.Result> results = Collections.synchronizedMap(new LinkedHashMap<>());
         List<Runnable> runnables = new ArrayList<>(preparations.size());
         for (int i = 0; i < preparations.size(); ++i) {
+            CHConfig chConfig = chConfigs.get(i);
             PrepareContractionHierarchies prepare = preparations.get(i);
-            LOGGER.info((i + 1) + "/" + preparations.size() + " calling " +
-                    "CH prepare.doWork for profile '" + prepare.getCHConfig().getName() + "' " + prepare.getCHConfig().getTraversalMode() + " ... (" + getMemInfo() + ")");
+            LOGGER.info((i + 1) + "/" + preparations.size() + " calling " + (prepare == null ? "CH customization" : "CH prepare.doWork") +
+                    " for profile '" + chConfig.getName() + "' " + chConfig.getTraversalMode() + " ... (" + getMemInfo() + ")");
             runnables.add(() -> {
-                final String name = prepare.getCHConfig().getName();
+                final String name = chConfig.getName();
                 // toString is not taken into account so we need to cheat, see http://stackoverflow.com/q/6113746/194609 for other options
                 Thread.currentThread().setName(name);
-                PrepareContractionHierarchies.Result result = prepare.doWork();
+                ImportProfiler.Stage stage = importProfiler.start("ch." + name);
+                PrepareContractionHierarchies.Result result = prepare == null
+                        ? getCustomizableCH(baseGraph).customize(chConfig)
+                        : prepare.doWork();
+                stage.stop();
                 results.put(name, result);
-                prepare.flush();
+                result.getCHStorage().flush();
                 if (closeEarly)
-                    prepare.close();
+                    result.getCHStorage().close();
                 properties.put(CH.PREPARE + "date." + name, createFormatter().format(new Date()));
+                preparedCallback.accept(name);
             });
         }
         GHUtility.runConcurrently(runnables.stream(), preparationThreads);
@@ -146,9 +269,15 @@ public class CHPreparationHandler {
         return results;
     }
 
+    private boolean isCustomized(CHConfig chConfig) {
+        return customizable && !chConfig.isEdgeBased();
+    }
+
     private PrepareContractionHierarchies createCHPreparation(BaseGraph graph, CHConfig chConfig) {
         PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
         pch.setParams(pMap);
+        if (nestedDissectionOrdering)
+            pch.useFixedNodeOrdering(getNestedDissectionOrdering(graph));
         return pch;
     }
 }
@@ -0,0 +1,267 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Customizable contraction hierarchies (CCH) split the CH preparation into a metric-independent and a metric-dependent
+ * phase. The first phase contracts the nodes in a fixed order, usually a {@link NestedDissectionOrdering}, without
+ * any witness searches. Every pair of upper neighbors of a contracted node gets connected, so the resulting shortcut
+ * topology is the same for all weightings and only needs to be calculated once per graph.
+ * <p>
+ * The second phase, the customization, calculates the shortcut weights for a given weighting by relaxing the lower
+ * triangles of all shortcuts bottom-up. It takes a fraction of the time of a CH preparation, so it can be used to
+ * update CH profiles whose weighting changes, e.g. because of a new custom model or traffic data. The customization
+ * writes an ordinary {@link CHStorage} where the level of every node is its rank in the ordering, so the result works
+ * with all CH algorithms. Only node-based CH is supported so far.
+ */
+public class CustomizableContractionHierarchies {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CustomizableContractionHierarchies.class);
+    private final BaseGraph graph;
+    private final int[] nodesByRank;
+    private final int[] ranks;
+    // the upward arcs of every rank sorted by the rank of their upper node, the arcs of rank r are stored in
+    // [firstArc[r], firstArc[r+1]) and arcHeads contains the ranks of their upper nodes
+    private final int[] firstArc;
+    private final int[] arcHeads;
+
+    /**
+     * Calculates the shortcut topology for the given graph using a nested dissection ordering.
+     */
+    public static CustomizableContractionHierarchies fromGraph(BaseGraph graph) {
+        return fromGraph(graph, NestedDissectionOrdering.computeOrdering(graph));
+    }
+
+    public static CustomizableContractionHierarchies fromGraph(BaseGraph graph, NodeOrderingProvider ordering) {
+        return new CustomizableContractionHierarchies(graph, ordering);
+    }
+
+    private CustomizableContractionHierarchies(BaseGraph graph, NodeOrderingProvider ordering) {
+        if (!graph.isFrozen())
+            throw new IllegalStateException("BaseGraph must be frozen before creating CHs");
+        int nodes = graph.getNodes();
+        if (ordering.getNumNodes() != nodes)
+            throw new IllegalArgumentException("contraction order size (" + ordering.getNumNodes() + ")" +
+                    " must be equal to number of nodes in graph (" + nodes + ").");
+        StopWatch sw = StopWatch.started();
+        this.graph = graph;
+        nodesByRank = new int[nodes];
+        ranks = new int[nodes];
+        Arrays.fill(ranks, -1);
+        for (int rank = 0; rank < nodes; rank++) {
+            int node = ordering.getNodeIdForLevel(rank);
+            if (node < 0 || node >= nodes || ranks[node] >= 0)
+                throw new IllegalArgumentException("The node ordering must contain every node exactly once, invalid node: " + node);
+            nodesByRank[rank] = node;
+            ranks[node] = rank;
+        }
+
+        IntArrayList[] upperNeighbors = new IntArrayList[nodes];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int rankA = ranks[iter.getBaseNode()];
+            int rankB = ranks[iter.getAdjNode()];
+            if (rankA != rankB)
+                add(upperNeighbors, Math.min(rankA, rankB), Math.max(rankA, rankB));
+        }
+        // contracting a node connects all its upper neighbors. it is enough to add them to the lowest upper neighbor,
+        // because it is contracted next among them and passes on the remaining ones
+        firstArc = new int[nodes + 1];
+        IntArrayList heads = new IntArrayList(graph.getEdges());
+        for (int rank = 0; rank < nodes; rank++) {
+            firstArc[rank] = heads.size();
+            IntArrayList neighbors = upperNeighbors[rank];
+            upperNeighbors[rank] = null;
+            if (neighbors == null)
+                continue;
+            Arrays.sort(neighbors.buffer, 0, neighbors.size());
+            int size = 0;
+            for (int i = 0; i < neighbors.size(); i++)
+                if (i == 0 || neighbors.get(i) != neighbors.get(i - 1))
+                    neighbors.set(size++, neighbors.get(i));
+            heads.add(neighbors.buffer, 0, size);
+            for (int i = 1; i < size; i++)
+                add(upperNeighbors, neighbors.get(0), neighbors.get(i));
+        }
+        firstArc[nodes] = heads.size();
+        arcHeads = heads.toArray();
+        LOGGER.info("calculated customizable CH topology, nodes: {}, edges: {}, arcs: {}, took: {}s",
+                nf(nodes), nf(graph.getEdges()), nf(arcHeads.length), sw.stop().getSeconds());
+    }
+
+    private static void add(IntArrayList[] lists, int index, int value) {
+        if (lists[index] == null)
+            lists[index] = new IntArrayList(4);
+        lists[index].add(value);
+    }
+
+    public BaseGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the number of upward arcs, i.e. the maximum number of shortcuts (in both directions) plus the number of
+     * original edges that are part of the hierarchy
+     */
+    public int getArcs() {
+        return arcHeads.length;
+    }
+
+    public NodeOrderingProvider getNodeOrdering() {
+        return NodeOrderingProvider.fromArray(nodesByRank);
+    }
+
+    /**
+     * Customizes the topology for the weighting of the given config and writes the shortcuts to a new
+     * {@link CHStorage} in the directory of the graph, like {@link PrepareContractionHierarchies} does.
+     */
+    public PrepareContractionHierarchies.Result customize(CHConfig chConfig) {
+        if (chConfig.isEdgeBased())
+            throw new IllegalArgumentException("Customizable CH does not support edge-based CH: " + chConfig.getName());
+        StopWatch sw = StopWatch.started();
+        CHStorage chStore = CHStorage.fromGraph(graph, chConfig);
+        customize(chConfig.getWeighting(), chStore);
+        LOGGER.info("customized CH for {}, shortcuts: {}, took: {}s", chConfig.getName(), nf(chStore.getShortcuts()), sw.stop().getSeconds());
+        return new PrepareContractionHierarchies.Result(chConfig, chStore, chStore.getShortcuts(), 0, 0, 0, sw.getMillis());
+    }
+
+    /**
+     * Customizes the topology for the given weighting and keeps the shortcuts in memory. This can be used to replace
+     * the CH graph of a profile at runtime, see GraphHopper#customizeCH.
+     */
+    public RoutingCHGraph createCustomizedGraph(Weighting weighting) {
+        if (weighting.hasTurnCosts())
+            throw new IllegalArgumentException("Customizable CH does not support weightings with turn costs");
+        CHStorage chStore = new CHStorage(new RAMDirectory(), "customized", graph.getSegmentSize(), false);
+        chStore.create(graph.getNodes(), arcHeads.length / 2);
+        customize(weighting, chStore);
+        return new RoutingCHGraphImpl(graph, chStore, weighting);
+    }
+
+    private void customize(Weighting weighting, CHStorage chStore) {
+        int arcs = arcHeads.length;
+        // the weights of every arc from its lower to its upper node (fwd) and the other way round (bwd), the rank of
+        // the middle node for arcs that are shortcuts (or -1) and the edge that represents the arc in the CH graph
+        double[] fwdWeights = new double[arcs];
+        double[] bwdWeights = new double[arcs];
+        int[] fwdMiddles = new int[arcs];
+        int[] bwdMiddles = new int[arcs];
+        int[] fwdEdges = new int[arcs];
+        int[] bwdEdges = new int[arcs];
+        Arrays.fill(fwdWeights, Double.POSITIVE_INFINITY);
+        Arrays.fill(bwdWeights, Double.POSITIVE_INFINITY);
+        Arrays.fill(fwdMiddles, -1);
+        Arrays.fill(bwdMiddles, -1);
+        Arrays.fill(fwdEdges, -1);
+        Arrays.fill(bwdEdges, -1);
+
+        // the original edges are the initial weights of their arcs, for parallel edges we use the smallest weight
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int rankBase = ranks[iter.getBaseNode()];
+            int rankAdj = ranks[iter.getAdjNode()];
+            if (rankBase == rankAdj)
+                continue;
+            double weight = weighting.calcEdgeWeight(iter, false);
+            double reverseWeight = weighting.calcEdgeWeight(iter, true);
+            int arc = findArc(Math.min(rankBase, rankAdj), Math.max(rankBase, rankAdj));
+            double fwdWeight = rankBase < rankAdj ? weight : reverseWeight;
+            double bwdWeight = rankBase < rankAdj ? reverseWeight : weight;
+            if (fwdWeight < fwdWeights[arc]) {
+                fwdWeights[arc] = fwdWeight;
+                fwdEdges[arc] = iter.getEdge();
+            }
+            if (bwdWeight < bwdWeights[arc]) {
+                bwdWeights[arc] = bwdWeight;
+                bwdEdges[arc] = iter.getEdge();
+            }
+        }
+
+        // every pair of upper neighbors x < y of a node z forms a lower triangle of the arc x-y. when we process the
+        // nodes bottom-up the arcs z-x and z-y are final already.
+        for (int z = 0; z < ranks.length; z++) {
+            for (int zx = firstArc[z]; zx < firstArc[z + 1]; zx++) {
+                int xy = firstArc[arcHeads[zx]];
+                for (int zy = zx + 1; zy < firstArc[z + 1]; zy++) {
+                    // the upper neighbors of z are a clique, so x-y exists and we find it by walking along the arcs of x
+                    while (arcHeads[xy] != arcHeads[zy])
+                        xy++;
+                    double weight = bwdWeights[zx] + fwdWeights[zy];
+                    if (weight < fwdWeights[xy]) {
+                        fwdWeights[xy] = weight;
+                        fwdMiddles[xy] = z;
+                    }
+                    weight = bwdWeights[zy] + fwdWeights[zx];
+                    if (weight < bwdWeights[xy]) {
+                        bwdWeights[xy] = weight;
+                        bwdMiddles[xy] = z;
+                    }
+                }
+            }
+        }
+
+        // all arcs whose weight is not given by an original edge become shortcuts. they are added in the order of
+        // their lower nodes, so the edges they skip have already been added.
+        CHStorageBuilder builder = new CHStorageBuilder(chStore);
+        for (int rank = 0; rank < nodesByRank.length; rank++)
+            builder.setLevel(nodesByRank[rank], rank);
+        int edges = graph.getEdges();
+        for (int rank = 0; rank < nodesByRank.length; rank++) {
+            for (int arc = firstArc[rank]; arc < firstArc[rank + 1]; arc++) {
+                int fwdSkip1 = -1, fwdSkip2 = -1, bwdSkip1 = -1, bwdSkip2 = -1;
+                if (fwdMiddles[arc] >= 0) {
+                    fwdSkip1 = bwdEdges[findArc(fwdMiddles[arc], rank)];
+                    fwdSkip2 = fwdEdges[findArc(fwdMiddles[arc], arcHeads[arc])];
+                }
+                if (bwdMiddles[arc] >= 0) {
+                    bwdSkip1 = fwdEdges[findArc(bwdMiddles[arc], rank)];
+                    bwdSkip2 = bwdEdges[findArc(bwdMiddles[arc], arcHeads[arc])];
+                }
+                int node = nodesByRank[rank];
+                int adjNode = nodesByRank[arcHeads[arc]];
+                if (fwdMiddles[arc] >= 0 && bwdMiddles[arc] >= 0 && fwdWeights[arc] == bwdWeights[arc]
+                        && fwdSkip1 == bwdSkip1 && fwdSkip2 == bwdSkip2) {
+                    int shortcut = builder.addShortcutNodeBased(node, adjNode, PrepareEncoder.getScDirMask(), fwdWeights[arc], fwdSkip1, fwdSkip2);
+                    fwdEdges[arc] = bwdEdges[arc] = edges + shortcut;
+                    continue;
+                }
+                if (fwdMiddles[arc] >= 0)
+                    fwdEdges[arc] = edges + builder.addShortcutNodeBased(node, adjNode, PrepareEncoder.getScFwdDir(), fwdWeights[arc], fwdSkip1, fwdSkip2);
+                if (bwdMiddles[arc] >= 0)
+                    bwdEdges[arc] = edges + builder.addShortcutNodeBased(node, adjNode, PrepareEncoder.getScBwdDir(), bwdWeights[arc], bwdSkip1, bwdSkip2);
+            }
+        }
+    }
+
+    private int findArc(int lowerRank, int upperRank) {
+        int arc = Arrays.binarySearch(arcHeads, firstArc[lowerRank], firstArc[lowerRank + 1], upperRank);
+        assert arc >= 0 : "there is no arc between ranks " + lowerRank + " and " + upperRank;
+        return arc;
+    }
+}
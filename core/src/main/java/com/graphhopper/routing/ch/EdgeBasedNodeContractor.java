@@ -28,6 +28,8 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
@@ -54,7 +56,9 @@ class EdgeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
     private PrepareGraphOrigEdgeExplorer sourceNodeOrigInEdgeExplorer;
     private CHStorageBuilder chBuilder;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor that created this one if this is a worker, see createWorker()
+    private final EdgeBasedNodeContractor parent;
     private final StopWatch dijkstraSW = new StopWatch();
     // temporary data used during node contraction
     private final IntSet sourceNodes = new IntHashSet(10);
@@ -85,9 +89,20 @@ class EdgeBasedNodeContractor implements NodeContractor {
     public EdgeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
         this.chBuilder = chBuilder;
+        this.params = new Params();
+        this.parent = null;
         extractParams(pMap);
     }
 
+    private EdgeBasedNodeContractor(EdgeBasedNodeContractor parent) {
+        this.prepareGraph = parent.prepareGraph;
+        this.params = parent.params;
+        this.parent = parent;
+        initFromGraph();
+        // the hierarchy depths are only updated when nodes are contracted, which workers do not do
+        hierarchyDepths = parent.hierarchyDepths;
+    }
+
     private void extractParams(PMap pMap) {
         params.edgeQuotientWeight = pMap.getFloat(EDGE_QUOTIENT_WEIGHT, params.edgeQuotientWeight);
         params.originalEdgeQuotientWeight = pMap.getFloat(ORIGINAL_EDGE_QUOTIENT_WEIGHT, params.originalEdgeQuotientWeight);
@@ -102,7 +117,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
         sourceNodeOrigInEdgeExplorer = prepareGraph.createInOrigEdgeExplorer();
-        hierarchyDepths = new int[prepareGraph.getNodes()];
+        hierarchyDepths = parent == null ? new int[prepareGraph.getNodes()] : null;
         witnessPathSearcher = new EdgeBasedWitnessPathSearcher(prepareGraph);
         bridgePathFinder = new BridgePathFinder(prepareGraph);
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
@@ -118,7 +133,7 @@ class EdgeBasedNodeContractor implements NodeContractor {
             // no shortcuts will be introduced
             return Float.NEGATIVE_INFINITY;
         stats().stopWatch.start();
-        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic), wpsStatsHeur);
+        findAndHandlePrepareShortcuts(node, this::countShortcuts, (int) (getMeanDegree() * params.maxPollFactorHeuristic), wpsStatsHeur);
         stats().stopWatch.stop();
         // the higher the priority the later (!) this node will be contracted
         float edgeQuotient = numShortcuts / (float) (prepareGraph.getDegree(node));
@@ -141,16 +156,55 @@ class EdgeBasedNodeContractor implements NodeContractor {
         activeStats = addingStats;
         stats().stopWatch.start();
         findAndHandlePrepareShortcuts(node, this::addShortcutsToPrepareGraph, (int) (meanDegree * params.maxPollFactorContraction), wpsStatsContr);
+        IntContainer neighbors = insertShortcutsAndDisconnect(node);
+        stats().stopWatch.stop();
+        return neighbors;
+    }
+
+    @Override
+    public NodeContractor createWorker() {
+        return new EdgeBasedNodeContractor(this);
+    }
+
+    @Override
+    public PendingShortcuts findShortcuts(int node, BitSet blockedNodes) {
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        EdgeBasedPendingShortcuts shortcuts = new EdgeBasedPendingShortcuts();
+        witnessPathSearcher.setBlockedNodes(blockedNodes);
+        findAndHandlePrepareShortcuts(node, shortcuts::add, (int) (getMeanDegree() * params.maxPollFactorContraction), wpsStatsContr);
+        witnessPathSearcher.setBlockedNodes(null);
+        stats().stopWatch.stop();
+        return shortcuts;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, PendingShortcuts pendingShortcuts) {
+        EdgeBasedPendingShortcuts shortcuts = (EdgeBasedPendingShortcuts) pendingShortcuts;
+        activeStats = addingStats;
+        stats().stopWatch.start();
+        for (int i = 0; i < shortcuts.edgesFrom.size(); i++)
+            addShortcutsToPrepareGraph(shortcuts.edgesFrom.get(i), shortcuts.edgesTo.get(i), shortcuts.origEdgeCounts.get(i));
+        IntContainer neighbors = insertShortcutsAndDisconnect(node);
+        stats().stopWatch.stop();
+        return neighbors;
+    }
+
+    private IntContainer insertShortcutsAndDisconnect(int node) {
         insertShortcuts(node);
         IntContainer neighbors = prepareGraph.disconnect(node);
         // We maintain an approximation of the mean degree which we update after every contracted node.
         // We do it the same way as for node-based CH for now.
         meanDegree = (meanDegree * 2 + neighbors.size()) / 3;
         updateHierarchyDepthsOfNeighbors(node, neighbors);
-        stats().stopWatch.stop();
         return neighbors;
     }
 
+    private double getMeanDegree() {
+        // workers do not contract nodes, so they use the mean degree of the contractor that created them
+        return parent == null ? meanDegree : parent.meanDegree;
+    }
+
     @Override
     public void finishContraction() {
         chBuilder.replaceSkippedEdges(prepareGraph::getShortcutForPrepareEdge);
@@ -417,6 +471,18 @@ class EdgeBasedNodeContractor implements NodeContractor {
         return wpsStatsContr.numPolls + wpsStatsHeur.numPolls;
     }
 
+    private static class EdgeBasedPendingShortcuts implements PendingShortcuts {
+        final List<PrepareCHEntry> edgesFrom = new ArrayList<>();
+        final List<PrepareCHEntry> edgesTo = new ArrayList<>();
+        final IntArrayList origEdgeCounts = new IntArrayList();
+
+        void add(PrepareCHEntry edgeFrom, PrepareCHEntry edgeTo, int origEdgeCount) {
+            edgesFrom.add(edgeFrom);
+            edgesTo.add(edgeTo);
+            origEdgeCounts.add(origEdgeCount);
+        }
+    }
+
     public static class Params {
         private float edgeQuotientWeight = 100;
         private float originalEdgeQuotientWeight = 100;
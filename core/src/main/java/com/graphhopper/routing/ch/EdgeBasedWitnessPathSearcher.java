@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.BitSet;
 import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
 import com.graphhopper.util.GHUtility;
@@ -59,6 +60,7 @@ public class EdgeBasedWitnessPathSearcher {
 
     private int sourceNode;
     private int centerNode;
+    private BitSet blockedNodes;
 
     // various counters
     private int numPolls;
@@ -107,6 +109,15 @@ public class EdgeBasedWitnessPathSearcher {
         dijkstraHeap.insert(0, sourceEdgeKey);
     }
 
+    /**
+     * Sets the nodes that must not be part of a witness path, or null to allow all nodes. This is used when multiple
+     * nodes are contracted at the same time, because then they must not serve as witnesses for each other. The
+     * center node of the search is never blocked.
+     */
+    public void setBlockedNodes(BitSet blockedNodes) {
+        this.blockedNodes = blockedNodes;
+    }
+
     /**
      * Runs a witness path search for a given target edge key. Results of previous searches (the shortest path tree) are
      * reused and the previous search is extended if necessary. Note that you need to call
@@ -151,6 +162,9 @@ public class EdgeBasedWitnessPathSearcher {
                 // being recognized as witnesses when there are double zero weight loops at the source node
                 if (currNode == sourceNode && iter.getAdjNode() == sourceNode && iter.getWeight() < MAX_ZERO_WEIGHT_LOOP)
                     continue;
+                // the center node is blocked as well, but paths to it are handled below
+                if (blockedNodes != null && iter.getAdjNode() != centerNode && blockedNodes.get(iter.getAdjNode()))
+                    continue;
                 final double weight = weights[currKey] + calcTurnWeight(currKey, currNode, iter.getOrigEdgeKeyFirst()) + iter.getWeight();
                 if (Double.isInfinite(weight))
                     continue;
@@ -0,0 +1,379 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Calculates a node ordering for contraction hierarchies using nested dissection: the graph is split recursively by
+ * small node separators and the nodes of every separator are ranked above the nodes of the parts it separates. The
+ * separators are found with inertial flow: the nodes are sorted along a few directions by their coordinates and for
+ * every direction we calculate the minimum node cut between the first and the last nodes using a max-flow search. We
+ * use the cut that is the smallest relative to the number of nodes it separates.
+ * <p>
+ * The ordering only depends on the graph topology and the node coordinates, but not on a weighting, so the same
+ * ordering can be used for all profiles, see {@link CustomizableContractionHierarchies}.
+ */
+public class NestedDissectionOrdering {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NestedDissectionOrdering.class);
+    // the directions (x=lon, y=lat) along which we sort the nodes to find the sources and sinks of the flow
+    private static final double[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+    private final BaseGraph graph;
+    // the undirected adjacency lists of the graph without loops
+    private final int[] adjStart;
+    private final int[] adjNodes;
+    // the index of every node within the part that is currently dissected or -1
+    private final int[] localIndex;
+    private double balance = 0.25;
+    private int maxLeafSize = 8;
+
+    public static NodeOrderingProvider computeOrdering(BaseGraph graph) {
+        return new NestedDissectionOrdering(graph).compute();
+    }
+
+    public NestedDissectionOrdering(BaseGraph graph) {
+        this.graph = graph;
+        int nodes = graph.getNodes();
+        adjStart = new int[nodes + 1];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjStart[iter.getBaseNode() + 1]++;
+                adjStart[iter.getAdjNode() + 1]++;
+            }
+        for (int node = 0; node < nodes; node++)
+            adjStart[node + 1] += adjStart[node];
+        adjNodes = new int[adjStart[nodes]];
+        int[] next = Arrays.copyOf(adjStart, nodes);
+        iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.getBaseNode() != iter.getAdjNode()) {
+                adjNodes[next[iter.getBaseNode()]++] = iter.getAdjNode();
+                adjNodes[next[iter.getAdjNode()]++] = iter.getBaseNode();
+            }
+        localIndex = new int[nodes];
+        Arrays.fill(localIndex, -1);
+    }
+
+    /**
+     * @param balance the fraction of the nodes of a part that are used as sources and as sinks when searching a
+     *                separator. Larger values yield more balanced separators, but the separators get larger as well.
+     */
+    public NestedDissectionOrdering setBalance(double balance) {
+        if (balance <= 0 || balance > 0.4)
+            throw new IllegalArgumentException("balance must be in (0, 0.4], but was: " + balance);
+        this.balance = balance;
+        return this;
+    }
+
+    /**
+     * Parts with at most this number of nodes are not dissected any further, but their nodes are ranked arbitrarily.
+     */
+    public NestedDissectionOrdering setMaxLeafSize(int maxLeafSize) {
+        if (maxLeafSize < 1)
+            throw new IllegalArgumentException("maxLeafSize must be positive, but was: " + maxLeafSize);
+        this.maxLeafSize = maxLeafSize;
+        return this;
+    }
+
+    public NodeOrderingProvider compute() {
+        StopWatch sw = StopWatch.started();
+        int nodes = graph.getNodes();
+        int[] nodesByRank = new int[nodes];
+        int[] all = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+            all[node] = node;
+        // every part gets the ranks [offset, offset + part.length), we use a stack instead of recursion
+        ArrayDeque<Part> parts = new ArrayDeque<>();
+        parts.push(new Part(all, 0));
+        int maxSeparator = 0;
+        while (!parts.isEmpty()) {
+            Part part = parts.pop();
+            if (part.nodes.length <= maxLeafSize) {
+                System.arraycopy(part.nodes, 0, nodesByRank, part.offset, part.nodes.length);
+                continue;
+            }
+            setLocalIndices(part.nodes);
+            int[][] components = findComponents(part.nodes);
+            if (components.length > 1) {
+                clearLocalIndices(part.nodes);
+                int offset = part.offset;
+                for (int[] component : components) {
+                    parts.push(new Part(component, offset));
+                    offset += component.length;
+                }
+                continue;
+            }
+            boolean[] separator = findSeparator(part.nodes);
+            clearLocalIndices(part.nodes);
+            IntArrayList rest = new IntArrayList(part.nodes.length);
+            int rank = part.offset + part.nodes.length;
+            for (int i = 0; i < part.nodes.length; i++)
+                if (separator[i])
+                    nodesByRank[--rank] = part.nodes[i];
+                else
+                    rest.add(part.nodes[i]);
+            maxSeparator = Math.max(maxSeparator, part.nodes.length - rest.size());
+            // the remaining nodes are split into their components when we process them
+            parts.push(new Part(rest.toArray(), part.offset));
+        }
+        LOGGER.info("calculated nested dissection ordering for {} nodes, largest separator: {}, took: {}s",
+                nodes, maxSeparator, sw.stop().getSeconds());
+        return NodeOrderingProvider.fromArray(nodesByRank);
+    }
+
+    private void setLocalIndices(int[] nodes) {
+        for (int i = 0; i < nodes.length; i++)
+            localIndex[nodes[i]] = i;
+    }
+
+    private void clearLocalIndices(int[] nodes) {
+        for (int node : nodes)
+            localIndex[node] = -1;
+    }
+
+    /**
+     * @return the connected components of the given part, its local indices must be set
+     */
+    private int[][] findComponents(int[] nodes) {
+        boolean[] visited = new boolean[nodes.length];
+        IntArrayList components = new IntArrayList();
+        int[] queue = new int[nodes.length];
+        int queueEnd = 0;
+        for (int start = 0; start < nodes.length; start++) {
+            if (visited[start])
+                continue;
+            components.add(queueEnd);
+            visited[start] = true;
+            queue[queueEnd++] = nodes[start];
+            for (int q = components.get(components.size() - 1); q < queueEnd; q++) {
+                int node = queue[q];
+                for (int a = adjStart[node]; a < adjStart[node + 1]; a++) {
+                    int local = localIndex[adjNodes[a]];
+                    if (local >= 0 && !visited[local]) {
+                        visited[local] = true;
+                        queue[queueEnd++] = adjNodes[a];
+                    }
+                }
+            }
+        }
+        int[][] result = new int[components.size()][];
+        for (int c = 0; c < components.size(); c++) {
+            int end = c + 1 < components.size() ? components.get(c + 1) : queueEnd;
+            result[c] = Arrays.copyOfRange(queue, components.get(c), end);
+        }
+        return result;
+    }
+
+    /**
+     * @return a flag for every node of the given (connected) part that tells if the node belongs to the separator
+     */
+    private boolean[] findSeparator(int[] nodes) {
+        int n = nodes.length;
+        // the local adjacency lists are sorted and contain no duplicates, so we can find the reverse arcs
+        int[] localStart = new int[n + 1];
+        IntArrayList localAdj = new IntArrayList();
+        for (int i = 0; i < n; i++) {
+            int from = localAdj.size();
+            for (int a = adjStart[nodes[i]]; a < adjStart[nodes[i] + 1]; a++)
+                if (localIndex[adjNodes[a]] >= 0)
+                    localAdj.add(localIndex[adjNodes[a]]);
+            Arrays.sort(localAdj.buffer, from, localAdj.size());
+            int end = from;
+            for (int a = from; a < localAdj.size(); a++)
+                if (a == from || localAdj.get(a) != localAdj.get(a - 1))
+                    localAdj.set(end++, localAdj.get(a));
+            localAdj.elementsCount = end;
+            localStart[i + 1] = end;
+        }
+        int[] adj = localAdj.toArray();
+        int[] reverse = new int[adj.length];
+        for (int i = 0; i < n; i++)
+            for (int a = localStart[i]; a < localStart[i + 1]; a++)
+                reverse[a] = Arrays.binarySearch(adj, localStart[adj[a]], localStart[adj[a] + 1], i);
+
+        NodeAccess na = graph.getNodeAccess();
+        Integer[] sorted = new Integer[n];
+        double[] projection = new double[n];
+        int terminals = Math.max(1, (int) (balance * n));
+        boolean[] best = null;
+        double bestQuality = Double.POSITIVE_INFINITY;
+        for (double[] dir : DIRECTIONS) {
+            for (int i = 0; i < n; i++) {
+                sorted[i] = i;
+                projection[i] = dir[0] * na.getLon(nodes[i]) + dir[1] * na.getLat(nodes[i]);
+            }
+            Arrays.sort(sorted, Comparator.comparingDouble(i -> projection[i]));
+            MinNodeCut cut = new MinNodeCut(localStart, adj, reverse, sorted, terminals);
+            boolean[] separator = cut.find();
+            int size = 0, sourceSide = 0;
+            for (int i = 0; i < n; i++)
+                if (separator[i])
+                    size++;
+                else if (cut.isReachable(i))
+                    sourceSide++;
+            // a small separator is not worth much if it only cuts off a few nodes, so we compare the separator size
+            // relative to the smaller side
+            double quality = (double) size / Math.max(1, Math.min(sourceSide, n - size - sourceSide));
+            if (quality < bestQuality) {
+                bestQuality = quality;
+                best = separator;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds a minimum node cut between the first and the last nodes of the given sorted nodes. Every node has
+     * capacity one, so we split every node into an 'in' state (2*node) and an 'out' state (2*node+1) and augment
+     * the flow along shortest paths in the residual graph.
+     */
+    private static class MinNodeCut {
+        private final int[] start;
+        private final int[] adj;
+        private final int[] reverse;
+        private final int n;
+        private final boolean[] source;
+        private final boolean[] sink;
+        // the net flow along every arc and the flow through every node
+        private final int[] arcFlow;
+        private final boolean[] nodeFlow;
+        private final int[] parent;
+        private final int[] parentArc;
+        private final int[] queue;
+
+        MinNodeCut(int[] start, int[] adj, int[] reverse, Integer[] sorted, int terminals) {
+            this.start = start;
+            this.adj = adj;
+            this.reverse = reverse;
+            n = start.length - 1;
+            source = new boolean[n];
+            sink = new boolean[n];
+            for (int i = 0; i < terminals; i++) {
+                source[sorted[i]] = true;
+                sink[sorted[n - 1 - i]] = true;
+            }
+            arcFlow = new int[adj.length];
+            nodeFlow = new boolean[n];
+            parent = new int[2 * n];
+            parentArc = new int[2 * n];
+            queue = new int[2 * n];
+        }
+
+        boolean[] find() {
+            int target;
+            while ((target = search()) >= 0)
+                augment(target);
+            // the separator consists of the saturated nodes whose 'in' state can be reached, but not their 'out' state
+            boolean[] separator = new boolean[n];
+            for (int i = 0; i < n; i++)
+                separator[i] = parent[2 * i] != -1 && parent[2 * i + 1] == -1;
+            return separator;
+        }
+
+        /**
+         * @return true if the given node can be reached from the sources after the max-flow was found
+         */
+        boolean isReachable(int node) {
+            return parent[2 * node] != -1;
+        }
+
+        /**
+         * Runs a BFS in the residual graph starting from the 'in' states of all sources.
+         *
+         * @return the 'out' state of a sink that was reached or -1 if there is no augmenting path
+         */
+        private int search() {
+            Arrays.fill(parent, -1);
+            int queueEnd = 0;
+            for (int i = 0; i < n; i++)
+                if (source[i]) {
+                    parent[2 * i] = 2 * i;
+                    parentArc[2 * i] = -1;
+                    queue[queueEnd++] = 2 * i;
+                }
+            for (int q = 0; q < queueEnd; q++) {
+                int state = queue[q];
+                int node = state >> 1;
+                if ((state & 1) == 0) {
+                    if (!nodeFlow[node] && visit(state, state + 1, -1)) {
+                        if (sink[node]) return state + 1;
+                        queue[queueEnd++] = state + 1;
+                    }
+                    // we can cancel flow that enters this node
+                    for (int a = start[node]; a < start[node + 1]; a++)
+                        if (arcFlow[a] < 0 && visit(state, 2 * adj[a] + 1, a)) {
+                            if (sink[adj[a]]) return 2 * adj[a] + 1;
+                            queue[queueEnd++] = 2 * adj[a] + 1;
+                        }
+                } else {
+                    if (nodeFlow[node] && visit(state, state - 1, -1))
+                        queue[queueEnd++] = state - 1;
+                    for (int a = start[node]; a < start[node + 1]; a++)
+                        if (visit(state, 2 * adj[a], a))
+                            queue[queueEnd++] = 2 * adj[a];
+                }
+            }
+            return -1;
+        }
+
+        private boolean visit(int from, int to, int arc) {
+            if (parent[to] != -1)
+                return false;
+            parent[to] = from;
+            parentArc[to] = arc;
+            return true;
+        }
+
+        private void augment(int target) {
+            int state = target;
+            while (parent[state] != state) {
+                int prev = parent[state];
+                int arc = parentArc[state];
+                if (arc >= 0) {
+                    arcFlow[arc]++;
+                    arcFlow[reverse[arc]]--;
+                } else {
+                    // entering the 'out' state from the 'in' state uses the node, the other way round cancels it
+                    nodeFlow[state >> 1] = (state & 1) == 1;
+                }
+                state = prev;
+            }
+        }
+    }
+
+    private static class Part {
+        final int[] nodes;
+        final int offset;
+
+        Part(int[] nodes, int offset) {
+            this.nodes = nodes;
+            this.offset = offset;
+        }
+    }
+}
@@ -17,6 +17,9 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
@@ -31,7 +34,9 @@ import static com.graphhopper.util.Helper.nf;
 
 class NodeBasedNodeContractor implements NodeContractor {
     private final CHPreparationGraph prepareGraph;
-    private final Params params = new Params();
+    private final Params params;
+    // the contractor that created this one if this is a worker, see createWorker()
+    private final NodeBasedNodeContractor parent;
     // todo: maybe use a set to prevent duplicates instead?
     private List<Shortcut> shortcuts = new ArrayList<>();
     private CHStorageBuilder chBuilder;
@@ -51,10 +56,19 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
+        this.params = new Params();
+        this.parent = null;
         extractParams(pMap);
         this.chBuilder = chBuilder;
     }
 
+    private NodeBasedNodeContractor(NodeBasedNodeContractor parent) {
+        this.prepareGraph = parent.prepareGraph;
+        this.params = parent.params;
+        this.parent = parent;
+        initFromGraph();
+    }
+
     private void extractParams(PMap pMap) {
         params.edgeDifferenceWeight = pMap.getFloat(EDGE_DIFFERENCE_WEIGHT, params.edgeDifferenceWeight);
         params.originalEdgesCountWeight = pMap.getFloat(ORIGINAL_EDGE_COUNT_WEIGHT, params.originalEdgesCountWeight);
@@ -97,7 +111,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
         shortcutsCount = 0;
         originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+        findAndHandleShortcuts(node, this::countShortcuts, (int) (getMeanDegree() * params.maxPollFactorHeuristic));
 
         // from shortcuts we can compute the edgeDifference
         // # low influence: with it the shortcut creation is slightly faster
@@ -117,6 +131,41 @@ class NodeBasedNodeContractor implements NodeContractor {
     @Override
     public IntContainer contractNode(int node) {
         long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        return insertShortcutsAndDisconnect(node, degree);
+    }
+
+    @Override
+    public NodeContractor createWorker() {
+        return new NodeBasedNodeContractor(this);
+    }
+
+    @Override
+    public PendingShortcuts findShortcuts(int node, BitSet blockedNodes) {
+        NodeBasedPendingShortcuts shortcuts = new NodeBasedPendingShortcuts();
+        witnessPathSearcher.setBlockedNodes(blockedNodes);
+        shortcuts.degree = findAndHandleShortcuts(node, shortcuts::add, (int) (getMeanDegree() * params.maxPollFactorContraction));
+        witnessPathSearcher.setBlockedNodes(null);
+        return shortcuts;
+    }
+
+    @Override
+    public IntContainer contractNode(int node, PendingShortcuts pendingShortcuts) {
+        NodeBasedPendingShortcuts shortcuts = (NodeBasedPendingShortcuts) pendingShortcuts;
+        for (int i = 0; i < shortcuts.weights.size(); i++) {
+            int idx = 6 * i;
+            IntArrayList ints = shortcuts.ints;
+            addOrUpdateShortcut(ints.get(idx), ints.get(idx + 1), shortcuts.weights.get(i),
+                    ints.get(idx + 2), ints.get(idx + 3), ints.get(idx + 4), ints.get(idx + 5));
+        }
+        return insertShortcutsAndDisconnect(node, shortcuts.degree);
+    }
+
+    private double getMeanDegree() {
+        // workers do not contract nodes, so they use the mean degree of the contractor that created them
+        return parent == null ? meanDegree : parent.meanDegree;
+    }
+
+    private IntContainer insertShortcutsAndDisconnect(int node, long degree) {
         insertShortcuts(node);
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
@@ -299,6 +348,21 @@ class NodeBasedNodeContractor implements NodeContractor {
                             int incomingEdge, int inOrigEdgeCount);
     }
 
+    private static class NodeBasedPendingShortcuts implements PendingShortcuts {
+        // fromNode, toNode, outgoingEdge, outOrigEdgeCount, incomingEdge, inOrigEdgeCount for every shortcut
+        final IntArrayList ints = new IntArrayList();
+        final DoubleArrayList weights = new DoubleArrayList();
+        long degree;
+
+        void add(int fromNode, int toNode, double weight, int outgoingEdge, int outOrigEdgeCount,
+                 int incomingEdge, int inOrigEdgeCount) {
+            ints.add(fromNode, toNode);
+            ints.add(outgoingEdge, outOrigEdgeCount);
+            ints.add(incomingEdge, inOrigEdgeCount);
+            weights.add(weight);
+        }
+    }
+
     public static class Params {
         // default values were optimized for Unterfranken
         private float edgeDifferenceWeight = 10;
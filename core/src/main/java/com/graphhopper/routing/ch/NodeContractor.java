@@ -18,6 +18,7 @@
 
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.BitSet;
 import com.carrotsearch.hppc.IntContainer;
 
 public interface NodeContractor {
@@ -37,6 +38,29 @@ public interface NodeContractor {
      */
     IntContainer contractNode(int node);
 
+    /**
+     * Creates a contractor that works on the same graph and shares the state that is relevant for the priority
+     * calculation with this contractor, but uses its own witness searchers. It can be used in another thread to
+     * calculate priorities and find shortcuts while the graph is not changed, but it must not contract nodes.
+     */
+    NodeContractor createWorker();
+
+    /**
+     * Searches the shortcuts that are required to contract the given node, but does not change the graph. The witness
+     * searches do not use the given blocked nodes, which allows contracting all of them at the same time as long as
+     * none of them are adjacent.
+     *
+     * @return the shortcuts that need to be passed to {@link #contractNode(int, PendingShortcuts)}
+     */
+    PendingShortcuts findShortcuts(int node, BitSet blockedNodes);
+
+    /**
+     * Like {@link #contractNode(int)}, but adds the shortcuts that were found by {@link #findShortcuts} before
+     *
+     * @return the set of nodes adjacent to this node (before contraction)
+     */
+    IntContainer contractNode(int node, PendingShortcuts shortcuts);
+
     void finishContraction();
 
     long getAddedShortcutsCount();
@@ -45,4 +69,9 @@ public interface NodeContractor {
 
     float getDijkstraSeconds();
 
+    /**
+     * The shortcuts that were found for a node, but were not added to the graph yet.
+     */
+    interface PendingShortcuts {
+    }
 }
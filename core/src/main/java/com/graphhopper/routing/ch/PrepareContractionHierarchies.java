@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
@@ -28,8 +30,9 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Locale;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.getMemInfo;
@@ -61,6 +64,7 @@ public class PrepareContractionHierarchies {
     private final StopWatch contractionSW = new StopWatch();
     private final Params params;
     private final BaseGraph graph;
+    private CHPreparationGraph prepareGraph;
     private NodeContractor nodeContractor;
     private final int nodes;
     private NodeOrderingProvider nodeOrderingProvider;
@@ -100,6 +104,7 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        params.setContractionThreads(pMap.getInt(CONTRACTION_THREADS, params.getContractionThreads()));
         return this;
     }
 
@@ -159,6 +164,8 @@ public class PrepareContractionHierarchies {
         setMaxLevelOnAllNodes();
         if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (params.getContractionThreads() > 1) {
+            contractNodesInParallel();
         } else {
             contractNodesUsingHeuristicNodeOrdering();
         }
@@ -173,7 +180,6 @@ public class PrepareContractionHierarchies {
         // not simply prepare contraction hierarchies, but instead it also serves as some kind of 'container' to give
         // access to the preparations in the GraphHopper class. If this was not so we could make this a lot cleaner here,
         // declare variables final and would not need all these close() methods...
-        CHPreparationGraph prepareGraph;
         if (chConfig.getTraversalMode().isEdgeBased()) {
             TurnCostStorage turnCostStorage = graph.getTurnCostStorage();
             if (turnCostStorage == null) {
@@ -322,6 +328,202 @@ public class PrepareContractionHierarchies {
         _close();
     }
 
+    /**
+     * Contracts the nodes in rounds using multiple threads. In every round we contract all nodes that have a smaller
+     * priority than all other nodes within two hops. These nodes are not adjacent, so their shortcuts can be searched
+     * concurrently as long as they do not serve as witnesses for each other. The shortcuts are then added one node after the other
+     * and the priorities of all neighbors of the contracted nodes are updated, again concurrently. The periodic, lazy and
+     * neighbor update settings are not used here.
+     */
+    private void contractNodesInParallel() {
+        final int threads = params.getContractionThreads();
+        logger.info("Contracting nodes in parallel using {} threads, {}", threads, getMemInfo());
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            List<NodeContractor> workers = new ArrayList<>(threads);
+            List<PrepareGraphEdgeExplorer> outExplorers = new ArrayList<>(threads);
+            List<PrepareGraphEdgeExplorer> inExplorers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(nodeContractor.createWorker());
+                outExplorers.add(prepareGraph.createOutEdgeExplorer());
+                inExplorers.add(prepareGraph.createInEdgeExplorer());
+            }
+            final float[] priorities = new float[nodes];
+            final IntArrayList remaining = new IntArrayList(nodes);
+            for (int node = 0; node < nodes; node++)
+                remaining.add(node);
+            periodicUpdateSW.start();
+            runInParallel(executorService, threads, remaining.size(), (w, i) -> {
+                int node = remaining.get(i);
+                priorities[node] = workers.get(w).calculatePriority(node);
+            });
+            periodicUpdateSW.stop();
+
+            final int initSize = remaining.size();
+            final long logSize = params.getLogMessagesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, initSize * (params.getLogMessagesPercentage() / 100d)));
+            final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
+            final long[] minKeys = new long[nodes];
+            final boolean[] selected = new boolean[nodes];
+            final BitSet blockedNodes = new BitSet(nodes);
+            final BitSet changedNodes = new BitSet(nodes);
+            int level = 0;
+            int rounds = 0;
+            long nextLog = 0;
+            while (!remaining.isEmpty()) {
+                stopIfInterrupted();
+                if (level >= nextLog) {
+                    logParallelStats(remaining.size(), rounds);
+                    nextLog = level + logSize;
+                }
+                rounds++;
+                // find the nodes that have a smaller priority than all other nodes within two hops. they are never
+                // adjacent and do not share neighbors, so their priorities do not change when the others are contracted
+                runInParallel(executorService, threads, remaining.size(), (w, i) -> {
+                    int node = remaining.get(i);
+                    minKeys[node] = findMinKey(node, priorities, null, outExplorers.get(w), inExplorers.get(w));
+                });
+                runInParallel(executorService, threads, remaining.size(), (w, i) -> {
+                    int node = remaining.get(i);
+                    selected[node] = findMinKey(node, priorities, minKeys, outExplorers.get(w), inExplorers.get(w)) == priorityKey(priorities[node], node);
+                });
+                long[] keys = new long[remaining.size()];
+                int count = 0;
+                for (int i = 0; i < remaining.size(); i++) {
+                    int node = remaining.get(i);
+                    if (selected[node]) {
+                        keys[count++] = priorityKey(priorities[node], node);
+                        selected[node] = false;
+                    }
+                }
+                // the nodes are contracted in the order of their priority, also to stop at the same node count as
+                // the sequential contraction
+                Arrays.sort(keys, 0, count);
+                if (nodesToAvoidContract > 0)
+                    count = (int) Math.min(count, remaining.size() - nodesToAvoidContract + 1);
+                final int[] batch = new int[count];
+                for (int i = 0; i < count; i++) {
+                    batch[i] = (int) keys[i];
+                    blockedNodes.set(batch[i]);
+                }
+
+                contractionSW.start();
+                final NodeContractor.PendingShortcuts[] shortcuts = new NodeContractor.PendingShortcuts[count];
+                runInParallel(executorService, threads, count, (w, i) -> shortcuts[i] = workers.get(w).findShortcuts(batch[i], blockedNodes));
+                for (int i = 0; i < count; i++) {
+                    chBuilder.setLevel(batch[i], level++);
+                    IntContainer neighbors = nodeContractor.contractNode(batch[i], shortcuts[i]);
+                    shortcuts[i] = null;
+                    for (IntCursor neighbor : neighbors)
+                        changedNodes.set(neighbor.value);
+                }
+                contractionSW.stop();
+
+                int newSize = 0;
+                for (int i = 0; i < remaining.size(); i++) {
+                    int node = remaining.get(i);
+                    if (!isContracted(node))
+                        remaining.set(newSize++, node);
+                }
+                remaining.elementsCount = newSize;
+                for (int node : batch)
+                    blockedNodes.clear(node);
+                if (remaining.size() < nodesToAvoidContract)
+                    // skipped nodes are already set to maxLevel
+                    break;
+
+                neighborUpdateSW.start();
+                final IntArrayList changed = new IntArrayList();
+                for (int node = changedNodes.nextSetBit(0); node >= 0; node = changedNodes.nextSetBit(node + 1))
+                    if (!isContracted(node))
+                        changed.add(node);
+                changedNodes.clear();
+                runInParallel(executorService, threads, changed.size(), (w, i) -> {
+                    int node = changed.get(i);
+                    priorities[node] = workers.get(w).calculatePriority(node);
+                });
+                neighborUpdateSW.stop();
+            }
+            logParallelStats(remaining.size(), rounds);
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        nodeContractor.finishContraction();
+        logger.info("new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                + ", initSize:" + nf(nodes)
+                + ", " + chConfig.getWeighting()
+                + ", threads:" + params.getContractionThreads()
+                + ", " + getTimesAsString()
+                + ", " + Helper.getMemInfo());
+        _close();
+    }
+
+    /**
+     * @return the smallest priority key of the given node and its neighbors, or the smallest of the given minKeys of
+     * these nodes if minKeys is not null
+     */
+    private static long findMinKey(int node, float[] priorities, long[] minKeys, PrepareGraphEdgeExplorer outExplorer, PrepareGraphEdgeExplorer inExplorer) {
+        long minKey = minKeys == null ? priorityKey(priorities[node], node) : minKeys[node];
+        for (PrepareGraphEdgeExplorer explorer : new PrepareGraphEdgeExplorer[]{outExplorer, inExplorer}) {
+            PrepareGraphEdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                minKey = Math.min(minKey, minKeys == null ? priorityKey(priorities[adjNode], adjNode) : minKeys[adjNode]);
+            }
+        }
+        return minKey;
+    }
+
+    /**
+     * @return a key that orders nodes by their priority and node id
+     */
+    private static long priorityKey(float priority, int node) {
+        int bits = Float.floatToIntBits(priority);
+        // for negative values we flip all but the sign bit so the ints are ordered like the floats
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) bits << 32) | node;
+    }
+
+    /**
+     * Runs the given task for all indices in [0, size). The tasks of the different threads are run with different
+     * worker ids in [0, threads).
+     */
+    private static void runInParallel(ExecutorService executorService, int threads, int size, WorkerTask task) {
+        if (size < 2 * threads) {
+            for (int i = 0; i < size; i++)
+                task.run(0, i);
+            return;
+        }
+        AtomicInteger nextIndex = new AtomicInteger();
+        List<Callable<Object>> callables = new ArrayList<>(threads);
+        for (int w = 0; w < threads; w++) {
+            final int worker = w;
+            callables.add(() -> {
+                for (int i = nextIndex.getAndIncrement(); i < size; i = nextIndex.getAndIncrement())
+                    task.run(worker, i);
+                return null;
+            });
+        }
+        try {
+            for (Future<Object> future : executorService.invokeAll(callables))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorkerTask {
+        void run(int worker, int index);
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
@@ -373,6 +575,18 @@ public class PrepareContractionHierarchies {
                 Helper.getMemInfo()));
     }
 
+    private void logParallelStats(int remainingNodes, int rounds) {
+        logger.info(String.format(Locale.ROOT,
+                "%s, nodes: %10s, shortcuts: %10s, rounds: %5d, %s, %s, %s",
+                (isEdgeBased() ? "edge" : "node"),
+                nf(remainingNodes),
+                nf(nodeContractor.getAddedShortcutsCount()),
+                rounds,
+                getTimesAsString(),
+                nodeContractor.getStatisticsString(),
+                Helper.getMemInfo()));
+    }
+
     private void logFixedNodeOrderingStats(int nodesContracted, int logSize, StopWatch stopWatch) {
         logger.info(String.format(Locale.ROOT,
                 "nodes: %10s / %10s (%6.2f%%), shortcuts: %10s, speed = %6.2f nodes/ms, %s, %s",
@@ -421,6 +635,7 @@ public class PrepareContractionHierarchies {
 
     private void _close() {
         nodeContractor.close();
+        prepareGraph = null;
         sortedNodes = null;
     }
 
@@ -441,7 +656,7 @@ public class PrepareContractionHierarchies {
         private final double neighborTime;
         private final long totalPrepareTime;
 
-        private Result(CHConfig chConfig, CHStorage chStorage, long shortcuts, double lazyTime, double periodTime, double neighborTime, long totalPrepareTime) {
+        Result(CHConfig chConfig, CHStorage chStorage, long shortcuts, double lazyTime, double periodTime, double neighborTime, long totalPrepareTime) {
             this.chStorage = chStorage;
             this.shortcuts = shortcuts;
             this.lazyTime = lazyTime;
@@ -520,6 +735,13 @@ public class PrepareContractionHierarchies {
          * @see #periodicUpdatesPercentage
          */
         private int logMessagesPercentage;
+        /**
+         * Specifies the number of threads used to contract the nodes. With more than one thread independent sets of
+         * nodes are contracted concurrently instead of contracting one node after the other. This is much faster on
+         * machines with many cores, but ignores the update percentages above and usually leads to a few more shortcuts.
+         * This is not used for a fixed node ordering.
+         */
+        private int contractionThreads = 1;
 
         static Params forTraversalMode(TraversalMode traversalMode) {
             // Lower values for the neighbor update percentage (and/or max neighbor updates) yield a slower
@@ -594,6 +816,16 @@ public class PrepareContractionHierarchies {
             this.logMessagesPercentage = logMessagesPercentage;
         }
 
+        int getContractionThreads() {
+            return contractionThreads;
+        }
+
+        void setContractionThreads(int contractionThreads) {
+            if (contractionThreads < 1)
+                throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be at least 1, but was: " + contractionThreads);
+            this.contractionThreads = contractionThreads;
+        }
+
         private void checkPercentage(String name, int value) {
             if (value < 0 || value > 100) {
                 throw new IllegalArgumentException(name + " has to be in [0, 100], to disable it use 0");
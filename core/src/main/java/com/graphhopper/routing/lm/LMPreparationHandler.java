@@ -28,6 +28,7 @@ import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.StorableProperties;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.ImportProfiler;
 import com.graphhopper.util.JsonFeatureCollection;
 import com.graphhopper.util.Parameters;
 import com.graphhopper.util.Parameters.Landmark;
@@ -41,6 +42,7 @@ import java.io.Reader;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -61,6 +63,7 @@ public class LMPreparationHandler {
     private int preparationThreads;
     private boolean logDetails = false;
     private AreaIndex<SplitArea> areaIndex;
+    private ImportProfiler importProfiler = ImportProfiler.NOOP;
 
     public LMPreparationHandler() {
         setPreparationThreads(1);
@@ -109,6 +112,14 @@ public class LMPreparationHandler {
         return preparationThreads;
     }
 
+    /**
+     * Measures the preparation of every LM config as import stage, the name of the stage is lm.&lt;config name&gt;
+     */
+    public LMPreparationHandler setImportProfiler(ImportProfiler importProfiler) {
+        this.importProfiler = importProfiler;
+        return this;
+    }
+
     /**
      * This method changes the number of threads used for preparation on import. Default is 1. Make
      * sure that you have enough memory when increasing this number!
@@ -169,10 +180,32 @@ public class LMPreparationHandler {
         return loaded;
     }
 
+    /**
+     * Removes the stored landmark data of the given config, e.g. because the weights of the base graph changed. It will
+     * be prepared again by the next call of {@link #prepare}.
+     */
+    public void remove(LMConfig lmConfig, BaseGraph baseGraph, EncodedValueLookup encodedValueLookup) {
+        // the DataAccess objects have to be created before the directory can remove their files
+        new LandmarkStorage(baseGraph, encodedValueLookup, baseGraph.getDirectory(), lmConfig, landmarkCount);
+        baseGraph.getDirectory().remove("landmarks_" + lmConfig.getName());
+        baseGraph.getDirectory().remove("landmarks_subnetwork_" + lmConfig.getName());
+    }
+
     /**
      * Prepares the landmark data for all given configs
      */
     public List<PrepareLandmarks> prepare(List<LMConfig> lmConfigs, BaseGraph baseGraph, EncodingManager encodingManager, StorableProperties properties, LocationIndex locationIndex, final boolean closeEarly) {
+        return prepare(lmConfigs, baseGraph, encodingManager, properties, locationIndex, closeEarly, name -> {
+        });
+    }
+
+    /**
+     * Prepares the landmark data for all given configs
+     *
+     * @param preparedCallback is called with the name of every LM config whose landmark data is finished and flushed
+     */
+    public List<PrepareLandmarks> prepare(List<LMConfig> lmConfigs, BaseGraph baseGraph, EncodingManager encodingManager, StorableProperties properties,
+                                          LocationIndex locationIndex, final boolean closeEarly, Consumer<String> preparedCallback) {
         List<PrepareLandmarks> preparations = createPreparations(lmConfigs, baseGraph, encodingManager, locationIndex);
         List<Runnable> prepareRunnables = new ArrayList<>();
         for (int i = 0; i < preparations.size(); i++) {
@@ -182,11 +215,14 @@ public class LMPreparationHandler {
             prepareRunnables.add(() -> {
                 LOGGER.info(count + "/" + lmConfigs.size() + " calling LM prepare.doWork for " + prepare.getLMConfig().getName() + " ... (" + getMemInfo() + ")");
                 Thread.currentThread().setName(name);
+                ImportProfiler.Stage stage = importProfiler.start("lm." + name);
                 prepare.doWork();
+                stage.stop();
                 if (closeEarly)
                     prepare.close();
                 LOGGER.info("LM {} finished {}", name, getMemInfo());
                 properties.put(Landmark.PREPARE + "date." + name, createFormatter().format(new Date()));
+                preparedCallback.accept(name);
             });
         }
         GHUtility.runConcurrently(prepareRunnables.stream(), preparationThreads);
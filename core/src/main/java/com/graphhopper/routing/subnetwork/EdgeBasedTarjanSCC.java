@@ -140,7 +140,7 @@ public class EdgeBasedTarjanSCC {
                 findComponentForEdgeKey(edgeKeyFwd, iter.getAdjNode());
             int edgeKeyBwd = createEdgeKey(iter, true);
             if (!edgeKeyIndex.has(edgeKeyBwd))
-                findComponentForEdgeKey(edgeKeyBwd, iter.getAdjNode());
+                findComponentForEdgeKey(edgeKeyBwd, iter.getBaseNode());
         }
         return components;
     }
@@ -181,10 +181,7 @@ public class EdgeBasedTarjanSCC {
             if (tarjanStack.getLast() == p) {
                 tarjanStack.removeLast();
                 edgeKeyOnStack.remove(p);
-                components.numComponents++;
-                components.numEdgeKeys++;
-                if (!excludeSingleEdgeComponents)
-                    components.singleEdgeComponents.set(p);
+                components.addSingleEdgeComponent(p);
             } else {
                 IntArrayList component = new IntArrayList();
                 while (true) {
@@ -196,11 +193,7 @@ public class EdgeBasedTarjanSCC {
                 }
                 component.trimToSize();
                 assert component.size() > 1;
-                components.numComponents++;
-                components.numEdgeKeys += component.size();
-                components.components.add(component);
-                if (component.size() > components.biggestComponent.size())
-                    components.biggestComponent = component;
+                components.addComponent(component);
             }
         }
     }
@@ -235,7 +228,7 @@ public class EdgeBasedTarjanSCC {
         // has already been found by the first search. So we cannot simply push them both and start the search once.
         int edgeKeyBwd = createEdgeKey(edge, true);
         if (!edgeKeyIndex.has(edgeKeyBwd))
-            pushFindComponentForEdgeKey(edgeKeyBwd, edge.getAdjNode());
+            pushFindComponentForEdgeKey(edgeKeyBwd, edge.getBaseNode());
         startSearch();
     }
 
@@ -344,6 +337,7 @@ public class EdgeBasedTarjanSCC {
     public static class ConnectedComponents {
         private final List<IntArrayList> components;
         private final BitSet singleEdgeComponents;
+        private final boolean excludeSingleEdgeComponents;
         private IntArrayList biggestComponent;
         private int numComponents;
         private int numEdgeKeys;
@@ -353,9 +347,25 @@ public class EdgeBasedTarjanSCC {
             singleEdgeComponents = new BitSet(Math.max(edgeKeys, 0));
             if (!(singleEdgeComponents.getClass().getName().contains("hppc")))
                 throw new IllegalStateException("Was meant to be hppc BitSet");
+            excludeSingleEdgeComponents = edgeKeys < 0;
             biggestComponent = new IntArrayList();
         }
 
+        void addSingleEdgeComponent(int edgeKey) {
+            numComponents++;
+            numEdgeKeys++;
+            if (!excludeSingleEdgeComponents)
+                singleEdgeComponents.set(edgeKey);
+        }
+
+        void addComponent(IntArrayList component) {
+            numComponents++;
+            numEdgeKeys += component.size();
+            components.add(component);
+            if (component.size() > biggestComponent.size())
+                biggestComponent = component;
+        }
+
         /**
          * A list of arrays each containing the edge keys of a strongly connected component. Components with only a single
          * edge key are not included here, but need to be obtained using {@link #getSingleEdgeComponents()}.
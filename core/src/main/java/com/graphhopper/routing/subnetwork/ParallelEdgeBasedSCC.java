@@ -0,0 +1,489 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.subnetwork;
+
+import com.carrotsearch.hppc.IntArrayDeque;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.ConnectedComponents;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.EdgeTransitionFilter;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.createEdgeKey;
+import static com.graphhopper.util.GHUtility.getEdgeFromEdgeKey;
+
+/**
+ * Finds the same strongly connected components as {@link EdgeBasedTarjanSCC}, but uses multiple threads and much less
+ * memory for big road networks. The search works in three phases:
+ * <ol>
+ * <li>trimming: edge keys without (remaining) predecessor or successor form their own component. This removes all
+ * inaccessible edge keys and the ends of one-way roads.</li>
+ * <li>forward-backward search: all edge keys that can be reached from a pivot edge key and that can also reach the
+ * pivot form its component. For road networks the first pivot usually hits the biggest component, which contains
+ * most of the remaining edge keys.</li>
+ * <li>the few remaining edge keys are split into weakly connected pieces for which Tarjan's algorithm is run.</li>
+ * </ol>
+ * The first two phases are run in parallel and only keep two bits per edge key, while Tarjan's algorithm needs two ints
+ * and a bit per edge key. The third phase runs the pieces in parallel and only needs memory for the edge keys of the
+ * pieces. The edge transition filter must be thread-safe if more than one thread is used.
+ *
+ * @see EdgeBasedTarjanSCC
+ */
+public class ParallelEdgeBasedSCC {
+    // smaller frontiers and key ranges are not worth to be split between threads
+    private static final int MIN_PARALLEL_KEYS = 1024;
+    private static final int MAX_TRIM_ROUNDS = 10;
+    private static final int MAX_PIVOTS = 3;
+
+    private final Graph graph;
+    private final EdgeTransitionFilter edgeTransitionFilter;
+    private final int threads;
+    private final int edgeKeys;
+    private final ConnectedComponents components;
+    // edge keys that were already assigned to a component
+    private final AtomicBitSet done;
+    // edge keys found by the forward search, later the edge keys that were already assigned to a piece
+    private final AtomicBitSet visited;
+    private ExecutorService executor;
+    private int remaining;
+
+    /**
+     * @param excludeSingleEdgeComponents if set to true components that only contain a single edge will not be
+     *                                    returned
+     * @param threads                     the number of threads used for the search
+     * @see EdgeBasedTarjanSCC#findComponents(Graph, EdgeTransitionFilter, boolean)
+     */
+    public static ConnectedComponents findComponents(Graph graph, EdgeTransitionFilter edgeTransitionFilter,
+                                                     boolean excludeSingleEdgeComponents, int threads) {
+        return new ParallelEdgeBasedSCC(graph, edgeTransitionFilter, excludeSingleEdgeComponents, threads).findComponents();
+    }
+
+    private ParallelEdgeBasedSCC(Graph graph, EdgeTransitionFilter edgeTransitionFilter, boolean excludeSingleEdgeComponents, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, was: " + threads);
+        this.graph = graph;
+        this.edgeTransitionFilter = edgeTransitionFilter;
+        this.threads = threads;
+        edgeKeys = 2 * graph.getEdges();
+        components = new ConnectedComponents(excludeSingleEdgeComponents ? -1 : edgeKeys);
+        done = new AtomicBitSet(edgeKeys);
+        visited = new AtomicBitSet(edgeKeys);
+        remaining = edgeKeys;
+    }
+
+    private ConnectedComponents findComponents() {
+        if (threads > 1)
+            executor = Executors.newFixedThreadPool(threads);
+        try {
+            trim();
+            searchBiggestComponent();
+            searchRemainingComponents();
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+        return components;
+    }
+
+    private void trim() {
+        for (int round = 0; round < MAX_TRIM_ROUNDS && remaining > 0; round++) {
+            // the edge keys that are trimmed by one thread are already skipped by the other threads in the same round,
+            // which is fine because every trimmed edge key is a component of its own
+            int chunkSize = Math.max(MIN_PARALLEL_KEYS, edgeKeys / (4 * threads));
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int start = 0; start < edgeKeys; start += chunkSize) {
+                int from = start, to = Math.min(edgeKeys, start + chunkSize);
+                tasks.add(() -> trim(from, to));
+            }
+            int trimmed = 0;
+            for (int count : invokeAll(tasks))
+                trimmed += count;
+            remaining -= trimmed;
+            // further rounds only remove single edge keys at the ends of the remaining dead-ends
+            if (trimmed * 100L < remaining)
+                break;
+        }
+        // every edge key that is done so far is a single edge component
+        for (int key = done.nextSetBit(0); key >= 0; key = done.nextSetBit(key + 1))
+            components.addSingleEdgeComponent(key);
+    }
+
+    private int trim(int from, int to) {
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        int trimmed = 0;
+        for (int key = from; key < to; key++) {
+            if (done.get(key))
+                continue;
+            EdgeIteratorState edgeState = graph.getEdgeIteratorStateForKey(key);
+            if ((!hasPredecessor(explorer, key, edgeState) || !hasSuccessor(explorer, key, edgeState.getAdjNode())) && done.set(key))
+                trimmed++;
+        }
+        return trimmed;
+    }
+
+    private boolean hasPredecessor(EdgeExplorer explorer, int key, EdgeIteratorState edgeState) {
+        EdgeIterator iter = explorer.setBaseNode(edgeState.getBaseNode());
+        while (iter.next()) {
+            int prevKey = createEdgeKey(iter, true);
+            if (prevKey != key && !done.get(prevKey) && edgeTransitionFilter.accept(iter.getEdge(), edgeState))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean hasSuccessor(EdgeExplorer explorer, int key, int adjNode) {
+        int edge = getEdgeFromEdgeKey(key);
+        EdgeIterator iter = explorer.setBaseNode(adjNode);
+        while (iter.next()) {
+            int nextKey = createEdgeKey(iter, false);
+            if (nextKey != key && !done.get(nextKey) && edgeTransitionFilter.accept(edge, iter))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs the forward-backward search for a few pivots until it found a component that contains at least half of the
+     * remaining edge keys. The search for the components that remain afterwards does not need to be fast anymore.
+     */
+    private void searchBiggestComponent() {
+        Random random = new Random(edgeKeys);
+        for (int i = 0; i < MAX_PIVOTS && remaining > 0; i++) {
+            int pivot = done.nextClearBit(random.nextInt(edgeKeys));
+            if (pivot >= edgeKeys)
+                pivot = done.nextClearBit(0);
+            int before = remaining;
+            IntArrayList component = searchComponent(pivot);
+            remaining -= component.size();
+            if (component.size() == 1) {
+                components.addSingleEdgeComponent(pivot);
+            } else {
+                component.trimToSize();
+                components.addComponent(component);
+            }
+            if (2 * component.size() >= before)
+                break;
+        }
+        visited.clear();
+    }
+
+    private IntArrayList searchComponent(int pivot) {
+        visited.clear();
+        visited.set(pivot);
+        IntArrayList frontier = IntArrayList.from(pivot);
+        while (!frontier.isEmpty())
+            frontier = expand(frontier, this::expandForward);
+
+        // every edge key that can reach the pivot must also be reachable from the pivot, so the backward search
+        // can be restricted to the edge keys found by the forward search
+        done.set(pivot);
+        IntArrayList component = IntArrayList.from(pivot);
+        frontier = component;
+        while (!frontier.isEmpty()) {
+            frontier = expand(frontier, this::expandBackward);
+            component.addAll(frontier);
+        }
+        return component;
+    }
+
+    private void expandForward(EdgeExplorer explorer, int key, IntArrayList next) {
+        int edge = getEdgeFromEdgeKey(key);
+        EdgeIterator iter = explorer.setBaseNode(graph.getEdgeIteratorStateForKey(key).getAdjNode());
+        while (iter.next()) {
+            int nextKey = createEdgeKey(iter, false);
+            if (!done.get(nextKey) && !visited.get(nextKey) && edgeTransitionFilter.accept(edge, iter) && visited.set(nextKey))
+                next.add(nextKey);
+        }
+    }
+
+    private void expandBackward(EdgeExplorer explorer, int key, IntArrayList next) {
+        EdgeIteratorState edgeState = graph.getEdgeIteratorStateForKey(key);
+        EdgeIterator iter = explorer.setBaseNode(edgeState.getBaseNode());
+        while (iter.next()) {
+            int prevKey = createEdgeKey(iter, true);
+            if (visited.get(prevKey) && !done.get(prevKey) && edgeTransitionFilter.accept(iter.getEdge(), edgeState) && done.set(prevKey))
+                next.add(prevKey);
+        }
+    }
+
+    /**
+     * @return the edge keys found by expanding all edge keys of the given frontier
+     */
+    private IntArrayList expand(IntArrayList frontier, Expansion expansion) {
+        int chunks = Math.min(threads, frontier.size() / MIN_PARALLEL_KEYS);
+        if (chunks <= 1) {
+            IntArrayList next = new IntArrayList();
+            EdgeExplorer explorer = graph.createEdgeExplorer();
+            for (int i = 0; i < frontier.size(); i++)
+                expansion.expand(explorer, frontier.get(i), next);
+            return next;
+        }
+        List<Callable<IntArrayList>> tasks = new ArrayList<>(chunks);
+        int chunkSize = (frontier.size() + chunks - 1) / chunks;
+        for (int start = 0; start < frontier.size(); start += chunkSize) {
+            int from = start, to = Math.min(frontier.size(), start + chunkSize);
+            tasks.add(() -> {
+                IntArrayList next = new IntArrayList();
+                EdgeExplorer explorer = graph.createEdgeExplorer();
+                for (int i = from; i < to; i++)
+                    expansion.expand(explorer, frontier.get(i), next);
+                return next;
+            });
+        }
+        IntArrayList next = new IntArrayList();
+        for (IntArrayList list : invokeAll(tasks))
+            next.addAll(list);
+        return next;
+    }
+
+    /**
+     * Splits the remaining edge keys into weakly connected pieces (ignoring the edge transition filter) and runs
+     * Tarjan's algorithm for every piece. Every component is contained in a single piece.
+     */
+    private void searchRemainingComponents() {
+        if (remaining == 0)
+            return;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        List<Callable<IntArrayList[]>> tasks = new ArrayList<>();
+        for (int key = done.nextClearBit(0); key < edgeKeys; key = done.nextClearBit(key + 1)) {
+            if (visited.get(key))
+                continue;
+            IntArrayList piece = findPiece(explorer, key);
+            if (piece.size() == 1)
+                tasks.add(() -> new IntArrayList[]{piece});
+            else
+                tasks.add(() -> findComponents(piece));
+        }
+        for (IntArrayList[] pieceComponents : invokeAll(tasks)) {
+            for (IntArrayList component : pieceComponents) {
+                if (component.size() == 1) {
+                    components.addSingleEdgeComponent(component.get(0));
+                } else {
+                    component.trimToSize();
+                    components.addComponent(component);
+                }
+            }
+        }
+    }
+
+    private IntArrayList findPiece(EdgeExplorer explorer, int start) {
+        IntArrayList piece = IntArrayList.from(start);
+        visited.set(start);
+        for (int i = 0; i < piece.size(); i++) {
+            EdgeIteratorState edgeState = graph.getEdgeIteratorStateForKey(piece.get(i));
+            EdgeIterator iter = explorer.setBaseNode(edgeState.getAdjNode());
+            while (iter.next()) {
+                int nextKey = createEdgeKey(iter, false);
+                if (!done.get(nextKey) && visited.set(nextKey))
+                    piece.add(nextKey);
+            }
+            iter = explorer.setBaseNode(edgeState.getBaseNode());
+            while (iter.next()) {
+                int prevKey = createEdgeKey(iter, true);
+                if (!done.get(prevKey) && visited.set(prevKey))
+                    piece.add(prevKey);
+            }
+        }
+        return piece;
+    }
+
+    /**
+     * Runs Tarjan's algorithm for the edge keys of a single piece.
+     *
+     * @return the components of the piece, including those with a single edge key
+     */
+    private IntArrayList[] findComponents(IntArrayList piece) {
+        int size = piece.size();
+        IntIntHashMap localIds = new IntIntHashMap(size);
+        for (int i = 0; i < size; i++)
+            localIds.put(piece.get(i), i);
+
+        // the accepted transitions between the edge keys of the piece, ordered by the local id of the first edge key
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        int[] firstSuccessor = new int[size + 1];
+        IntArrayList successors = new IntArrayList();
+        for (int i = 0; i < size; i++) {
+            int key = piece.get(i);
+            int edge = getEdgeFromEdgeKey(key);
+            EdgeIterator iter = explorer.setBaseNode(graph.getEdgeIteratorStateForKey(key).getAdjNode());
+            while (iter.next()) {
+                int next = localIds.getOrDefault(createEdgeKey(iter, false), -1);
+                if (next >= 0 && edgeTransitionFilter.accept(edge, iter))
+                    successors.add(next);
+            }
+            firstSuccessor[i + 1] = successors.size();
+        }
+
+        List<IntArrayList> result = new ArrayList<>();
+        int[] index = new int[size];
+        int[] lowLink = new int[size];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[size];
+        IntArrayDeque tarjanStack = new IntArrayDeque();
+        IntArrayList dfsNodes = new IntArrayList();
+        IntArrayList dfsPositions = new IntArrayList();
+        int currIndex = 0;
+        for (int start = 0; start < size; start++) {
+            if (index[start] >= 0)
+                continue;
+            index[start] = lowLink[start] = currIndex++;
+            tarjanStack.addLast(start);
+            onStack[start] = true;
+            dfsNodes.add(start);
+            dfsPositions.add(firstSuccessor[start]);
+            while (!dfsNodes.isEmpty()) {
+                int last = dfsNodes.size() - 1;
+                int p = dfsNodes.get(last);
+                int pos = dfsPositions.get(last);
+                if (pos < firstSuccessor[p + 1]) {
+                    dfsPositions.set(last, pos + 1);
+                    int q = successors.get(pos);
+                    if (index[q] < 0) {
+                        index[q] = lowLink[q] = currIndex++;
+                        tarjanStack.addLast(q);
+                        onStack[q] = true;
+                        dfsNodes.add(q);
+                        dfsPositions.add(firstSuccessor[q]);
+                    } else if (onStack[q]) {
+                        lowLink[p] = Math.min(lowLink[p], index[q]);
+                    }
+                    continue;
+                }
+                dfsNodes.elementsCount--;
+                dfsPositions.elementsCount--;
+                if (last > 0) {
+                    int parent = dfsNodes.get(last - 1);
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[p]);
+                }
+                if (lowLink[p] == index[p]) {
+                    IntArrayList component = new IntArrayList();
+                    while (true) {
+                        int q = tarjanStack.removeLast();
+                        onStack[q] = false;
+                        component.add(piece.get(q));
+                        if (q == p)
+                            break;
+                    }
+                    result.add(component);
+                }
+            }
+        }
+        return result.toArray(new IntArrayList[0]);
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (executor == null) {
+                for (Callable<T> task : tasks)
+                    results.add(task.call());
+            } else {
+                for (Future<T> future : executor.invokeAll(tasks))
+                    results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return results;
+    }
+
+    private interface Expansion {
+        void expand(EdgeExplorer explorer, int edgeKey, IntArrayList next);
+    }
+
+    /**
+     * A fixed size bit set that can be modified by multiple threads.
+     */
+    private static class AtomicBitSet {
+        private final AtomicLongArray words;
+        private final int bits;
+
+        AtomicBitSet(int bits) {
+            this.bits = bits;
+            words = new AtomicLongArray((bits + 63) >>> 6);
+        }
+
+        boolean get(int index) {
+            return (words.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        /**
+         * @return true if the bit was not set before
+         */
+        boolean set(int index) {
+            int word = index >>> 6;
+            long mask = 1L << index;
+            while (true) {
+                long value = words.get(word);
+                if ((value & mask) != 0)
+                    return false;
+                if (words.compareAndSet(word, value, value | mask))
+                    return true;
+            }
+        }
+
+        /**
+         * @return the index of the first set bit at or after the given index or -1 if there is none
+         */
+        int nextSetBit(int index) {
+            for (int word = index >>> 6; word < words.length(); word++) {
+                long value = words.get(word);
+                if (word == index >>> 6)
+                    value &= -1L << index;
+                if (value != 0)
+                    return (word << 6) + Long.numberOfTrailingZeros(value);
+            }
+            return -1;
+        }
+
+        /**
+         * @return the index of the first clear bit at or after the given index or the size of this set if there is none
+         */
+        int nextClearBit(int index) {
+            for (int word = index >>> 6; word < words.length(); word++) {
+                long value = ~words.get(word);
+                if (word == index >>> 6)
+                    value &= -1L << index;
+                if (value != 0)
+                    return Math.min(bits, (word << 6) + Long.numberOfTrailingZeros(value));
+            }
+            return bits;
+        }
+
+        void clear() {
+            for (int word = 0; word < words.length(); word++)
+                words.set(word, 0);
+        }
+    }
+}
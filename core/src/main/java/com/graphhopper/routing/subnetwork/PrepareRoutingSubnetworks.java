@@ -105,7 +105,7 @@ public class PrepareRoutingSubnetworks {
         List<BitSet> flags = Stream.generate(() -> new BitSet(graph.getEdges())).limit(prepareJobs.size()).collect(Collectors.toList());
         Stream<Runnable> runnables = IntStream.range(0, prepareJobs.size()).mapToObj(i -> () -> {
             PrepareJob job = prepareJobs.get(i);
-            total.addAndGet(setSubnetworks(job.weighting, job.subnetworkEnc.getName().replaceAll("_subnetwork", ""), flags.get(i)));
+            total.addAndGet(setSubnetworks(job, job.subnetworkEnc.getName().replaceAll("_subnetwork", ""), flags.get(i)));
         });
         GHUtility.runConcurrently(runnables, threads);
         AllEdgesIterator iter = graph.getAllEdges();
@@ -119,17 +119,20 @@ public class PrepareRoutingSubnetworks {
         return total.get();
     }
 
-    private int setSubnetworks(Weighting weighting, String jobName, BitSet subnetworkFlags) {
-        // partition graph into strongly connected components using Tarjan's algorithm
+    private int setSubnetworks(PrepareJob job, String jobName, BitSet subnetworkFlags) {
+        // partition graph into strongly connected components using Tarjan's algorithm or the parallel search
         StopWatch sw = new StopWatch().start();
-        EdgeBasedTarjanSCC.ConnectedComponents ccs = EdgeBasedTarjanSCC.findComponents(graph,
-                (prev, edge) -> Double.isFinite(GHUtility.calcWeightWithTurnWeight(weighting, edge, false, prev)),
-                false);
+        Weighting weighting = job.weighting;
+        EdgeBasedTarjanSCC.EdgeTransitionFilter filter = (prev, edge) -> Double.isFinite(GHUtility.calcWeightWithTurnWeight(weighting, edge, false, prev));
+        EdgeBasedTarjanSCC.ConnectedComponents ccs = job.sccThreads > 0
+                ? ParallelEdgeBasedSCC.findComponents(graph, filter, false, job.sccThreads)
+                : EdgeBasedTarjanSCC.findComponents(graph, filter, false);
         List<IntArrayList> components = ccs.getComponents();
         BitSet singleEdgeComponents = ccs.getSingleEdgeComponents();
         long numSingleEdgeComponents = singleEdgeComponents.cardinality();
         logger.info(jobName + " - Found " + ccs.getTotalComponents() + " subnetworks (" + numSingleEdgeComponents + " single edges and "
-                + components.size() + " components with more than one edge, total nodes: " + ccs.getEdgeKeys() + "), took: " + sw.stop().getSeconds() + "s");
+                + components.size() + " components with more than one edge, total nodes: " + ccs.getEdgeKeys() + "), "
+                + (job.sccThreads > 0 ? "parallel search with " + job.sccThreads + " threads" : "Tarjan") + ", took: " + sw.stop().getSeconds() + "s");
 
         final int minNetworkSizeEdgeKeys = 2 * minNetworkSize;
 
@@ -194,12 +197,25 @@ public class PrepareRoutingSubnetworks {
     public static class PrepareJob {
         private final BooleanEncodedValue subnetworkEnc;
         private final Weighting weighting;
+        private int sccThreads;
 
         public PrepareJob(BooleanEncodedValue subnetworkEnc, Weighting weighting) {
             this.weighting = weighting;
             this.subnetworkEnc = subnetworkEnc;
         }
 
+        /**
+         * Finds the strongly connected components of this job with {@link ParallelEdgeBasedSCC} and the given number
+         * of threads instead of {@link EdgeBasedTarjanSCC}. This needs much less memory for big graphs and the weighting
+         * must be thread-safe. Use 0 (default) for Tarjan's algorithm.
+         */
+        public PrepareJob setSCCThreads(int sccThreads) {
+            if (sccThreads < 0)
+                throw new IllegalArgumentException("sccThreads must not be negative, was: " + sccThreads);
+            this.sccThreads = sccThreads;
+            return this;
+        }
+
         @Override
         public String toString() {
             return subnetworkEnc.getName() + "|" + weighting;
@@ -21,13 +21,24 @@ package com.graphhopper.routing.util;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
-import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.index.strtree.STRtree;
 
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Finds the areas that contain a point. Additionally to the spatial index of the area polygons a grid is created for
+ * the bounding box of all areas. Every grid cell that is not crossed by the border of any polygon stores the areas
+ * that contain it, so for most points the polygons do not need to be tested. Only for the points in the cells at the
+ * borders the polygons are tested.
+ */
 public class AreaIndex<T extends AreaIndex.Area> {
+    // the cells of the grid are stored in an int array, i.e. the grid needs up to 4MB
+    public static final int DEFAULT_MAX_GRID_CELLS = 1 << 20;
+    // the grid cells are tested slightly enlarged, so that points at the cell edges never end up in the wrong cell
+    // because of rounding errors
+    private static final double CELL_TOLERANCE = 1e-9;
+    private static final int BORDER_CELL = -1;
 
     public interface Area {
         List<Polygon> getBorders();
@@ -35,38 +46,135 @@ public class AreaIndex<T extends AreaIndex.Area> {
 
     private final GeometryFactory gf;
     private final STRtree index;
+    private final Envelope bounds = new Envelope();
+    private final List<List<T>> cellAreas = new ArrayList<>();
+    private int[] grid;
+    private int columns, rows;
+    private double cellSize;
 
     public AreaIndex(List<T> areas) {
+        this(areas, DEFAULT_MAX_GRID_CELLS);
+    }
+
+    /**
+     * @param maxGridCells the maximum number of cells of the grid, the cells are smaller for smaller values of the
+     *                     bounding box of all areas. 0 disables the grid.
+     */
+    public AreaIndex(List<T> areas, int maxGridCells) {
         gf = new GeometryFactory();
         index = new STRtree();
         PreparedGeometryFactory pgf = new PreparedGeometryFactory();
+        int polygonIndex = 0;
         for (T area : areas) {
             for (Polygon border : area.getBorders()) {
-                IndexedCustomArea<T> indexedCustomArea = new IndexedCustomArea<>(area, pgf.create(border));
+                IndexedCustomArea<T> indexedCustomArea = new IndexedCustomArea<>(area, pgf.create(border), polygonIndex++);
                 index.insert(border.getEnvelopeInternal(), indexedCustomArea);
+                bounds.expandToInclude(border.getEnvelopeInternal());
             }
         }
         index.build();
+        if (maxGridCells > 0 && bounds.getArea() > 0)
+            buildGrid(maxGridCells);
     }
 
     public List<T> query(double lat, double lon) {
+        if (grid != null) {
+            if (!bounds.contains(lon, lat))
+                return Collections.emptyList();
+            int x = (int) ((lon - bounds.getMinX()) / cellSize);
+            int y = (int) ((lat - bounds.getMinY()) / cellSize);
+            // points at the maximum bounds are not within the grid
+            if (x < columns && y < rows) {
+                int cell = grid[y * columns + x];
+                if (cell != BORDER_CELL)
+                    return cellAreas.get(cell);
+            }
+        }
         Envelope searchEnv = new Envelope(lon, lon, lat, lat);
         @SuppressWarnings("unchecked")
         List<IndexedCustomArea<T>> result = index.query(searchEnv);
         Point point = gf.createPoint(new Coordinate(lon, lat));
         return result.stream()
                 .filter(c -> c.intersects(point))
+                .sorted(Comparator.comparingInt(c -> c.polygonIndex))
                 .map(c -> c.area)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * @return the fraction of the grid cells that are crossed by a border, for these the polygons need to be tested
+     */
+    double getBorderCellRatio() {
+        if (grid == null)
+            return 1;
+        return (double) Arrays.stream(grid).filter(c -> c == BORDER_CELL).count() / grid.length;
+    }
+
+    private void buildGrid(int maxGridCells) {
+        cellSize = Math.sqrt(bounds.getArea() / maxGridCells);
+        columns = Math.max(1, (int) Math.ceil(bounds.getWidth() / cellSize));
+        rows = Math.max(1, (int) Math.ceil(bounds.getHeight() / cellSize));
+        // very thin bounding boxes need bigger cells
+        while ((long) columns * rows > maxGridCells) {
+            cellSize *= 1.1;
+            columns = Math.max(1, (int) Math.ceil(bounds.getWidth() / cellSize));
+            rows = Math.max(1, (int) Math.ceil(bounds.getHeight() / cellSize));
+        }
+        grid = new int[columns * rows];
+        Map<List<T>, Integer> cellAreaIds = new HashMap<>();
+        fillGrid(0, 0, columns, rows, cellAreaIds);
+    }
+
+    /**
+     * Fills the cells in the given range of columns and rows. If a border crosses the range it is split into halves
+     * until the single cells are reached, so big regions inside or outside of all polygons are handled at once.
+     */
+    private void fillGrid(int fromX, int fromY, int toX, int toY, Map<List<T>, Integer> cellAreaIds) {
+        Envelope env = new Envelope(
+                bounds.getMinX() + fromX * cellSize - CELL_TOLERANCE, bounds.getMinX() + toX * cellSize + CELL_TOLERANCE,
+                bounds.getMinY() + fromY * cellSize - CELL_TOLERANCE, bounds.getMinY() + toY * cellSize + CELL_TOLERANCE);
+        Geometry rectangle = gf.toGeometry(env);
+        @SuppressWarnings("unchecked")
+        List<IndexedCustomArea<T>> candidates = index.query(env);
+        List<IndexedCustomArea<T>> inside = new ArrayList<>();
+        for (IndexedCustomArea<T> candidate : candidates) {
+            if (candidate.preparedGeometry.contains(rectangle)) {
+                inside.add(candidate);
+            } else if (candidate.preparedGeometry.intersects(rectangle)) {
+                if (toX - fromX == 1 && toY - fromY == 1) {
+                    grid[fromY * columns + fromX] = BORDER_CELL;
+                } else if (toX - fromX >= toY - fromY) {
+                    int middleX = (fromX + toX) / 2;
+                    fillGrid(fromX, fromY, middleX, toY, cellAreaIds);
+                    fillGrid(middleX, fromY, toX, toY, cellAreaIds);
+                } else {
+                    int middleY = (fromY + toY) / 2;
+                    fillGrid(fromX, fromY, toX, middleY, cellAreaIds);
+                    fillGrid(fromX, middleY, toX, toY, cellAreaIds);
+                }
+                return;
+            }
+        }
+        // use the same order as the polygon tests of query
+        inside.sort(Comparator.comparingInt(c -> c.polygonIndex));
+        List<T> areas = Collections.unmodifiableList(inside.stream().map(c -> c.area).collect(Collectors.toList()));
+        int cellAreaId = cellAreaIds.computeIfAbsent(areas, a -> {
+            cellAreas.add(a);
+            return cellAreas.size() - 1;
+        });
+        for (int y = fromY; y < toY; y++)
+            Arrays.fill(grid, y * columns + fromX, y * columns + toX, cellAreaId);
+    }
+
     private static class IndexedCustomArea<T extends Area> {
         final T area;
         final PreparedGeometry preparedGeometry;
+        final int polygonIndex;
 
-        IndexedCustomArea(T area, PreparedGeometry preparedGeometry) {
+        IndexedCustomArea(T area, PreparedGeometry preparedGeometry, int polygonIndex) {
             this.area = area;
             this.preparedGeometry = preparedGeometry;
+            this.polygonIndex = polygonIndex;
         }
 
         boolean intersects(Point point) {
@@ -75,5 +183,3 @@ public class AreaIndex<T extends AreaIndex.Area> {
     }
 
 }
-
-
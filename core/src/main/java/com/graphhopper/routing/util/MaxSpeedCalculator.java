@@ -1,5 +1,7 @@
 package com.graphhopper.routing.util;
 
+import com.carrotsearch.hppc.IntContainer;
+import com.carrotsearch.hppc.cursors.IntCursor;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.routing.ev.*;
@@ -89,21 +91,26 @@ public class MaxSpeedCalculator {
     }
 
     /**
-     * Creates temporary uni dir max_speed storage that is removed after import.
+     * Creates temporary uni dir max_speed storage that is removed after import. The access is synchronized as the
+     * parser might be called from multiple threads, see OSMReaderConfig.setWayProcessingThreads.
      */
     private EdgeIntAccess createMaxSpeedStorage(DataAccess dataAccess) {
         return new EdgeIntAccess() {
 
             public int getInt(int edgeId, int index) {
-                dataAccess.ensureCapacity(edgeId * 2L + 2L);
-                return dataAccess.getShort(edgeId * 2L);
+                synchronized (dataAccess) {
+                    dataAccess.ensureCapacity(edgeId * 2L + 2L);
+                    return dataAccess.getShort(edgeId * 2L);
+                }
             }
 
             public void setInt(int edgeId, int index, int value) {
-                dataAccess.ensureCapacity(edgeId * 2L + 2L);
                 if (value > Short.MAX_VALUE)
                     throw new IllegalStateException("value too large for short: " + value);
-                dataAccess.setShort(edgeId * 2L, (short) value);
+                synchronized (dataAccess) {
+                    dataAccess.ensureCapacity(edgeId * 2L + 2L);
+                    dataAccess.setShort(edgeId * 2L, (short) value);
+                }
             }
         };
     }
@@ -143,34 +150,51 @@ public class MaxSpeedCalculator {
 
         StopWatch sw = new StopWatch().start();
         AllEdgesIterator iter = graph.getAllEdges();
-        while (iter.next()) {
-            double fwdMaxSpeedPureOSM = iter.get(maxSpeedEnc);
-            double bwdMaxSpeedPureOSM = iter.getReverse(maxSpeedEnc);
-
-            // skip speeds-library if max_speed is known for both directions
-            if (fwdMaxSpeedPureOSM != MaxSpeed.UNSET_SPEED
-                    && bwdMaxSpeedPureOSM != MaxSpeed.UNSET_SPEED) continue;
-
-            double maxSpeed = isUrbanDensityFun.apply(iter)
-                    ? urbanMaxSpeedEnc.getDecimal(false, iter.getEdge(), internalMaxSpeedStorage)
-                    : ruralMaxSpeedEnc.getDecimal(false, iter.getEdge(), internalMaxSpeedStorage);
-            if (maxSpeed != MaxSpeed.UNSET_SPEED) {
-                if (maxSpeed == 0) {
-                    // TODO fix properly: RestrictionSetter adds artificial edges for which
-                    //  we didn't set the speed in DefaultMaxSpeedParser, #2914
-                    iter.set(maxSpeedEnc, MaxSpeed.UNSET_SPEED, MaxSpeed.UNSET_SPEED);
-                } else {
-                    iter.set(maxSpeedEnc,
-                            fwdMaxSpeedPureOSM == MaxSpeed.UNSET_SPEED ? maxSpeed : fwdMaxSpeedPureOSM,
-                            bwdMaxSpeedPureOSM == MaxSpeed.UNSET_SPEED ? maxSpeed : bwdMaxSpeedPureOSM);
-                    iter.set(maxSpeedEstEnc, true);
-                }
-            }
-        }
+        while (iter.next())
+            fillMaxSpeed(iter, maxSpeedEnc, maxSpeedEstEnc, isUrbanDensityFun);
 
         LoggerFactory.getLogger(getClass()).info("max_speed_calculator took: " + sw.stop().getSeconds());
     }
 
+    /**
+     * Same as {@link #fillMaxSpeed(Graph, EncodingManager)}, but only for the given edges, e.g. after their flags were
+     * updated from an OSM change file.
+     */
+    public void fillMaxSpeed(Graph graph, EncodingManager em, IntContainer edges) {
+        EnumEncodedValue<UrbanDensity> udEnc = em.getEnumEncodedValue(UrbanDensity.KEY, UrbanDensity.class);
+        DecimalEncodedValue maxSpeedEnc = em.getDecimalEncodedValue(MaxSpeed.KEY);
+        BooleanEncodedValue maxSpeedEstEnc = em.getBooleanEncodedValue(MaxSpeedEstimated.KEY);
+        for (IntCursor c : edges)
+            fillMaxSpeed(graph.getEdgeIteratorState(c.value, Integer.MIN_VALUE), maxSpeedEnc, maxSpeedEstEnc,
+                    edge -> edge.get(udEnc) != UrbanDensity.RURAL);
+    }
+
+    private void fillMaxSpeed(EdgeIteratorState edge, DecimalEncodedValue maxSpeedEnc, BooleanEncodedValue maxSpeedEstEnc,
+                              Function<EdgeIteratorState, Boolean> isUrbanDensityFun) {
+        double fwdMaxSpeedPureOSM = edge.get(maxSpeedEnc);
+        double bwdMaxSpeedPureOSM = edge.getReverse(maxSpeedEnc);
+
+        // skip speeds-library if max_speed is known for both directions
+        if (fwdMaxSpeedPureOSM != MaxSpeed.UNSET_SPEED
+                && bwdMaxSpeedPureOSM != MaxSpeed.UNSET_SPEED) return;
+
+        double maxSpeed = isUrbanDensityFun.apply(edge)
+                ? urbanMaxSpeedEnc.getDecimal(false, edge.getEdge(), internalMaxSpeedStorage)
+                : ruralMaxSpeedEnc.getDecimal(false, edge.getEdge(), internalMaxSpeedStorage);
+        if (maxSpeed != MaxSpeed.UNSET_SPEED) {
+            if (maxSpeed == 0) {
+                // TODO fix properly: RestrictionSetter adds artificial edges for which
+                //  we didn't set the speed in DefaultMaxSpeedParser, #2914
+                edge.set(maxSpeedEnc, MaxSpeed.UNSET_SPEED, MaxSpeed.UNSET_SPEED);
+            } else {
+                edge.set(maxSpeedEnc,
+                        fwdMaxSpeedPureOSM == MaxSpeed.UNSET_SPEED ? maxSpeed : fwdMaxSpeedPureOSM,
+                        bwdMaxSpeedPureOSM == MaxSpeed.UNSET_SPEED ? maxSpeed : bwdMaxSpeedPureOSM);
+                edge.set(maxSpeedEstEnc, true);
+            }
+        }
+    }
+
     public void close() {
         dataAccess.close();
     }
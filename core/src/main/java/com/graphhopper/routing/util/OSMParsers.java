@@ -20,12 +20,14 @@ package com.graphhopper.routing.util;
 
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.TagKeys;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.routing.ev.EncodedValue;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.routing.util.parsers.RelationTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
 import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.ImportProfiler;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +39,9 @@ public class OSMParsers {
     private final List<RelationTagParser> relationTagParsers;
     private final List<RestrictionTagParser> restrictionTagParsers;
     private final EncodedValue.InitializerConfig relConfig = new EncodedValue.InitializerConfig();
+    // only set if the tag parsers are profiled, one counter per parser
+    private ImportProfiler.Counter[] relationTagParserCounters;
+    private ImportProfiler.Counter[] wayTagParserCounters;
 
     public OSMParsers() {
         this(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
@@ -70,23 +75,52 @@ public class OSMParsers {
         return this;
     }
 
+    /**
+     * Measures the time and the allocated memory of every tag parser in {@link #handleWayTags}. Parsers of the same
+     * class share their counter. Call this after all parsers were added.
+     */
+    public OSMParsers setImportProfiler(ImportProfiler importProfiler) {
+        if (!importProfiler.isEnabled()) {
+            relationTagParserCounters = wayTagParserCounters = null;
+            return this;
+        }
+        relationTagParserCounters = relationTagParsers.stream()
+                .map(p -> importProfiler.getTagParserCounter(p.getClass().getSimpleName())).toArray(ImportProfiler.Counter[]::new);
+        wayTagParserCounters = wayTagParsers.stream()
+                .map(p -> importProfiler.getTagParserCounter(p.getClass().getSimpleName())).toArray(ImportProfiler.Counter[]::new);
+        return this;
+    }
+
+    /**
+     * Only ways with at least one tag whose key is listed in {@link #isRelevantWayKey} can be accepted. Update both
+     * methods together, otherwise the reader skips ways that would be accepted here.
+     */
     public boolean acceptWay(ReaderWay way) {
-        String highway = way.getTag("highway");
+        String highway = way.getTag(TagKeys.HIGHWAY);
         if (highway != null)
             return !ignoredHighways.contains(highway);
-        else if (way.getTag("route") != null)
+        else if (way.getTag(TagKeys.ROUTE) != null)
             // we accept *all* ways with a 'route' tag and no 'highway' tag, because most of them are ferries
             // (route=ferry), which we want, and there aren't so many such ways we do not want
             // https://github.com/graphhopper/graphhopper/pull/2702#discussion_r1038093050
             return true;
-        else if ("pier".equals(way.getTag("man_made")))
+        else if ("pier".equals(way.getTag(TagKeys.MAN_MADE)))
             return true;
-        else if ("platform".equals(way.getTag("railway")))
+        else if ("platform".equals(way.getTag(TagKeys.RAILWAY)))
             return true;
         else
             return false;
     }
 
+    /**
+     * @return true if {@link #acceptWay} looks at tags with the given key. Ways that have none of these keys are never
+     * accepted, so the reader can skip them before even decoding their tags.
+     */
+    public boolean isRelevantWayKey(String key) {
+        int id = TagKeys.getId(key);
+        return id == TagKeys.HIGHWAY || id == TagKeys.ROUTE || id == TagKeys.MAN_MADE || id == TagKeys.RAILWAY;
+    }
+
     public IntsRef handleRelationTags(ReaderRelation relation, IntsRef relFlags) {
         for (RelationTagParser relParser : relationTagParsers) {
             relParser.handleRelationTags(relFlags, relation);
@@ -95,12 +129,31 @@ public class OSMParsers {
     }
 
     public void handleWayTags(int edgeId, EdgeIntAccess edgeIntAccess, ReaderWay way, IntsRef relationFlags) {
+        if (wayTagParserCounters != null) {
+            handleWayTagsProfiled(edgeId, edgeIntAccess, way, relationFlags);
+            return;
+        }
         for (RelationTagParser relParser : relationTagParsers)
             relParser.handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
         for (TagParser parser : wayTagParsers)
             parser.handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
     }
 
+    private void handleWayTagsProfiled(int edgeId, EdgeIntAccess edgeIntAccess, ReaderWay way, IntsRef relationFlags) {
+        for (int i = 0; i < relationTagParsers.size(); i++) {
+            long nanos = System.nanoTime();
+            long bytes = ImportProfiler.getAllocatedBytes();
+            relationTagParsers.get(i).handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
+            relationTagParserCounters[i].add(System.nanoTime() - nanos, ImportProfiler.getAllocatedBytes() - bytes);
+        }
+        for (int i = 0; i < wayTagParsers.size(); i++) {
+            long nanos = System.nanoTime();
+            long bytes = ImportProfiler.getAllocatedBytes();
+            wayTagParsers.get(i).handleWayTags(edgeId, edgeIntAccess, way, relationFlags);
+            wayTagParserCounters[i].add(System.nanoTime() - nanos, ImportProfiler.getAllocatedBytes() - bytes);
+        }
+    }
+
     public IntsRef createRelationFlags() {
         int requiredInts = relConfig.getRequiredInts();
         if (requiredInts > 2)
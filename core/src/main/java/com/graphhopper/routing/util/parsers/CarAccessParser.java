@@ -18,6 +18,7 @@
 package com.graphhopper.routing.util.parsers;
 
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.TagKeys;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.FerrySpeedCalculator;
 import com.graphhopper.routing.util.TransportationMode;
@@ -78,7 +79,7 @@ public class CarAccessParser extends AbstractAccessParser implements TagParser {
 
     public WayAccess getAccess(ReaderWay way) {
         // TODO: Ferries have conditionals, like opening hours or are closed during some time in the year
-        String highwayValue = way.getTag("highway");
+        String highwayValue = way.getTag(TagKeys.HIGHWAY);
         String firstValue = way.getFirstPriorityTag(restrictions);
         if (highwayValue == null) {
             if (FerrySpeedCalculator.isFerry(way)) {
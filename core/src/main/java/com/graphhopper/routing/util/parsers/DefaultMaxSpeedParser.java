@@ -48,8 +48,13 @@ public class DefaultMaxSpeedParser implements TagParser {
                 // Workaround for GBR. Default is used for "urban" but ignored for "rural".
                 if (country == Country.GBR) tags.put("lit", "yes");
 
-                // with computeIfAbsent we calculate the expensive hashCode of the key only once
-                Result result = cache.computeIfAbsent(tags, (key) -> {
+                // the cache is accessed by multiple threads if the ways are processed in parallel. the expensive
+                // calculation happens outside of the lock and might be done twice for the same key, which is harmless
+                Result result;
+                synchronized (cache) {
+                    result = cache.get(tags);
+                }
+                if (result == null) {
                     Result internRes = new Result();
                     LegalDefaultSpeeds.Result tmpResult = speeds.getSpeedLimits(code,
                             tags, Collections.emptyList(), (name, eval) -> eval.invoke() || "rural".equals(name));
@@ -66,8 +71,11 @@ public class DefaultMaxSpeedParser implements TagParser {
                         if (internRes.urban == null && "130".equals(tmpResult.getTags().get("maxspeed:advisory")))
                             internRes.urban = (int) UNLIMITED_SIGN_SPEED;
                     }
-                    return internRes;
-                });
+                    synchronized (cache) {
+                        cache.put(tags, internRes);
+                    }
+                    result = internRes;
+                }
 
                 ruralSpeedInt = result.rural;
                 urbanSpeedInt = result.urban;
@@ -18,6 +18,7 @@
 package com.graphhopper.routing.util.parsers;
 
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.TagKeys;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.routing.ev.MaxSpeed;
@@ -44,7 +45,7 @@ public class OSMMaxSpeedParser implements TagParser {
     }
 
     private double getMaxSpeed(ReaderWay way, boolean reverse) {
-        final double maxSpeed = OSMValueExtractor.stringToKmh(way.getTag("maxspeed"));
+        final double maxSpeed = OSMValueExtractor.stringToKmh(way.getTag(TagKeys.MAXSPEED));
         final double directedMaxSpeed = OSMValueExtractor.stringToKmh(way.getTag(reverse ? "maxspeed:backward" : "maxspeed:forward"));
         return isValidSpeed(directedMaxSpeed)
                 ? Math.min(directedMaxSpeed, MaxSpeed.UNLIMITED_SIGN_SPEED)
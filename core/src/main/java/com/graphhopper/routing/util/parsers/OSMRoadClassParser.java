@@ -18,6 +18,7 @@
 package com.graphhopper.routing.util.parsers;
 
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.TagKeys;
 import com.graphhopper.routing.ev.EnumEncodedValue;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.routing.ev.RoadClass;
@@ -35,7 +36,7 @@ public class OSMRoadClassParser implements TagParser {
 
     @Override
     public void handleWayTags(int edgeId, EdgeIntAccess edgeIntAccess, ReaderWay readerWay, IntsRef relationFlags) {
-        String roadClassTag = readerWay.getTag("highway");
+        String roadClassTag = readerWay.getTag(TagKeys.HIGHWAY);
         if (roadClassTag == null)
             return;
         RoadClass roadClass = RoadClass.find(roadClassTag);
@@ -18,6 +18,7 @@
 package com.graphhopper.routing.util.parsers;
 
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.TagKeys;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EdgeIntAccess;
 import com.graphhopper.storage.IntsRef;
@@ -32,7 +33,7 @@ public class OSMRoundaboutParser implements TagParser {
 
     @Override
     public void handleWayTags(int edgeId, EdgeIntAccess edgeIntAccess, ReaderWay way, IntsRef relationFlags) {
-        boolean isRoundabout = way.hasTag("junction", "roundabout") || way.hasTag("junction", "circular");
+        boolean isRoundabout = way.hasTag(TagKeys.JUNCTION, "roundabout") || way.hasTag(TagKeys.JUNCTION, "circular");
         if (isRoundabout)
             roundaboutEnc.setBool(false, edgeId, edgeIntAccess, true);
     }
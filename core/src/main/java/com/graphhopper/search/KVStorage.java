@@ -17,6 +17,7 @@
  */
 package com.graphhopper.search;
 
+import com.carrotsearch.hppc.BitMixer;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.BitUtil;
@@ -39,6 +40,7 @@ public class KVStorage {
     static final int MAX_UNIQUE_KEYS = (1 << 14);
     // Store string value as byte array and store the length into 1 byte
     private static final int MAX_LENGTH = (1 << 8) - 1;
+    public static final int DEFAULT_MAX_DICTIONARY_ENTRIES = 1 << 20;
 
     private final Directory dir;
     // It stores the mapping of "key to index" in the keys DataAccess. E.g. if your first key is "some" then we will
@@ -74,7 +76,19 @@ public class KVStorage {
     // 2. Every key can store values only of the same type
     // 3. We need to loop through X entries to get the start val_x.
     // 4. The key index (14 bits) is stored along with the availability (2 bits), i.e. whether they KeyValue is available in forward and/or backward directions
+    // 5. String values are not stored in vals. Instead vals contains the variable-length encoded pointer into the dict
+    //    DataAccess where every distinct string is stored only once (1 byte length and the bytes). The empty string
+    //    is always at pointer 0.
     private final DataAccess vals;
+    private final DataAccess dict;
+    private final Map<String, Long> stringToDictPointer = new HashMap<>();
+    private long dictBytePointer = 1;
+    // Limits the memory of the string to dictionary pointer mapping used while adding. If it is full it is cleared, i.e.
+    // older strings are no longer de-duplicated, which is fine as OSM data is usually sorted and names repeat locally.
+    private int maxDictionaryEntries = DEFAULT_MAX_DICTIONARY_ENTRIES;
+    private int dictionaryClears = 0;
+    // the decoded entries of recently fetched entry pointers, null if disabled
+    private final CachedEntries[] cache;
     private final Map<String, Integer> keyToIndex = new HashMap<>();
     private final List<Class<?>> indexToClass = new ArrayList<>();
     private final List<String> indexToKey = new ArrayList<>();
@@ -83,27 +97,61 @@ public class KVStorage {
     private long lastEntryPointer = -1;
     private List<KeyValue> lastEntries;
 
+    public KVStorage(Directory dir, boolean edge) {
+        this(dir, edge, 0);
+    }
+
     /**
-     * Specify a larger cacheSize to reduce disk usage. Note that this increases the memory usage of this object.
+     * Specify a cacheSize larger than 0 to keep the decoded entries of that many entry pointers in memory. This reduces
+     * the allocations for repeated calls of get and getAll for the same entry pointer, e.g. while creating the
+     * instructions of a route. Note that this increases the memory usage of this object.
      */
-    public KVStorage(Directory dir, boolean edge) {
+    public KVStorage(Directory dir, boolean edge, int cacheSize) {
         this.dir = dir;
         if (edge) {
             this.keys = dir.create("edgekv_keys", 10 * 1024);
             this.vals = dir.create("edgekv_vals");
+            this.dict = dir.create("edgekv_dict");
         } else {
             this.keys = dir.create("nodekv_keys", 10 * 1024);
             this.vals = dir.create("nodekv_vals");
+            this.dict = dir.create("nodekv_dict");
+        }
+        if (cacheSize < 0)
+            throw new IllegalArgumentException("cacheSize cannot be negative: " + cacheSize);
+        if (cacheSize == 0) {
+            this.cache = null;
+        } else {
+            // use a power of two to find the slot of an entry pointer via a bit mask
+            int slots = 1;
+            while (slots < cacheSize) slots <<= 1;
+            this.cache = new CachedEntries[slots];
         }
     }
 
+    /**
+     * Limits the number of strings kept in the on-heap map that de-duplicates the values of new entries. Each entry
+     * needs roughly 100 bytes plus the string. When the limit is reached the map is cleared, i.e. a higher limit
+     * makes the dictionary smaller at the cost of more heap memory while adding. Use 0 to disable de-duplication.
+     */
+    public KVStorage setMaxDictionaryEntries(int maxDictionaryEntries) {
+        if (maxDictionaryEntries < 0)
+            throw new IllegalArgumentException("maxDictionaryEntries cannot be negative: " + maxDictionaryEntries);
+        this.maxDictionaryEntries = maxDictionaryEntries;
+        return this;
+    }
+
     public KVStorage create(long initBytes) {
         keys.create(initBytes);
         vals.create(initBytes);
+        dict.create(initBytes);
         // add special empty case to have a reliable duplicate detection via negative keyIndex
         keyToIndex.put("", 0);
         indexToKey.add("");
         indexToClass.add(String.class);
+        // the empty string is always stored at dictionary pointer 0
+        dict.setByte(0, (byte) 0);
+        stringToDictPointer.put("", 0L);
         return this;
     }
 
@@ -113,6 +161,11 @@ public class KVStorage {
             bytePointer = bitUtil.toLong(vals.getHeader(0), vals.getHeader(4));
             GHUtility.checkDAVersion(vals.getName(), Constants.VERSION_KV_STORAGE, vals.getHeader(8));
             GHUtility.checkDAVersion(keys.getName(), Constants.VERSION_KV_STORAGE, keys.getHeader(0));
+            if (!dict.loadExisting()) throw new IllegalStateException("Loaded values but cannot load dictionary");
+            GHUtility.checkDAVersion(dict.getName(), Constants.VERSION_KV_STORAGE, dict.getHeader(8));
+            dictBytePointer = bitUtil.toLong(dict.getHeader(0), dict.getHeader(4));
+            // strings added after loading are not de-duplicated against the existing dictionary entries, except the empty string
+            stringToDictPointer.put("", 0L);
 
             // load keys into memory
             int count = keys.getShort(0);
@@ -144,6 +197,22 @@ public class KVStorage {
         return indexToKey;
     }
 
+    long getDictionaryBytes() {
+        return dictBytePointer;
+    }
+
+    /**
+     * @return the number of strings currently kept in memory for the de-duplication of new values
+     */
+    public int getDictionaryEntries() {
+        return stringToDictPointer.size() - 1;
+    }
+
+    public String toDetailsString() {
+        return "dict:" + Helper.nf(dictBytePointer) + " bytes, dict_entries:" + Helper.nf(stringToDictPointer.size())
+                + "/" + Helper.nf(maxDictionaryEntries) + ", dict_clears:" + dictionaryClears;
+    }
+
     private long setKVList(long currentPointer, final List<KeyValue> entries) {
         if (currentPointer == EMPTY_POINTER) return currentPointer;
         currentPointer += 1; // skip stored count
@@ -169,18 +238,23 @@ public class KVStorage {
                     throw new IllegalArgumentException("Class of value for key " + key + " must be " + clazz.getSimpleName() + " but was " + value.getClass().getSimpleName());
             }
 
+            if (clazz.equals(String.class)) {
+                long dictPointer = getOrCreateDictPointer((String) value);
+                vals.ensureCapacity(currentPointer + 2 + 9);
+                vals.setShort(currentPointer, (short) (keyIndex << 2 | (entry.fwd ? 2 : 0) | (entry.bwd ? 1 : 0)));
+                currentPointer = writeVLong(currentPointer + 2, dictPointer);
+                continue;
+            }
+
             boolean hasDynLength = hasDynLength(clazz);
-            if (hasDynLength) {
-                // optimization for empty string or empty byte array
-                if (clazz.equals(String.class) && ((String) value).isEmpty()
-                        || clazz.equals(byte[].class) && ((byte[]) value).length == 0) {
-                    vals.ensureCapacity(currentPointer + 3);
-                    vals.setShort(currentPointer, keyIndex.shortValue());
-                    // ensure that also in case of MMap value is set to 0
-                    vals.setByte(currentPointer + 2, (byte) 0);
-                    currentPointer += 3;
-                    continue;
-                }
+            // optimization for empty byte array
+            if (hasDynLength && ((byte[]) value).length == 0) {
+                vals.ensureCapacity(currentPointer + 3);
+                vals.setShort(currentPointer, keyIndex.shortValue());
+                // ensure that also in case of MMap value is set to 0
+                vals.setByte(currentPointer + 2, (byte) 0);
+                currentPointer += 3;
+                continue;
             }
 
             final byte[] valueBytes = getBytesForValue(clazz, value);
@@ -197,6 +271,64 @@ public class KVStorage {
         return currentPointer;
     }
 
+    private long getOrCreateDictPointer(String value) {
+        Long dictPointer = stringToDictPointer.get(value);
+        if (dictPointer != null) return dictPointer;
+
+        byte[] bytes = getBytesForValue(String.class, value);
+        dictPointer = dictBytePointer;
+        dict.ensureCapacity(dictBytePointer + 1 + bytes.length);
+        dict.setByte(dictBytePointer, (byte) bytes.length);
+        dict.setBytes(dictBytePointer + 1, bytes, bytes.length);
+        dictBytePointer += 1 + bytes.length;
+
+        if (maxDictionaryEntries > 0) {
+            // the empty string is not counted
+            if (stringToDictPointer.size() > maxDictionaryEntries) {
+                stringToDictPointer.clear();
+                stringToDictPointer.put("", 0L);
+                dictionaryClears++;
+            }
+            stringToDictPointer.put(value, dictPointer);
+        }
+        return dictPointer;
+    }
+
+    private long writeVLong(long pointer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            vals.setByte(pointer++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        vals.setByte(pointer++, (byte) value);
+        return pointer;
+    }
+
+    /**
+     * @return the value of the variable-length encoded long at the specified pointer. The number of bytes it occupies
+     * is set into sizeOfObject if not null.
+     */
+    private long readVLong(AtomicInteger sizeOfObject, long pointer) {
+        long value = 0;
+        int shift = 0, size = 0;
+        byte b;
+        do {
+            b = vals.getByte(pointer + size);
+            size++;
+            value |= (b & 0x7FL) << shift;
+            shift += 7;
+        } while (b < 0);
+        if (sizeOfObject != null) sizeOfObject.set(size);
+        return value;
+    }
+
+    private String readDictString(long dictPointer) {
+        int length = dict.getByte(dictPointer) & 0xFF;
+        if (length == 0) return "";
+        byte[] bytes = new byte[length];
+        dict.getBytes(dictPointer + 1, bytes, length);
+        return new String(bytes, Helper.UTF_CS);
+    }
+
     /**
      * This method writes the specified entryMap (key-value pairs) into the storage. Please note that null keys or null
      * values are rejected. The Class of a value can be only: byte[], String, int, long, float or double
@@ -244,11 +376,29 @@ public class KVStorage {
         return false;
     }
 
+    /**
+     * @return the key-value pairs stored for the specified entryPointer. If the cache is enabled the returned list is
+     * shared and cannot be modified.
+     */
     public List<KVStorage.KeyValue> getAll(final long entryPointer) {
         if (entryPointer < 0)
             throw new IllegalStateException("Pointer to access KVStorage cannot be negative:" + entryPointer);
 
         if (entryPointer == EMPTY_POINTER) return Collections.emptyList();
+        if (cache == null) return decodeAll(entryPointer);
+
+        int slot = (int) BitMixer.mix64(entryPointer) & (cache.length - 1);
+        CachedEntries cached = cache[slot];
+        if (cached != null && cached.entryPointer == entryPointer) return cached.entries;
+
+        List<KVStorage.KeyValue> list = Collections.unmodifiableList(decodeAll(entryPointer));
+        // the array is accessed without synchronization from multiple threads. This is safe as the cached object is
+        // immutable and published via final fields. At worst a concurrently decoded entry is decoded twice.
+        cache[slot] = new CachedEntries(entryPointer, list);
+        return list;
+    }
+
+    private List<KVStorage.KeyValue> decodeAll(final long entryPointer) {
 
         int keyCount = vals.getByte(entryPointer) & 0xFF;
         if (keyCount == 0) return Collections.emptyList();
@@ -359,16 +509,16 @@ public class KVStorage {
      * This method creates an Object (type Class) which is located at the specified pointer
      */
     private Object deserializeObj(AtomicInteger sizeOfObject, long pointer, Class<?> clazz) {
-        if (hasDynLength(clazz)) {
+        if (clazz.equals(String.class)) {
+            return readDictString(readVLong(sizeOfObject, pointer));
+        } else if (hasDynLength(clazz)) {
             int valueLength = vals.getByte(pointer) & 0xFF;
             pointer++;
             byte[] valueBytes = new byte[valueLength];
             vals.getBytes(pointer, valueBytes, valueBytes.length);
             if (sizeOfObject != null)
                 sizeOfObject.set(1 + valueLength); // For String and byte[] we store the length and the value
-            if (clazz.equals(String.class)) return new String(valueBytes, Helper.UTF_CS);
-            else if (clazz.equals(byte[].class)) return valueBytes;
-            throw new IllegalArgumentException();
+            return valueBytes;
         } else {
             byte[] valueBytes = new byte[getFixLength(clazz)];
             vals.getBytes(pointer, valueBytes, valueBytes.length);
@@ -399,6 +549,14 @@ public class KVStorage {
         Integer keyIndex = keyToIndex.get(key);
         if (keyIndex == null) return null; // key wasn't stored before
 
+        if (cache != null) {
+            for (KeyValue kv : getAll(entryPointer)) {
+                if ((!reverse && kv.fwd || reverse && kv.bwd) && kv.key.equals(key))
+                    return kv.value;
+            }
+            return null;
+        }
+
         int keyCount = vals.getByte(entryPointer) & 0xFF;
         if (keyCount == 0) return null; // no entries
 
@@ -416,6 +574,11 @@ public class KVStorage {
 
             // skip to next entry of same edge via skipping the real value
             Class<?> clazz = indexToClass.get(currentKeyIndex);
+            if (clazz.equals(String.class)) {
+                while (vals.getByte(tmpPointer) < 0) tmpPointer++;
+                tmpPointer++;
+                continue;
+            }
             int valueLength = hasDynLength(clazz) ? 1 + vals.getByte(tmpPointer) & 0xFF : getFixLength(clazz);
             tmpPointer += valueLength;
         }
@@ -453,24 +616,41 @@ public class KVStorage {
         vals.setHeader(4, bitUtil.getIntHigh(bytePointer));
         vals.setHeader(8, Constants.VERSION_KV_STORAGE);
         vals.flush();
+
+        dict.setHeader(0, bitUtil.getIntLow(dictBytePointer));
+        dict.setHeader(4, bitUtil.getIntHigh(dictBytePointer));
+        dict.setHeader(8, Constants.VERSION_KV_STORAGE);
+        dict.flush();
     }
 
     public void clear() {
         dir.remove(keys.getName());
         dir.remove(vals.getName());
+        dir.remove(dict.getName());
     }
 
     public void close() {
         keys.close();
         vals.close();
+        dict.close();
     }
 
     public boolean isClosed() {
-        return vals.isClosed() && keys.isClosed();
+        return vals.isClosed() && keys.isClosed() && dict.isClosed();
     }
 
     public long getCapacity() {
-        return vals.getCapacity() + keys.getCapacity();
+        return vals.getCapacity() + keys.getCapacity() + dict.getCapacity();
+    }
+
+    private static class CachedEntries {
+        final long entryPointer;
+        final List<KVStorage.KeyValue> entries;
+
+        CachedEntries(long entryPointer, List<KVStorage.KeyValue> entries) {
+            this.entryPointer = entryPointer;
+            this.entries = entries;
+        }
     }
 
     public static class KeyValue {
@@ -28,6 +28,7 @@ import com.graphhopper.util.shapes.BBox;
 
 import java.io.Closeable;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 import static com.graphhopper.util.Helper.nf;
 
@@ -52,21 +53,40 @@ public class BaseGraph implements Graph, Closeable {
     final BitUtil bitUtil;
     // length | nodeA | nextNode | ... | nodeB
     // as we use integer index in 'edges' area => 'geometry' area is limited to 4GB (we use pos&neg values!)
+    // for the compressed geometry: byte length | varint count | zigzag varint deltas of lat, lon (, ele) ... | padding
     private final DataAccess wayGeometry;
+    private boolean compressedGeometry;
     private final Directory dir;
     private final int segmentSize;
+    // can be null if the adjacency index is disabled
+    private final BaseGraphAdjacency adjacencyIndex;
+    // non-null only once the adjacency index was built or loaded, i.e. when the graph is frozen
+    BaseGraphAdjacency adjacency;
     private boolean initialized = false;
     private long maxGeoRef;
 
     public BaseGraph(Directory dir, int intsForFlags, boolean withElevation, boolean withTurnCosts, int segmentSize) {
+        this(dir, intsForFlags, withElevation, withTurnCosts, false, false, segmentSize);
+    }
+
+    /**
+     * @param withAdjacencyIndex     if true a compressed sparse row adjacency index is built when the graph is frozen.
+     *                               It is then used by the edge explorers instead of the linked lists of the edges.
+     * @param withCompressedGeometry if true the pillar nodes are stored delta and variable-length encoded. This only
+     *                               matters for new graphs, for existing graphs the stored encoding is used.
+     */
+    public BaseGraph(Directory dir, int intsForFlags, boolean withElevation, boolean withTurnCosts,
+                     boolean withAdjacencyIndex, boolean withCompressedGeometry, int segmentSize) {
         this.dir = dir;
+        this.compressedGeometry = withCompressedGeometry;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
-        this.edgeKVStorage = new KVStorage(dir, true);
+        this.edgeKVStorage = new KVStorage(dir, true, 1 << 12);
         this.store = new BaseGraphNodesAndEdges(dir, intsForFlags, withElevation, withTurnCosts, segmentSize);
         this.nodeAccess = new GHNodeAccess(store);
         this.segmentSize = segmentSize;
         turnCostStorage = withTurnCosts ? new TurnCostStorage(this, dir.create("turn_costs", dir.getDefaultType("turn_costs", true), segmentSize)) : null;
+        adjacencyIndex = withAdjacencyIndex ? new BaseGraphAdjacency(dir, segmentSize) : null;
     }
 
     private int getOtherNode(int nodeThis, long edgePointer) {
@@ -110,12 +130,18 @@ public class BaseGraph implements Graph, Closeable {
                 wayGeometry.getHeader(4),
                 wayGeometry.getHeader(8)
         );
+        compressedGeometry = wayGeometry.getHeader(12) == 1;
     }
 
     private void setWayGeometryHeader() {
         wayGeometry.setHeader(0, Constants.VERSION_GEOMETRY);
         wayGeometry.setHeader(4, bitUtil.getIntLow(maxGeoRef));
         wayGeometry.setHeader(8, bitUtil.getIntHigh(maxGeoRef));
+        wayGeometry.setHeader(12, compressedGeometry ? 1 : 0);
+    }
+
+    public boolean isCompressedGeometry() {
+        return compressedGeometry;
     }
 
     private void setInitialized() {
@@ -150,12 +176,74 @@ public class BaseGraph implements Graph, Closeable {
         if (isFrozen())
             throw new IllegalStateException("base graph already frozen");
         store.setFrozen(true);
+        if (adjacencyIndex != null) {
+            adjacencyIndex.build(store);
+            adjacency = adjacencyIndex;
+        }
     }
 
     public synchronized boolean isFrozen() {
         return store.getFrozen();
     }
 
+    /**
+     * Changes the ids of all nodes, for example to improve the memory locality of nodes that are close to each other.
+     * This must be done before the graph is frozen, and all data that is stored per node id outside of this graph
+     * (like the location index or CH and LM preparations) needs to be created afterwards.
+     */
+    public void relabelNodes(IntUnaryOperator getNewNodeForOldNode) {
+        if (isFrozen())
+            throw new IllegalStateException("Cannot relabel nodes if graph is already frozen");
+        store.relabelNodes(getNewNodeForOldNode);
+    }
+
+    /**
+     * Changes the ids of all edges. The turn cost entries are updated accordingly and the way geometries are rewritten
+     * in the new edge order, so the pillar nodes of consecutive edges are stored close to each other. The same
+     * restrictions apply as for {@link #relabelNodes}.
+     */
+    public void sortEdges(IntUnaryOperator getNewEdgeForOldEdge) {
+        if (isFrozen())
+            throw new IllegalStateException("Cannot sort edges if graph is already frozen");
+        store.sortEdges(getNewEdgeForOldEdge);
+        if (supportsTurnCosts())
+            turnCostStorage.sortEdges(getNewEdgeForOldEdge);
+        sortWayGeometry();
+    }
+
+    private void sortWayGeometry() {
+        DataAccess sorted = dir.create("tmp_geometry_sorted", wayGeometry.getSegmentSize()).create(maxGeoRef * 4);
+        // 0 stands for no separate geoRef
+        long sortedMaxGeoRef = 4;
+        for (int edge = 0; edge < getEdges(); edge++) {
+            long edgePointer = store.toEdgePointer(edge);
+            long geoRef = Integer.toUnsignedLong(store.getGeoRef(edgePointer));
+            if (geoRef == 0)
+                continue;
+            long ints = getGeoRefInts(geoRef);
+            sorted.ensureCapacity((sortedMaxGeoRef + ints) * 4L);
+            copyBytes(wayGeometry, geoRef * 4L, sorted, sortedMaxGeoRef * 4L, ints * 4L);
+            store.setGeoRef(edgePointer, BitUtil.toSignedInt(sortedMaxGeoRef));
+            sortedMaxGeoRef += ints;
+        }
+        // this also removes the unused space of geometries that were replaced by shorter ones
+        copyBytes(sorted, 0, wayGeometry, 0, sortedMaxGeoRef * 4L);
+        maxGeoRef = sortedMaxGeoRef;
+        dir.remove(sorted.getName());
+    }
+
+    private static void copyBytes(DataAccess from, long fromPos, DataAccess to, long toPos, long length) {
+        byte[] bytes = new byte[(int) Math.min(length, from.getSegmentSize())];
+        while (length > 0) {
+            int chunk = (int) Math.min(length, bytes.length);
+            from.getBytes(fromPos, bytes, chunk);
+            to.setBytes(toPos, bytes, chunk);
+            fromPos += chunk;
+            toPos += chunk;
+            length -= chunk;
+        }
+    }
+
     public BaseGraph create(long initSize) {
         checkNotInitialized();
         dir.create();
@@ -179,7 +267,7 @@ public class BaseGraph implements Graph, Closeable {
 
     public String toDetailsString() {
         return store.toDetailsString() + ", "
-                + "name:(" + edgeKVStorage.getCapacity() / Helper.MB + "MB), "
+                + "name:(" + edgeKVStorage.getCapacity() / Helper.MB + "MB, " + edgeKVStorage.toDetailsString() + "), "
                 + "geo:" + nf(maxGeoRef) + "(" + wayGeometry.getCapacity() / Helper.MB + "MB)";
     }
 
@@ -209,6 +297,8 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.flush();
         }
+        if (adjacency != null)
+            adjacency.flush();
     }
 
     @Override
@@ -221,11 +311,14 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.close();
         }
+        if (adjacencyIndex != null)
+            adjacencyIndex.close();
     }
 
     public long getCapacity() {
         return store.getCapacity() + edgeKVStorage.getCapacity()
-                + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0);
+                + wayGeometry.getCapacity() + (supportsTurnCosts() ? turnCostStorage.getCapacity() : 0)
+                + (adjacency != null ? adjacency.getCapacity() : 0);
     }
 
     long getMaxGeoRef() {
@@ -249,6 +342,17 @@ public class BaseGraph implements Graph, Closeable {
 
         setInitialized();
         loadWayGeometryHeader();
+        if (adjacencyIndex != null && isFrozen()) {
+            // graphs that were frozen without the adjacency index get it built on the fly and stored, if the
+            // directory is read-only they use the linked lists of the edges instead
+            if (adjacencyIndex.loadExisting(store)) {
+                adjacency = adjacencyIndex;
+            } else if (adjacencyIndex.isAllowWrites()) {
+                adjacencyIndex.build(store);
+                adjacencyIndex.flush();
+                adjacency = adjacencyIndex;
+            }
+        }
         return true;
     }
 
@@ -352,25 +456,33 @@ public class BaseGraph implements Graph, Closeable {
                 throw new IllegalArgumentException("Cannot use pointlist which is " + pillarNodes.getDimension()
                         + "D for graph which is " + nodeAccess.getDimension() + "D");
 
-            long existingGeoRef = Integer.toUnsignedLong(store.getGeoRef(edgePointer));
-
-            int len = pillarNodes.size();
-            int dim = nodeAccess.getDimension();
-            if (existingGeoRef > 0) {
-                final int count = wayGeometry.getInt(existingGeoRef * 4L);
-                if (len <= count) {
-                    setWayGeometryAtGeoRef(pillarNodes, edgePointer, reverse, existingGeoRef);
-                    return;
-                }
-            }
-
-            long nextGeoRef = nextGeoRef(len * dim);
-            setWayGeometryAtGeoRef(pillarNodes, edgePointer, reverse, nextGeoRef);
+            byte[] wayGeometryBytes = compressedGeometry
+                    ? createCompressedWayGeometryBytes(pillarNodes, reverse)
+                    : createWayGeometryBytes(pillarNodes, reverse);
+            // the geoRef counts in units of 4 bytes
+            int ints = (wayGeometryBytes.length + 3) / 4;
+            long geoRef = Integer.toUnsignedLong(store.getGeoRef(edgePointer));
+            // reuse the existing space if the new geometry fits into it
+            if (geoRef == 0 || ints > getGeoRefInts(geoRef))
+                geoRef = nextGeoRef(ints - 1);
+
+            long geoRefPosition = geoRef * 4;
+            ensureGeometry(geoRefPosition, ints * 4);
+            wayGeometry.setBytes(geoRefPosition, wayGeometryBytes, wayGeometryBytes.length);
+            store.setGeoRef(edgePointer, BitUtil.toSignedInt(geoRef));
         } else {
             store.setGeoRef(edgePointer, 0);
         }
     }
 
+    /**
+     * @return the space in units of 4 bytes that the geometry at the specified geoRef occupies, including its header
+     */
+    private long getGeoRefInts(long geoRef) {
+        int header = wayGeometry.getInt(geoRef * 4L);
+        return compressedGeometry ? 1 + (header + 3) / 4 : 1 + (long) header * nodeAccess.getDimension();
+    }
+
     public EdgeIntAccess createEdgeIntAccess() {
         return new EdgeIntAccess() {
             @Override
@@ -387,17 +499,6 @@ public class BaseGraph implements Graph, Closeable {
         };
     }
 
-    private void setWayGeometryAtGeoRef(PointList pillarNodes, long edgePointer, boolean reverse, long geoRef) {
-        int len = pillarNodes.size();
-        int dim = nodeAccess.getDimension();
-        long geoRefPosition = geoRef * 4;
-        int totalLen = len * dim * 4 + 4;
-        ensureGeometry(geoRefPosition, totalLen);
-        byte[] wayGeometryBytes = createWayGeometryBytes(pillarNodes, reverse);
-        wayGeometry.setBytes(geoRefPosition, wayGeometryBytes, wayGeometryBytes.length);
-        store.setGeoRef(edgePointer, BitUtil.toSignedInt(geoRef));
-    }
-
     private byte[] createWayGeometryBytes(PointList pillarNodes, boolean reverse) {
         int len = pillarNodes.size();
         int dim = nodeAccess.getDimension();
@@ -424,6 +525,51 @@ public class BaseGraph implements Graph, Closeable {
         return bytes;
     }
 
+    /**
+     * Creates the bytes of the compressed geometry: the first point is stored as is and all following points as the
+     * difference to their predecessor. All values are zigzag encoded and written as variable-length integers, so
+     * that the typically small differences only need one or two bytes.
+     */
+    private byte[] createCompressedWayGeometryBytes(PointList pillarNodes, boolean reverse) {
+        int len = pillarNodes.size();
+        boolean is3D = nodeAccess.is3D();
+        if (reverse)
+            pillarNodes.reverse();
+
+        VLongStorage vls = new VLongStorage(4 + len * nodeAccess.getDimension() * 2);
+        // reserve space for the byte length
+        vls.seek(4);
+        vls.writeVLong(len);
+        int prevLat = 0, prevLon = 0, prevEle = 0;
+        for (int i = 0; i < len; i++) {
+            int lat = Helper.degreeToInt(pillarNodes.getLat(i));
+            int lon = Helper.degreeToInt(pillarNodes.getLon(i));
+            vls.writeVLong(zigzagEncode(lat - prevLat));
+            vls.writeVLong(zigzagEncode(lon - prevLon));
+            prevLat = lat;
+            prevLon = lon;
+            if (is3D) {
+                int ele = Helper.eleToInt(pillarNodes.getEle(i));
+                vls.writeVLong(zigzagEncode(ele - prevEle));
+                prevEle = ele;
+            }
+        }
+        int byteLength = (int) vls.getPosition();
+        vls.trimToSize();
+        byte[] bytes = vls.getBytes();
+        bitUtil.fromInt(bytes, byteLength - 4, 0);
+        return bytes;
+    }
+
+    private static long zigzagEncode(int value) {
+        return Integer.toUnsignedLong((value << 1) ^ (value >> 31));
+    }
+
+    private static int zigzagDecode(long value) {
+        int zigzag = (int) value;
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
     private PointList fetchWayGeometry_(long edgePointer, boolean reverse, FetchMode mode, int baseNode, int adjNode) {
         if (mode == FetchMode.TOWER_ONLY) {
             // no reverse handling required as adjNode and baseNode is already properly switched
@@ -435,13 +581,20 @@ public class BaseGraph implements Graph, Closeable {
         long geoRef = Integer.toUnsignedLong(store.getGeoRef(edgePointer));
         int count = 0;
         byte[] bytes = null;
+        VLongStorage compressed = null;
         if (geoRef > 0) {
             geoRef *= 4L;
-            count = wayGeometry.getInt(geoRef);
+            int header = wayGeometry.getInt(geoRef);
 
             geoRef += 4L;
-            bytes = new byte[count * nodeAccess.getDimension() * 4];
+            bytes = new byte[compressedGeometry ? header : header * nodeAccess.getDimension() * 4];
             wayGeometry.getBytes(geoRef, bytes, bytes.length);
+            if (compressedGeometry) {
+                compressed = new VLongStorage(bytes);
+                count = (int) compressed.readVLong();
+            } else {
+                count = header;
+            }
         } else if (mode == FetchMode.PILLAR_ONLY)
             return PointList.EMPTY;
 
@@ -452,17 +605,31 @@ public class BaseGraph implements Graph, Closeable {
         } else if (mode == FetchMode.ALL || mode == FetchMode.BASE_AND_PILLAR)
             pillarNodes.add(nodeAccess, baseNode);
 
-        int index = 0;
-        for (int i = 0; i < count; i++) {
-            double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
-            index += 4;
-            if (nodeAccess.is3D()) {
-                pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+        if (compressed != null) {
+            int lat = 0, lon = 0, ele = 0;
+            for (int i = 0; i < count; i++) {
+                lat += zigzagDecode(compressed.readVLong());
+                lon += zigzagDecode(compressed.readVLong());
+                if (nodeAccess.is3D()) {
+                    ele += zigzagDecode(compressed.readVLong());
+                    pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon), Helper.intToEle(ele));
+                } else {
+                    pillarNodes.add(Helper.intToDegree(lat), Helper.intToDegree(lon));
+                }
+            }
+        } else {
+            int index = 0;
+            for (int i = 0; i < count; i++) {
+                double lat = Helper.intToDegree(bitUtil.toInt(bytes, index));
                 index += 4;
-            } else {
-                pillarNodes.add(lat, lon);
+                double lon = Helper.intToDegree(bitUtil.toInt(bytes, index));
+                index += 4;
+                if (nodeAccess.is3D()) {
+                    pillarNodes.add(lat, lon, Helper.intToEle(bitUtil.toInt(bytes, index)));
+                    index += 4;
+                } else {
+                    pillarNodes.add(lat, lon);
+                }
             }
         }
 
@@ -522,8 +689,11 @@ public class BaseGraph implements Graph, Closeable {
         private Directory directory = new RAMDirectory();
         private boolean withElevation = false;
         private boolean withTurnCosts = false;
+        private boolean withAdjacencyIndex = false;
+        private boolean withCompressedGeometry = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private int maxKVDictionaryEntries = KVStorage.DEFAULT_MAX_DICTIONARY_ENTRIES;
 
         public Builder(EncodingManager em) {
             this(em.getIntsForFlags());
@@ -552,18 +722,38 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        public Builder withAdjacencyIndex(boolean withAdjacencyIndex) {
+            this.withAdjacencyIndex = withAdjacencyIndex;
+            return this;
+        }
+
+        public Builder withCompressedGeometry(boolean withCompressedGeometry) {
+            this.withCompressedGeometry = withCompressedGeometry;
+            return this;
+        }
+
         public Builder setSegmentSize(int segmentSize) {
             this.segmentSize = segmentSize;
             return this;
         }
 
+        /**
+         * @see KVStorage#setMaxDictionaryEntries(int)
+         */
+        public Builder setMaxKVDictionaryEntries(int maxKVDictionaryEntries) {
+            this.maxKVDictionaryEntries = maxKVDictionaryEntries;
+            return this;
+        }
+
         public Builder setBytes(long bytes) {
             this.bytes = bytes;
             return this;
         }
 
         public BaseGraph build() {
-            return new BaseGraph(directory, intsForFlags, withElevation, withTurnCosts, segmentSize);
+            BaseGraph baseGraph = new BaseGraph(directory, intsForFlags, withElevation, withTurnCosts, withAdjacencyIndex, withCompressedGeometry, segmentSize);
+            baseGraph.edgeKVStorage.setMaxDictionaryEntries(maxKVDictionaryEntries);
+            return baseGraph;
         }
 
         public BaseGraph create() {
@@ -576,6 +766,10 @@ public class BaseGraph implements Graph, Closeable {
     protected static class EdgeIteratorImpl extends EdgeIteratorStateImpl implements EdgeExplorer, EdgeIterator {
         final EdgeFilter filter;
         int nextEdgeId;
+        // the position within the adjacency index, only used if the graph has one
+        private BaseGraphAdjacency adjacency;
+        private long adjIndex;
+        private long adjEnd;
 
         public EdgeIteratorImpl(BaseGraph baseGraph, EdgeFilter filter) {
             super(baseGraph);
@@ -586,7 +780,14 @@ public class BaseGraph implements Graph, Closeable {
 
         @Override
         public EdgeIterator setBaseNode(int baseNode) {
-            nextEdgeId = edgeId = store.getEdgeRef(store.toNodePointer(baseNode));
+            adjacency = baseGraph.adjacency;
+            if (adjacency == null) {
+                nextEdgeId = edgeId = store.getEdgeRef(store.toNodePointer(baseNode));
+            } else {
+                adjIndex = adjacency.getStart(baseNode);
+                adjEnd = adjacency.getEnd(baseNode);
+                nextEdgeId = edgeId = adjIndex < adjEnd ? adjacency.getEdge(adjIndex) : EdgeIterator.NO_EDGE;
+            }
             this.baseNode = baseNode;
             return this;
         }
@@ -610,7 +811,10 @@ public class BaseGraph implements Graph, Closeable {
             reverse = !baseNodeIsNodeA;
 
             // position to next edge
-            nextEdgeId = baseNodeIsNodeA ? store.getLinkA(edgePointer) : store.getLinkB(edgePointer);
+            if (adjacency == null)
+                nextEdgeId = baseNodeIsNodeA ? store.getLinkA(edgePointer) : store.getLinkB(edgePointer);
+            else
+                nextEdgeId = ++adjIndex < adjEnd ? adjacency.getEdge(adjIndex) : EdgeIterator.NO_EDGE;
             assert nextEdgeId != edgeId : ("endless loop detected for base node: " + baseNode + ", adj node: " + adjNode
                     + ", edge pointer: " + edgePointer + ", edge: " + edgeId);
         }
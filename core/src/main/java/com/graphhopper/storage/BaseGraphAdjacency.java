@@ -0,0 +1,114 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.Constants;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+/**
+ * A compressed sparse row (CSR) representation of the adjacency lists of a frozen {@link BaseGraph}. For every node
+ * we store the position of its first adjacent edge and all edge ids are stored contiguously, in the same order as they
+ * appear in the linked lists of {@link BaseGraphNodesAndEdges}. Iterating the edges of a node becomes a sequential
+ * scan instead of following the E_LINKA/E_LINKB pointers from edge to edge.
+ * <p>
+ * Memory layout: |offset node 0|offset node 1|...|offset node N|edge|edge|...| where the offsets are unsigned ints,
+ * because there are two entries per edge.
+ */
+class BaseGraphAdjacency {
+    private final DataAccess adjacency;
+    private int nodeCount;
+    private int edgeCount;
+    private long edgesStart;
+
+    BaseGraphAdjacency(Directory dir, int segmentSize) {
+        adjacency = dir.create("adjacency", dir.getDefaultType("adjacency", true), segmentSize);
+    }
+
+    /**
+     * Builds the adjacency index from the linked lists of the given store, which must not change afterwards.
+     */
+    void build(BaseGraphNodesAndEdges store) {
+        nodeCount = store.getNodes();
+        edgeCount = store.getEdges();
+        edgesStart = (nodeCount + 1L) * 4;
+        adjacency.create(edgesStart + 2L * edgeCount * 4);
+        long entries = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            adjacency.setInt((long) node * 4, (int) entries);
+            int edge = store.getEdgeRef(store.toNodePointer(node));
+            while (EdgeIterator.Edge.isValid(edge)) {
+                adjacency.setInt(edgesStart + entries * 4, edge);
+                entries++;
+                long edgePointer = store.toEdgePointer(edge);
+                edge = store.getNodeA(edgePointer) == node ? store.getLinkA(edgePointer) : store.getLinkB(edgePointer);
+            }
+        }
+        adjacency.setInt((long) nodeCount * 4, (int) entries);
+    }
+
+    boolean loadExisting(BaseGraphNodesAndEdges store) {
+        if (!adjacency.loadExisting())
+            return false;
+        GHUtility.checkDAVersion(adjacency.getName(), Constants.VERSION_ADJACENCY, adjacency.getHeader(0));
+        nodeCount = adjacency.getHeader(4);
+        edgeCount = adjacency.getHeader(8);
+        if (nodeCount != store.getNodes() || edgeCount != store.getEdges())
+            throw new IllegalStateException("The adjacency index does not match the graph. nodes: " + nodeCount + " vs. "
+                    + store.getNodes() + ", edges: " + edgeCount + " vs. " + store.getEdges());
+        edgesStart = (nodeCount + 1L) * 4;
+        return true;
+    }
+
+    boolean isAllowWrites() {
+        return adjacency.getType().isAllowWrites();
+    }
+
+    void flush() {
+        adjacency.setHeader(0, Constants.VERSION_ADJACENCY);
+        adjacency.setHeader(4, nodeCount);
+        adjacency.setHeader(8, edgeCount);
+        adjacency.flush();
+    }
+
+    void close() {
+        adjacency.close();
+    }
+
+    long getCapacity() {
+        return adjacency.getCapacity();
+    }
+
+    /**
+     * @return the index of the first adjacent edge of the given node
+     */
+    long getStart(int node) {
+        return Integer.toUnsignedLong(adjacency.getInt((long) node * 4));
+    }
+
+    /**
+     * @return the index after the last adjacent edge of the given node
+     */
+    long getEnd(int node) {
+        return Integer.toUnsignedLong(adjacency.getInt((long) node * 4 + 4));
+    }
+
+    int getEdge(long index) {
+        return adjacency.getInt(edgesStart + index * 4);
+    }
+}
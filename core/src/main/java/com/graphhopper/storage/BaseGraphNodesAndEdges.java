@@ -18,6 +18,8 @@
 
 package com.graphhopper.storage;
 
+import com.graphhopper.coll.GHBitSet;
+import com.graphhopper.coll.GHBitSetImpl;
 import com.graphhopper.util.Constants;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
@@ -25,6 +27,7 @@ import com.graphhopper.util.Helper;
 import com.graphhopper.util.shapes.BBox;
 
 import java.util.Locale;
+import java.util.function.IntUnaryOperator;
 
 import static com.graphhopper.util.EdgeIterator.NO_EDGE;
 import static com.graphhopper.util.Helper.nf;
@@ -216,6 +219,83 @@ class BaseGraphNodesAndEdges {
         return edge;
     }
 
+    /**
+     * Changes the ids of all nodes. The edges keep their ids, only their node references are updated.
+     */
+    public void relabelNodes(IntUnaryOperator getNewNodeForOldNode) {
+        for (int edge = 0; edge < edgeCount; edge++) {
+            long edgePointer = toEdgePointer(edge);
+            setNodeA(edgePointer, getNewNodeForOldNode.applyAsInt(getNodeA(edgePointer)));
+            setNodeB(edgePointer, getNewNodeForOldNode.applyAsInt(getNodeB(edgePointer)));
+        }
+        permute(nodes, nodeEntryBytes, nodeCount, getNewNodeForOldNode);
+    }
+
+    /**
+     * Changes the ids of all edges. Afterwards the linked lists of edges at each node are rebuilt such that they are
+     * traversed in the order of increasing edge ids.
+     */
+    public void sortEdges(IntUnaryOperator getNewEdgeForOldEdge) {
+        permute(edges, edgeEntryBytes, edgeCount, getNewEdgeForOldEdge);
+        for (int node = 0; node < nodeCount; node++)
+            setEdgeRef(toNodePointer(node), NO_EDGE);
+        // we prepend the edges to the linked lists, so we need to add them in reverse order
+        for (int edge = edgeCount - 1; edge >= 0; edge--) {
+            long edgePointer = toEdgePointer(edge);
+            long nodePointerA = toNodePointer(getNodeA(edgePointer));
+            setLinkA(edgePointer, getEdgeRef(nodePointerA));
+            setEdgeRef(nodePointerA, edge);
+            long nodePointerB = toNodePointer(getNodeB(edgePointer));
+            setLinkB(edgePointer, getEdgeRef(nodePointerB));
+            setEdgeRef(nodePointerB, edge);
+        }
+    }
+
+    /**
+     * Moves the fixed size entries of the given DataAccess in place, such that the entry at index i ends up at index
+     * getNewIndexForOldIndex(i). We use int-wise access, because the DataAccess might be integer based.
+     */
+    private static void permute(DataAccess da, int entryBytes, int count, IntUnaryOperator getNewIndexForOldIndex) {
+        if (entryBytes % 4 != 0)
+            throw new IllegalArgumentException("entry bytes must be a multiple of 4, but was: " + entryBytes);
+        int[] curr = new int[entryBytes / 4];
+        int[] next = new int[entryBytes / 4];
+        GHBitSet moved = new GHBitSetImpl(count);
+        for (int start = 0; start < count; start++) {
+            if (moved.contains(start))
+                continue;
+            // follow the cycle that starts at this index: every entry we move displaces the one at its new position
+            readEntry(da, (long) start * entryBytes, curr);
+            int index = start;
+            while (true) {
+                moved.add(index);
+                int newIndex = getNewIndexForOldIndex.applyAsInt(index);
+                if (newIndex < 0 || newIndex >= count)
+                    throw new IllegalArgumentException("new index " + newIndex + " out of bounds [0," + count + "[");
+                if (newIndex == start) {
+                    writeEntry(da, (long) start * entryBytes, curr);
+                    break;
+                }
+                readEntry(da, (long) newIndex * entryBytes, next);
+                writeEntry(da, (long) newIndex * entryBytes, curr);
+                int[] tmp = curr;
+                curr = next;
+                next = tmp;
+                index = newIndex;
+            }
+        }
+    }
+
+    private static void readEntry(DataAccess da, long pointer, int[] entry) {
+        for (int i = 0; i < entry.length; i++)
+            entry[i] = da.getInt(pointer + i * 4L);
+    }
+
+    private static void writeEntry(DataAccess da, long pointer, int[] entry) {
+        for (int i = 0; i < entry.length; i++)
+            da.setInt(pointer + i * 4L, entry[i]);
+    }
+
     public void ensureNodeCapacity(int node) {
         if (node < nodeCount)
             return;
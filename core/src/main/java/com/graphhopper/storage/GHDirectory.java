@@ -35,6 +35,7 @@ public class GHDirectory implements Directory {
     // first rule matches => LinkedHashMap
     private final Map<String, DAType> defaultTypes = new LinkedHashMap<>();
     private final Map<String, Integer> mmapPreloads = new LinkedHashMap<>();
+    private final Map<String, Integer> mmapWarmUps = new LinkedHashMap<>();
     private final Map<String, DataAccess> map = Collections.synchronizedMap(new HashMap<>());
 
     public GHDirectory(String _location, DAType defaultType) {
@@ -54,7 +55,8 @@ public class GHDirectory implements Directory {
     /**
      * Configure the DAType (specified by the value) of a single DataAccess object (specified by the key). For "MMAP" you
      * can prepend "preload." to the name and specify a percentage which preloads the DataAccess into physical memory of
-     * the specified percentage (only applied for load, not for import).
+     * the specified percentage (only applied for load, not for import). Similarly "warmup." loads the specified
+     * percentage in background threads, see {@link #startMMapWarmUp(int)}.
      * As keys can be patterns the order is important and the LinkedHashMap is forced as type.
      */
     public Directory configure(LinkedHashMap<String, String> config) {
@@ -67,6 +69,13 @@ public class GHDirectory implements Directory {
                 } catch (NumberFormatException ex) {
                     throw new IllegalArgumentException("DataAccess " + kv.getKey() + " has an incorrect preload value: " + value);
                 }
+            else if (kv.getKey().startsWith("warmup."))
+                try {
+                    String pattern = kv.getKey().substring("warmup.".length());
+                    mmapWarmUps.put(pattern, Integer.parseInt(value));
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("DataAccess " + kv.getKey() + " has an incorrect warmup value: " + value);
+                }
             else {
                 String pattern = kv.getKey();
                 defaultTypes.put(pattern, DAType.fromString(value));
@@ -80,7 +89,18 @@ public class GHDirectory implements Directory {
      * See {@link #configure(LinkedHashMap)}
      */
     int getPreload(String name) {
-        for (Map.Entry<String, Integer> entry : mmapPreloads.entrySet())
+        return getPercentage(mmapPreloads, name);
+    }
+
+    /**
+     * Returns the warm-up value or 0 if no patterns match.
+     */
+    int getWarmUp(String name) {
+        return getPercentage(mmapWarmUps, name);
+    }
+
+    private static int getPercentage(Map<String, Integer> percentages, String name) {
+        for (Map.Entry<String, Integer> entry : percentages.entrySet())
             if (name.matches(entry.getKey())) return entry.getValue();
         return 0;
     }
@@ -95,6 +115,23 @@ public class GHDirectory implements Directory {
         }
     }
 
+    /**
+     * Starts loading the configured warm-up percentage of the memory mapped DataAccess objects into physical memory
+     * in background threads. In contrast to the preload this does not block and the returned {@link MMapWarmUp} can
+     * be used to track the progress. It must be stopped before this Directory is closed.
+     */
+    public MMapWarmUp startMMapWarmUp(int threads) {
+        MMapWarmUp warmUp = new MMapWarmUp();
+        for (DataAccess da : map.values()) {
+            if (!(da instanceof MMapDataAccess) || da.isClosed())
+                continue;
+            int percentage = getWarmUp(da.getName());
+            if (percentage > 0)
+                warmUp.add((MMapDataAccess) da, percentage);
+        }
+        return warmUp.start(threads);
+    }
+
     @Override
     public DataAccess create(String name) {
         return create(name, getDefault(name, typeFallback));
@@ -139,6 +176,8 @@ public class GHDirectory implements Directory {
                 da = new RAMDataAccess(name, location, false, segmentSize);
         } else if (type.isMMap()) {
             da = new MMapDataAccess(name, location, type.isAllowWrites(), segmentSize);
+        } else if (type.isOffHeap()) {
+            da = new OffHeapDataAccess(name, location, type.isStoring(), segmentSize);
         } else {
             throw new IllegalArgumentException("DAType not supported " + type);
         }
@@ -174,6 +213,18 @@ public class GHDirectory implements Directory {
         removeBackingFile(old, name);
     }
 
+    /**
+     * Closes the specified object and removes it from the directory, but keeps its files. Afterwards it can be created
+     * again and loaded via {@link DataAccess#loadExisting()}.
+     */
+    public void close(String name) {
+        DataAccess old = map.remove(name);
+        if (old == null)
+            throw new IllegalStateException("Couldn't close DataAccess: " + name);
+
+        old.close();
+    }
+
     private void removeBackingFile(DataAccess da, String name) {
         if (da.getType().isStoring())
             removeDir(new File(location + name));
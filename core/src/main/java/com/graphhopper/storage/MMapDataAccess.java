@@ -242,6 +242,14 @@ public final class MMapDataAccess extends AbstractDataAccess {
         }
     }
 
+    /**
+     * Load the specified segment into physical memory. Can be called from multiple threads, but not concurrently
+     * with any method that changes the mapping like ensureCapacity or close.
+     */
+    public void loadSegment(int segment) {
+        segments.get(segment).load();
+    }
+
     @Override
     public void close() {
         super.close();
@@ -382,6 +390,6 @@ public final class MMapDataAccess extends AbstractDataAccess {
 
     @Override
     public DAType getType() {
-        return DAType.MMAP;
+        return allowWrites ? DAType.MMAP : DAType.MMAP_RO;
     }
 }
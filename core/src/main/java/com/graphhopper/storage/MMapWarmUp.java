@@ -0,0 +1,168 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the segments of memory mapped DataAccess objects into the page cache in background threads. Without this
+ * the first requests after loading a graph are much slower, because every access to a page that is not yet in memory
+ * requires a disk read. Use {@link #getProgress()}, {@link #isDone()} or {@link #getFailedSegments()} to find out if the
+ * warm-up has finished or failed, e.g. in a health check, and {@link #stop()} before the DataAccess objects are closed.
+ */
+public class MMapWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MMapWarmUp.class);
+    private final List<MMapDataAccess> dataAccesses = new ArrayList<>();
+    private final List<Integer> segmentCounts = new ArrayList<>();
+    private final AtomicInteger loadedSegments = new AtomicInteger();
+    private final AtomicInteger failedSegments = new AtomicInteger();
+    private int totalSegments;
+    private ExecutorService executorService;
+    private volatile boolean stopped;
+
+    /**
+     * Adds the first percentage of the segments of the specified DataAccess to the warm-up.
+     */
+    public MMapWarmUp add(MMapDataAccess da, int percentage) {
+        if (percentage < 0 || percentage > 100)
+            throw new IllegalArgumentException("Percentage for the warm-up of " + da.getName() + " must be in [0,100] but was " + percentage);
+        if (executorService != null)
+            throw new IllegalStateException("Warm-up was already started");
+        int segments = Math.round(da.getSegments() * percentage / 100f);
+        if (segments > 0) {
+            dataAccesses.add(da);
+            segmentCounts.add(segments);
+            totalSegments += segments;
+        }
+        return this;
+    }
+
+    /**
+     * Starts the warm-up in the specified number of background threads and returns immediately.
+     */
+    public MMapWarmUp start(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one thread is required for the warm-up but was " + threads);
+        if (executorService != null)
+            throw new IllegalStateException("Warm-up was already started");
+        executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "mmap-warm-up");
+            // do not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (totalSegments == 0) {
+            executorService.shutdown();
+            return this;
+        }
+        StopWatch sw = new StopWatch().start();
+        // interleave the DataAccess objects so that all of them get warm at roughly the same speed
+        int maxSegments = segmentCounts.stream().mapToInt(Integer::intValue).max().orElse(0);
+        for (int segment = 0; segment < maxSegments; segment++) {
+            for (int i = 0; i < dataAccesses.size(); i++) {
+                if (segment >= segmentCounts.get(i))
+                    continue;
+                MMapDataAccess da = dataAccesses.get(i);
+                int s = segment;
+                executorService.submit(() -> {
+                    if (stopped)
+                        return;
+                    try {
+                        da.loadSegment(s);
+                        loadedSegments.incrementAndGet();
+                    } catch (Exception ex) {
+                        failedSegments.incrementAndGet();
+                        LOGGER.error("Could not warm up segment " + s + " of " + da.getName(), ex);
+                    }
+                    if (loadedSegments.get() + failedSegments.get() == totalSegments)
+                        LOGGER.info("Finished warm-up of " + dataAccesses.size() + " memory mapped files, segments: "
+                                + totalSegments + ", failed: " + failedSegments.get() + ", took: " + sw.stop().getSeconds() + "s");
+                });
+            }
+        }
+        executorService.shutdown();
+        return this;
+    }
+
+    /**
+     * @return the fraction of segments that are already loaded, in [0,1]
+     */
+    public double getProgress() {
+        return totalSegments == 0 ? 1 : (double) loadedSegments.get() / totalSegments;
+    }
+
+    /**
+     * @return true if all segments were loaded successfully
+     */
+    public boolean isDone() {
+        return loadedSegments.get() == totalSegments;
+    }
+
+    /**
+     * @return true if the warm-up has finished for all segments, i.e. they were loaded or failed to load
+     */
+    public boolean isFinished() {
+        return loadedSegments.get() + failedSegments.get() == totalSegments;
+    }
+
+    /**
+     * @return the number of segments that could not be loaded, the errors are logged
+     */
+    public int getFailedSegments() {
+        return failedSegments.get();
+    }
+
+    /**
+     * Waits until the warm-up has finished or the timeout has elapsed.
+     *
+     * @return true if the warm-up is done, i.e. all segments were loaded successfully
+     */
+    public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        if (executorService == null)
+            throw new IllegalStateException("Warm-up was not started");
+        executorService.awaitTermination(timeout, unit);
+        return isDone();
+    }
+
+    /**
+     * Cancels the remaining warm-up and waits for the segments that are currently loaded. This must be called before
+     * the DataAccess objects are closed, because accessing an unmapped buffer can crash the JVM.
+     */
+    public void stop() {
+        stopped = true;
+        if (executorService == null)
+            return;
+        executorService.shutdownNow();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES))
+                throw new IllegalStateException("Warm-up threads did not terminate");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+}
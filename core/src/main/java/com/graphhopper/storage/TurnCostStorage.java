@@ -25,6 +25,8 @@ import com.graphhopper.util.Constants;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.GHUtility;
 
+import java.util.function.IntUnaryOperator;
+
 /**
  * A key/value store, where the unique keys are triples (fromEdge, viaNode, toEdge) and the values
  * are integers that can be used to store encoded values.
@@ -162,6 +164,17 @@ public class TurnCostStorage {
         throw new IllegalStateException("Turn cost list for node: " + viaNode + " is longer than expected, max: " + maxEntries);
     }
 
+    /**
+     * Updates the from and to edges of all entries after the edges of the graph have been renumbered.
+     */
+    void sortEdges(IntUnaryOperator getNewEdgeForOldEdge) {
+        for (int index = 0; index < turnCostsCount; index++) {
+            long pointer = (long) index * BYTES_PER_ENTRY;
+            turnCosts.setInt(pointer + TC_FROM, getNewEdgeForOldEdge.applyAsInt(turnCosts.getInt(pointer + TC_FROM)));
+            turnCosts.setInt(pointer + TC_TO, getNewEdgeForOldEdge.applyAsInt(turnCosts.getInt(pointer + TC_TO)));
+        }
+    }
+
     public boolean isClosed() {
         return turnCosts.isClosed();
     }
@@ -19,6 +19,10 @@ package com.graphhopper.storage.index;
 
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Provides a way to map real world data "lat,lon" to internal ids/indices of a memory efficient graph
@@ -46,6 +50,38 @@ public interface LocationIndex {
      */
     Snap findClosest(double lat, double lon, EdgeFilter edgeFilter);
 
+    /**
+     * This method returns up to k Snaps, each on a different edge, that are closest to the specified location and not
+     * further away than maxDistance. Snaps onto the same tower node via different edges are returned only once.
+     *
+     * @param maxDistance the maximum distance in meters between the location and a snapped point
+     * @return the valid Snaps sorted by increasing distance, where the query distance is in meters. The list is empty
+     * if no edge accepted by the edgeFilter is found within maxDistance.
+     * The default implementation returns only the Snap of {@link #findClosest(double, double, EdgeFilter)}.
+     */
+    default List<Snap> findNearestEdges(double lat, double lon, int k, double maxDistance, EdgeFilter edgeFilter) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1 but was " + k);
+        Snap snap = findClosest(lat, lon, edgeFilter);
+        if (!snap.isValid() || snap.getQueryDistance() > maxDistance)
+            return new ArrayList<>();
+        List<Snap> snaps = new ArrayList<>(1);
+        snaps.add(snap);
+        return snaps;
+    }
+
+    /**
+     * This method returns the closest Snap for every of the specified points, see
+     * {@link #findClosest(double, double, EdgeFilter)}. The returned list has the same order as the specified points.
+     * Implementations can override this to process the points more efficiently than one by one.
+     */
+    default List<Snap> findClosest(List<GHPoint> points, EdgeFilter edgeFilter) {
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (GHPoint point : points)
+            snaps.add(findClosest(point.lat, point.lon, edgeFilter));
+        return snaps;
+    }
+
     /**
      * This method explores the LocationIndex with the specified Visitor. It visits only the stored edges (and only once)
      * and limited by the queryBBox. Also (a few) more edges slightly outside of queryBBox could be
@@ -17,7 +17,10 @@
  */
 package com.graphhopper.storage.index;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+import com.graphhopper.geohash.SpatialKeyAlgo;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
@@ -25,10 +28,19 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -274,23 +286,162 @@ public class LocationIndexTree implements LocationIndex {
         if (isClosed())
             throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
 
-        final Snap closestMatch = new Snap(queryLat, queryLon);
+        return findClosest(queryLat, queryLon, edgeFilter, null);
+    }
+
+    @Override
+    public List<Snap> findNearestEdges(final double queryLat, final double queryLon, int k, double maxDistance, EdgeFilter edgeFilter) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1 but was " + k);
+        return findNearestEdges(queryLat, queryLon, k, maxDistance, null, edgeFilter);
+    }
+
+    /**
+     * Same as {@link #findNearestEdges(double, double, int, double, EdgeFilter)} without a limit for the number of Snaps,
+     * but the maximum distance is reduced to the radius calculated from the distance of the closest Snap. The search
+     * stops as soon as this radius is covered, so only the edges close to the query point are traversed.
+     *
+     * @param radiusFromClosest calculates the radius in meters from the distance of the closest Snap in meters. The
+     *                          radius must not be smaller than this distance.
+     */
+    public List<Snap> findNearestEdges(final double queryLat, final double queryLon, double maxDistance,
+                                       DoubleUnaryOperator radiusFromClosest, EdgeFilter edgeFilter) {
+        return findNearestEdges(queryLat, queryLon, Integer.MAX_VALUE, maxDistance, radiusFromClosest, edgeFilter);
+    }
+
+    private List<Snap> findNearestEdges(final double queryLat, final double queryLon, int k, double maxDistance,
+                                        DoubleUnaryOperator radiusFromClosest, EdgeFilter edgeFilter) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+
+        List<Snap> snaps = new ArrayList<>();
         IntHashSet seenEdges = new IntHashSet();
-        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+        IntHashSet seenTowerNodes = new IntHashSet();
+        double radius = maxDistance;
+        // the tiles are visited in rings of increasing distance around the tile of the query point
+        for (int iteration = 0; iteration <= indexStructureInfo.getParts(); iteration++) {
+            final double currRadius = radius;
             lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeId -> {
-                EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
-                if (seenEdges.add(edgeId) && edgeFilter.accept(edgeIteratorState)) { // TODO: or reverse?
-                    traverseEdge(queryLat, queryLon, edgeIteratorState, (node, normedDist, wayIndex, pos) -> {
-                        if (normedDist < closestMatch.getQueryDistance()) {
-                            closestMatch.setQueryDistance(normedDist);
-                            closestMatch.setClosestNode(node);
-                            closestMatch.setClosestEdge(edgeIteratorState.detach(false));
-                            closestMatch.setWayIndex(wayIndex);
-                            closestMatch.setSnappedPosition(pos);
-                        }
-                    });
-                }
+                if (!seenEdges.add(edgeId))
+                    return;
+                EdgeIteratorState edge = graph.getEdgeIteratorStateForKey(edgeId * 2);
+                if (!edgeFilter.accept(edge))
+                    return;
+                Snap snap = new Snap(queryLat, queryLon);
+                traverseEdge(queryLat, queryLon, edge, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < snap.getQueryDistance()) {
+                        snap.setQueryDistance(normedDist);
+                        snap.setClosestNode(node);
+                        snap.setWayIndex(wayIndex);
+                        snap.setSnappedPosition(pos);
+                    }
+                });
+                snap.setClosestEdge(edge);
+                if (!snap.isValid() || DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()) > currRadius)
+                    return;
+                if (snap.getSnappedPosition() == Snap.Position.TOWER && !seenTowerNodes.add(snap.getClosestNode()))
+                    return;
+                snaps.add(snap);
             });
+
+            // all edges closer than rMin are found, so we can stop if this covers the radius or the k-th snap
+            double rMin = calculateRMin(queryLat, queryLon, iteration);
+            if (radiusFromClosest != null && !snaps.isEmpty()) {
+                // the closest snap so far is the closest one overall once rMin exceeds the radius, which is larger
+                double closest = snaps.stream().mapToDouble(Snap::getQueryDistance).min().getAsDouble();
+                radius = Math.min(maxDistance, radiusFromClosest.applyAsDouble(DIST_PLANE.calcDenormalizedDist(closest)));
+            }
+            if (rMin >= radius)
+                break;
+            if (snaps.size() >= k) {
+                snaps.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+                if (DIST_PLANE.calcDenormalizedDist(snaps.get(k - 1).getQueryDistance()) < rMin)
+                    break;
+            }
+        }
+
+        final double finalRadius = radius;
+        snaps.removeIf(snap -> DIST_PLANE.calcDenormalizedDist(snap.getQueryDistance()) > finalRadius);
+        snaps.sort(Comparator.comparingDouble(Snap::getQueryDistance));
+        List<Snap> result = snaps.size() > k ? new ArrayList<>(snaps.subList(0, k)) : snaps;
+        for (Snap snap : result) {
+            snap.calcSnappedPoint(DIST_PLANE);
+            snap.setQueryDistance(DIST_PLANE.calcDist(snap.getSnappedPoint().lat, snap.getSnappedPoint().lon, queryLat, queryLon));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #findClosest(List, EdgeFilter, int)} but uses only the calling thread.
+     */
+    @Override
+    public List<Snap> findClosest(List<GHPoint> points, EdgeFilter edgeFilter) {
+        return findClosest(points, edgeFilter, 1);
+    }
+
+    /**
+     * This method returns the closest Snap for every of the specified points in the order of the points. It is faster
+     * than calling findClosest for every point: the points are sorted along the spatial key so that points in the same
+     * tile are processed one after another and share the lookup of the edge ids in the surrounding tiles.
+     *
+     * @param threads the number of threads used to process the sorted points in chunks
+     */
+    public List<Snap> findClosest(List<GHPoint> points, EdgeFilter edgeFilter, int threads) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1 but was " + threads);
+        final int size = points.size();
+        if (size == 0)
+            return Collections.emptyList();
+
+        SpatialKeyAlgo keyAlgo = indexStructureInfo.getKeyAlgo();
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = keyAlgo.encodeLatLon(points.get(i).lat, points.get(i).lon);
+        }
+        int[] order = IndirectSort.mergesort(0, size, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        Snap[] snaps = new Snap[size];
+        // use more chunks than threads to balance the load if the points are not evenly distributed
+        int chunks = threads == 1 ? 1 : Math.min(size, threads * 4);
+        int chunkSize = (size + chunks - 1) / chunks;
+        Stream<Runnable> runnables = IntStream.range(0, chunks).mapToObj(chunk -> () -> {
+            NeighborhoodCache cache = new NeighborhoodCache();
+            for (int i = chunk * chunkSize; i < Math.min(size, (chunk + 1) * chunkSize); i++) {
+                GHPoint point = points.get(order[i]);
+                snaps[order[i]] = findClosest(point.lat, point.lon, edgeFilter, cache);
+            }
+        });
+        if (threads == 1)
+            runnables.forEach(Runnable::run);
+        else
+            GHUtility.runConcurrently(runnables, threads);
+        return Arrays.asList(snaps);
+    }
+
+    private Snap findClosest(final double queryLat, final double queryLon, final EdgeFilter edgeFilter, NeighborhoodCache cache) {
+        final Snap closestMatch = new Snap(queryLat, queryLon);
+        IntHashSet seenEdges = new IntHashSet();
+        IntConsumer edgeConsumer = edgeId -> {
+            EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeId * 2);
+            if (seenEdges.add(edgeId) && edgeFilter.accept(edgeIteratorState)) { // TODO: or reverse?
+                traverseEdge(queryLat, queryLon, edgeIteratorState, (node, normedDist, wayIndex, pos) -> {
+                    if (normedDist < closestMatch.getQueryDistance()) {
+                        closestMatch.setQueryDistance(normedDist);
+                        closestMatch.setClosestNode(node);
+                        closestMatch.setClosestEdge(edgeIteratorState.detach(false));
+                        closestMatch.setWayIndex(wayIndex);
+                        closestMatch.setSnappedPosition(pos);
+                    }
+                });
+            }
+        };
+        for (int iteration = 0; iteration < maxRegionSearch; iteration++) {
+            if (cache == null)
+                lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeConsumer);
+            else
+                cache.findEdgeIdsInNeighborhood(queryLat, queryLon, iteration, edgeConsumer);
             if (closestMatch.isValid()) {
                 // Check if we can stop...
                 double rMin = calculateRMin(queryLat, queryLon, iteration);
@@ -308,6 +459,39 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    /**
+     * Remembers the edge ids found in the neighborhood of the last tile. The neighborhood only depends on the tile and
+     * so this can be reused for all points in the same tile. Not thread-safe.
+     */
+    private class NeighborhoodCache {
+        private int x = -1, y = -1;
+        private int iterations = 0;
+        private final List<IntArrayList> edgeIdsPerIteration = new ArrayList<>();
+
+        void findEdgeIdsInNeighborhood(double queryLat, double queryLon, int iteration, IntConsumer foundEntries) {
+            SpatialKeyAlgo keyAlgo = indexStructureInfo.getKeyAlgo();
+            int tileX = keyAlgo.x(queryLon);
+            int tileY = keyAlgo.y(queryLat);
+            if (tileX != x || tileY != y) {
+                x = tileX;
+                y = tileY;
+                iterations = 0;
+            }
+            while (iterations <= iteration) {
+                if (edgeIdsPerIteration.size() == iterations)
+                    edgeIdsPerIteration.add(new IntArrayList());
+                IntArrayList edgeIds = edgeIdsPerIteration.get(iterations);
+                edgeIds.elementsCount = 0;
+                lineIntIndex.findEdgeIdsInNeighborhood(queryLat, queryLon, iterations, edgeIds::add);
+                iterations++;
+            }
+            IntArrayList edgeIds = edgeIdsPerIteration.get(iteration);
+            for (int i = 0; i < edgeIds.size(); i++) {
+                foundEntries.accept(edgeIds.get(i));
+            }
+        }
+    }
+
     @Override
     public void query(TileFilter tileFilter, Visitor function) {
         lineIntIndex.query(tileFilter, function);
@@ -67,7 +67,8 @@ public class Constants {
     public static final int VERSION_GEOMETRY = 6;
     public static final int VERSION_TURN_COSTS = 0;
     public static final int VERSION_LOCATION_IDX = 5;
-    public static final int VERSION_KV_STORAGE = 2;
+    public static final int VERSION_KV_STORAGE = 3;
+    public static final int VERSION_ADJACENCY = 0;
     /**
      * The version without the snapshot string
      */
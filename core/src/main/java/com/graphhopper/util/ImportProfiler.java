@@ -0,0 +1,211 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the import stages and the way tag parsers and writes the results as JSON report, see
+ * GraphHopper.setImportProfiling.
+ * <p>
+ * For every stage the wall time, the CPU time and the allocated memory are measured. The CPU time is the one of the
+ * whole JVM, so it includes the worker threads of a stage and the garbage collection, but also other stages that run
+ * at the same time. The allocated memory is only measured for the thread that runs the stage. Counters like the ones
+ * of the tag parsers sum up the time and the allocated memory of many short calls, which are measured in the calling
+ * thread and can come from multiple threads.
+ */
+public class ImportProfiler {
+    /**
+     * Does not measure anything, its stages and counters do nothing.
+     */
+    public static final ImportProfiler NOOP = new ImportProfiler(false);
+    private static final Stage NOOP_STAGE = new Stage(null, "noop");
+    // looking up the beans allocates memory, so they are only looked up once
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final OperatingSystemMXBean OS_BEAN = ManagementFactory.getOperatingSystemMXBean();
+    private static final Counter NOOP_COUNTER = new Counter("noop") {
+        @Override
+        public void add(long nanos, long allocatedBytes) {
+        }
+    };
+
+    private final boolean enabled;
+    private final List<Map<String, Object>> stages = new ArrayList<>();
+    private final Map<String, Counter> counters = new LinkedHashMap<>();
+    private final Map<String, Counter> tagParserCounters = new LinkedHashMap<>();
+
+    public ImportProfiler() {
+        this(true);
+    }
+
+    private ImportProfiler(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts to measure the given stage in the current thread. Call {@link Stage#stop()} in the same thread when the
+     * stage is finished.
+     */
+    public Stage start(String name) {
+        return enabled ? new Stage(this, name) : NOOP_STAGE;
+    }
+
+    /**
+     * @return the counter with the given name, it is created if it does not exist yet
+     */
+    public synchronized Counter getCounter(String name) {
+        return enabled ? counters.computeIfAbsent(name, Counter::new) : NOOP_COUNTER;
+    }
+
+    /**
+     * @return the counter of the tag parser with the given name, it is created if it does not exist yet
+     */
+    public synchronized Counter getTagParserCounter(String name) {
+        return enabled ? tagParserCounters.computeIfAbsent(name, Counter::new) : NOOP_COUNTER;
+    }
+
+    private synchronized void addStage(Map<String, Object> stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * @return the measurements in the structure of the JSON report
+     */
+    public synchronized Map<String, Object> getReport() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("created", Helper.createFormatter().format(new Date()));
+        report.put("gh_version", Constants.VERSION);
+        report.put("processors", Runtime.getRuntime().availableProcessors());
+        report.put("max_heap_mb", Runtime.getRuntime().maxMemory() / Helper.MB);
+        report.put("stages", new ArrayList<>(stages));
+        report.put("counters", counters.values().stream().map(Counter::toMap).toList());
+        report.put("tag_parsers", tagParserCounters.values().stream().map(Counter::toMap).toList());
+        return report;
+    }
+
+    public void write(File file) {
+        try {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, getReport());
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot write import report to " + file, ex);
+        }
+    }
+
+    /**
+     * @return the bytes that were allocated by the current thread so far or 0 if the JVM does not support this
+     */
+    public static long getAllocatedBytes() {
+        if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) THREAD_BEAN).isThreadAllocatedMemorySupported())
+            return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getCurrentThreadAllocatedBytes();
+        return 0;
+    }
+
+    /**
+     * @return the CPU time of all threads of the JVM in nanoseconds or 0 if the JVM does not support this
+     */
+    private static long getProcessCpuNanos() {
+        if (OS_BEAN instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) OS_BEAN).getProcessCpuTime();
+        return 0;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    private static double toMB(long bytes) {
+        return Math.round(bytes * 100.0 / Helper.MB) / 100.0;
+    }
+
+    public static final class Stage {
+        private final ImportProfiler profiler;
+        private final String name;
+        private final long startNanos;
+        private final long startCpuNanos;
+        private final long startAllocatedBytes;
+
+        private Stage(ImportProfiler profiler, String name) {
+            this.profiler = profiler;
+            this.name = name;
+            if (profiler == null) {
+                startNanos = startCpuNanos = startAllocatedBytes = 0;
+            } else {
+                startNanos = System.nanoTime();
+                startCpuNanos = getProcessCpuNanos();
+                startAllocatedBytes = getAllocatedBytes();
+            }
+        }
+
+        public void stop() {
+            if (profiler == null)
+                return;
+            Map<String, Object> stage = new LinkedHashMap<>();
+            stage.put("name", name);
+            stage.put("wall_ms", toMillis(System.nanoTime() - startNanos));
+            stage.put("cpu_ms", toMillis(getProcessCpuNanos() - startCpuNanos));
+            stage.put("thread_allocated_mb", toMB(getAllocatedBytes() - startAllocatedBytes));
+            profiler.addStage(stage);
+        }
+    }
+
+    public static class Counter {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Adds a single call that took the given time and allocated the given bytes. This is thread-safe.
+         */
+        public void add(long nanos, long allocatedBytes) {
+            calls.increment();
+            this.nanos.add(nanos);
+            this.allocatedBytes.add(allocatedBytes);
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("calls", calls.sum());
+            map.put("time_ms", toMillis(nanos.sum()));
+            map.put("thread_allocated_mb", toMB(allocatedBytes.sum()));
+            return map;
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.graphhopper;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
@@ -25,6 +27,7 @@ import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.reader.dem.SkadiProvider;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.DefaultSnapFilter;
@@ -33,6 +36,7 @@ import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.search.KVStorage;
+import com.graphhopper.storage.CHConfig;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
@@ -58,7 +62,9 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.graphhopper.json.Statement.If;
@@ -99,6 +105,127 @@ public class GraphHopperTest {
         Helper.removeDir(new File(GH_LOCATION));
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testMonacoSortedGraph(boolean withCH) {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car").setTurnCostsConfig(TurnCostsConfig.car())).
+                setSortGraph(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566)
+                .setProfile("profile");
+        req.putHint(CH.DISABLE, !withCH);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        ResponsePath res = rsp.getBest();
+        assertEquals(3586.9, res.getDistance(), .1);
+        assertEquals(91, res.getPoints().size());
+        hopper.close();
+
+        // the sorted graph can be loaded again
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car").setTurnCostsConfig(TurnCostsConfig.car()));
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile("profile"));
+        assertTrue(hopper.load());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3586.9, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testMonacoMMapWarmUp() throws InterruptedException {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        hopper.close();
+
+        hopper = new GraphHopper().init(new GraphHopperConfig().
+                putObject("graph.location", GH_LOCATION).
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.dataaccess.default_type", "MMAP").
+                putObject("graph.dataaccess.mmap.warmup.nodes|edges|geometry|location_index", 100).
+                setProfiles(List.of(TestProfiles.accessAndSpeed("profile", "car"))));
+        assertTrue(hopper.load());
+        assertNotNull(hopper.getMMapWarmUp());
+        assertTrue(hopper.getMMapWarmUp().awaitDone(1, TimeUnit.MINUTES));
+        assertEquals(1, hopper.getMMapWarmUp().getProgress());
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3586.9, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
+    @Test
+    public void testMonacoCompressedGeometry() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car")).
+                setCompressGeometry(true).
+                setSortGraph(true).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        assertTrue(hopper.getBaseGraph().isCompressedGeometry());
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3586.9, rsp.getBest().getDistance(), .1);
+        assertEquals(91, rsp.getBest().getPoints().size());
+        hopper.close();
+
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car"));
+        assertTrue(hopper.load());
+        assertTrue(hopper.getBaseGraph().isCompressedGeometry());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3586.9, rsp.getBest().getDistance(), .1);
+        assertEquals(91, rsp.getBest().getPoints().size());
+        hopper.close();
+    }
+
+    @Test
+    public void testMonacoAdjacencyIndex() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car").setTurnCostsConfig(TurnCostsConfig.car())).
+                setAdjacencyIndex(true).
+                setStoreOnFlush(true);
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+        // the graph is frozen even without CH or LM, such that the adjacency index is built
+        assertTrue(hopper.getBaseGraph().isFrozen());
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("profile");
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3586.9, rsp.getBest().getDistance(), .1);
+        hopper.close();
+
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setProfiles(TestProfiles.accessAndSpeed("profile", "car").setTurnCostsConfig(TurnCostsConfig.car())).
+                setAdjacencyIndex(true);
+        assertTrue(hopper.load());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3586.9, rsp.getBest().getDistance(), .1);
+        hopper.close();
+    }
+
     @ParameterizedTest
     @CsvSource({
             DIJKSTRA + ",false,705",
@@ -396,6 +523,151 @@ public class GraphHopperTest {
         testImportCloseAndLoad(true, true, false);
     }
 
+    @Test
+    public void testResumeImportAfterBaseGraph() {
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected void cleanUp() {
+                throw new IllegalStateException("interrupted");
+            }
+        };
+        initCheckpointTest(hopper, "car");
+        IllegalStateException e = assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        assertEquals("interrupted", e.getMessage());
+        hopper.close();
+
+        AtomicInteger cleanUps = new AtomicInteger();
+        hopper = new GraphHopper() {
+            @Override
+            protected void importOSM() {
+                throw new IllegalStateException("the OSM file must not be imported again");
+            }
+
+            @Override
+            protected void cleanUp() {
+                cleanUps.incrementAndGet();
+                super.cleanUp();
+            }
+        };
+        initCheckpointTest(hopper, "car");
+        hopper.importOrLoad();
+        // the import continues with the subnetwork removal
+        assertEquals(1, cleanUps.get());
+        assertEquals("", hopper.getProperties().get("graph.import.stage"));
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587, rsp.getBest().getDistance(), 1);
+        hopper.close();
+    }
+
+    @Test
+    public void testResumeImportAfterSubnetworkRemoval() {
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected void postProcessing(boolean closeEarly) {
+                throw new IllegalStateException("interrupted");
+            }
+        };
+        initCheckpointTest(hopper, "car");
+        IllegalStateException e = assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        assertEquals("interrupted", e.getMessage());
+        hopper.close();
+
+        hopper = new GraphHopper() {
+            @Override
+            protected void importOSM() {
+                throw new IllegalStateException("the OSM file must not be imported again");
+            }
+
+            @Override
+            protected void cleanUp() {
+                throw new IllegalStateException("the subnetworks must not be removed again");
+            }
+        };
+        initCheckpointTest(hopper, "car");
+        hopper.importOrLoad();
+        assertEquals("", hopper.getProperties().get("graph.import.stage"));
+        GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car"));
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(3587, rsp.getBest().getDistance(), 1);
+        hopper.close();
+    }
+
+    @Test
+    public void testResumeImportAfterCHPreparation() {
+        GraphHopper hopper = new GraphHopper() {
+            @Override
+            protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                super.prepareCH(closeEarly, configsToPrepare.subList(0, 1));
+                throw new IllegalStateException("interrupted");
+            }
+        };
+        initCheckpointTest(hopper, "car", "bike");
+        assertThrows(IllegalStateException.class, hopper::importOrLoad);
+        hopper.close();
+
+        List<String> prepared = new ArrayList<>();
+        hopper = new GraphHopper() {
+            @Override
+            protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                configsToPrepare.forEach(c -> prepared.add(c.getName()));
+                return super.prepareCH(closeEarly, configsToPrepare);
+            }
+        };
+        initCheckpointTest(hopper, "car", "bike");
+        hopper.importOrLoad();
+        // the CH preparation of the first profile was stored before the import was interrupted
+        assertEquals(List.of("bike"), prepared);
+        for (String profile : List.of("car", "bike")) {
+            GHResponse rsp = hopper.route(new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile(profile));
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+            assertTrue(rsp.getHints().getLong("visited_nodes.sum", 0) < 200);
+        }
+        hopper.close();
+
+        // the import is complete now, so the graph is just loaded
+        hopper = new GraphHopper();
+        initCheckpointTest(hopper, "car", "bike");
+        assertTrue(hopper.load());
+        hopper.close();
+    }
+
+    @Test
+    public void testImportReport() throws IOException {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setStoreOnFlush(true).
+                setImportProfiling(true).
+                setProfiles(TestProfiles.accessAndSpeed("car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+        hopper.close();
+
+        JsonNode report = new ObjectMapper().readTree(new File(GH_LOCATION, "import_report.json"));
+        List<String> stages = new ArrayList<>();
+        for (JsonNode stage : report.get("stages")) {
+            stages.add(stage.get("name").asText());
+            assertTrue(stage.get("wall_ms").asDouble() >= 0);
+            assertTrue(stage.get("cpu_ms").asDouble() >= 0);
+        }
+        assertEquals(List.of("pass1", "pass2", "restrictions", "subnetworks", "location_index", "ch.car"), stages);
+        Map<String, Long> tagParserCalls = new HashMap<>();
+        for (JsonNode tagParser : report.get("tag_parsers"))
+            tagParserCalls.put(tagParser.get("name").asText(), tagParser.get("calls").asLong());
+        assertTrue(tagParserCalls.get("CarAccessParser") > 1000, tagParserCalls.toString());
+        assertEquals(tagParserCalls.get("CarAccessParser"), tagParserCalls.get("CarAverageSpeedParser"));
+    }
+
+    private static void initCheckpointTest(GraphHopper hopper, String... profiles) {
+        hopper.setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setStoreOnFlush(true).
+                setImportCheckpoints(true).
+                setProfiles(Arrays.stream(profiles).map(p -> TestProfiles.accessAndSpeed(p, p)).toList());
+        hopper.getCHPreparationHandler().setCHProfiles(Arrays.stream(profiles).map(CHProfile::new).toList());
+    }
+
     @Test
     public void testImportThenLoadCHLMAndSort() {
         testImportCloseAndLoad(true, true, true);
@@ -684,6 +956,78 @@ public class GraphHopperTest {
         assertTrue(rsp.getErrors().get(0) instanceof ConnectionNotFoundException);
     }
 
+    @Test
+    public void testCustomizableCH() {
+        final String profile = "profile";
+
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(BAYREUTH).
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car"));
+        hopper.getCHPreparationHandler()
+                .setCHProfiles(new CHProfile(profile))
+                .setCustomizable(true);
+        hopper.importOrLoad();
+
+        GHRequest req = new GHRequest(49.985272, 11.506151, 49.986107, 11.507202).
+                setProfile(profile);
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(122, rsp.getBest().getDistance(), 1);
+
+        // block road at 49.985759,11.50687 and customize the CH graph for the changed model
+        CustomModel customModel = new CustomModel().addToPriority(If("in_blocked_area", MULTIPLY, "0"));
+        customModel.getAreas().getFeatures().add(createCircle("blocked_area", 49.985759, 11.50687, 5));
+        Profile changedProfile = new Profile(profile).setCustomModel(CustomModel.merge(hopper.getProfile(profile).getCustomModel(), customModel));
+        hopper.customizeCH(profile, hopper.createWeighting(changedProfile, new PMap()));
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(365, rsp.getBest().getDistance(), 1);
+
+        // compare a longer route with the flexible mode
+        req = new GHRequest(49.975845, 11.522598, 50.026821, 11.497364).setProfile(profile);
+        GHResponse chRsp = hopper.route(req);
+        req.setCustomModel(customModel).putHint(CH.DISABLE, true);
+        GHResponse flexRsp = hopper.route(req);
+        assertFalse(chRsp.hasErrors(), chRsp.getErrors().toString());
+        assertFalse(flexRsp.hasErrors(), flexRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getRouteWeight(), chRsp.getBest().getRouteWeight(), 1.e-3);
+        assertEquals(flexRsp.getBest().getDistance(), chRsp.getBest().getDistance(), 1);
+    }
+
+    @Test
+    public void testCustomizableCH_rejectProfileWithLM() {
+        final String profile = "profile";
+
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile(profile));
+        hopper.importOrLoad();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> hopper.customizeCH(profile, hopper.createWeighting(hopper.getProfile(profile), new PMap())));
+        assertTrue(e.getMessage().contains("LM preparation"), e.getMessage());
+    }
+
+    @Test
+    public void testCustomizableCH_rejectEdgeBasedProfile() {
+        final String profile = "profile";
+
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setProfiles(TestProfiles.accessAndSpeed(profile, "car").setTurnCostsConfig(TurnCostsConfig.car()));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile(profile));
+        hopper.importOrLoad();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> hopper.customizeCH(profile, hopper.createWeighting(hopper.getProfile(profile), new PMap())));
+        assertTrue(e.getMessage().contains("node-based"), e.getMessage());
+    }
+
     @Test
     public void testCustomModel() {
         final String customCar = "custom_car";
@@ -1054,8 +1398,9 @@ public class GraphHopperTest {
         assertEquals(91, rsp.getBest().getDistance(), 5.);
     }
 
-    @Test
-    public void testSRTMWithInstructions() {
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testSRTMWithInstructions(boolean prefetch) {
         final String profile = "profile";
 
         GraphHopper hopper = new GraphHopper().
@@ -1064,7 +1409,8 @@ public class GraphHopperTest {
                 setProfiles(TestProfiles.accessSpeedAndPriority(profile, "foot")).
                 setStoreOnFlush(true);
 
-        hopper.setElevationProvider(new SRTMProvider(DIR));
+        // with prefetching the tiles are loaded before the nodes are processed in the second import pass
+        hopper.setElevationProvider(new SRTMProvider(DIR).setPrefetchThreads(prefetch ? 2 : 0));
         hopper.importOrLoad();
 
         GHResponse rsp = hopper.route(new GHRequest(43.730729, 7.421288, 43.727697, 7.419199).
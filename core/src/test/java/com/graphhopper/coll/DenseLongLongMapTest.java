@@ -0,0 +1,147 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DenseLongLongMapTest {
+
+    private DenseLongLongMap create(String type, int bytesPerValue) {
+        return new DenseLongLongMap(new RAMDirectory(), "test", DAType.fromString(type), bytesPerValue, -1);
+    }
+
+    @Test
+    public void testEmptyValue() {
+        DenseLongLongMap map = create("RAM", 4);
+        assertEquals(-1, map.get(5));
+        assertEquals(-1, map.get(-5));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> map.put(1, -1));
+        assertTrue(ex.getMessage().contains("Value cannot be the 'empty value' -1"), ex.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, 1L << 31));
+        assertEquals(0, map.getSize());
+    }
+
+    @Test
+    public void testPutAndGet() {
+        DenseLongLongMap map = create("RAM", 5);
+        assertEquals(-1, map.put(3, 30));
+        assertEquals(-1, map.put(1, 10));
+        assertEquals(-1, map.put(2, -20));
+        assertEquals(30, map.put(3, 31));
+        assertEquals(10, map.get(1));
+        assertEquals(-20, map.get(2));
+        assertEquals(31, map.get(3));
+        assertEquals(-1, map.get(4));
+        assertEquals(-1, map.get(DenseLongLongMap.PAGE_SIZE + 3));
+
+        // negative and very large keys are stored in the fallback
+        assertEquals(-1, map.put(-7, 70));
+        assertEquals(-1, map.put(DenseLongLongMap.MAX_DENSE_KEY, 80));
+        assertEquals(70, map.get(-7));
+        assertEquals(80, map.get(DenseLongLongMap.MAX_DENSE_KEY));
+
+        assertEquals(-1, map.put(123456789L, map.getMaxValue()));
+        assertEquals(map.getMaxValue(), map.get(123456789L));
+        map.put(123456789L, -map.getMaxValue() - 1);
+        assertEquals(-map.getMaxValue() - 1, map.get(123456789L));
+        assertEquals(6, map.getSize());
+
+        map.clear();
+        assertEquals(0, map.getSize());
+        assertEquals(-1, map.get(1));
+        assertEquals(-1, map.get(-7));
+        map.put(1, 11);
+        assertEquals(11, map.get(1));
+    }
+
+    @Test
+    public void testDensePage() {
+        DenseLongLongMap map = create("RAM", 5);
+        long start = 5L * DenseLongLongMap.PAGE_SIZE;
+        // insert in reverse order to shift the sparse entries until the page is converted
+        for (int i = DenseLongLongMap.PAGE_SIZE - 1; i >= 0; i -= 2) {
+            map.put(start + i, i * 1000L);
+        }
+        assertEquals(DenseLongLongMap.PAGE_SIZE / 2, map.getSize());
+        for (int i = 0; i < DenseLongLongMap.PAGE_SIZE; i++) {
+            assertEquals(i % 2 == 1 ? i * 1000L : -1, map.get(start + i));
+        }
+        assertEquals(-1, map.get(start - 1));
+        assertEquals(-1, map.get(start + DenseLongLongMap.PAGE_SIZE));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"RAM", "OFF_HEAP"})
+    public void testRandom(String type) {
+        long seed = System.nanoTime();
+        Random rand = new Random(seed);
+        DenseLongLongMap map = create(type, 5);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            long key;
+            int r = rand.nextInt(10);
+            if (r < 6)
+                // a dense region
+                key = rand.nextInt(50_000);
+            else if (r < 9)
+                // spread over the whole range of OSM ids
+                key = (long) (rand.nextDouble() * 12_000_000_000L);
+            else
+                key = -rand.nextInt(1000) - 1;
+            long value = rand.nextInt(2_000_000) - 1_000_000L;
+            if (value == -1)
+                continue;
+            Long old = expected.put(key, value);
+            assertEquals(old == null ? -1 : old, map.put(key, value), "seed: " + seed);
+        }
+        assertEquals(expected.size(), map.getSize(), "seed: " + seed);
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()), "seed: " + seed);
+        }
+        for (int i = 0; i < 1000; i++) {
+            long key = rand.nextInt(100_000);
+            assertEquals(expected.getOrDefault(key, -1L), map.get(key), "seed: " + seed);
+        }
+        if (type.equals("OFF_HEAP"))
+            assertTrue(map.getHeapMemoryUsage() < map.getMemoryUsage());
+        map.clear();
+    }
+
+    @Test
+    public void testMMapInMemoryDirectory() {
+        String location = "./target/dense-long-long-map-not-storing";
+        Helper.removeDir(new File(location));
+        DenseLongLongMap map = new DenseLongLongMap(new RAMDirectory(location, false), "test", DAType.MMAP, 4, -1);
+        assertEquals(-1, map.put(5, 7));
+        assertEquals(7, map.get(5));
+        assertFalse(new File(location).exists());
+        map.clear();
+    }
+}
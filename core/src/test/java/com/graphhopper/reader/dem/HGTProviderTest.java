@@ -18,10 +18,24 @@
 
 package com.graphhopper.reader.dem;
 
+import com.graphhopper.storage.DAType;
+import com.graphhopper.util.Downloader;
+import com.graphhopper.util.PointList;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class HGTProviderTest {
 
@@ -33,4 +47,105 @@ class HGTProviderTest {
         assertEquals(0, hgt.getEle(0.6, 0.6), 1);
     }
 
-}
\ No newline at end of file
+    @Test
+    void tileCache(@TempDir Path dir) throws IOException {
+        copyTiles(dir);
+        HGTProvider reference = new HGTProvider(dir.resolve("reference").toString());
+        copyTiles(dir.resolve("reference"));
+        HGTProvider hgt = new HGTProvider(dir.toString());
+        // only one tile fits into the cache
+        hgt.setMaxCacheSize(1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(reference.getEle(42.5, 1.5), hgt.getEle(42.5, 1.5), 1.e-6);
+            assertEquals(reference.getEle(41.5, 1.5), hgt.getEle(41.5, 1.5), 1.e-6);
+            assertEquals(1, hgt.getDirectory().getDAs().size());
+        }
+        assertEquals(2, reference.getDirectory().getDAs().size());
+        assertTrue(reference.getEle(42.5, 1.5) > 1000);
+
+        hgt.release();
+        reference.release();
+        assertEquals(0, countTileFiles(dir));
+    }
+
+    @Test
+    void prefetch(@TempDir Path dir) throws IOException {
+        copyTiles(dir);
+        HGTProvider hgt = new HGTProvider(dir.toString());
+        assertFalse(hgt.canPrefetch());
+        hgt.setPrefetchThreads(2);
+        assertTrue(hgt.canPrefetch());
+        PointList points = new PointList();
+        points.add(42.5, 1.5);
+        points.add(42.6, 1.6);
+        points.add(41.5, 1.5);
+        hgt.prefetch(points);
+        assertEquals(2, hgt.getDirectory().getDAs().size());
+        double ele = hgt.getEle(42.5, 1.5);
+        // the tiles were already loaded
+        assertEquals(2, hgt.getDirectory().getDAs().size());
+        hgt.release();
+
+        hgt = new HGTProvider(dir.toString());
+        assertEquals(ele, hgt.getEle(42.5, 1.5), 1.e-6);
+        hgt.release();
+    }
+
+    @Test
+    void prefetchRespectsCacheSize(@TempDir Path dir) throws IOException {
+        copyTiles(dir);
+        HGTProvider reference = new HGTProvider(dir.resolve("reference").toString());
+        copyTiles(dir.resolve("reference"));
+        HGTProvider hgt = new HGTProvider(dir.toString());
+        // only one tile fits into the cache, so the prefetch must not keep both tiles
+        hgt.setMaxCacheSize(1).setPrefetchThreads(2);
+        PointList points = new PointList();
+        points.add(42.5, 1.5);
+        points.add(41.5, 1.5);
+        hgt.prefetch(points);
+        assertEquals(1, hgt.getDirectory().getDAs().size());
+        // the first tile is kept and not evicted by the second one before it is used
+        Set<String> prefetched = new HashSet<>(hgt.getDirectory().getDAs().keySet());
+        assertEquals(reference.getEle(42.5, 1.5), hgt.getEle(42.5, 1.5), 1.e-6);
+        assertEquals(prefetched, hgt.getDirectory().getDAs().keySet());
+        assertEquals(reference.getEle(41.5, 1.5), hgt.getEle(41.5, 1.5), 1.e-6);
+        assertEquals(1, hgt.getDirectory().getDAs().size());
+        hgt.release();
+        reference.release();
+        assertEquals(0, countTileFiles(dir));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"MMAP", "RAM_STORE"})
+    void seaLevelTileCanBeLoadedAgain(String daType, @TempDir Path dir) throws IOException {
+        copyTiles(dir);
+        HGTProvider hgt = new HGTProvider(dir.toString());
+        hgt.setDAType(DAType.fromString(daType));
+        // tiles that cannot be downloaded are sea level
+        hgt.setBaseURL("https://example.com/").setDownloader(new Downloader("test") {
+            @Override
+            public void downloadFile(String url, String toFile) throws IOException {
+                throw new FileNotFoundException(url);
+            }
+        });
+        // only one tile fits into the cache, so the sea level tile is evicted and loaded again
+        hgt.setMaxCacheSize(1);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, hgt.getEle(0.5, 0.5), 1.e-6);
+            assertTrue(hgt.getEle(42.5, 1.5) > 1000);
+        }
+        hgt.release();
+    }
+
+    private static void copyTiles(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (String name : new String[]{"N41E001.hgt.zip", "N42E001.hgt.zip"})
+            Files.copy(new File("../core/files/" + name).toPath(), dir.resolve(name));
+    }
+
+    private static long countTileFiles(Path dir) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("dem")).count();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperTest;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.TurnCostsConfig;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderRelation;
@@ -29,6 +30,7 @@ import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.reader.dem.SRTMProvider;
 import com.graphhopper.routing.OSMReaderConfig;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.util.*;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
@@ -44,13 +46,16 @@ import com.graphhopper.util.details.PathDetail;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.io.Writer;
+import java.util.*;
 
 import static com.graphhopper.routing.util.TransportationMode.CAR;
 import static com.graphhopper.util.GHUtility.readCountries;
@@ -982,6 +987,255 @@ public class OSMReaderTest {
         assertEquals(Country.BGR, iter.get(countryEnc));
     }
 
+    @Test
+    public void testParallelWayProcessing() {
+        GraphHopper serial = createAndorraHopper(dir + "/serial").importOrLoad();
+        GraphHopper parallel = createAndorraHopper(dir + "/parallel");
+        // use small batches such that the edges of several batches are processed and inserted at the same time
+        parallel.getReaderConfig().setWayProcessingThreads(4).setWayProcessingBatchSize(300);
+        parallel.importOrLoad();
+        assertSameGraph(serial.getBaseGraph(), parallel.getBaseGraph());
+        serial.close();
+        parallel.close();
+    }
+
+    @Test
+    public void testParallelWayProcessing_conditionalAccess() throws Exception {
+        // the conditional access parser is shared by all threads, so it must parse the dates in a thread-safe way
+        String[] conditions = {"no @ (Jan 15-Aug 15)", "no @ (2023 Jan 15-2023 Aug 15)", "yes @ (Sep-Dec)",
+                "no @ (01.03-31.10)", "no @ (2022 Dec-2024 Jan)", "yes @ (Aug 01)", "no @ (Mo-Fr)", "yes @ (Nov 01-Mar 31)"};
+        File osmFile = new File(dir, "conditional.osm.xml");
+        try (Writer out = new FileWriter(osmFile)) {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+            writer.writeStartDocument();
+            writer.writeStartElement("osm");
+            int ways = 20_000;
+            for (int i = 0; i <= ways; i++) {
+                writer.writeEmptyElement("node");
+                writer.writeAttribute("id", "" + (i + 1));
+                writer.writeAttribute("lat", "" + (50 + 0.001 * (i / 200)));
+                writer.writeAttribute("lon", "" + (10 + 0.001 * (i % 200)));
+            }
+            for (int i = 0; i < ways; i++) {
+                writer.writeStartElement("way");
+                writer.writeAttribute("id", "" + (i + 1));
+                writer.writeEmptyElement("nd");
+                writer.writeAttribute("ref", "" + (i + 1));
+                writer.writeEmptyElement("nd");
+                writer.writeAttribute("ref", "" + (i + 2));
+                writer.writeEmptyElement("tag");
+                writer.writeAttribute("k", "highway");
+                writer.writeAttribute("v", "residential");
+                writer.writeEmptyElement("tag");
+                writer.writeAttribute("k", "access:conditional");
+                writer.writeAttribute("v", conditions[i % conditions.length]);
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        }
+
+        GraphHopper serial = createConditionalAccessHopper(osmFile, dir + "/serial").importOrLoad();
+        GraphHopper parallel = createConditionalAccessHopper(osmFile, dir + "/parallel");
+        parallel.getReaderConfig().setWayProcessingThreads(4).setWayProcessingBatchSize(100);
+        parallel.importOrLoad();
+        assertSameGraph(serial.getBaseGraph(), parallel.getBaseGraph());
+        EnumEncodedValue<CarRoadAccessConditional> conditionalEnc = serial.getEncodingManager().getEnumEncodedValue(CarRoadAccessConditional.KEY, CarRoadAccessConditional.class);
+        Set<CarRoadAccessConditional> values = EnumSet.noneOf(CarRoadAccessConditional.class);
+        AllEdgesIterator iter = serial.getBaseGraph().getAllEdges();
+        while (iter.next())
+            values.add(iter.get(conditionalEnc));
+        assertEquals(EnumSet.allOf(CarRoadAccessConditional.class), values);
+        serial.close();
+        parallel.close();
+    }
+
+    private GraphHopper createConditionalAccessHopper(File osmFile, String location) {
+        return new GraphHopper().
+                setStoreOnFlush(false).
+                setOSMFile(osmFile.getPath()).
+                setGraphHopperLocation(location).
+                setMinNetworkSize(0).
+                setEncodedValuesString("car_access,car_average_speed," + CarRoadAccessConditional.KEY + "|date_range_parser_day=2023-08-01").
+                setProfiles(TestProfiles.accessAndSpeed("car"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"off_heap", "mmap"})
+    public void testNodeIdMap(String nodeIdMap) {
+        GraphHopper btree = createAndorraHopper(dir + "/btree").importOrLoad();
+        GraphHopper dense = createAndorraHopper(dir + "/dense");
+        dense.getReaderConfig().setNodeIdMap(nodeIdMap);
+        dense.importOrLoad();
+        assertSameGraph(btree.getBaseGraph(), dense.getBaseGraph());
+        // the temporary files are removed after the import
+        assertFalse(new File(dir + "/dense/tmp_node_ids_blocks").exists());
+        btree.close();
+        dense.close();
+    }
+
+    private GraphHopper createAndorraHopper(String location) {
+        return new GraphHopper().
+                setStoreOnFlush(false).
+                setOSMFile("../core/files/andorra.osm.pbf").
+                setGraphHopperLocation(location).
+                setEncodedValuesString("road_class,road_environment,max_speed,country,car_access,car_average_speed").
+                setMaxSpeedCalculator(new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds())).
+                setUrbanDensityCalculation(100, 6000, 100, 1000, 1).
+                setProfiles(TestProfiles.accessAndSpeed("car"));
+    }
+
+    @Test
+    public void testApplyChanges() {
+        String osmFile = getClass().getResource(file1).getFile();
+        GraphHopper hopper = configureChangeDataHopper(new GraphHopper(), osmFile).importOrLoad();
+        assertEquals(3, hopper.getBaseGraph().getEdges());
+        hopper.close();
+
+        String changeFile = getClass().getResource("test-osm-changes.osc").getFile();
+        List<String> preparedCHProfiles = new ArrayList<>();
+        hopper = new GraphHopper() {
+            @Override
+            protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
+                configsToPrepare.forEach(c -> preparedCHProfiles.add(c.getName()));
+                return super.prepareCH(closeEarly, configsToPrepare);
+            }
+        };
+        configureChangeDataHopper(hopper, osmFile).setChangeFiles(List.of(changeFile));
+        assertTrue(hopper.load());
+        // the weights of the car profile changed, so its CH preparation had to be done again
+        assertEquals(List.of("car"), preparedCHProfiles);
+        assertEquals(changeFile, hopper.getProperties().get("datareader.change_files.applied"));
+        IntEncodedValue osmWayIdEnc = hopper.getEncodingManager().getIntEncodedValue(OSMWayID.KEY);
+        BooleanEncodedValue accessEnc = hopper.getEncodingManager().getBooleanEncodedValue(VehicleAccess.key("car"));
+        // way 10 was deleted, so its edges are no longer accessible
+        for (int e = 0; e < 2; e++) {
+            EdgeIteratorState edge = hopper.getBaseGraph().getEdgeIteratorState(e, Integer.MIN_VALUE);
+            assertFalse(edge.get(accessEnc));
+            assertFalse(edge.getReverse(accessEnc));
+            assertEquals("", edge.getName());
+        }
+        // way 11 is a oneway now and has a new name
+        EdgeIteratorState edge = hopper.getBaseGraph().getEdgeIteratorState(2, Integer.MIN_VALUE);
+        assertEquals(11, edge.get(osmWayIdEnc));
+        assertEquals("new street", edge.getName());
+        assertTrue(edge.get(accessEnc));
+        assertFalse(edge.getReverse(accessEnc));
+        assertFalse(hopper.route(new GHRequest(52, 9, 49, 10).setProfile("car")).hasErrors());
+        assertTrue(hopper.route(new GHRequest(49, 10, 52, 9).setProfile("car")).hasErrors());
+        hopper.close();
+
+        // the change file is not applied twice
+        hopper = configureChangeDataHopper(new GraphHopper(), osmFile).setChangeFiles(List.of(changeFile));
+        assertTrue(hopper.load());
+        assertEquals(changeFile, hopper.getProperties().get("datareader.change_files.applied"));
+        hopper.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "<modify><node id=\"20\" lat=\"52.1\" lon=\"9.1\" version=\"2\"/></modify>",
+            "<modify><way id=\"11\" version=\"2\"><nd ref=\"20\"/><nd ref=\"50\"/><tag k=\"highway\" v=\"service\"/></way></modify>",
+            "<create><way id=\"12\" version=\"1\"><nd ref=\"20\"/><nd ref=\"50\"/><tag k=\"highway\" v=\"service\"/></way></create>"})
+    public void testApplyChanges_geometryChangesAreRejected(String changes) throws IOException {
+        String osmFile = getClass().getResource(file1).getFile();
+        GraphHopper hopper = configureChangeDataHopper(new GraphHopper(), osmFile).importOrLoad();
+        hopper.close();
+
+        File changeFile = new File(dir, "changes.osc");
+        try (Writer out = new FileWriter(changeFile)) {
+            // the name of way 10 changes as well, but nothing must be applied
+            out.write("<osmChange version=\"0.6\">" + changes + "<modify><way id=\"10\" version=\"2\"><nd ref=\"10\"/><nd ref=\"20\"/>"
+                    + "<nd ref=\"30\"/><tag k=\"highway\" v=\"primary\"/><tag k=\"name\" v=\"changed\"/></way></modify></osmChange>");
+        }
+        GraphHopper failing = configureChangeDataHopper(new GraphHopper(), osmFile).setChangeFiles(List.of(changeFile.getPath()));
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, failing::load);
+        assertTrue(ex.getMessage().contains("requires a new import"), ex.getMessage());
+        failing.close();
+
+        hopper = configureChangeDataHopper(new GraphHopper(), osmFile);
+        assertTrue(hopper.load());
+        assertEquals("", hopper.getProperties().get("datareader.change_files.applied"));
+        assertNotEquals("changed", hopper.getBaseGraph().getEdgeIteratorState(0, Integer.MIN_VALUE).getName());
+        hopper.close();
+    }
+
+    @Test
+    public void testApplyChanges_unchangedTags() throws Exception {
+        // we 'modify' all ways without changing them, the result must be the same as for the import
+        File changeFile = new File(dir, "andorra.osc");
+        try (OSMInputFile input = new OSMInputFile(new File("../core/files/andorra.osm.pbf")).setWorkerThreads(1).open();
+             Writer out = new FileWriter(changeFile)) {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+            writer.writeStartDocument();
+            writer.writeStartElement("osmChange");
+            writer.writeStartElement("modify");
+            ReaderElement element;
+            while ((element = input.getNext()) != null) {
+                if (!(element instanceof ReaderWay))
+                    continue;
+                ReaderWay way = (ReaderWay) element;
+                writer.writeStartElement("way");
+                writer.writeAttribute("id", "" + way.getId());
+                for (int i = 0; i < way.getNodes().size(); i++) {
+                    writer.writeEmptyElement("nd");
+                    writer.writeAttribute("ref", "" + way.getNodes().get(i));
+                }
+                for (Map.Entry<String, Object> tag : way.getTags().entrySet()) {
+                    writer.writeEmptyElement("tag");
+                    writer.writeAttribute("k", tag.getKey());
+                    writer.writeAttribute("v", tag.getValue().toString());
+                }
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        }
+
+        GraphHopper expected = createAndorraHopper(dir + "/expected");
+        expected.getReaderConfig().setStoreChangeData(true);
+        expected.importOrLoad();
+        GraphHopper updated = createAndorraHopper(dir + "/updated").setStoreOnFlush(true);
+        updated.getReaderConfig().setStoreChangeData(true);
+        updated.importOrLoad();
+        updated.close();
+
+        updated = createAndorraHopper(dir + "/updated").setStoreOnFlush(true).setChangeFiles(List.of(changeFile.getPath()));
+        assertTrue(updated.load());
+        assertSameGraph(expected.getBaseGraph(), updated.getBaseGraph());
+        expected.close();
+        updated.close();
+    }
+
+    private GraphHopper configureChangeDataHopper(GraphHopper hopper, String osmFile) {
+        hopper.setOSMFile(osmFile).
+                setGraphHopperLocation(dir).
+                setMinNetworkSize(0).
+                setProfiles(TestProfiles.accessAndSpeed("car"));
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.getReaderConfig().setStoreChangeData(true);
+        return hopper;
+    }
+
+    private static void assertSameGraph(BaseGraph expectedGraph, BaseGraph actualGraph) {
+        assertTrue(expectedGraph.getEdges() > 1000, "too few edges: " + expectedGraph.getEdges());
+        assertEquals(expectedGraph.getNodes(), actualGraph.getNodes());
+        assertEquals(expectedGraph.getEdges(), actualGraph.getEdges());
+        for (int edge = 0; edge < expectedGraph.getEdges(); edge++) {
+            EdgeIteratorState expected = expectedGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            EdgeIteratorState actual = actualGraph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(expected.getBaseNode(), actual.getBaseNode());
+            assertEquals(expected.getAdjNode(), actual.getAdjNode());
+            assertEquals(expected.getDistance(), actual.getDistance(), 1.e-3);
+            assertEquals(expected.getFlags(), actual.getFlags(), "different flags for edge " + edge);
+            assertEquals(expected.fetchWayGeometry(FetchMode.ALL), actual.fetchWayGeometry(FetchMode.ALL));
+            assertEquals(expected.getKeyValues(), actual.getKeyValues());
+        }
+    }
+
     @Test
     public void testFixWayName() {
         assertEquals("B8, B12", OSMReader.fixWayName("B8;B12"));
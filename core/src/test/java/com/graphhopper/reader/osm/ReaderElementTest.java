@@ -19,9 +19,11 @@ package com.graphhopper.reader.osm;
 
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.TagKeys;
 import org.junit.jupiter.api.Test;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -50,6 +52,52 @@ public class ReaderElementTest {
         assertFalse(instance.hasTag("test", "xy"));
     }
 
+    @Test
+    public void testKeyIds() {
+        ReaderElement instance = new ReaderWay(1);
+        instance.setTag("highway", "primary");
+        assertEquals("primary", instance.getTag(TagKeys.HIGHWAY));
+        assertTrue(instance.hasTag(TagKeys.HIGHWAY, "primary"));
+        assertNull(instance.getTag(TagKeys.ROUTE));
+        assertEquals("x", instance.getTag(TagKeys.ROUTE, "x"));
+        assertEquals("highway", TagKeys.getKey(TagKeys.getId("highway")));
+        assertEquals(-1, TagKeys.getId("some key nobody uses"));
+        assertNull(instance.getTag("some key nobody uses"));
+    }
+
+    @Test
+    public void testTagsView() {
+        ReaderElement instance = new ReaderWay(1);
+        instance.setTag("a", "1");
+        instance.setTag("b", "2");
+        instance.setTag("c", 3);
+        instance.setTag("b", "4");
+        Map<String, Object> tags = instance.getTags();
+        assertEquals("{a=1, b=4, c=3}", tags.toString());
+        assertEquals(3, tags.size());
+        assertEquals(3, tags.get("c"));
+        assertTrue(tags.containsKey("a"));
+
+        tags.remove("a");
+        tags.put("d", "5");
+        assertEquals("{b=4, c=3, d=5}", tags.toString());
+
+        Iterator<Map.Entry<String, Object>> iter = tags.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, Object> entry = iter.next();
+            if (entry.getKey().equals("c"))
+                iter.remove();
+            else
+                entry.setValue(entry.getValue() + "x");
+        }
+        assertEquals("{b=4x, d=5x}", instance.getTags().toString());
+        assertFalse(instance.hasTag("c"));
+
+        instance.clearTags();
+        assertFalse(instance.hasTags());
+        assertTrue(tags.isEmpty());
+    }
+
     @Test
     public void testInvalidIDs() {
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -0,0 +1,184 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.reader.osm.pbf;
+
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.ReaderRelation;
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.reader.osm.SkipOptions;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PbfBlobDecoderTest {
+
+    private static final String FILE = "../core/files/andorra.osm.pbf";
+
+    @Test
+    void sameElementsAsGeneratedClasses() throws Exception {
+        List<String> expected = new ArrayList<>();
+        List<String> actual = new ArrayList<>();
+        for (PbfRawBlob blob : readBlobs()) {
+            if (!"OSMData".equals(blob.getType()))
+                continue;
+            expected.addAll(decodeWithGeneratedClasses(blob.getData()));
+            for (ReaderElement element : decode(blob, SkipOptions.none()))
+                actual.add(toString(element));
+        }
+        assertTrue(expected.size() > 50_000, "unexpected number of elements: " + expected.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void skipOptions() throws Exception {
+        int nodes = 0, ways = 0, highways = 0, relations = 0;
+        for (PbfRawBlob blob : readBlobs()) {
+            if (!"OSMData".equals(blob.getType()))
+                continue;
+            for (ReaderElement element : decode(blob, SkipOptions.none())) {
+                if (element instanceof ReaderNode) nodes++;
+                else if (element instanceof ReaderRelation) relations++;
+                else if (element instanceof ReaderWay) {
+                    ways++;
+                    if (element.hasTag("highway")) highways++;
+                }
+            }
+            for (ReaderElement element : decode(blob, new SkipOptions(true, false, true, "highway"::equals))) {
+                assertTrue(element instanceof ReaderWay);
+                assertTrue(element.hasTag("highway"));
+                highways--;
+            }
+            for (ReaderElement element : decode(blob, new SkipOptions(false, true, true)))
+                assertTrue(element instanceof ReaderNode);
+        }
+        assertTrue(nodes > 0 && relations > 0 && ways > 0);
+        assertEquals(0, highways);
+    }
+
+    private static List<PbfRawBlob> readBlobs() throws IOException {
+        List<PbfRawBlob> blobs = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(FILE))) {
+            PbfStreamSplitter splitter = new PbfStreamSplitter(in);
+            while (splitter.hasNext())
+                blobs.add(splitter.next());
+        }
+        return blobs;
+    }
+
+    private static List<ReaderElement> decode(PbfRawBlob blob, SkipOptions skipOptions) {
+        List<ReaderElement> result = new ArrayList<>();
+        new PbfBlobDecoder(blob.getType(), blob.getData(), new PbfBlobDecoderListener() {
+            @Override
+            public void complete(List<ReaderElement> decodedEntities) {
+                result.addAll(decodedEntities);
+            }
+
+            @Override
+            public void error(Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }, skipOptions).run();
+        return result;
+    }
+
+    private static List<String> decodeWithGeneratedClasses(byte[] rawBlob) throws Exception {
+        Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
+        byte[] data = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        inflater.setInput(blob.getZlibData().toByteArray());
+        inflater.inflate(data);
+        inflater.end();
+        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
+        PbfFieldDecoder decoder = new PbfFieldDecoder(block);
+
+        List<String> result = new ArrayList<>();
+        for (Osmformat.PrimitiveGroup group : block.getPrimitivegroupList()) {
+            Osmformat.DenseNodes dense = group.getDense();
+            long id = 0, lat = 0, lon = 0;
+            int keyValIndex = 0;
+            for (int i = 0; i < dense.getIdCount(); i++) {
+                id += dense.getId(i);
+                lat += dense.getLat(i);
+                lon += dense.getLon(i);
+                Map<String, Object> tags = new TreeMap<>();
+                while (keyValIndex < dense.getKeysValsCount()) {
+                    int key = dense.getKeysVals(keyValIndex++);
+                    if (key == 0)
+                        break;
+                    tags.put(decoder.decodeString(key), decoder.decodeString(dense.getKeysVals(keyValIndex++)));
+                }
+                result.add("node " + id + " " + decoder.decodeLatitude(lat) + " " + decoder.decodeLongitude(lon) + " " + tags);
+            }
+            for (Osmformat.Node node : group.getNodesList())
+                result.add("node " + node.getId() + " " + decoder.decodeLatitude(node.getLat()) + " "
+                        + decoder.decodeLongitude(node.getLon()) + " " + tags(node.getKeysList(), node.getValsList(), decoder));
+            for (Osmformat.Way way : group.getWaysList()) {
+                List<Long> nodes = new ArrayList<>();
+                long nodeId = 0;
+                for (long ref : way.getRefsList())
+                    nodes.add(nodeId += ref);
+                result.add("way " + way.getId() + " " + tags(way.getKeysList(), way.getValsList(), decoder) + " " + nodes);
+            }
+            for (Osmformat.Relation relation : group.getRelationsList()) {
+                List<String> members = new ArrayList<>();
+                long memberId = 0;
+                for (int i = 0; i < relation.getMemidsCount(); i++) {
+                    memberId += relation.getMemids(i);
+                    members.add(relation.getTypes(i).name() + " " + memberId + " " + decoder.decodeString(relation.getRolesSid(i)));
+                }
+                result.add("relation " + relation.getId() + " " + tags(relation.getKeysList(), relation.getValsList(), decoder) + " " + members);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> tags(List<Integer> keys, List<Integer> values, PbfFieldDecoder decoder) {
+        Map<String, Object> tags = new TreeMap<>();
+        for (int i = 0; i < keys.size(); i++)
+            tags.put(decoder.decodeString(keys.get(i)), decoder.decodeString(values.get(i)));
+        return tags;
+    }
+
+    private static String toString(ReaderElement element) {
+        Map<String, Object> tags = new TreeMap<>(element.getTags());
+        if (element instanceof ReaderNode) {
+            ReaderNode node = (ReaderNode) element;
+            return "node " + node.getId() + " " + node.getLat() + " " + node.getLon() + " " + tags;
+        } else if (element instanceof ReaderWay) {
+            List<Long> nodes = new ArrayList<>();
+            for (int i = 0; i < ((ReaderWay) element).getNodes().size(); i++)
+                nodes.add(((ReaderWay) element).getNodes().get(i));
+            return "way " + element.getId() + " " + tags + " " + nodes;
+        } else {
+            List<String> members = new ArrayList<>();
+            for (ReaderRelation.Member member : ((ReaderRelation) element).getMembers())
+                members.add(member.getType() + " " + member.getRef() + " " + member.getRole());
+            return "relation " + element.getId() + " " + tags + " " + members;
+        }
+    }
+}
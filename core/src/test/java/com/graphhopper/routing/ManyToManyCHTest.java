@@ -0,0 +1,157 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.routing.ch.NodeOrderingProvider;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.exceptions.MaximumNodesExceededException;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManyToManyCHTest {
+    private final DecimalEncodedValue speedEnc;
+    private final BaseGraph graph;
+
+    ManyToManyCHTest() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodedValue.InitializerConfig evConf = new EncodedValue.InitializerConfig();
+        speedEnc.init(evConf);
+        graph = new BaseGraph.Builder(evConf.getRequiredInts()).create();
+    }
+
+    @Test
+    void smallGraph() {
+        // 0-1->2-3   4
+        //   |  |
+        //   5--6
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 20, 0);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 30, 30);
+        graph.edge(1, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 6).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(6, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("c", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
+        pch.useFixedNodeOrdering(NodeOrderingProvider.fromArray(1, 2, 5, 6, 0, 3, 4));
+        PrepareContractionHierarchies.Result res = pch.doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        ManyToManyCH.Result result = new ManyToManyCH(chGraph).calcMatrix(new int[]{0, 3, 4}, new int[]{3, 0});
+        assertEquals(3, result.getSources());
+        assertEquals(2, result.getTargets());
+        // 0->3 uses the one-way edge, 3->0 takes the detour via 5 and 6
+        assertEquals(600, result.getDistance(0, 0), 1.e-6);
+        assertEquals(10 + 10 + 10, result.getWeight(0, 0), 1.e-6);
+        assertEquals(30_000, result.getTime(0, 0));
+        assertEquals(0, result.getDistance(0, 1), 1.e-6);
+        assertEquals(0, result.getTime(0, 1));
+        assertEquals(800, result.getDistance(1, 1), 1.e-6);
+        assertEquals(10 + 10 + 20 + 10 + 10, result.getWeight(1, 1), 1.e-6);
+        assertEquals(60_000, result.getTime(1, 1));
+        // node 4 is not connected
+        assertFalse(result.isConnected(2, 0));
+        assertEquals(Double.POSITIVE_INFINITY, result.getWeight(2, 1));
+        assertEquals(Double.POSITIVE_INFINITY, result.getDistance(2, 1));
+        assertEquals(Long.MAX_VALUE, result.getTime(2, 1));
+    }
+
+    @Test
+    void limits() {
+        // 0-1-2-3-4-5
+        for (int i = 0; i < 5; i++)
+            graph.edge(i, i + 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("c", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
+        pch.useFixedNodeOrdering(NodeOrderingProvider.fromArray(0, 1, 2, 3, 4, 5));
+        PrepareContractionHierarchies.Result res = pch.doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        // the upward searches from 0 and 5 settle all six nodes and one node
+        ManyToManyCH manyToMany = new ManyToManyCH(chGraph).setMaxVisitedNodes(6);
+        assertTrue(manyToMany.calcMatrix(new int[]{0}, new int[]{5}).isConnected(0, 0));
+        assertEquals(7, manyToMany.getVisitedNodes());
+        manyToMany.setMaxVisitedNodes(5);
+        assertThrows(MaximumNodesExceededException.class, () -> manyToMany.calcMatrix(new int[]{0}, new int[]{5}));
+        assertThrows(IllegalArgumentException.class, () -> new ManyToManyCH(chGraph).setTimeoutMillis(-1).calcMatrix(new int[]{0}, new int[]{5}));
+    }
+
+    @RepeatedTest(10)
+    void compareWithDijkstra() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        // no offset, otherwise travelling via virtual edges is not the same as taking the direct edge
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.5, true, speedEnc, null, 0.9, 0);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("c", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 10, false, EdgeFilter.ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        Weighting weighting = queryGraph.wrapWeighting(chConfig.getWeighting());
+        int[] sources = new int[15];
+        int[] targets = new int[20];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = rnd.nextInt(queryGraph.getNodes());
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = rnd.nextInt(queryGraph.getNodes());
+
+        ManyToManyCH.Result result = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).calcMatrix(sources, targets);
+        int strictViolations = 0;
+        for (int s = 0; s < sources.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                Path refPath = new Dijkstra(queryGraph, weighting, TraversalMode.NODE_BASED).calcPath(sources[s], targets[t]);
+                String msg = "seed: " + seed + ", from: " + sources[s] + ", to: " + targets[t];
+                assertEquals(refPath.isFound(), result.isConnected(s, t), msg);
+                if (!refPath.isFound())
+                    continue;
+                assertEquals(refPath.getWeight(), result.getWeight(s, t), 1.e-2, msg);
+                // different paths with the same weight can have different distances and times
+                if (Math.abs(refPath.getDistance() - result.getDistance(s, t)) > 1.e-1 || Math.abs(refPath.getTime() - result.getTime(s, t)) > 50)
+                    strictViolations++;
+            }
+        }
+        assertTrue(strictViolations <= 0.05 * sources.length * targets.length, "seed: " + seed + ", strict violations: " + strictViolations);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing;
+
+import com.graphhopper.isochrone.algorithm.PHASTShortestPathTree;
+import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.routing.ch.NodeOrderingProvider;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PHASTTest {
+    private final DecimalEncodedValue speedEnc;
+    private final BaseGraph graph;
+
+    PHASTTest() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodedValue.InitializerConfig evConf = new EncodedValue.InitializerConfig();
+        speedEnc.init(evConf);
+        graph = new BaseGraph.Builder(evConf.getRequiredInts()).create();
+    }
+
+    private RoutingCHGraph prepareCH(NodeOrderingProvider nodeOrdering) {
+        graph.freeze();
+        PrepareContractionHierarchies pch = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("c", new SpeedWeighting(speedEnc)));
+        if (nodeOrdering != null)
+            pch.useFixedNodeOrdering(nodeOrdering);
+        PrepareContractionHierarchies.Result res = pch.doWork();
+        return RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+    }
+
+    @Test
+    void smallGraph() {
+        // 0-1->2-3   4
+        //   |  |
+        //   5--6
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(200).set(speedEnc, 20, 0);
+        graph.edge(2, 3).setDistance(300).set(speedEnc, 30, 30);
+        graph.edge(1, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 6).setDistance(200).set(speedEnc, 10, 10);
+        graph.edge(6, 2).setDistance(100).set(speedEnc, 10, 10);
+        RoutingCHGraph chGraph = prepareCH(NodeOrderingProvider.fromArray(1, 2, 5, 6, 0, 3, 4));
+
+        PHAST.Result result = new PHAST(chGraph, false).calc(0);
+        assertEquals(0, result.getWeight(0));
+        assertEquals(10 + 10 + 10, result.getWeight(3), 1.e-6);
+        assertEquals(600, result.getDistance(3), 1.e-6);
+        assertEquals(30_000, result.getTime(3));
+        assertEquals(2, result.getEdge(3));
+        assertEquals(10 + 10 + 10, result.getWeight(6), 1.e-6);
+        assertFalse(result.isReached(4));
+        assertEquals(Long.MAX_VALUE, result.getTime(4));
+
+        // from all nodes to node 0: node 3 cannot use the one-way edge 1->2
+        result = new PHAST(chGraph, true).calc(0);
+        assertEquals(10 + 10 + 20 + 10 + 10, result.getWeight(3), 1.e-6);
+        assertEquals(800, result.getDistance(3), 1.e-6);
+        assertEquals(60_000, result.getTime(3));
+        assertEquals(2, result.getEdge(3));
+        assertEquals(0, result.getEdge(1));
+    }
+
+    @RepeatedTest(10)
+    void compareWithDijkstra() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.5, true, speedEnc, null, 0.9, 0.8);
+        RoutingCHGraph chGraph = prepareCH(null);
+        Weighting weighting = chGraph.getWeighting();
+        for (boolean reverse : new boolean[]{false, true}) {
+            PHAST phast = new PHAST(chGraph, reverse);
+            for (int i = 0; i < 5; i++) {
+                int source = rnd.nextInt(graph.getNodes());
+                PHAST.Result result = phast.calc(source);
+                for (int node = 0; node < graph.getNodes(); node++) {
+                    Path path = reverse
+                            ? new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(node, source)
+                            : new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(source, node);
+                    String msg = "seed: " + seed + ", reverse: " + reverse + ", source: " + source + ", node: " + node;
+                    assertEquals(path.isFound(), result.isReached(node), msg);
+                    if (path.isFound())
+                        assertEquals(path.getWeight(), result.getWeight(node), 1.e-2, msg);
+                }
+            }
+        }
+    }
+
+    @RepeatedTest(10)
+    void restricted() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 500, 2.5, true, speedEnc, null, 0.9, 0.8);
+        RoutingCHGraph chGraph = prepareCH(null);
+        for (boolean reverse : new boolean[]{false, true}) {
+            PHAST phast = new PHAST(chGraph, reverse);
+            int[] targets = new int[10];
+            for (int i = 0; i < targets.length; i++)
+                targets[i] = rnd.nextInt(graph.getNodes());
+            PHAST restricted = phast.restrict(targets);
+            assertTrue(restricted.getSweepNodes() < phast.getSweepNodes(), "seed: " + seed);
+            for (int i = 0; i < 5; i++) {
+                int source = rnd.nextInt(graph.getNodes());
+                PHAST.Result expected = phast.calc(source);
+                PHAST.Result given = restricted.calc(source);
+                for (int target : targets) {
+                    String msg = "seed: " + seed + ", reverse: " + reverse + ", source: " + source + ", target: " + target;
+                    assertEquals(expected.getWeight(target), given.getWeight(target), 1.e-6, msg);
+                    assertEquals(expected.getDistance(target), given.getDistance(target), 1.e-6, msg);
+                    assertEquals(expected.getTime(target), given.getTime(target), msg);
+                    assertEquals(expected.getEdge(target), given.getEdge(target), msg);
+                }
+            }
+        }
+    }
+
+    @RepeatedTest(10)
+    void shortestPathTree() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        // no offset, otherwise travelling via virtual edges is not the same as taking the direct edge
+        GHUtility.buildRandomGraph(graph, rnd, 300, 2.5, true, speedEnc, null, 0.9, 0);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        RoutingCHGraph chGraph = prepareCH(null);
+        Weighting weighting = chGraph.getWeighting();
+        for (boolean reverse : new boolean[]{false, true}) {
+            PHAST phast = new PHAST(chGraph, reverse);
+            List<Snap> snaps = GHUtility.createRandomSnaps(graph.getBounds(), locationIndex, rnd, 1, false, EdgeFilter.ALL_EDGES);
+            QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+            int source = snaps.get(0).getClosestNode();
+            ShortestPathTree expected = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverse, TraversalMode.NODE_BASED);
+            expected.setWeightLimit(1000);
+            List<ShortestPathTree.IsoLabel> expectedLabels = new ArrayList<>();
+            expected.search(source, expectedLabels::add);
+            ShortestPathTree given = new PHASTShortestPathTree(phast, queryGraph);
+            given.setWeightLimit(1000);
+            List<ShortestPathTree.IsoLabel> givenLabels = new ArrayList<>();
+            given.search(source, givenLabels::add);
+
+            String msg = "seed: " + seed + ", reverse: " + reverse;
+            assertEquals(expectedLabels.size(), givenLabels.size(), msg);
+            ShortestPathTree.IsoLabel[] labelsByNode = new ShortestPathTree.IsoLabel[queryGraph.getNodes()];
+            for (ShortestPathTree.IsoLabel label : givenLabels)
+                labelsByNode[label.node] = label;
+            for (ShortestPathTree.IsoLabel label : expectedLabels) {
+                ShortestPathTree.IsoLabel givenLabel = labelsByNode[label.node];
+                assertNotNull(givenLabel, msg + ", node: " + label.node);
+                assertEquals(label.weight, givenLabel.weight, 1.e-2, msg + ", node: " + label.node);
+                assertEquals(label.parent == null, givenLabel.parent == null, msg + ", node: " + label.node);
+                if (givenLabel.parent != null) {
+                    // the edge must connect the node to its parent
+                    assertTrue(givenLabel.edge != EdgeIterator.NO_EDGE);
+                    assertEquals(givenLabel.parent.node, queryGraph.getOtherNode(givenLabel.edge, givenLabel.node), msg);
+                }
+            }
+            for (int i = 1; i < givenLabels.size(); i++)
+                assertTrue(givenLabels.get(i - 1).weight <= givenLabels.get(i).weight, msg);
+
+            // the isochrone edges at the limit, a smaller limit is used so that not all nodes are reached. it must
+            // not be close to the weight of a node, because the weights of both searches differ slightly. the
+            // Dijkstra search also keeps nodes past the limit that were reached on a detour, so the ones of PHAST
+            // are a subset
+            int index = expectedLabels.size() / 2;
+            while (expectedLabels.get(index + 1).weight - expectedLabels.get(index).weight < 0.1)
+                index++;
+            double limit = (expectedLabels.get(index).weight + expectedLabels.get(index + 1).weight) / 2;
+            ShortestPathTree expectedTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverse, TraversalMode.NODE_BASED);
+            expectedTree.setWeightLimit(limit);
+            expectedTree.search(source, l -> {
+            });
+            ShortestPathTree givenTree = new PHASTShortestPathTree(phast, queryGraph);
+            givenTree.setWeightLimit(limit);
+            givenTree.search(source, l -> {
+            });
+            Set<Integer> expectedBorder = expectedTree.getIsochroneEdges(limit).stream().map(l -> l.node).collect(Collectors.toSet());
+            List<ShortestPathTree.IsoLabel> givenBorder = givenTree.getIsochroneEdges(limit);
+            assertFalse(givenBorder.isEmpty(), msg);
+            for (ShortestPathTree.IsoLabel label : givenBorder) {
+                assertTrue(expectedBorder.contains(label.node), msg + ", node: " + label.node);
+                assertTrue(label.weight > limit && label.parent.weight <= limit, msg + ", node: " + label.node);
+            }
+        }
+    }
+}
@@ -18,10 +18,28 @@
 package com.graphhopper.routing.ch;
 
 import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -36,4 +54,45 @@ public class CHPreparationHandlerTest {
         assertTrue(instance.isEnabled());
     }
 
+    @Test
+    public void nestedDissectionOrdering() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 200, 2.2, true, speedEnc, 60d, 0.9, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        graph.freeze();
+
+        CHPreparationHandler handler = new CHPreparationHandler();
+        assertThrows(IllegalArgumentException.class, () -> handler.setNodeOrdering("unknown"));
+        handler.setNodeOrdering("nested_dissection");
+        List<CHConfig> chConfigs = Arrays.asList(
+                CHConfig.nodeBased("node", new SpeedWeighting(speedEnc)),
+                CHConfig.edgeBased("edge", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40))
+        );
+        Map<String, PrepareContractionHierarchies.Result> results = handler.prepare(graph, new StorableProperties(graph.getDirectory()), chConfigs, false);
+        // all profiles are contracted in the same order that is calculated only once
+        NodeOrderingProvider ordering = handler.getNestedDissectionOrdering(graph);
+        assertSame(ordering, handler.getNestedDissectionOrdering(graph));
+        for (CHConfig chConfig : chConfigs) {
+            PrepareContractionHierarchies.Result result = results.get(chConfig.getName());
+            RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, result.getCHStorage(), chConfig);
+            for (int level = 0; level < ordering.getNumNodes(); level++)
+                assertEquals(level, chGraph.getLevel(ordering.getNodeIdForLevel(level)));
+            for (int i = 0; i < 50; i++) {
+                int from = rnd.nextInt(graph.getNodes());
+                int to = rnd.nextInt(graph.getNodes());
+                Path dijkstraPath = new Dijkstra(graph, chConfig.getWeighting(), chConfig.getTraversalMode()).calcPath(from, to);
+                Path chPath = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+                String msg = "seed: " + seed + ", " + chConfig.getName() + ", from: " + from + ", to: " + to;
+                assertEquals(dijkstraPath.isFound(), chPath.isFound(), msg);
+                if (dijkstraPath.isFound())
+                    assertEquals(dijkstraPath.getWeight(), chPath.getWeight(), 1.e-1, msg);
+            }
+        }
+    }
+
 }
@@ -1108,12 +1108,27 @@ public class CHTurnCostTest {
         compareWithDijkstraOnRandomGraph_heuristic(seed);
     }
 
+    /**
+     * same as {@link #testFindPath_heuristic_compareWithDijkstra()}, but contracting independent nodes in parallel
+     */
+    @RepeatedTest(10)
+    public void testFindPath_parallel_compareWithDijkstra() {
+        long seed = System.nanoTime();
+        LOGGER.info("Seed for testFindPath_parallel_compareWithDijkstra: {}", seed);
+        chConfig = chConfigs.get(new Random(seed).nextInt(chConfigs.size()));
+        GHUtility.buildRandomGraph(graph, new Random(seed), 200, 2.5, true, speedEnc, null, 0.9, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, maxCost, turnCostStorage);
+        graph.freeze();
+        checkStrict = false;
+        automaticCompareCHWithDijkstra(100, 4);
+    }
+
     private void compareWithDijkstraOnRandomGraph_heuristic(long seed) {
         GHUtility.buildRandomGraph(graph, new Random(seed), 20, 3.0, true, speedEnc, null, 0.9, 0.8);
         GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, maxCost, turnCostStorage);
         graph.freeze();
         checkStrict = false;
-        automaticCompareCHWithDijkstra(100);
+        automaticCompareCHWithDijkstra(100, 1);
     }
 
     private int nextCost(Random rnd) {
@@ -1181,22 +1196,27 @@ public class CHTurnCostTest {
     }
 
     private void automaticPrepareCH() {
+        automaticPrepareCH(1);
+    }
+
+    private void automaticPrepareCH(int threads) {
         PMap pMap = new PMap();
         pMap.putObject(PERIODIC_UPDATES, 20);
         pMap.putObject(LAST_LAZY_NODES_UPDATES, 100);
         pMap.putObject(NEIGHBOR_UPDATES, 4);
         pMap.putObject(LOG_MESSAGES, 10);
+        pMap.putObject(CONTRACTION_THREADS, threads);
         PrepareContractionHierarchies ch = PrepareContractionHierarchies.fromGraph(graph, chConfig);
         ch.setParams(pMap);
         PrepareContractionHierarchies.Result res = ch.doWork();
         chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
     }
 
-    private void automaticCompareCHWithDijkstra(int numQueries) {
+    private void automaticCompareCHWithDijkstra(int numQueries, int threads) {
         long seed = System.nanoTime();
         LOGGER.info("Seed used to create random routing queries: {}", seed);
         final Random rnd = new Random(seed);
-        automaticPrepareCH();
+        automaticPrepareCH(threads);
         for (int i = 0; i < numQueries; ++i) {
             compareCHQueryWithDijkstra(rnd.nextInt(graph.getNodes()), rnd.nextInt(graph.getNodes()));
         }
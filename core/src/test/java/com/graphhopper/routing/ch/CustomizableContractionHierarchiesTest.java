@@ -0,0 +1,189 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomizableContractionHierarchiesTest {
+    private final DecimalEncodedValue speedEnc;
+    private final DecimalEncodedValue otherSpeedEnc;
+    private final BaseGraph graph;
+
+    CustomizableContractionHierarchiesTest() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        otherSpeedEnc = new DecimalEncodedValueImpl("other_speed", 5, 5, true);
+        EncodedValue.InitializerConfig evConf = new EncodedValue.InitializerConfig();
+        speedEnc.init(evConf);
+        otherSpeedEnc.init(evConf);
+        graph = new BaseGraph.Builder(evConf.getRequiredInts()).create();
+    }
+
+    @Test
+    void metricUpdateChangesRoute() {
+        // 0-1-2
+        // |   |
+        // 3---4
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 10, 10);
+        graph.edge(0, 3).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 60, 60);
+        graph.edge(3, 4).setDistance(200).set(speedEnc, 60, 60).set(otherSpeedEnc, 60, 60);
+        graph.edge(4, 2).setDistance(100).set(speedEnc, 60, 60).set(otherSpeedEnc, 60, 60);
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph,
+                NodeOrderingProvider.fromArray(1, 3, 4, 0, 2));
+
+        PrepareContractionHierarchies.Result result = cch.customize(CHConfig.nodeBased("c", new SpeedWeighting(speedEnc)));
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, result.getCHStorage(), result.getCHConfig());
+        Path path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(0, 2);
+        assertEquals(200, path.getDistance(), 1.e-6);
+        assertEquals("[0, 1, 2]", path.calcNodes().toString());
+
+        chGraph = cch.createCustomizedGraph(new SpeedWeighting(otherSpeedEnc));
+        path = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(0, 2);
+        assertEquals(400, path.getDistance(), 1.e-6);
+        assertEquals("[0, 3, 4, 2]", path.calcNodes().toString());
+    }
+
+    @Test
+    void edgeBasedIsNotSupported() {
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60);
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph);
+        assertThrows(IllegalArgumentException.class, () -> cch.customize(CHConfig.edgeBased("c", new SpeedWeighting(speedEnc))));
+    }
+
+    @Test
+    void nestedDissectionOrdering_grid() {
+        int size = 30;
+        for (int row = 0; row < size; row++)
+            for (int col = 0; col < size; col++) {
+                int node = row * size + col;
+                graph.getNodeAccess().setNode(node, 50 + 0.001 * row, 10 + 0.001 * col);
+                if (col > 0)
+                    graph.edge(node - 1, node).setDistance(100).set(speedEnc, 60, 60);
+                if (row > 0)
+                    graph.edge(node - size, node).setDistance(100).set(speedEnc, 60, 60);
+            }
+        graph.freeze();
+        NodeOrderingProvider ordering = NestedDissectionOrdering.computeOrdering(graph);
+        boolean[] seen = new boolean[graph.getNodes()];
+        for (int rank = 0; rank < ordering.getNumNodes(); rank++) {
+            assertFalse(seen[ordering.getNodeIdForLevel(rank)]);
+            seen[ordering.getNodeIdForLevel(rank)] = true;
+        }
+        // the 30 highest ranked nodes contain the top level separator, which splits the grid into two parts. the
+        // source and sink sets of the flow contain a quarter of the nodes each, so neither part can be very small
+        boolean[] separator = new boolean[graph.getNodes()];
+        for (int i = 0; i < size; i++)
+            separator[ordering.getNodeIdForLevel(graph.getNodes() - 1 - i)] = true;
+        int start = 0;
+        while (separator[start])
+            start++;
+        int reached = countReachable(start, separator);
+        assertTrue(reached >= graph.getNodes() / 5 && reached <= graph.getNodes() * 4 / 5, "reached: " + reached);
+
+        // row by row the upper neighbors of every node span a whole row, nested dissection needs far fewer arcs
+        int[] rowByRow = new int[graph.getNodes()];
+        for (int node = 0; node < rowByRow.length; node++)
+            rowByRow[node] = node;
+        int nestedDissectionArcs = CustomizableContractionHierarchies.fromGraph(graph, ordering).getArcs();
+        int rowByRowArcs = CustomizableContractionHierarchies.fromGraph(graph, NodeOrderingProvider.fromArray(rowByRow)).getArcs();
+        assertTrue(nestedDissectionArcs < rowByRowArcs / 2, nestedDissectionArcs + " vs. " + rowByRowArcs);
+    }
+
+    private int countReachable(int start, boolean[] blocked) {
+        boolean[] visited = blocked.clone();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        visited[start] = true;
+        queue.add(start);
+        int count = 0;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        while (!queue.isEmpty()) {
+            count++;
+            EdgeIterator iter = explorer.setBaseNode(queue.poll());
+            while (iter.next())
+                if (!visited[iter.getAdjNode()]) {
+                    visited[iter.getAdjNode()] = true;
+                    queue.add(iter.getAdjNode());
+                }
+        }
+        return count;
+    }
+
+    @RepeatedTest(10)
+    void compareWithDijkstra() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        int numNodes = 500;
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 2.2, true, speedEnc, 60d, 0.9, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            iter.set(otherSpeedEnc, 5 * (1 + rnd.nextInt(10)), rnd.nextDouble() < 0.2 ? 0 : 5 * (1 + rnd.nextInt(10)));
+        graph.freeze();
+        CustomizableContractionHierarchies cch = CustomizableContractionHierarchies.fromGraph(graph);
+        PrepareContractionHierarchies.Result result = cch.customize(CHConfig.nodeBased("c", new SpeedWeighting(speedEnc)));
+        compareWithDijkstra(seed, rnd, RoutingCHGraphImpl.fromGraph(graph, result.getCHStorage(), result.getCHConfig()));
+        compareWithDijkstra(seed, rnd, cch.createCustomizedGraph(new SpeedWeighting(otherSpeedEnc)));
+    }
+
+    private void compareWithDijkstra(long seed, Random rnd, RoutingCHGraph chGraph) {
+        Weighting weighting = chGraph.getWeighting();
+        for (int i = 0; i < 50; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int to = rnd.nextInt(graph.getNodes());
+            Path dijkstraPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+            Path chPath = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to);
+            String msg = "seed: " + seed + ", from: " + from + ", to: " + to;
+            assertEquals(dijkstraPath.isFound(), chPath.isFound(), msg);
+            if (!dijkstraPath.isFound())
+                continue;
+            assertEquals(dijkstraPath.getWeight(), chPath.getWeight(), 1.e-1, msg);
+            // the unpacked path must be a valid path with the same weight
+            double weight = 0;
+            for (EdgeIteratorState edge : chPath.calcEdges())
+                weight += weighting.calcEdgeWeight(edge, false);
+            assertEquals(dijkstraPath.getWeight(), weight, 1.e-1, msg);
+            assertEquals(from, chPath.calcNodes().get(0), msg);
+            assertEquals(to, chPath.calcNodes().get(chPath.calcNodes().size() - 1), msg);
+        }
+    }
+}
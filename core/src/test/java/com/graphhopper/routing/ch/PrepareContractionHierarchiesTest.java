@@ -577,6 +577,33 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @Test
+    public void testParallelContraction() {
+        int numNodes = 5_000;
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        BaseGraph graph = createGraph();
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 1.3, true, speedEnc, 60d, 0.9, 0.8);
+        graph.freeze();
+
+        PrepareContractionHierarchies.Result res2 = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("c2", weighting))
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, 2)).doWork();
+        PrepareContractionHierarchies.Result res4 = PrepareContractionHierarchies.fromGraph(graph, CHConfig.nodeBased("c4", weighting))
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, 4)).doWork();
+        // the result does not depend on the number of threads
+        assertTrue(res2.getShortcuts() > 0);
+        assertEquals(res2.getShortcuts(), res4.getShortcuts(), "seed: " + seed);
+
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res4.getCHStorage(), res4.getCHConfig());
+        for (int i = 0; i < 100; ++i) {
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            double dijkstraWeight = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to).getWeight();
+            double chWeight = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap()).calcPath(from, to).getWeight();
+            assertEquals(dijkstraWeight, chWeight, 1.e-1, "seed: " + seed + ", from: " + from + ", to: " + to);
+        }
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
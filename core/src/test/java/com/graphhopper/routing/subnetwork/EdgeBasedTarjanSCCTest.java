@@ -31,6 +31,7 @@ import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
@@ -239,6 +240,31 @@ class EdgeBasedTarjanSCCTest {
         }
     }
 
+    @Test
+    public void withoutUTurns() {
+        // without u-turns each direction of the triangle is a component of its own:
+        // 0->1->2->0 and 0->2->1->0
+        //   0
+        //  / \
+        // 1 - 2
+        g.edge(0, 1).setDistance(1).set(speedEnc, 10, 10); // edge-keys 0,1
+        g.edge(1, 2).setDistance(1).set(speedEnc, 10, 10); // edge-keys 2,3
+        g.edge(2, 0).setDistance(1).set(speedEnc, 10, 10); // edge-keys 4,5
+        EdgeBasedTarjanSCC.EdgeTransitionFilter noUTurns = (prev, edge) -> fwdAccessFilter.accept(prev, edge) && prev != edge.getEdge();
+        // the search for the backward edge keys must start at the base node of their edge. The backward edge keys are
+        // not reached by the forward searches, so starting at the wrong node would put them into single edge components
+        for (ConnectedComponents result : new ConnectedComponents[]{
+                EdgeBasedTarjanSCC.findComponentsRecursive(g, noUTurns, false),
+                EdgeBasedTarjanSCC.findComponents(g, noUTurns, false),
+                EdgeBasedTarjanSCC.findComponentsForStartEdges(g, noUTurns, IntArrayList.from(0, 1, 2))}) {
+            assertEquals(2, result.getTotalComponents());
+            assertEquals(6, result.getEdgeKeys());
+            assertEquals(2, result.getComponents().size());
+            assertEquals(0, result.getSingleEdgeComponents().cardinality());
+            assertEquals(buildComponentSet(List.of(IntArrayList.from(0, 2, 4), IntArrayList.from(1, 3, 5))), buildComponentSet(result.getComponents()));
+        }
+    }
+
     @RepeatedTest(20)
     public void implicitVsExplicitRecursion() {
         doImplicitVsExplicit(true);
@@ -0,0 +1,163 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.subnetwork;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.EncodedValue;
+import com.graphhopper.routing.subnetwork.EdgeBasedTarjanSCC.ConnectedComponents;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelEdgeBasedSCCTest {
+
+    private final DecimalEncodedValue speedEnc;
+    private final BaseGraph g;
+    private final EdgeBasedTarjanSCC.EdgeTransitionFilter fwdAccessFilter;
+
+    public ParallelEdgeBasedSCCTest() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodedValue.InitializerConfig evConf = new EncodedValue.InitializerConfig();
+        speedEnc.init(evConf);
+        g = new BaseGraph.Builder(evConf.getRequiredInts()).create();
+        fwdAccessFilter = (prev, edge) -> edge.get(speedEnc) > 0;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void withTurnRestriction(int threads) {
+        // 0->1
+        // |  |
+        // 3<-2->4
+        g.edge(0, 1).setDistance(1).set(speedEnc, 10, 0); // edge-keys 0,1
+        g.edge(1, 2).setDistance(1).set(speedEnc, 10, 0); // edge-keys 2,3
+        g.edge(2, 3).setDistance(1).set(speedEnc, 10, 0); // edge-keys 4,5
+        g.edge(3, 0).setDistance(1).set(speedEnc, 10, 0); // edge-keys 6,7
+        g.edge(2, 4).setDistance(1).set(speedEnc, 10, 0); // edge-keys 8,9
+
+        ConnectedComponents result = ParallelEdgeBasedSCC.findComponents(g, fwdAccessFilter, false, threads);
+        assertEquals(7, result.getTotalComponents());
+        assertEquals(1, result.getComponents().size());
+        assertEquals(IntArrayList.from(0, 2, 4, 6), sorted(result.getBiggestComponent()));
+        assertEquals(6, result.getSingleEdgeComponents().cardinality());
+        for (IntCursor c : IntArrayList.from(1, 3, 5, 7, 8, 9))
+            assertTrue(result.getSingleEdgeComponents().get(c.value));
+
+        result = ParallelEdgeBasedSCC.findComponents(g,
+                (prev, edge) -> fwdAccessFilter.accept(prev, edge) && !(prev == 1 && edge.getBaseNode() == 2 && edge.getEdge() == 2), false, threads);
+        assertEquals(10, result.getTotalComponents());
+        assertEquals(0, result.getComponents().size());
+        assertEquals(10, result.getSingleEdgeComponents().cardinality());
+    }
+
+    @Test
+    public void islands() {
+        // 0 - 1   4 - 5 - 6 - 7
+        // |   |
+        // 3 - 2   8 - 9
+        g.edge(0, 1).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(1, 2).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(2, 3).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(3, 0).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(4, 5).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(5, 6).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(6, 7).setDistance(10).set(speedEnc, 10, 10);
+        g.edge(8, 9).setDistance(10).set(speedEnc, 10, 10);
+        ConnectedComponents result = ParallelEdgeBasedSCC.findComponents(g, fwdAccessFilter, true, 2);
+        assertEquals(16, result.getEdgeKeys());
+        assertEquals(3, result.getComponents().size());
+        assertEquals(8, result.getBiggestComponent().size());
+        assertEquals(0, result.getSingleEdgeComponents().cardinality());
+    }
+
+    @RepeatedTest(20)
+    public void compareWithTarjan() {
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, 500, 2, true, speedEnc, 60d, 0.7, 0);
+        // a random turn restriction for every tenth edge to make things a bit more interesting
+        EdgeBasedTarjanSCC.EdgeTransitionFilter filter = (prev, edge) -> fwdAccessFilter.accept(prev, edge)
+                && (prev < 0 || (31 * prev + edge.getEdge()) % 10 != 0);
+        for (boolean excludeSingle : new boolean[]{true, false}) {
+            ConnectedComponents expected = EdgeBasedTarjanSCC.findComponents(g, filter, excludeSingle);
+            for (int threads : new int[]{1, 4}) {
+                ConnectedComponents given = ParallelEdgeBasedSCC.findComponents(g, filter, excludeSingle, threads);
+                compareResults(seed, expected, given);
+            }
+        }
+    }
+
+    @Test
+    public void compareWithTarjan_bigGraph() {
+        // big enough that the trimming and the forward-backward search are split between the threads
+        long seed = System.nanoTime();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, 50_000, 2.5, true, speedEnc, 60d, 0.7, 0);
+        ConnectedComponents expected = EdgeBasedTarjanSCC.findComponents(g, fwdAccessFilter, false);
+        ConnectedComponents given = ParallelEdgeBasedSCC.findComponents(g, fwdAccessFilter, false, 4);
+        assertTrue(expected.getBiggestComponent().size() > 50_000, "biggest component: " + expected.getBiggestComponent().size());
+        compareResults(seed, expected, given);
+    }
+
+    private void compareResults(long seed, ConnectedComponents expected, ConnectedComponents given) {
+        assertEquals(expected.getEdgeKeys(), given.getEdgeKeys(), "seed: " + seed);
+        assertEquals(expected.getTotalComponents(), given.getTotalComponents(), "seed: " + seed);
+        assertEquals(expected.getBiggestComponent().size(), given.getBiggestComponent().size(), "seed: " + seed);
+        assertEquals(expected.getSingleEdgeComponents(), given.getSingleEdgeComponents(), "seed: " + seed);
+        assertEquals(expected.getComponents().size(), given.getComponents().size(), "seed: " + seed);
+        // the components are the same if every component of the expected result maps to exactly one given component
+        int[] expectedIds = componentIds(expected), givenIds = componentIds(given);
+        int[] mapping = new int[expected.getComponents().size()];
+        Arrays.fill(mapping, -1);
+        for (int key = 0; key < expectedIds.length; key++) {
+            assertEquals(expectedIds[key] < 0, givenIds[key] < 0, "seed: " + seed + ", edge key: " + key);
+            if (expectedIds[key] < 0)
+                continue;
+            if (mapping[expectedIds[key]] < 0)
+                mapping[expectedIds[key]] = givenIds[key];
+            assertEquals(mapping[expectedIds[key]], givenIds[key], "seed: " + seed + ", edge key: " + key);
+        }
+    }
+
+    private int[] componentIds(ConnectedComponents components) {
+        int[] ids = new int[2 * g.getEdges()];
+        Arrays.fill(ids, -1);
+        for (int i = 0; i < components.getComponents().size(); i++)
+            for (IntCursor c : components.getComponents().get(i))
+                ids[c.value] = i;
+        return ids;
+    }
+
+    private static IntArrayList sorted(IntArrayList list) {
+        int[] arr = list.toArray();
+        Arrays.sort(arr);
+        return IntArrayList.from(arr);
+    }
+}
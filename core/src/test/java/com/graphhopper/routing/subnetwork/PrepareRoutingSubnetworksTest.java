@@ -169,6 +169,25 @@ public class PrepareRoutingSubnetworksTest {
         assertEquals(IntArrayList.from(7, 8, 9), getSubnetworkEdges(g, subnetworkEnc));
     }
 
+    @Test
+    public void testPrepareSubnetwork_parallelSCC() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 1);
+        BooleanEncodedValue subnetworkEnc = Subnetwork.create("car");
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(subnetworkEnc).addTurnCostEncodedValue(turnCostEnc).build();
+
+        // same as with Tarjan's algorithm: the open edge and the turn restrictions make the upper component a subnetwork
+        BaseGraph g = createSubnetworkTestStorage(em, speedEnc, null);
+        GHUtility.getEdge(g, 3, 4).set(speedEnc, 10, 10);
+        g.getTurnCostStorage().set(turnCostEnc, 0, 4, 7, Double.POSITIVE_INFINITY);
+        g.getTurnCostStorage().set(turnCostEnc, 0, 4, 9, Double.POSITIVE_INFINITY);
+        PrepareRoutingSubnetworks instance = new PrepareRoutingSubnetworks(g, Collections.singletonList(
+                createJob(subnetworkEnc, speedEnc, turnCostEnc, g.getTurnCostStorage(), 0).setSCCThreads(2)));
+        instance.setMinNetworkSize(4);
+        assertEquals(3, instance.doWork());
+        assertEquals(IntArrayList.from(7, 8, 9), getSubnetworkEdges(g, subnetworkEnc));
+    }
+
     private BaseGraph createSubnetworkTestStorageWithOneWays(EncodingManager em, DecimalEncodedValue speedEnc) {
         BaseGraph g = new BaseGraph.Builder(em).create();
         // 0 - 1 - 2 - 3 - 4 <- 5 - 6
@@ -30,6 +30,7 @@ import java.util.stream.Collectors;
 
 import static com.graphhopper.util.GHUtility.readCountries;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AreaIndexTest {
 
@@ -144,6 +145,48 @@ class AreaIndexTest {
         assertEquals("NL", countryIndex.query(52.208451, 5.500524).get(0).getProperties().get(State.ISO_3166_2));
     }
 
+    @Test
+    public void testGridMatchesPolygonTests() {
+        List<CustomArea> countries = readCountries();
+        AreaIndex<CustomArea> gridIndex = new AreaIndex<>(countries);
+        AreaIndex<CustomArea> polygonIndex = new AreaIndex<>(countries, 0);
+        // most cells are not crossed by a border
+        assertTrue(gridIndex.getBorderCellRatio() < 0.2, "border cells: " + gridIndex.getBorderCellRatio());
+        assertEquals(1, polygonIndex.getBorderCellRatio());
+        Random rnd = new Random(123);
+        for (int i = 0; i < 100_000; i++) {
+            // many points in europe, where the countries are small
+            double lat = i % 2 == 0 ? -90 + 180 * rnd.nextDouble() : 35 + 25 * rnd.nextDouble();
+            double lon = i % 2 == 0 ? -180 + 360 * rnd.nextDouble() : -10 + 40 * rnd.nextDouble();
+            assertEquals(polygonIndex.query(lat, lon), gridIndex.query(lat, lon), lat + "," + lon);
+        }
+    }
+
+    @Test
+    public void testGridCellEdges() {
+        GeometryFactory gf = new GeometryFactory();
+        Polygon border1 = gf.createPolygon(new Coordinate[]{
+                new Coordinate(0, 0), new Coordinate(4, 0), new Coordinate(4, 4), new Coordinate(0, 4),
+                new Coordinate(0, 0)});
+        Polygon border2 = gf.createPolygon(new Coordinate[]{
+                new Coordinate(2, 0), new Coordinate(4, 0), new Coordinate(4, 2), new Coordinate(2, 2),
+                new Coordinate(2, 0)});
+        // with 16 cells the borders of the second polygon are located exactly at the edges of the grid cells
+        AreaIndex<CustomArea> index = new AreaIndex<>(Arrays.asList(
+                createCustomArea("1", border1),
+                createCustomArea("2", border2)), 16);
+        testQuery(index, 3, 3, "1");
+        testQuery(index, 1, 3, "1", "2");
+        testQuery(index, 2, 3, "1", "2");
+        testQuery(index, 2.0000001, 3, "1");
+        testQuery(index, 1, 1.9999999, "1");
+        testQuery(index, 2, 4, "1", "2");
+        testQuery(index, 4, 4, "1");
+        testQuery(index, 0, 0, "1");
+        testQuery(index, 4.0000001, 4);
+        testQuery(index, -1, 2);
+    }
+
     private AreaIndex<CustomArea> createCountryIndex() {
         return new AreaIndex<>(readCountries());
     }
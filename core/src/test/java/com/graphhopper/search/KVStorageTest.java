@@ -228,7 +228,9 @@ public class KVStorageTest {
         assertEquals("test", index.get(pointer, "", false));
         // make sure bytePointer is correctly set after loadExisting
         long newPointer = index.add(createList("", "testing"));
-        assertEquals(pointer + 1 + 3 + "test".getBytes().length, newPointer, newPointer + ">" + pointer);
+        // 1 byte for the count, 2 bytes for the key and 1 byte for the pointer into the dictionary
+        assertEquals(pointer + 1 + 2 + 1, newPointer, newPointer + ">" + pointer);
+        assertEquals("testing", index.get(newPointer, "", false));
         index.close();
 
         Helper.removeDir(new File(location));
@@ -275,6 +277,83 @@ public class KVStorageTest {
         assertNull(index.get(pointerB, "", false));
     }
 
+    @Test
+    public void testDictionary() {
+        KVStorage index = create();
+        long pointerA = index.add(createList("name", "Main Street", "ref", "B 96"));
+        long dictBytes = index.getDictionaryBytes();
+        long pointerB = index.add(createList("name", "Side Street"));
+        long dictBytesAfterB = index.getDictionaryBytes();
+        assertEquals(dictBytes + 1 + "Side Street".length(), dictBytesAfterB);
+
+        // not the last entry but the strings are still stored only once
+        long pointerC = index.add(createList("name", "Main Street", "ref", "B 96"));
+        long pointerD = index.add(createList("ref", "Main Street"));
+        assertNotEquals(pointerA, pointerC);
+        assertEquals(dictBytesAfterB, index.getDictionaryBytes());
+
+        assertEquals("Main Street", index.get(pointerA, "name", false));
+        assertEquals("B 96", index.get(pointerA, "ref", true));
+        assertEquals("Side Street", index.get(pointerB, "name", false));
+        assertEquals(index.getAll(pointerA), index.getAll(pointerC));
+        assertEquals("Main Street", index.get(pointerD, "ref", false));
+        assertNull(index.get(pointerD, "name", false));
+    }
+
+    @Test
+    public void testMaxDictionaryEntries() {
+        KVStorage index = new KVStorage(new RAMDirectory(), true).setMaxDictionaryEntries(2).create(1000);
+        long pointerA = index.add(createList("name", "A Street"));
+        index.add(createList("name", "B Street"));
+        assertEquals(2, index.getDictionaryEntries());
+        long dictBytes = index.getDictionaryBytes();
+        index.add(createList("name", "A Street"));
+        assertEquals(dictBytes, index.getDictionaryBytes());
+
+        // the map is full, so it is cleared and A Street is stored again
+        index.add(createList("name", "C Street"));
+        assertEquals(1, index.getDictionaryEntries());
+        index.add(createList("name", "A Street"));
+        assertEquals(dictBytes + 2 * (1 + "A Street".length()), index.getDictionaryBytes());
+        assertEquals("A Street", index.get(pointerA, "name", false));
+
+        index = new KVStorage(new RAMDirectory(), true).setMaxDictionaryEntries(0).create(1000);
+        index.add(createList("name", "A Street"));
+        dictBytes = index.getDictionaryBytes();
+        long pointerB = index.add(createList("ref", "A Street"));
+        assertEquals(0, index.getDictionaryEntries());
+        assertEquals(dictBytes + 1 + "A Street".length(), index.getDictionaryBytes());
+        assertEquals("A Street", index.get(pointerB, "ref", false));
+    }
+
+    @Test
+    public void testCache() {
+        KVStorage index = new KVStorage(new RAMDirectory(), true, 4).create(1000);
+        LongArrayList pointers = new LongArrayList();
+        for (int i = 0; i < 100; i++) {
+            List<KeyValue> list = new ArrayList<>();
+            list.add(new KeyValue("name", "name " + i, true, false));
+            list.add(new KeyValue("int", i));
+            pointers.add(index.add(list));
+        }
+
+        List<KeyValue> list = index.getAll(pointers.get(42));
+        assertSame(list, index.getAll(pointers.get(42)));
+        assertThrows(UnsupportedOperationException.class, () -> list.add(new KeyValue("x", "y")));
+
+        // more entries than cache slots
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 100; i++) {
+                long pointer = pointers.get(i);
+                assertEquals("name " + i, index.get(pointer, "name", false));
+                assertNull(index.get(pointer, "name", true));
+                assertEquals(i, index.get(pointer, "int", true));
+                assertNull(index.get(pointer, "unknown", false));
+                assertEquals("[name=name " + i + " (true|false), int=" + i + " (true|true)]", index.getAll(pointer).toString());
+            }
+        }
+    }
+
     @Test
     public void testSameByteArray() {
         KVStorage index = create();
@@ -0,0 +1,131 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaseGraphWithAdjacencyIndexTest extends BaseGraphTest {
+
+    @Override
+    protected BaseGraph newGHStorage(Directory dir, boolean enabled3D, int segmentSize) {
+        return new BaseGraph.Builder(encodingManager).setDir(dir).set3D(enabled3D).withAdjacencyIndex(true).setSegmentSize(segmentSize).build();
+    }
+
+    @Test
+    public void testSameAdjacencyAfterFreeze() {
+        graph = createGHStorage();
+        Random rnd = new Random(42);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, carSpeedEnc, 60d, 0.8, 0.8);
+        // parallel edges
+        graph.edge(5, 7).setDistance(10);
+        graph.edge(5, 7).setDistance(20);
+        List<List<Integer>> expected = getAdjacency(graph);
+
+        graph.freeze();
+        assertNotNull(graph.adjacency);
+        assertEquals(expected, getAdjacency(graph));
+    }
+
+    @Test
+    public void testSaveAndLoadAdjacency() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        graph.edge(0, 1).setDistance(10);
+        graph.edge(1, 2).setDistance(10);
+        graph.edge(2, 0).setDistance(10);
+        graph.edge(2, 1).setDistance(10);
+        graph.getNodeAccess().setNode(4, 1, 1);
+        List<List<Integer>> expected = getAdjacency(graph);
+        graph.freeze();
+        graph.flush();
+        graph.close();
+
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        assertTrue(graph.loadExisting());
+        assertNotNull(graph.adjacency);
+        assertEquals(expected, getAdjacency(graph));
+        graph.close();
+
+        // without the adjacency index the graph can still be loaded and routed on
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true)).build();
+        assertTrue(graph.loadExisting());
+        assertNull(graph.adjacency);
+        assertEquals(expected, getAdjacency(graph));
+    }
+
+    @Test
+    public void testBuildAdjacencyForFrozenGraphWithoutIndex() {
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true)).create();
+        graph.edge(0, 1).setDistance(10);
+        graph.edge(1, 2).setDistance(10);
+        List<List<Integer>> expected = getAdjacency(graph);
+        graph.freeze();
+        graph.flush();
+        graph.close();
+
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false);
+        assertTrue(graph.loadExisting());
+        assertNotNull(graph.adjacency);
+        assertEquals(expected, getAdjacency(graph));
+        graph.close();
+        // the index is stored, so it does not have to be built again
+        assertTrue(new File(defaultGraphLoc, "adjacency").exists());
+    }
+
+    @Test
+    public void testFrozenGraphWithoutIndexReadOnly() {
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true)).create();
+        graph.edge(0, 1).setDistance(10);
+        graph.edge(1, 2).setDistance(10);
+        List<List<Integer>> expected = getAdjacency(graph);
+        graph.freeze();
+        graph.flush();
+        graph.close();
+
+        // the index cannot be built for a read-only directory, the linked lists are used instead
+        graph = newGHStorage(new GHDirectory(defaultGraphLoc, DAType.MMAP_RO), false);
+        assertTrue(graph.loadExisting());
+        assertNull(graph.adjacency);
+        assertEquals(expected, getAdjacency(graph));
+        assertFalse(new File(defaultGraphLoc, "adjacency").exists());
+    }
+
+    private static List<List<Integer>> getAdjacency(BaseGraph graph) {
+        List<List<Integer>> result = new ArrayList<>();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            List<Integer> edges = new ArrayList<>();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                edges.add(iter.getEdge());
+                edges.add(iter.getAdjNode());
+            }
+            result.add(edges);
+        }
+        return result;
+    }
+}
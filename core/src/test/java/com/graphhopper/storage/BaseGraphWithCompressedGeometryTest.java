@@ -0,0 +1,95 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.util.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaseGraphWithCompressedGeometryTest extends BaseGraphTest {
+
+    @Override
+    protected BaseGraph newGHStorage(Directory dir, boolean enabled3D, int segmentSize) {
+        return new BaseGraph.Builder(encodingManager).setDir(dir).set3D(enabled3D).withCompressedGeometry(true).setSegmentSize(segmentSize).build();
+    }
+
+    @Override
+    @Test
+    public void testDontGrowOnUpdate() {
+        graph = createGHStorage(defaultGraphLoc, true);
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 10, 10, 0);
+        na.setNode(1, 11, 20, 1);
+
+        EdgeIteratorState edge = graph.edge(0, 1).setDistance(100);
+        assertEquals(4, graph.getMaxGeoRef());
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9));
+        long maxGeoRef = graph.getMaxGeoRef();
+        assertTrue(maxGeoRef > 4);
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7));
+        assertEquals(maxGeoRef, graph.getMaxGeoRef());
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3));
+        assertEquals(maxGeoRef, graph.getMaxGeoRef());
+        assertEquals(Helper.createPointList3D(1, 2, 3), edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        edge.setWayGeometry(Helper.createPointList3D(1, 2, 3, 3, 4, 5, 5, 6, 7, 7, 8, 9, 9, 10, 11));
+        assertTrue(graph.getMaxGeoRef() > maxGeoRef);
+    }
+
+    @Test
+    public void testSmallerThanUncompressed() {
+        PointList pillars = new PointList(100, true);
+        for (int i = 0; i < 100; i++) {
+            pillars.add(49.9 + i * 1e-4, 11.5 - i * 2e-4, 300 + i * 0.5);
+        }
+        long uncompressed = getMaxGeoRefAfterSetting(new BaseGraph.Builder(encodingManager).set3D(true).create(), pillars.clone(false));
+        graph = newGHStorage(new RAMDirectory(), true).create(defaultSize);
+        long compressed = getMaxGeoRefAfterSetting(graph, pillars.clone(false));
+        assertTrue(compressed < uncompressed * 0.6, compressed + " vs. " + uncompressed);
+
+        EdgeIteratorState edge = graph.getEdgeIteratorState(0, 1);
+        assertEquals(100, edge.fetchWayGeometry(FetchMode.PILLAR_ONLY).size());
+        assertEquals(pillars, edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        PointList reversed = pillars.clone(true);
+        assertEquals(reversed, edge.detach(true).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+
+    @Test
+    public void testLoadCompressedGeometry() {
+        graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), false).create(defaultSize);
+        graph.getNodeAccess().setNode(0, 10, 10);
+        graph.getNodeAccess().setNode(1, 11, 11);
+        graph.edge(0, 1).setDistance(10).setWayGeometry(Helper.createPointList(10.1, 10.2, -10.5, 170.3, 10.6, 10.7));
+        graph.flush();
+        graph.close();
+
+        // the encoding of the stored graph is used, even if it was not requested when loading
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true)).build();
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.isCompressedGeometry());
+        assertEquals(Helper.createPointList(10.1, 10.2, -10.5, 170.3, 10.6, 10.7),
+                graph.getEdgeIteratorState(0, 1).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+    }
+
+    private static long getMaxGeoRefAfterSetting(BaseGraph graph, PointList pillars) {
+        graph.getNodeAccess().setNode(0, 49.8, 11.6, 290);
+        graph.getNodeAccess().setNode(1, 50, 11.4, 360);
+        graph.edge(0, 1).setDistance(100).setWayGeometry(pillars);
+        return graph.getMaxGeoRef();
+    }
+}
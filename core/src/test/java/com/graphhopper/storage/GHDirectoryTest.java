@@ -1,10 +1,13 @@
 package com.graphhopper.storage;
 
+import com.graphhopper.util.Helper;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class GHDirectoryTest {
 
@@ -23,6 +26,70 @@ class GHDirectoryTest {
         assertEquals(10, dir.getPreload("nodes"));
     }
 
+    @Test
+    public void testMMapWarmUp() throws InterruptedException {
+        String location = "./target/tmp/warmup";
+        Helper.removeDir(new File(location));
+        GHDirectory dir = new GHDirectory(location, DAType.MMAP);
+        dir.create();
+        for (String name : new String[]{"nodes", "edges", "geometry"}) {
+            DataAccess da = dir.create(name, 128).create(128 * 10);
+            da.setInt(128 * 9, 42);
+            da.flush();
+        }
+        dir.close();
+
+        dir = new GHDirectory(location, DAType.MMAP);
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        map.put("warmup.nodes|edges", "50");
+        map.put("warmup.edges", "100");
+        dir.configure(map);
+        assertEquals(50, dir.getWarmUp("edges"));
+        assertEquals(0, dir.getWarmUp("geometry"));
+        DataAccess nodes = dir.create("nodes", 128);
+        assertTrue(nodes.loadExisting());
+        assertTrue(dir.create("edges", 128).loadExisting());
+        assertTrue(dir.create("geometry", 128).loadExisting());
+
+        MMapWarmUp warmUp = dir.startMMapWarmUp(2);
+        assertTrue(warmUp.awaitDone(1, TimeUnit.MINUTES));
+        assertEquals(1, warmUp.getProgress());
+        warmUp.stop();
+        assertEquals(42, nodes.getInt(128 * 9));
+        dir.close();
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testFailedMMapWarmUp() throws InterruptedException {
+        String location = "./target/tmp/warmup-failed";
+        Helper.removeDir(new File(location));
+        GHDirectory dir = new GHDirectory(location, DAType.MMAP);
+        dir.create();
+        DataAccess da = dir.create("nodes", 128).create(128 * 10);
+        MMapWarmUp warmUp = new MMapWarmUp().add((MMapDataAccess) da, 100);
+        int segments = da.getSegments();
+        // loading the segments of a closed DataAccess fails
+        dir.close();
+        warmUp.start(2);
+        assertFalse(warmUp.awaitDone(1, TimeUnit.MINUTES));
+        assertTrue(warmUp.isFinished());
+        assertFalse(warmUp.isDone());
+        assertEquals(segments, warmUp.getFailedSegments());
+        assertEquals(0, warmUp.getProgress());
+        warmUp.stop();
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testEmptyMMapWarmUp() {
+        GHDirectory dir = new GHDirectory("", DAType.RAM_STORE);
+        MMapWarmUp warmUp = dir.startMMapWarmUp(1);
+        assertTrue(warmUp.isDone());
+        assertEquals(1, warmUp.getProgress());
+        warmUp.stop();
+    }
+
     @Test
     public void testPatternMatching() {
         GHDirectory dir = new GHDirectory("", DAType.RAM_STORE);
@@ -0,0 +1,67 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapDataAccessTest extends DataAccessTest {
+    @Override
+    public DataAccess createDataAccess(String name, int segmentSize) {
+        return new OffHeapDataAccess(name, directory, true, segmentSize);
+    }
+
+    @Test
+    public void testMixRAM2OffHeap() {
+        DataAccess da = new RAMDataAccess(name, directory, true, -1);
+        assertFalse(da.loadExisting());
+        da.create(100);
+        da.setInt(7 * 4, 123);
+        da.flush();
+        da.close();
+        da = createDataAccess(name);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        da.close();
+    }
+
+    @Test
+    public void testMixOffHeap2MMAP() {
+        DataAccess da = createDataAccess(name);
+        assertFalse(da.loadExisting());
+        da.create(100);
+        da.setInt(7 * 4, 123);
+        da.setShort(9 * 4, (short) -5);
+        da.flush();
+        da.close();
+        da = new MMapDataAccess(name, directory, true, -1);
+        assertTrue(da.loadExisting());
+        assertEquals(123, da.getInt(7 * 4));
+        assertEquals(-5, da.getShort(9 * 4));
+        da.close();
+    }
+
+    @Test
+    public void testFromString() {
+        assertEquals(DAType.OFF_HEAP_STORE, DAType.fromString("off_heap_store"));
+        assertEquals(DAType.OFF_HEAP, DAType.fromString("OFF_HEAP"));
+        assertEquals("OFF_HEAP_STORE", DAType.OFF_HEAP_STORE.toString());
+        assertTrue(new GHDirectory(directory, DAType.OFF_HEAP_STORE).create("test") instanceof OffHeapDataAccess);
+    }
+}
@@ -36,8 +36,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import java.util.*;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -380,6 +379,130 @@ public class LocationIndexTreeTest {
         assertEquals(2, snap.getClosestNode());
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testBatchFindClosest(int threads) {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        NodeAccess na = graph.getNodeAccess();
+        int MAX = 20;
+        for (int latIdx = 0; latIdx < MAX; latIdx++) {
+            for (int lonIdx = 0; lonIdx < MAX; lonIdx++) {
+                int index = lonIdx * MAX + latIdx;
+                na.setNode(index, 0.01 * latIdx, 0.01 * lonIdx);
+                if (latIdx > 0)
+                    graph.edge(index, index - 1).set(speedEnc, 60, 60);
+                if (lonIdx > 0)
+                    graph.edge(index, index - MAX).set(speedEnc, 60, 60);
+            }
+        }
+        LocationIndexTree index = createIndexNoPrepare(graph, 500);
+        index.prepareIndex();
+
+        Random rand = new Random(123);
+        List<GHPoint> points = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            points.add(new GHPoint(rand.nextDouble() * 0.2 - 0.005, rand.nextDouble() * 0.2 - 0.005));
+        }
+        List<Snap> snaps = index.findClosest(points, EdgeFilter.ALL_EDGES, threads);
+        assertEquals(points.size(), snaps.size());
+        for (int i = 0; i < points.size(); i++) {
+            Snap expected = index.findClosest(points.get(i).lat, points.get(i).lon, EdgeFilter.ALL_EDGES);
+            Snap snap = snaps.get(i);
+            assertTrue(snap.isValid());
+            assertEquals(points.get(i).lat, snap.getQueryPoint().lat);
+            assertEquals(expected.getClosestEdge().getEdge(), snap.getClosestEdge().getEdge(), "point " + i);
+            assertEquals(expected.getQueryDistance(), snap.getQueryDistance(), 1.e-6, "point " + i);
+        }
+
+        // all edges rejected => no valid snap but the list still has one entry per point
+        snaps = index.findClosest(points.subList(0, 10), edge -> false, threads);
+        assertEquals(10, snaps.size());
+        snaps.forEach(snap -> assertFalse(snap.isValid()));
+        assertTrue(index.findClosest(Collections.emptyList(), EdgeFilter.ALL_EDGES, threads).isEmpty());
+    }
+
+    private LocationIndexTree createGridIndex() {
+        BaseGraph graph = new BaseGraph.Builder(encodingManager).create();
+        NodeAccess na = graph.getNodeAccess();
+        int MAX = 20;
+        for (int latIdx = 0; latIdx < MAX; latIdx++) {
+            for (int lonIdx = 0; lonIdx < MAX; lonIdx++) {
+                int index = lonIdx * MAX + latIdx;
+                na.setNode(index, 0.01 * latIdx, 0.01 * lonIdx);
+                if (latIdx > 0)
+                    graph.edge(index, index - 1).set(speedEnc, 60, 60);
+                if (lonIdx > 0)
+                    graph.edge(index, index - MAX).set(speedEnc, 60, 60);
+            }
+        }
+        LocationIndexTree index = createIndexNoPrepare(graph, 500);
+        index.prepareIndex();
+        return index;
+    }
+
+    @Test
+    public void testFindNearestEdges() {
+        LocationIndexTree index = createGridIndex();
+
+        Random rand = new Random(123);
+        for (int i = 0; i < 100; i++) {
+            double lat = rand.nextDouble() * 0.19, lon = rand.nextDouble() * 0.19;
+            List<Snap> all = index.findNearestEdges(lat, lon, Integer.MAX_VALUE, 3000, EdgeFilter.ALL_EDGES);
+            assertFalse(all.isEmpty());
+            Snap closest = index.findClosest(lat, lon, EdgeFilter.ALL_EDGES);
+            assertEquals(closest.getQueryDistance(), all.get(0).getQueryDistance(), 1.e-6);
+
+            Set<Integer> edges = new HashSet<>();
+            Set<Integer> towerNodes = new HashSet<>();
+            for (int j = 0; j < all.size(); j++) {
+                Snap snap = all.get(j);
+                assertTrue(snap.getQueryDistance() <= 3000.1, "distance " + snap.getQueryDistance());
+                if (j > 0)
+                    assertTrue(all.get(j - 1).getQueryDistance() <= snap.getQueryDistance());
+                assertTrue(edges.add(snap.getClosestEdge().getEdge()));
+                if (snap.getSnappedPosition() == Snap.Position.TOWER)
+                    assertTrue(towerNodes.add(snap.getClosestNode()));
+            }
+
+            // with a small k the search stops early but must find the same nearest edges
+            List<Snap> nearest = index.findNearestEdges(lat, lon, 3, 3000, EdgeFilter.ALL_EDGES);
+            assertEquals(3, nearest.size());
+            for (int j = 0; j < 3; j++) {
+                assertEquals(all.get(j).getQueryDistance(), nearest.get(j).getQueryDistance(), 1.e-6);
+            }
+        }
+
+        // the edge 0-1 (0.00,0.00 -> 0.01,0.00) is about 1.1km long, query 100m west of it
+        List<Snap> snaps = index.findNearestEdges(0.005, -0.0009, 10, 150, EdgeFilter.ALL_EDGES);
+        assertEquals(1, snaps.size());
+        assertEquals(Snap.Position.EDGE, snaps.get(0).getSnappedPosition());
+        assertEquals(100, snaps.get(0).getQueryDistance(), 1);
+        assertTrue(index.findNearestEdges(0.005, -0.0009, 10, 50, EdgeFilter.ALL_EDGES).isEmpty());
+        assertTrue(index.findNearestEdges(0.005, -0.0009, 10, 150, edge -> false).isEmpty());
+    }
+
+    @Test
+    public void testFindNearestEdgesWithinRadiusOfClosest() {
+        LocationIndexTree index = createGridIndex();
+        Random rand = new Random(123);
+        // the edge filter is called once for every edge that is traversed
+        int[] counts = new int[2];
+        for (int i = 0; i < 100; i++) {
+            double lat = rand.nextDouble() * 0.19, lon = rand.nextDouble() * 0.19;
+            List<Snap> all = index.findNearestEdges(lat, lon, Integer.MAX_VALUE, 3000, edge -> ++counts[0] > 0);
+            List<Snap> snaps = index.findNearestEdges(lat, lon, 3000, closest -> closest + 200, edge -> ++counts[1] > 0);
+            double radius = all.get(0).getQueryDistance() + 200;
+            List<Snap> expected = new ArrayList<>();
+            for (Snap snap : all)
+                if (snap.getQueryDistance() <= radius)
+                    expected.add(snap);
+            assertEquals(expected.size(), snaps.size());
+            for (int j = 0; j < snaps.size(); j++)
+                assertEquals(expected.get(j).getQueryDistance(), snaps.get(j).getQueryDistance(), 1.e-6);
+        }
+        assertTrue(counts[1] * 4 < counts[0], "traversed edges: " + counts[1] + ", all: " + counts[0]);
+    }
+
     // 0--1--2--3, the "cross boundary" edges are 1-2 and 5-6
     // |  |  |  |
     // 4--5--6--7
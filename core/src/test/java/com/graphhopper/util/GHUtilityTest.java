@@ -22,13 +22,18 @@ import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
 import com.graphhopper.routing.ev.SimpleBooleanEncodedValue;
+import com.graphhopper.routing.ev.TurnCost;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.search.KVStorage;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.TurnCostStorage;
 import org.junit.jupiter.api.Test;
 
+import java.util.*;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -73,4 +78,92 @@ public class GHUtilityTest {
 //        assertEquals(1, map2.get(2));
 //        assertEquals(-1, map2.get(3));
     }
+
+    @Test
+    public void testHilbertIndex() {
+        // the first order curve starts in the lower left corner and ends in the lower right corner
+        assertEquals(0, GHUtility.hilbertIndex(1, 0, 0));
+        assertEquals(1, GHUtility.hilbertIndex(1, 0, 1));
+        assertEquals(2, GHUtility.hilbertIndex(1, 1, 1));
+        assertEquals(3, GHUtility.hilbertIndex(1, 1, 0));
+        // consecutive cells along the curve are always neighbours
+        int bits = 4;
+        int n = 1 << bits;
+        int[][] cellsByIndex = new int[n * n][];
+        for (int x = 0; x < n; x++)
+            for (int y = 0; y < n; y++)
+                cellsByIndex[(int) GHUtility.hilbertIndex(bits, x, y)] = new int[]{x, y};
+        for (int i = 1; i < cellsByIndex.length; i++)
+            assertEquals(1, Math.abs(cellsByIndex[i][0] - cellsByIndex[i - 1][0]) + Math.abs(cellsByIndex[i][1] - cellsByIndex[i - 1][1]));
+    }
+
+    @Test
+    public void testSortGraphAlongHilbertCurve() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 5);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        Random rnd = new Random(123);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, false, speedEnc, null, 0.8, 0.8);
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (rnd.nextBoolean())
+                iter.setWayGeometry(Helper.createPointList(49.4 + rnd.nextDouble() * 0.01, 9.7, 49.41, 9.7 + rnd.nextDouble() * 0.01));
+            iter.setKeyValues(KVStorage.KeyValue.createKV(KVStorage.KeyValue.STREET_NAME, "street " + iter.getEdge()));
+        }
+        GHUtility.addRandomTurnCosts(graph, 123, null, turnCostEnc, 10, graph.getTurnCostStorage());
+
+        // the edges and turn costs are identified by their names, because the ids change
+        Map<String, String> edgesByName = getEdgesByName(graph, speedEnc);
+        Map<String, Double> turnCosts = getTurnCostsByName(graph, turnCostEnc);
+        assertFalse(turnCosts.isEmpty());
+
+        GHUtility.sortGraphAlongHilbertCurve(graph);
+        assertEquals(edgesByName, getEdgesByName(graph, speedEnc));
+        assertEquals(turnCosts, getTurnCostsByName(graph, turnCostEnc));
+        assertTrue(GHUtility.getProblems(graph).isEmpty(), GHUtility.getProblems(graph).toString());
+
+        // after sorting the edges are ordered by their smaller node
+        int prevNode = -1;
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            int node = Math.min(iter.getBaseNode(), iter.getAdjNode());
+            assertTrue(node >= prevNode);
+            prevNode = node;
+        }
+        // the edges of each node can still be found via the edge explorer
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        int adjacentEdges = 0;
+        for (int node = 0; node < graph.getNodes(); node++) {
+            EdgeIterator edgeIter = explorer.setBaseNode(node);
+            while (edgeIter.next()) {
+                assertEquals(node, edgeIter.getBaseNode());
+                adjacentEdges++;
+            }
+        }
+        assertEquals(2 * graph.getEdges(), adjacentEdges);
+    }
+
+    private static Map<String, String> getEdgesByName(BaseGraph graph, DecimalEncodedValue speedEnc) {
+        Map<String, String> result = new HashMap<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            result.put(iter.getName(), iter.fetchWayGeometry(FetchMode.ALL) + ", " + iter.getDistance()
+                    + ", " + iter.get(speedEnc) + ", " + iter.getReverse(speedEnc));
+        }
+        return result;
+    }
+
+    private static Map<String, Double> getTurnCostsByName(BaseGraph graph, DecimalEncodedValue turnCostEnc) {
+        Map<String, Double> result = new HashMap<>();
+        NodeAccess na = graph.getNodeAccess();
+        TurnCostStorage.Iterator iter = graph.getTurnCostStorage().getAllTurnCosts();
+        while (iter.next()) {
+            String key = graph.getEdgeIteratorState(iter.getFromEdge(), Integer.MIN_VALUE).getName() + "|"
+                    + na.getLat(iter.getViaNode()) + "," + na.getLon(iter.getViaNode()) + "|"
+                    + graph.getEdgeIteratorState(iter.getToEdge(), Integer.MIN_VALUE).getName();
+            result.put(key, iter.getCost(turnCostEnc));
+        }
+        return result;
+    }
 }
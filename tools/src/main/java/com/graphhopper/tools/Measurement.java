@@ -158,6 +158,13 @@ public class Measurement {
                 put("graph.subnetwork_removal_time_ms", sw.stop().getMillis());
             }
 
+            @Override
+            protected void sortGraph() {
+                StopWatch sw = new StopWatch().start();
+                super.sortGraph();
+                put("graph.sort_time_ms", sw.stop().getMillis());
+            }
+
             @Override
             protected void importOSM() {
                 StopWatch sw = new StopWatch().start();
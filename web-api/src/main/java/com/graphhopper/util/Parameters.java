@@ -99,6 +99,15 @@ public class Parameters {
         public static final String INIT_MAX_VISITED_NODES = ROUTING_INIT_PREFIX + "max_visited_nodes";
         public static final String TIMEOUT_MS = "timeout_ms";
         public static final String INIT_TIMEOUT_MS = ROUTING_INIT_PREFIX + "timeout_ms";
+        /**
+         * the maximum number of from or to points of a matrix request
+         */
+        public static final String INIT_MATRIX_MAX_POINTS = ROUTING_INIT_PREFIX + "matrix.max_points";
+        /**
+         * the maximum number of points of a batch request to the nearest endpoint and the threads used to snap them
+         */
+        public static final String INIT_NEAREST_MAX_POINTS = ROUTING_INIT_PREFIX + "nearest.max_points";
+        public static final String INIT_NEAREST_THREADS = ROUTING_INIT_PREFIX + "nearest.threads";
         /**
          * if true the response will contain turn instructions
          */
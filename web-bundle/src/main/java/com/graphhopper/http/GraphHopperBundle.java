@@ -41,11 +41,35 @@ import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
+import org.glassfish.jersey.process.internal.RequestScoped;
 
 import javax.inject.Inject;
 
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
+    /**
+     * Provides the current GraphHopper instance per request, so that a request keeps using the same instance even if
+     * the graph is swapped in the meantime, and the old instance is only closed after all its requests are finished.
+     */
+    static class GraphHopperFactory implements Factory<GraphHopper> {
+
+        private final GraphHopperManaged graphHopperManaged;
+
+        GraphHopperFactory(GraphHopperManaged graphHopperManaged) {
+            this.graphHopperManaged = graphHopperManaged;
+        }
+
+        @Override
+        public GraphHopper provide() {
+            return graphHopperManaged.acquire();
+        }
+
+        @Override
+        public void dispose(GraphHopper instance) {
+            graphHopperManaged.release(instance);
+        }
+    }
+
     static class TranslationMapFactory implements Factory<TranslationMap> {
 
         @Inject
@@ -126,6 +150,22 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         }
     }
 
+    static class TriangulatorFactory implements Factory<Triangulator> {
+
+        @Inject
+        GraphHopper graphHopper;
+
+        @Override
+        public Triangulator provide() {
+            return new JTSTriangulator(graphHopper.getRouterConfig());
+        }
+
+        @Override
+        public void dispose(Triangulator instance) {
+
+        }
+    }
+
     static class ProfileResolverFactory implements Factory<ProfileResolver> {
         @Inject
         GraphHopper graphHopper;
@@ -261,9 +301,13 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
-                bind(graphHopper).to(GraphHopper.class);
+                if (configuration.getGraphHopperConfiguration().has("gtfs.file"))
+                    bind(graphHopper).to(GraphHopper.class);
+                else
+                    // the pt resources are singletons, so the graph can only be swapped without them
+                    bindFactory(new GraphHopperFactory(graphHopperManaged)).to(GraphHopper.class).in(RequestScoped.class);
 
-                bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
+                bindFactory(TriangulatorFactory.class).to(Triangulator.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
                 bindFactory(PathDetailsBuilderFactoryFactory.class).to(PathDetailsBuilderFactory.class);
                 bindFactory(ProfileResolverFactory.class).to(ProfileResolver.class);
@@ -302,9 +346,11 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             environment.jersey().register(PtRedirectFilter.class);
         }
         environment.jersey().register(SPTResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
-        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
+        environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopperManaged::getGraphHopper));
+        environment.admin().addTask(new SwapGraphTask(graphHopperManaged));
         environment.jersey().register(environment.healthChecks());
         environment.jersey().register(HealthCheckResource.class);
     }
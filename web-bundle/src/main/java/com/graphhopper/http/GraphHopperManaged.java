@@ -21,27 +21,57 @@ package com.graphhopper.http;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.gtfs.GraphHopperGtfs;
+import com.graphhopper.storage.MMapWarmUp;
+import com.graphhopper.util.StopWatch;
 import io.dropwizard.lifecycle.Managed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class GraphHopperManaged implements Managed {
 
     private final static Logger logger = LoggerFactory.getLogger(GraphHopperManaged.class);
-    private final GraphHopper graphHopper;
+    private final GraphHopperConfig configuration;
+    // all instances that are not yet closed, i.e. the current one and the ones that are still in use after a swap
+    private final Map<GraphHopper, Instance> instances = new ConcurrentHashMap<>();
+    private volatile Instance current;
+    private volatile boolean stopped;
 
     public GraphHopperManaged(GraphHopperConfig configuration) {
+        this.configuration = configuration;
+        current = newInstance(createGraphHopper(configuration));
+    }
+
+    private Instance newInstance(GraphHopper graphHopper) {
+        Instance instance = new Instance(graphHopper);
+        instances.put(graphHopper, instance);
+        return instance;
+    }
+
+    private static GraphHopper createGraphHopper(GraphHopperConfig configuration) {
+        GraphHopper graphHopper;
         if (configuration.has("gtfs.file")) {
             graphHopper = new GraphHopperGtfs(configuration);
         } else {
             graphHopper = new GraphHopper();
         }
         graphHopper.init(configuration);
+        return graphHopper;
     }
 
     @Override
     public void start() {
+        GraphHopper graphHopper = current.graphHopper;
         graphHopper.importOrLoad();
+        logLoaded(graphHopper);
+    }
+
+    private static void logLoaded(GraphHopper graphHopper) {
         logger.info("loaded graph at:{}, data_reader_file:{}, encoded values:{}, {} ints for edge flags, {}",
                 graphHopper.getGraphHopperLocation(), graphHopper.getOSMFile(),
                 graphHopper.getEncodingManager().toEncodedValuesAsString(),
@@ -49,14 +79,117 @@ public class GraphHopperManaged implements Managed {
                 graphHopper.getBaseGraph().toDetailsString());
     }
 
+    /**
+     * @return the GraphHopper instance that is currently used to serve requests. Note that it might be replaced and
+     * closed by {@link #swap(String)}, use {@link #acquire()} if this can happen while it is still in use.
+     */
     public GraphHopper getGraphHopper() {
-        return graphHopper;
+        return current.graphHopper;
+    }
+
+    /**
+     * Returns the current GraphHopper instance and ensures it is not closed by a concurrent {@link #swap(String)}
+     * until {@link #release(GraphHopper)} is called for it.
+     */
+    public GraphHopper acquire() {
+        while (true) {
+            Instance instance = current;
+            instance.usages.incrementAndGet();
+            if (!instance.retired)
+                return instance.graphHopper;
+            // the instance was swapped out in the meantime, try again with the new one
+            instance.release();
+        }
+    }
+
+    public void release(GraphHopper graphHopper) {
+        Instance instance = instances.get(graphHopper);
+        if (instance == null) {
+            // requests that were still running when the server stopped finish after their instance was closed
+            if (stopped)
+                return;
+            throw new IllegalStateException("GraphHopper instance at " + graphHopper.getGraphHopperLocation() + " is already closed");
+        }
+        instance.release();
     }
 
+    /**
+     * Loads the already imported graph at the specified location next to the running one, waits until its memory
+     * mapped files are warmed up and then atomically replaces the current GraphHopper instance with it. The old
+     * instance is closed as soon as all requests that still use it are finished. The new graph must be created with
+     * the same configuration, e.g. the same profiles, as the current one.
+     */
+    public synchronized void swap(String graphLocation) throws InterruptedException {
+        if (configuration.has("gtfs.file"))
+            throw new IllegalStateException("Swapping the graph is not supported for public transit");
+        if (current.graphHopper.getGraphHopperLocation().equals(graphLocation))
+            throw new IllegalArgumentException("The graph at " + graphLocation + " is already in use");
+
+        StopWatch sw = new StopWatch().start();
+        GraphHopperConfig newConfiguration = new GraphHopperConfig(configuration);
+        newConfiguration.putObject("graph.location", graphLocation);
+        GraphHopper graphHopper = createGraphHopper(newConfiguration);
+        // never import in the running server
+        graphHopper.setAllowWrites(false);
+        if (!graphHopper.load())
+            throw new IllegalArgumentException("There is no graph at " + graphLocation);
+
+        MMapWarmUp warmUp = graphHopper.getMMapWarmUp();
+        if (warmUp != null)
+            warmUp.awaitDone(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        logLoaded(graphHopper);
+
+        Instance old = current;
+        current = newInstance(graphHopper);
+        old.retire();
+        logger.info("switched from graph at:{} to graph at:{}, took: {}s", old.graphHopper.getGraphHopperLocation(),
+                graphLocation, sw.stop().getSeconds());
+    }
+
+    /**
+     * Closes the current GraphHopper instance and all retired ones that are still in use. This is called when the
+     * server shuts down, usually after the requests have been drained. Requests that still finish afterwards release
+     * their instance without effect.
+     */
     @Override
-    public void stop() {
-        graphHopper.close();
+    public synchronized void stop() {
+        stopped = true;
+        current.retired = true;
+        for (Instance instance : instances.values()) {
+            if (instance.usages.get() > 0)
+                logger.warn("closing graph at:{} that is still used by {} requests",
+                        instance.graphHopper.getGraphHopperLocation(), instance.usages.get());
+            instance.close();
+        }
     }
 
+    private class Instance {
+        final GraphHopper graphHopper;
+        final AtomicInteger usages = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        volatile boolean retired;
+
+        Instance(GraphHopper graphHopper) {
+            this.graphHopper = graphHopper;
+        }
+
+        void retire() {
+            retired = true;
+            if (usages.get() == 0)
+                close();
+        }
 
+        void release() {
+            if (usages.decrementAndGet() == 0 && retired)
+                close();
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                instances.remove(graphHopper);
+                graphHopper.close();
+                logger.info("closed graph at:{}", graphHopper.getGraphHopperLocation());
+            }
+        }
+    }
 }
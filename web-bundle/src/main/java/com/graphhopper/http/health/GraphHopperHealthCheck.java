@@ -20,23 +20,42 @@ package com.graphhopper.http.health;
 
 import com.codahale.metrics.health.HealthCheck;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.storage.MMapWarmUp;
+
+import java.util.function.Supplier;
 
 public class GraphHopperHealthCheck extends HealthCheck {
 
-    private final GraphHopper graphHopper;
+    private final Supplier<GraphHopper> graphHopperSupplier;
 
     public GraphHopperHealthCheck(GraphHopper graphHopper) {
-        this.graphHopper = graphHopper;
+        this(() -> graphHopper);
+    }
+
+    /**
+     * @param graphHopperSupplier provides the GraphHopper instance that is currently in use, which can change when
+     *                            the graph is swapped
+     */
+    public GraphHopperHealthCheck(Supplier<GraphHopper> graphHopperSupplier) {
+        this.graphHopperSupplier = graphHopperSupplier;
     }
 
     @Override
     protected Result check() {
+        GraphHopper graphHopper = graphHopperSupplier.get();
         if (!graphHopper.getBaseGraph().getBounds().isValid()) {
             return Result.unhealthy("BaseGraph has invalid bounds.");
         }
         if (!graphHopper.getFullyLoaded()) {
             return Result.unhealthy("GraphHopper is not fully loaded.");
         }
+        MMapWarmUp warmUp = graphHopper.getMMapWarmUp();
+        if (warmUp != null && warmUp.getFailedSegments() > 0) {
+            return Result.unhealthy("Warm-up of memory mapped files failed for " + warmUp.getFailedSegments() + " segments, see the logs");
+        }
+        if (warmUp != null && !warmUp.isDone()) {
+            return Result.unhealthy("Memory mapped files are still warming up: " + Math.round(warmUp.getProgress() * 100) + "%");
+        }
         return Result.healthy();
     }
 }
@@ -0,0 +1,340 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.jackson.ResponsePathSerializer;
+import com.graphhopper.routing.ManyToManyCH;
+import com.graphhopper.routing.RouterConfig;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.NameSimilarityEdgeFilter;
+import com.graphhopper.routing.util.SnapPreventionEdgeFilter;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.Parameters;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import java.util.*;
+
+import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
+
+/**
+ * This resource calculates the travel times, distances and weights between many from and to points, e.g. for
+ * vehicle routing problems. It uses {@link ManyToManyCH} and therefore requires a profile with node-based CH.
+ * The request and response formats are the same as for the matrix client in the client-hc module, i.e. points are
+ * given as [lon, lat] arrays, times are returned in seconds and distances in meters.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+    private static final Set<String> OUT_ARRAYS = new HashSet<>(Arrays.asList("weights", "times", "distances"));
+    // the number of disconnected pairs can be quadratic in the number of points, so we only report the first ones
+    static final int MAX_REPORTED_PAIRS = 100;
+
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final String osmDate;
+
+    @Inject
+    public MatrixResource(GraphHopper graphHopper, ProfileResolver profileResolver) {
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.osmDate = graphHopper.getProperties().get("datareader.data.date");
+    }
+
+    public static class MatrixRequest {
+        @JsonProperty("points")
+        public List<GHPoint> points = new ArrayList<>();
+        @JsonProperty("from_points")
+        public List<GHPoint> fromPoints = new ArrayList<>();
+        @JsonProperty("to_points")
+        public List<GHPoint> toPoints = new ArrayList<>();
+        @JsonProperty("point_hints")
+        public List<String> pointHints = new ArrayList<>();
+        @JsonProperty("from_point_hints")
+        public List<String> fromPointHints = new ArrayList<>();
+        @JsonProperty("to_point_hints")
+        public List<String> toPointHints = new ArrayList<>();
+        @JsonProperty("snap_preventions")
+        public List<String> snapPreventions = new ArrayList<>();
+        @JsonProperty("out_arrays")
+        public List<String> outArrays = new ArrayList<>();
+        @JsonProperty("fail_fast")
+        public boolean failFast = true;
+        @JsonProperty("profile")
+        public String profile;
+        private final PMap hints = new PMap();
+
+        @JsonAnySetter
+        public void putHint(String fieldName, Object value) {
+            hints.putObject(fieldName, value);
+        }
+
+        public PMap getHints() {
+            return hints;
+        }
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public ObjectNode doPost(@NotNull MatrixRequest request, @Context HttpServletRequest httpReq) {
+        StopWatch sw = new StopWatch().start();
+        final List<GHPoint> fromPoints, toPoints;
+        final List<String> fromPointHints, toPointHints;
+        if (!request.points.isEmpty()) {
+            if (!request.fromPoints.isEmpty() || !request.toPoints.isEmpty())
+                throw new IllegalArgumentException("Either specify 'points' or 'from_points' and 'to_points', but not both");
+            fromPoints = toPoints = request.points;
+            fromPointHints = toPointHints = request.pointHints;
+        } else {
+            if (request.fromPoints.isEmpty() || request.toPoints.isEmpty())
+                throw new IllegalArgumentException("Either specify 'points' or 'from_points' and 'to_points'");
+            fromPoints = request.fromPoints;
+            toPoints = request.toPoints;
+            fromPointHints = request.fromPointHints;
+            toPointHints = request.toPointHints;
+        }
+        checkPointHints("from_point_hints", fromPointHints, fromPoints);
+        checkPointHints("to_point_hints", toPointHints, toPoints);
+        int maxPoints = graphHopper.getRouterConfig().getMatrixMaxPoints();
+        if (fromPoints.size() > maxPoints || toPoints.size() > maxPoints)
+            throw new IllegalArgumentException("Too many points: " + fromPoints.size() + " from points and " + toPoints.size()
+                    + " to points, but the maximum is " + maxPoints);
+        List<String> outArrays = request.outArrays.isEmpty() ? Collections.singletonList("weights") : request.outArrays;
+        for (String outArray : outArrays)
+            if (!OUT_ARRAYS.contains(outArray))
+                throw new IllegalArgumentException("Unknown out_array: '" + outArray + "', supported are: " + OUT_ARRAYS);
+        if (request.getHints().has("curbsides") || request.getHints().has("from_curbsides") || request.getHints().has("to_curbsides"))
+            throw new IllegalArgumentException("Curbsides are not supported for matrix requests");
+        RouterConfig routerConfig = graphHopper.getRouterConfig();
+        int maxVisitedNodes = request.getHints().getInt(Parameters.Routing.MAX_VISITED_NODES, routerConfig.getMaxVisitedNodes());
+        if (maxVisitedNodes > routerConfig.getMaxVisitedNodes())
+            throw new IllegalArgumentException("The max_visited_nodes parameter has to be below or equal to:" + routerConfig.getMaxVisitedNodes());
+        // like for routing requests we silently use the minimum of the requested and the server-side timeout
+        long timeoutMillis = Math.min(routerConfig.getTimeoutMillis(), request.getHints().getLong(Parameters.Routing.TIMEOUT_MS, routerConfig.getTimeoutMillis()));
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.profile);
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        removeLegacyParameters(request.getHints());
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("Matrix requests require CH for the profile '" + profileName
+                    + "', but CH profiles are only available for: " + graphHopper.getCHGraphs().keySet());
+        if (chGraph.isEdgeBased())
+            throw new IllegalArgumentException("Matrix requests are not supported for the profile '" + profileName
+                    + "', because it uses turn costs");
+
+        // when we use 'points' the from and to points are the same and we only need to snap them once
+        List<Snap> fromSnaps = snap(profileName, chGraph, fromPoints, fromPointHints, request.snapPreventions);
+        List<Snap> toSnaps = fromPoints == toPoints ? fromSnaps : snap(profileName, chGraph, toPoints, toPointHints, request.snapPreventions);
+        List<Integer> invalidFromPoints = findInvalid(fromSnaps);
+        List<Integer> invalidToPoints = findInvalid(toSnaps);
+        if (request.failFast && (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty())) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int i : invalidFromPoints)
+                errors.add(new PointNotFoundException("Cannot find from_points " + i + ": " + fromPoints.get(i), i));
+            if (fromPoints != toPoints)
+                for (int i : invalidToPoints)
+                    errors.add(new PointNotFoundException("Cannot find to_points " + i + ": " + toPoints.get(i), i));
+            throw new MultiException(errors);
+        }
+
+        List<Snap> validSnaps = new ArrayList<>();
+        addValid(validSnaps, fromSnaps);
+        if (fromSnaps != toSnaps)
+            addValid(validSnaps, toSnaps);
+        QueryGraph queryGraph = QueryGraph.create(graphHopper.getBaseGraph(), validSnaps);
+        ManyToManyCH manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph))
+                .setMaxVisitedNodes(maxVisitedNodes)
+                .setTimeoutMillis(timeoutMillis);
+        ManyToManyCH.Result result = manyToMany.calcMatrix(toNodes(fromSnaps), toNodes(toSnaps));
+
+        List<int[]> disconnectedPairs = new ArrayList<>();
+        int disconnectedCount = 0;
+        for (int from = 0; from < fromSnaps.size(); from++)
+            for (int to = 0; to < toSnaps.size(); to++)
+                if (fromSnaps.get(from).isValid() && toSnaps.get(to).isValid() && !result.isConnected(from, to)) {
+                    if (disconnectedPairs.size() < MAX_REPORTED_PAIRS)
+                        disconnectedPairs.add(new int[]{from, to});
+                    disconnectedCount++;
+                }
+        if (request.failFast && !disconnectedPairs.isEmpty()) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int[] pair : disconnectedPairs) {
+                Map<String, Object> details = new HashMap<>();
+                details.put("point_pair", pair);
+                errors.add(new ConnectionNotFoundException("Connection between locations not found: from_points "
+                        + pair[0] + " and to_points " + pair[1], details));
+            }
+            if (disconnectedCount > disconnectedPairs.size())
+                errors.add(new ConnectionNotFoundException("Connection between locations not found for "
+                        + (disconnectedCount - disconnectedPairs.size()) + " more point pairs", Collections.emptyMap()));
+            throw new MultiException(errors);
+        }
+
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        boolean withWeights = outArrays.contains("weights");
+        boolean withTimes = outArrays.contains("times");
+        boolean withDistances = outArrays.contains("distances");
+        ArrayNode weights = withWeights ? json.putArray("weights") : null;
+        ArrayNode times = withTimes ? json.putArray("times") : null;
+        ArrayNode distances = withDistances ? json.putArray("distances") : null;
+        for (int from = 0; from < fromSnaps.size(); from++) {
+            ArrayNode weightRow = withWeights ? weights.addArray() : null;
+            ArrayNode timeRow = withTimes ? times.addArray() : null;
+            ArrayNode distanceRow = withDistances ? distances.addArray() : null;
+            for (int to = 0; to < toSnaps.size(); to++) {
+                boolean connected = fromSnaps.get(from).isValid() && toSnaps.get(to).isValid() && result.isConnected(from, to);
+                if (withWeights) {
+                    if (connected) weightRow.add(Helper.round(result.getWeight(from, to), 3));
+                    else weightRow.addNull();
+                }
+                if (withTimes) {
+                    if (connected) timeRow.add(Math.round(result.getTime(from, to) / 1000.0));
+                    else timeRow.addNull();
+                }
+                if (withDistances) {
+                    if (connected) distanceRow.add(Math.round(result.getDistance(from, to)));
+                    else distanceRow.addNull();
+                }
+            }
+        }
+        if (!disconnectedPairs.isEmpty() || !invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty()) {
+            ArrayNode hints = json.putArray("hints");
+            if (!disconnectedPairs.isEmpty()) {
+                ObjectNode hint = hints.addObject();
+                hint.put("message", "Connection between locations not found");
+                hint.put("details", ConnectionNotFoundException.class.getName());
+                ArrayNode pointPairs = hint.putArray("point_pairs");
+                for (int[] pair : disconnectedPairs)
+                    pointPairs.addArray().add(pair[0]).add(pair[1]);
+                hint.put("point_pairs_count", disconnectedCount);
+            }
+            if (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty()) {
+                ObjectNode hint = hints.addObject();
+                hint.put("message", "Cannot find points");
+                hint.put("details", PointNotFoundException.class.getName());
+                ArrayNode invalidFrom = hint.putArray("invalid_from_points");
+                invalidFromPoints.forEach(invalidFrom::add);
+                ArrayNode invalidTo = hint.putArray("invalid_to_points");
+                invalidToPoints.forEach(invalidTo::add);
+            }
+        }
+        double took = sw.stop().getMillisDouble();
+        ObjectNode info = json.putObject("info");
+        info.putPOJO("copyrights", ResponsePathSerializer.COPYRIGHTS);
+        info.put("took", Math.round(took));
+        if (!osmDate.isEmpty())
+            info.put("road_data_timestamp", osmDate);
+        logger.info(httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent")
+                + " " + fromPoints.size() + "x" + toPoints.size() + ", took: " + String.format("%.1f", took)
+                + " ms, profile: " + profileName + ", visited nodes: " + manyToMany.getVisitedNodes());
+        return json;
+    }
+
+    private static void checkPointHints(String name, List<String> pointHints, List<GHPoint> points) {
+        if (!pointHints.isEmpty() && pointHints.size() != points.size())
+            throw new IllegalArgumentException("If you pass " + name + ", you need to pass exactly one hint for every point, empty hints will be ignored");
+    }
+
+    private List<Snap> snap(String profileName, RoutingCHGraph chGraph, List<GHPoint> points, List<String> pointHints, List<String> snapPreventions) {
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        EncodedValueLookup lookup = graphHopper.getEncodingManager();
+        BooleanEncodedValue inSubnetworkEnc = lookup.getBooleanEncodedValue(Subnetwork.key(profileName));
+        EdgeFilter snapFilter = new DefaultSnapFilter(chGraph.getWeighting(), inSubnetworkEnc);
+        EdgeFilter strictEdgeFilter = snapPreventions.isEmpty()
+                ? snapFilter
+                : new SnapPreventionEdgeFilter(snapFilter, lookup.getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                lookup.getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), snapPreventions);
+        BBox bounds = graphHopper.getBaseGraph().getBounds();
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            if (!bounds.contains(point.lat, point.lon)) {
+                // points outside the graph bounds are treated like points we cannot find
+                snaps.add(new Snap(point.lat, point.lon));
+                continue;
+            }
+            Snap snap = null;
+            if (!pointHints.isEmpty() && !Helper.isEmpty(pointHints.get(i)))
+                snap = locationIndex.findClosest(point.lat, point.lon, new NameSimilarityEdgeFilter(strictEdgeFilter, pointHints.get(i), point, 170));
+            else if (!snapPreventions.isEmpty())
+                snap = locationIndex.findClosest(point.lat, point.lon, strictEdgeFilter);
+            if (snap == null || !snap.isValid())
+                snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            snaps.add(snap);
+        }
+        return snaps;
+    }
+
+    private static List<Integer> findInvalid(List<Snap> snaps) {
+        List<Integer> invalid = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++)
+            if (!snaps.get(i).isValid())
+                invalid.add(i);
+        return invalid;
+    }
+
+    private static void addValid(List<Snap> result, List<Snap> snaps) {
+        for (Snap snap : snaps)
+            if (snap.isValid())
+                result.add(snap);
+    }
+
+    /**
+     * Invalid snaps are mapped to the first node. We ignore their entries of the matrix anyway.
+     */
+    private static int[] toNodes(List<Snap> snaps) {
+        int[] nodes = new int[snaps.size()];
+        for (int i = 0; i < nodes.length; i++)
+            nodes[i] = snaps.get(i).isValid() ? snaps.get(i).getClosestNode() : 0;
+        return nodes;
+    }
+}
@@ -19,8 +19,11 @@ package com.graphhopper.resources;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.RouterConfig;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalcEarth;
@@ -29,8 +32,11 @@ import com.graphhopper.util.shapes.GHPoint3D;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author svantulden
@@ -43,11 +49,16 @@ public class NearestResource {
     private final DistanceCalc calc = DistanceCalcEarth.DIST_EARTH;
     private final LocationIndex index;
     private final boolean hasElevation;
+    private final int maxPoints;
+    private final int threads;
 
     @Inject
-    NearestResource(LocationIndex index, @Named("hasElevation") Boolean hasElevation) {
+    NearestResource(GraphHopper graphHopper, LocationIndex index, @Named("hasElevation") Boolean hasElevation) {
         this.index = index;
         this.hasElevation = hasElevation;
+        RouterConfig routerConfig = graphHopper.getRouterConfig();
+        this.maxPoints = routerConfig.getNearestMaxPoints();
+        this.threads = routerConfig.getNearestThreads();
     }
 
     public static class Response {
@@ -62,16 +73,54 @@ public class NearestResource {
         }
     }
 
+    public static class BatchRequest {
+        @JsonProperty("points")
+        public List<GHPoint> points = new ArrayList<>();
+        @JsonProperty("elevation")
+        public boolean elevation = false;
+    }
+
     @GET
     public Response doGet(@QueryParam("point") GHPoint point, @QueryParam("elevation") @DefaultValue("false") boolean elevation) {
         Snap snap = index.findClosest(point.lat, point.lon, EdgeFilter.ALL_EDGES);
         if (snap.isValid()) {
-            GHPoint3D snappedPoint = snap.getSnappedPoint();
-            double[] coordinates = hasElevation && elevation ? new double[]{snappedPoint.lon, snappedPoint.lat, snappedPoint.ele} : new double[]{snappedPoint.lon, snappedPoint.lat};
-            return new Response(coordinates, calc.calcDist(point.lat, point.lon, snappedPoint.lat, snappedPoint.lon));
+            return createResponse(point, snap, elevation);
         } else {
             throw new WebApplicationException("Nearest point cannot be found!");
         }
     }
 
+    /**
+     * Batch mode: snaps all points of the request at once, which is faster than one request per point. The returned
+     * list has the same order as the points and contains null for points that cannot be snapped.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public List<Response> doPost(@NotNull BatchRequest request) {
+        if (request.points == null || request.points.isEmpty())
+            throw new IllegalArgumentException("You have to specify at least one point");
+        if (request.points.size() > maxPoints)
+            throw new IllegalArgumentException("Too many points: " + request.points.size() + ", but the maximum is " + maxPoints);
+        for (GHPoint point : request.points) {
+            if (point == null || !point.isValid())
+                throw new IllegalArgumentException("Invalid point " + point);
+        }
+
+        List<Snap> snaps = index instanceof LocationIndexTree
+                ? ((LocationIndexTree) index).findClosest(request.points, EdgeFilter.ALL_EDGES, threads)
+                : index.findClosest(request.points, EdgeFilter.ALL_EDGES);
+        List<Response> responses = new ArrayList<>(snaps.size());
+        for (int i = 0; i < snaps.size(); i++) {
+            Snap snap = snaps.get(i);
+            responses.add(snap.isValid() ? createResponse(request.points.get(i), snap, request.elevation) : null);
+        }
+        return responses;
+    }
+
+    private Response createResponse(GHPoint point, Snap snap, boolean elevation) {
+        GHPoint3D snappedPoint = snap.getSnappedPoint();
+        double[] coordinates = hasElevation && elevation ? new double[]{snappedPoint.lon, snappedPoint.lat, snappedPoint.ele} : new double[]{snappedPoint.lon, snappedPoint.lat};
+        return new Response(coordinates, calc.calcDist(point.lat, point.lon, snappedPoint.lat, snappedPoint.lon));
+    }
+
 }
@@ -0,0 +1,143 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.TurnCostsConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.JsonFeatureCollection;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The /isochrone and /spt endpoints with ch.disable=false, which use PHAST on the CH graph of the profile.
+ */
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class IsochroneResourceCHTest {
+    private static final String DIR = "./target/isochrone-ch-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerTestConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                setProfiles(List.of(
+                        TestProfiles.accessAndSpeed("car_without_turncosts", "car"),
+                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car())
+                )).
+                setCHProfiles(List.of(new CHProfile("car_without_turncosts"), new CHProfile("car_with_turncosts")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void requestIsochrone() {
+        String query = "/isochrone?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&buckets=2&type=geojson";
+        JsonFeatureCollection expected = clientTarget(app, query).request().buildGet().invoke().readEntity(JsonFeatureCollection.class);
+        Response rsp = clientTarget(app, query + "&ch.disable=false").request().buildGet().invoke();
+        assertEquals(200, rsp.getStatus());
+        JsonFeatureCollection featureCollection = rsp.readEntity(JsonFeatureCollection.class);
+
+        assertEquals(2, featureCollection.getFeatures().size());
+        Geometry polygon0 = featureCollection.getFeatures().get(0).getGeometry();
+        Geometry polygon1 = featureCollection.getFeatures().get(1).getGeometry();
+        assertTrue(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.587224, 42.5386))));
+        assertFalse(polygon0.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertTrue(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.589756, 42.558012))));
+        assertFalse(polygon1.contains(geometryFactory.createPoint(new Coordinate(1.635246, 42.53841))));
+        for (int i = 0; i < 2; i++) {
+            double expectedArea = expected.getFeatures().get(i).getGeometry().getArea();
+            assertEquals(expectedArea, featureCollection.getFeatures().get(i).getGeometry().getArea(), 0.02 * expectedArea);
+        }
+    }
+
+    @Test
+    public void requestSPT() {
+        String query = "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=node_id,time";
+        Map<Integer, Long> expected = readTimeByNode(clientTarget(app, query).request().buildGet().invoke());
+        Response rsp = clientTarget(app, query + "&ch.disable=false").request().buildGet().invoke();
+        assertEquals(200, rsp.getStatus());
+        Map<Integer, Long> given = readTimeByNode(rsp);
+        assertTrue(given.size() > 400, "nodes: " + given.size());
+
+        // the time of a label is not the optimized weight, so nodes close to the time limit might be missing on one
+        // side and the times can differ slightly if there are several shortest paths
+        long toleranceMillis = 2000;
+        for (Map.Entry<Integer, Long> e : expected.entrySet()) {
+            Long givenTime = given.get(e.getKey());
+            if (givenTime == null) {
+                assertTrue(e.getValue() > 300_000 - toleranceMillis, "missing node " + e.getKey());
+                continue;
+            }
+            assertEquals(e.getValue(), givenTime, toleranceMillis, "time of node " + e.getKey());
+        }
+        for (Map.Entry<Integer, Long> e : given.entrySet())
+            if (!expected.containsKey(e.getKey()))
+                assertTrue(e.getValue() > 300_000 - toleranceMillis, "unexpected node " + e.getKey());
+    }
+
+    @Test
+    public void edgeBasedProfileIsRejected() {
+        for (String endpoint : List.of("/spt", "/isochrone")) {
+            Response rsp = clientTarget(app, endpoint + "?profile=car_with_turncosts&point=42.531073,1.573792&ch.disable=false").request().buildGet().invoke();
+            assertEquals(400, rsp.getStatus());
+            assertTrue(rsp.readEntity(JsonNode.class).get("message").asText().contains("node-based"));
+        }
+    }
+
+    private static Map<Integer, Long> readTimeByNode(Response rsp) {
+        String[] lines = rsp.readEntity(String.class).split("\n");
+        assertEquals("node_id,time", lines[0]);
+        Map<Integer, Long> result = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] row = lines[i].split(",");
+            result.put(Integer.parseInt(row[0]), Long.parseLong(row[1]));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.graphhopper.application.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.graphhopper.api.GHMRequest;
+import com.graphhopper.api.GraphHopperMatrixWeb;
+import com.graphhopper.api.MatrixResponse;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.TurnCostsConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static com.graphhopper.application.util.TestUtils.clientUrl;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/matrix-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerTestConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("routing.matrix.max_points", 5).
+                setProfiles(List.of(
+                        TestProfiles.accessAndSpeed("car", "car"),
+                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car()),
+                        TestProfiles.accessAndSpeed("car_without_ch", "car")
+                )).
+                setCHProfiles(List.of(new CHProfile("car"), new CHProfile("car_with_turncosts")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @Test
+    public void compareWithRoute() {
+        String body = "{\"profile\": \"car\", \"points\": [[1.536198,42.554851],[1.548128,42.510071],[1.573792,42.531073]], " +
+                "\"out_arrays\": [\"weights\", \"times\", \"distances\"]}";
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json(body));
+        assertEquals(200, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertEquals(3, json.get("distances").size());
+        assertEquals(3, json.get("distances").get(0).size());
+        assertEquals(0, json.get("distances").get(1).get(1).asLong());
+        assertFalse(json.has("hints"));
+
+        JsonNode route = clientTarget(app, "/route?profile=car&point=42.554851,1.536198&point=42.510071,1.548128&calc_points=false")
+                .request().get(JsonNode.class).get("paths").get(0);
+        assertEquals(route.get("distance").asDouble(), json.get("distances").get(0).get(1).asDouble(), 1);
+        assertEquals(route.get("time").asLong() / 1000.0, json.get("times").get(0).get(1).asDouble(), 1);
+        assertEquals(route.get("weight").asDouble(), json.get("weights").get(0).get(1).asDouble(), 1.e-2);
+
+        route = clientTarget(app, "/route?profile=car&point=42.531073,1.573792&point=42.554851,1.536198&calc_points=false")
+                .request().get(JsonNode.class).get("paths").get(0);
+        assertEquals(route.get("distance").asDouble(), json.get("distances").get(2).get(0).asDouble(), 1);
+        assertEquals(route.get("time").asLong() / 1000.0, json.get("times").get(2).get(0).asDouble(), 1);
+    }
+
+    @Test
+    public void client() {
+        GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(clientUrl(app, "/matrix"));
+        GHMRequest request = new GHMRequest();
+        request.setProfile("car");
+        request.setFromPoints(Arrays.asList(new GHPoint(42.554851, 1.536198), new GHPoint(42.510071, 1.548128)));
+        request.setToPoints(Arrays.asList(new GHPoint(42.531073, 1.573792)));
+        request.setOutArrays(Arrays.asList("weights", "times", "distances"));
+        MatrixResponse response = matrixWeb.route(request);
+        assertFalse(response.hasErrors(), response.getErrors().toString());
+        assertTrue(response.isConnected(0, 0));
+        assertTrue(response.getDistance(0, 0) > response.getDistance(1, 0));
+        assertTrue(response.getTime(1, 0) > 0);
+    }
+
+    @Test
+    public void pointNotFound() {
+        String body = "{\"profile\": \"car\", \"from_points\": [[1.536198,42.554851],[1.548128,40.510071]], \"to_points\": [[1.573792,42.531073]]}";
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertTrue(json.get("message").asText().contains("Cannot find from_points 1"), json.toString());
+        assertEquals(1, json.get("hints").get(0).get("point_index").asInt());
+
+        body = "{\"profile\": \"car\", \"fail_fast\": false, \"from_points\": [[1.536198,42.554851],[1.548128,40.510071]], \"to_points\": [[1.573792,42.531073]]}";
+        response = clientTarget(app, "/matrix").request().post(Entity.json(body));
+        assertEquals(200, response.getStatus());
+        json = response.readEntity(JsonNode.class);
+        assertTrue(json.get("weights").get(0).get(0).isNumber());
+        assertTrue(json.get("weights").get(1).get(0).isNull());
+        assertEquals("[1]", json.get("hints").get(0).get("invalid_from_points").toString());
+        assertEquals("[]", json.get("hints").get(0).get("invalid_to_points").toString());
+    }
+
+    @Test
+    public void maxVisitedNodes() {
+        String body = "{\"profile\": \"car\", \"max_visited_nodes\": 5, \"points\": [[1.536198,42.554851],[1.548128,42.510071]]}";
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus());
+        JsonNode json = response.readEntity(JsonNode.class);
+        assertTrue(json.get("message").asText().contains("maximum nodes exceeded 5"), json.toString());
+    }
+
+    @Test
+    public void unsupportedProfilesAndTooManyPoints() {
+        String points = "\"points\": [[1.536198,42.554851],[1.548128,42.510071]]";
+        for (String profile : new String[]{"car_with_turncosts", "car_without_ch"}) {
+            Response response = clientTarget(app, "/matrix").request().post(Entity.json("{\"profile\": \"" + profile + "\", " + points + "}"));
+            assertEquals(400, response.getStatus());
+            assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains(profile));
+        }
+        Response response = clientTarget(app, "/matrix").request().post(Entity.json("{\"profile\": \"car\", \"points\": " +
+                "[[1.536198,42.554851],[1.548128,42.510071],[1.536198,42.554851],[1.548128,42.510071],[1.536198,42.554851],[1.548128,42.510071]]}"));
+        assertEquals(400, response.getStatus());
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Too many points"));
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.application.resources;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
@@ -30,13 +31,14 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
 import java.io.File;
 import java.util.List;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
-import static org.junit.jupiter.api.Assertions.assertArrayEquals;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author svantulden
@@ -52,6 +54,8 @@ public class NearestResourceTest {
                 putObject("datareader.file", "../core/files/andorra.osm.pbf").
                 putObject("graph.location", dir).
                 putObject("import.osm.ignored_highways", "").
+                putObject("routing.nearest.max_points", 5).
+                putObject("routing.nearest.threads", 2).
                 setProfiles(List.of(TestProfiles.constantSpeed("car")));
         return config;
     }
@@ -69,4 +73,33 @@ public class NearestResourceTest {
         NearestResource.Response json = response.readEntity(NearestResource.Response.class);
         assertArrayEquals(new double[]{1.5363743623376815, 42.554839049600155}, json.coordinates, "nearest point");
     }
+
+    @Test
+    public void testBatchNearestQuery() {
+        String body = "{\"points\": [[1.536198, 42.554851], [1.5, 10], [1.536198, 42.554851]]}";
+        final Response response = clientTarget(app, "/nearest").request().post(Entity.json(body));
+        assertEquals(200, response.getStatus(), "HTTP status");
+        List<NearestResource.Response> list = response.readEntity(new GenericType<List<NearestResource.Response>>() {
+        });
+        assertEquals(3, list.size());
+        assertArrayEquals(new double[]{1.5363743623376815, 42.554839049600155}, list.get(0).coordinates, "nearest point");
+        // far outside of andorra, but still snapped to the closest tile
+        assertTrue(list.get(1).distance > 1_000_000, "distance " + list.get(1).distance);
+        assertArrayEquals(list.get(0).coordinates, list.get(2).coordinates);
+    }
+
+    @Test
+    public void testBatchNearestQueryWithoutPoints() {
+        final Response response = clientTarget(app, "/nearest").request().post(Entity.json("{\"points\": []}"));
+        assertEquals(400, response.getStatus(), "HTTP status");
+    }
+
+    @Test
+    public void testBatchNearestQueryWithTooManyPoints() {
+        String body = "{\"points\": [[1.536198, 42.554851], [1.536198, 42.554851], [1.536198, 42.554851], " +
+                "[1.536198, 42.554851], [1.536198, 42.554851], [1.536198, 42.554851]]}";
+        final Response response = clientTarget(app, "/nearest").request().post(Entity.json(body));
+        assertEquals(400, response.getStatus(), "HTTP status");
+        assertTrue(response.readEntity(JsonNode.class).get("message").asText().contains("Too many points"));
+    }
 }
@@ -0,0 +1,111 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.http.GraphHopperManaged;
+import com.graphhopper.resources.NearestResource;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientTarget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class SwapGraphTest {
+    private static final String dir = "./target/swap-graph-andorra-gh/";
+    private static final String newDir = "./target/swap-graph-monaco-gh/";
+    private static final String stopDir = "./target/swap-graph-stop-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("graph.location", dir).
+                putObject("import.osm.ignored_highways", "").
+                setProfiles(List.of(TestProfiles.constantSpeed("car")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(dir));
+        Helper.removeDir(new File(newDir));
+        Helper.removeDir(new File(stopDir));
+    }
+
+    @Test
+    public void testSwapGraph() {
+        Response response = clientTarget(app, "/nearest?point=42.554851,1.536198").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        assertTrue(response.readEntity(NearestResource.Response.class).distance < 100);
+
+        // the new graph is imported separately, e.g. by another process
+        GraphHopperConfig newConfig = new GraphHopperConfig(app.getConfiguration().getGraphHopperConfiguration()).
+                putObject("datareader.file", "../core/files/monaco.osm.gz").
+                putObject("graph.location", newDir);
+        GraphHopper hopper = new GraphHopper().init(newConfig);
+        hopper.importOrLoad();
+        hopper.close();
+
+        response = app.client().target("http://localhost:" + app.getAdminPort() + "/tasks/swap-graph")
+                .queryParam("location", newDir).request().post(Entity.text(""));
+        assertEquals(200, response.getStatus(), response.readEntity(String.class));
+
+        response = clientTarget(app, "/nearest?point=43.73,7.42").request().buildGet().invoke();
+        assertEquals(200, response.getStatus());
+        assertTrue(response.readEntity(NearestResource.Response.class).distance < 100);
+
+        response = clientTarget(app, "/route?profile=car&point=43.727687,7.418737&point=43.74958,7.436566").request().buildGet().invoke();
+        assertEquals(200, response.getStatus(), response.readEntity(String.class));
+
+        response = clientTarget(app, "/isochrone?profile=car&point=43.73,7.42&time_limit=60").request().buildGet().invoke();
+        assertEquals(200, response.getStatus(), response.readEntity(String.class));
+    }
+
+    @Test
+    public void testReleaseAfterStop() {
+        GraphHopperConfig config = new GraphHopperConfig(app.getConfiguration().getGraphHopperConfiguration()).
+                putObject("datareader.file", "../core/files/monaco.osm.gz").
+                putObject("graph.location", stopDir);
+        GraphHopperManaged managed = new GraphHopperManaged(config);
+        managed.start();
+        GraphHopper hopper = managed.acquire();
+        managed.stop();
+        // a request that finishes after the server stopped must not fail
+        managed.release(hopper);
+    }
+}